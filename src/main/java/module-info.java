@@ -7,6 +7,11 @@ module org.example.retoconjuntoad_di_2 {
     requires java.naming;
     requires static lombok;
 
+    // Métricas: JMX, endpoint HTTP local y eventos de Flight Recorder
+    requires java.management;
+    requires jdk.httpserver;
+    requires jdk.jfr;
+
     opens org.example.retoconjuntoad_di_2 to javafx.fxml;
     opens org.example.retoconjuntoad_di_2.model.user to javafx.base;
     opens org.example.retoconjuntoad_di_2.model.pelicula to javafx.base;
@@ -15,4 +20,5 @@ module org.example.retoconjuntoad_di_2 {
     opens org.example.retoconjuntoad_di_2.controllers to javafx.fxml;
 
     exports org.example.retoconjuntoad_di_2;
+    exports org.example.retoconjuntoad_di_2.metrics to java.management;
 }
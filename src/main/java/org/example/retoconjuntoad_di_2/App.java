@@ -4,6 +4,12 @@ import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import org.example.retoconjuntoad_di_2.cache.CatalogCache;
+import org.example.retoconjuntoad_di_2.metrics.FxStallDetector;
+import org.example.retoconjuntoad_di_2.recommendation.SimilarFilmsIndex;
+import org.example.retoconjuntoad_di_2.statistics.CollectionStatistics;
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+import org.example.retoconjuntoad_di_2.utils.DataProvider;
 import org.example.retoconjuntoad_di_2.utils.JavaFXUtil;
 
 
@@ -33,6 +39,10 @@ public class App extends Application {
      * Realiza las siguientes acciones:
      * <ul>
      *   <li>Inicializa datos de ejemplo en la base de datos ObjectDB si está vacía</li>
+     *   <li>Carga en segundo plano el catálogo en memoria ({@link CatalogCache})</li>
+     *   <li>Construye en segundo plano el índice de películas parecidas ({@link SimilarFilmsIndex})</li>
+     *   <li>Calcula en segundo plano las estadísticas de la colección ({@link CollectionStatistics})</li>
+     *   <li>Inicia el vigilante de bloqueos del hilo de JavaFX ({@link FxStallDetector})</li>
      *   <li>Configura la ventana principal (Stage) de JavaFX</li>
      *   <li>Carga y muestra la vista de login</li>
      * </ul>
@@ -46,8 +56,42 @@ public class App extends Application {
         // Inicializar datos de ejemplo en la base de datos ObjectDB
         DatabaseSeeder.seedIfEmpty();
 
+        // Cargar en memoria, sin retrasar el arranque, el catálogo que sirve las lecturas
+        // de la interfaz; hasta que esté listo se lee de los repositorios
+        CatalogCache.getInstance().start(DataProvider.getEntityManagerFactory());
+
+        // Calcular las películas parecidas sin retrasar el arranque
+        if (AppConfig.getBoolean("recommendation.enabled", true)) {
+            SimilarFilmsIndex.getInstance().start(DataProvider.getEntityManagerFactory(),
+                    AppConfig.getInt("recommendation.topK", 10),
+                    AppConfig.getInt("recommendation.pageSize", 5000),
+                    AppConfig.getInt("recommendation.threads", Runtime.getRuntime().availableProcessors()));
+        }
+
+        // Calcular las estadísticas del panel de administración, también en segundo plano
+        CollectionStatistics.getInstance().start(DataProvider.getEntityManagerFactory(),
+                AppConfig.getInt("statistics.pageSize", 5000));
+
+        // Detectar y atribuir los bloqueos del hilo de JavaFX
+        FxStallDetector.start();
+
         JavaFXUtil.initStage(stage);
         JavaFXUtil.setScene("/org/example/retoconjuntoad_di_2/login-view.fxml");
 
     }
+
+    /**
+     * Método de cierre de la aplicación JavaFX.
+     * <p>
+     * Se ejecuta automáticamente al terminar la aplicación. Detiene los servicios
+     * en segundo plano (como las instantáneas periódicas) y cierra la base de datos.
+     * </p>
+     */
+    @Override
+    public void stop() {
+        FxStallDetector.stop();
+        SimilarFilmsIndex.getInstance().stop();
+        CollectionStatistics.getInstance().stop();
+        DataProvider.shutdown();
+    }
 }
@@ -1,11 +1,19 @@
 package org.example.retoconjuntoad_di_2;
 
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
 import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator;
 import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
 import org.example.retoconjuntoad_di_2.model.user.User;
 import org.example.retoconjuntoad_di_2.utils.DataProvider;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.List;
 
 /**
  * Clase de utilidad para inicializar datos de ejemplo en la base de datos ObjectDB.
@@ -60,78 +68,91 @@ public class DatabaseSeeder {
      */
     public static void seedIfEmpty() {
         EntityManagerFactory emf = DataProvider.getEntityManagerFactory();
-        EntityManager em = emf.createEntityManager();
 
         try {
             // NOTA: Para evitar problemas con el mapeo de metadatos en consultas JPQL
             // con ObjectDB, no realizamos aquí una consulta previa (select count).
             // Este seeder está pensado para usarse sobre una base de datos vacía;
             // si se ejecuta varias veces, simplemente generará registros duplicados.
-            em.getTransaction().begin();
-
-            // Crear usuario administrador por defecto
-            User admin = new User();
-            admin.setNombreUsuario("admin");
-            admin.setContrasena("admin");
-            admin.setEsAdmin(true);
-            em.persist(admin);
+            BlockIdGenerator userIds = BlockIdGenerator.forEntity(emf, User.class);
+            BlockIdGenerator peliculaIds = BlockIdGenerator.forEntity(emf, Pelicula.class);
+            BlockIdGenerator copiaIds = BlockIdGenerator.forEntity(emf, Copia.class);
+            UnitOfWork.run(emf, em -> {
+                // Crear usuario administrador por defecto
+                User admin = new User();
+                admin.setNombreUsuario("admin");
+                admin.setContrasena("admin");
+                admin.setEsAdmin(true);
+                admin.setId(userIds.next());
+                em.persist(admin);
 
-            // Crear algunas películas de ejemplo
-            Pelicula p1 = new Pelicula();
-            p1.setTitulo("El Señor de los Anillos: La Comunidad del Anillo");
-            p1.setGenero("Fantasía");
-            p1.setAnio((short) 2001);
-            p1.setDirector("Peter Jackson");
-            p1.setDescripcion("Un grupo de héroes intenta destruir el Anillo Único.");
-            em.persist(p1);
+                // Crear algunas películas de ejemplo
+                Pelicula p1 = new Pelicula();
+                p1.setTitulo("El Señor de los Anillos: La Comunidad del Anillo");
+                p1.setGenero("Fantasía");
+                p1.setAnio((short) 2001);
+                p1.setDirector("Peter Jackson");
+                p1.setDescripcion("Un grupo de héroes intenta destruir el Anillo Único.");
+                p1.setId(peliculaIds.next());
+                em.persist(p1);
 
-            Pelicula p2 = new Pelicula();
-            p2.setTitulo("Matrix");
-            p2.setGenero("Ciencia ficción");
-            p2.setAnio((short) 1999);
-            p2.setDirector("Lana y Lilly Wachowski");
-            p2.setDescripcion("Un hacker descubre la verdadera naturaleza de su realidad.");
-            em.persist(p2);
+                Pelicula p2 = new Pelicula();
+                p2.setTitulo("Matrix");
+                p2.setGenero("Ciencia ficción");
+                p2.setAnio((short) 1999);
+                p2.setDirector("Lana y Lilly Wachowski");
+                p2.setDescripcion("Un hacker descubre la verdadera naturaleza de su realidad.");
+                p2.setId(peliculaIds.next());
+                em.persist(p2);
 
-            Pelicula p3 = new Pelicula();
-            p3.setTitulo("El Padrino");
-            p3.setGenero("Drama");
-            p3.setAnio((short) 1972);
-            p3.setDirector("Francis Ford Coppola");
-            p3.setDescripcion("La historia de la familia Corleone en el mundo de la mafia.");
-            em.persist(p3);
+                Pelicula p3 = new Pelicula();
+                p3.setTitulo("El Padrino");
+                p3.setGenero("Drama");
+                p3.setAnio((short) 1972);
+                p3.setDirector("Francis Ford Coppola");
+                p3.setDescripcion("La historia de la familia Corleone en el mundo de la mafia.");
+                p3.setId(peliculaIds.next());
+                em.persist(p3);
 
-            // Crear algunas copias asociadas al usuario admin
-            Copia c1 = new Copia();
-            c1.setUser(admin);
-            c1.setPelicula(p1);
-            c1.setEstado("Nueva");
-            c1.setSoporte("Blu-ray");
-            em.persist(c1);
+                // Crear algunas copias asociadas al usuario admin
+                Copia c1 = new Copia();
+                c1.setUser(admin);
+                c1.setPelicula(p1);
+                c1.setEstado(EstadoCopia.NUEVA);
+                c1.setSoporte(SoporteCopia.BLU_RAY);
+                c1.setId(copiaIds.next());
+                em.persist(c1);
 
-            Copia c2 = new Copia();
-            c2.setUser(admin);
-            c2.setPelicula(p2);
-            c2.setEstado("Buena");
-            c2.setSoporte("DVD");
-            em.persist(c2);
+                Copia c2 = new Copia();
+                c2.setUser(admin);
+                c2.setPelicula(p2);
+                c2.setEstado(EstadoCopia.BUENA);
+                c2.setSoporte(SoporteCopia.DVD);
+                c2.setId(copiaIds.next());
+                em.persist(c2);
 
-            Copia c3 = new Copia();
-            c3.setUser(admin);
-            c3.setPelicula(p3);
-            c3.setEstado("Usada");
-            c3.setSoporte("VHS");
-            em.persist(c3);
+                Copia c3 = new Copia();
+                c3.setUser(admin);
+                c3.setPelicula(p3);
+                c3.setEstado(EstadoCopia.USADA);
+                c3.setSoporte(SoporteCopia.VHS);
+                c3.setId(copiaIds.next());
+                em.persist(c3);
 
-            em.getTransaction().commit();
+                // Publicar los datos iniciales como cambios confirmados, igual que los repositorios.
+                UnitOfWork.afterCommit(() -> {
+                    EntityChanges.publish(new EntityChange(ChangeRecord.EntityType.USER, ChangeRecord.Operation.SAVE, admin));
+                    for (Pelicula p : List.of(p1, p2, p3)) {
+                        EntityChanges.publish(new EntityChange(ChangeRecord.EntityType.PELICULA, ChangeRecord.Operation.SAVE, p));
+                    }
+                    for (Copia c : List.of(c1, c2, c3)) {
+                        EntityChanges.publish(new EntityChange(ChangeRecord.EntityType.COPIA, ChangeRecord.Operation.SAVE, c));
+                    }
+                });
+            });
         } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
-            }
+            // La unidad de trabajo ya ha deshecho la transacción.
             e.printStackTrace();
-        } finally {
-            em.close();
         }
     }
 }
-
@@ -0,0 +1,199 @@
+package org.example.retoconjuntoad_di_2.cache;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChangeListener;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.metrics.HeapFootprint;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caché en memoria del catálogo basada en copia-en-escritura.
+ * <p>
+ * Mantiene una referencia a la {@link CatalogSnapshot} vigente. Las lecturas
+ * (combo de películas, carga de la tabla, búsquedas) solo leen esa referencia, sin
+ * cerrojos ni EntityManager. Las escrituras confirmadas llegan como
+ * {@link EntityChange} y sustituyen la referencia por una nueva versión, de modo que
+ * un lector ve siempre una versión completa, anterior o posterior al cambio.
+ * </p>
+ * <p>
+ * La caché se carga en segundo plano al arrancar la aplicación ({@link #start}),
+ * consultando películas y copias en paralelo. Hasta que termina, {@link #isLoaded()}
+ * devuelve {@code false} y las pantallas leen de los repositorios. Los cambios que se
+ * confirman mientras dura la carga se guardan y se aplican sobre la versión cargada
+ * antes de publicarla.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see CatalogSnapshot
+ */
+public final class CatalogCache implements EntityChangeListener {
+
+    private static final System.Logger LOG = System.getLogger(CatalogCache.class.getName());
+
+    private static final CatalogCache INSTANCE = new CatalogCache();
+
+    /**
+     * Versión vigente del catálogo, o {@code null} si aún no se ha cargado.
+     */
+    private volatile CatalogSnapshot current;
+
+    /**
+     * Cambios recibidos durante la carga, pendientes de aplicar.
+     */
+    private final List<EntityChange> pendientes = new ArrayList<>();
+
+    private boolean cargando;
+    private boolean registrada;
+
+    /**
+     * Carga en curso o terminada, o {@code null} si no se ha iniciado.
+     */
+    private volatile CompletableFuture<Void> carga;
+
+    private CatalogCache() {
+        HeapFootprint.getInstance().track("CatalogCache", () -> {
+            CatalogSnapshot snapshot = current;
+            return snapshot != null ? snapshot.entidades() : null;
+        });
+    }
+
+    /**
+     * Devuelve la instancia única de la caché.
+     *
+     * @return La caché del catálogo.
+     */
+    public static CatalogCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Indica si la caché ya contiene una versión del catálogo.
+     *
+     * @return {@code true} si se puede leer de la caché.
+     */
+    public boolean isLoaded() {
+        return current != null;
+    }
+
+    /**
+     * Devuelve la versión vigente del catálogo sin bloquear.
+     *
+     * @return Versión actual, o {@code null} si la caché no está cargada.
+     */
+    public CatalogSnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Carga la caché en segundo plano, sin bloquear al llamante (el hilo de JavaFX).
+     * Si la carga falla, se anota y la aplicación sigue leyendo de los repositorios.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @return Tarea de la carga.
+     */
+    public CompletableFuture<Void> start(EntityManagerFactory emf) {
+        carga = CompletableFuture.runAsync(() -> load(emf)).exceptionally(e -> {
+            LOG.log(System.Logger.Level.WARNING, "No se pudo cargar la caché del catálogo", e);
+            return null;
+        });
+        return carga;
+    }
+
+    /**
+     * Devuelve la carga de la caché, para esperar a que termine sin bloquear.
+     *
+     * @return Tarea de la carga; completada si no se ha iniciado.
+     */
+    public CompletableFuture<Void> carga() {
+        CompletableFuture<Void> actual = carga;
+        return actual != null ? actual : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Carga (o recarga) la caché desde la base de datos, bloqueando hasta terminar.
+     * <p>
+     * Películas y copias se consultan en paralelo, cada una con su propio
+     * EntityManager, y las copias se agrupan por usuario también en paralelo.
+     * </p>
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     */
+    public void load(EntityManagerFactory emf) {
+        synchronized (this) {
+            cargando = true;
+            pendientes.clear();
+            if (!registrada) {
+                EntityChanges.register(this);
+                registrada = true;
+            }
+        }
+
+        CatalogSnapshot cargada;
+        try {
+            CompletableFuture<List<Pelicula>> peliculas =
+                    CompletableFuture.supplyAsync(() -> new PeliculaRepository(emf).findAll());
+            CompletableFuture<List<Copia>> copias =
+                    CompletableFuture.supplyAsync(() -> new CopiaRepository(emf).findAll());
+            cargada = CatalogSnapshot.build(peliculas.join(), copias.join());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                cargando = false;
+                pendientes.clear();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            for (EntityChange change : pendientes) {
+                cargada = apply(cargada, change);
+            }
+            pendientes.clear();
+            cargando = false;
+            current = cargada;
+        }
+    }
+
+    /**
+     * Aplica una escritura confirmada publicando una nueva versión del catálogo.
+     * <p>
+     * Los escritores se serializan entre sí; los lectores nunca esperan.
+     * </p>
+     *
+     * @param change Cambio confirmado.
+     */
+    @Override
+    public synchronized void onChange(EntityChange change) {
+        if (cargando) {
+            pendientes.add(change);
+        } else if (current != null) {
+            current = apply(current, change);
+        }
+    }
+
+    private static CatalogSnapshot apply(CatalogSnapshot snapshot, EntityChange change) {
+        if (change.entity() instanceof Copia copia) {
+            return switch (change.operation()) {
+                case SAVE -> snapshot.withCopia(copia);
+                case DELETE -> snapshot.withoutCopia(copia);
+                case UPDATE -> snapshot.withCopiaActualizada(copia, change.fields());
+            };
+        } else if (change.entity() instanceof Pelicula pelicula) {
+            return switch (change.operation()) {
+                case SAVE -> snapshot.withPelicula(pelicula);
+                case DELETE -> snapshot.withoutPelicula(pelicula);
+                case UPDATE -> snapshot;
+            };
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,326 @@
+package org.example.retoconjuntoad_di_2.cache;
+
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Versión inmutable del catálogo en memoria.
+ * <p>
+ * Contiene todas las películas y, para cada usuario, la lista de sus copias.
+ * Una instancia nunca se modifica: cada escritura produce una nueva versión
+ * mediante los métodos {@code with*}/{@code without*}, que comparten con la versión
+ * anterior lo que no cambia (las listas de los demás usuarios, el catálogo de
+ * películas, etc.). Así cualquier número de hilos puede leer una versión sin
+ * cerrojos y sin ver nunca un cambio aplicado a medias.
+ * </p>
+ * <p>
+ * Las copias que recibe una escritura no se guardan tal cual: se clona cada una,
+ * enlazada con la película del catálogo, de modo que el llamante puede seguir usando
+ * su instancia sin afectar a ninguna versión. En sentido contrario, las películas y
+ * copias que devuelven {@link #getPeliculas()} y {@link #getCopias(User)} son las de la
+ * versión, compartidas con todos los lectores: no deben modificarse. Para editar una
+ * se trabaja sobre una copia propia y se guarda con su repositorio.
+ * </p>
+ * <p>
+ * Las escrituras no son de coste constante. Modificar una copia duplica la lista de su
+ * usuario y el mapa de usuarios (lineal en el número de usuarios); cambiar o quitar
+ * una película duplica el catálogo de películas y recorre las copias de todos los
+ * usuarios. Es adecuado para un catálogo de escritorio, con muchas más lecturas que
+ * escrituras, no para un flujo continuo de cambios.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see CatalogCache
+ */
+public final class CatalogSnapshot {
+
+    private final long version;
+    private final List<Pelicula> peliculas;
+    private final Map<Integer, Pelicula> peliculasPorId;
+    private final Map<Integer, List<Copia>> copiasPorUsuario;
+
+    private CatalogSnapshot(long version, List<Pelicula> peliculas, Map<Integer, Pelicula> peliculasPorId,
+                            Map<Integer, List<Copia>> copiasPorUsuario) {
+        this.version = version;
+        this.peliculas = peliculas;
+        this.peliculasPorId = peliculasPorId;
+        this.copiasPorUsuario = copiasPorUsuario;
+    }
+
+    /**
+     * Construye la primera versión del catálogo a partir de los datos cargados.
+     * <p>
+     * Las copias se agrupan por usuario en paralelo y cada copia se enlaza con la
+     * instancia de película del catálogo, para que todas las filas de una misma
+     * película compartan el mismo objeto. Las instancias cargadas pasan a ser de la
+     * versión y no se clonan: el llamante no debe conservarlas.
+     * </p>
+     *
+     * @param peliculas Todas las películas.
+     * @param copias Todas las copias.
+     * @return Versión inicial del catálogo.
+     */
+    static CatalogSnapshot build(List<Pelicula> peliculas, List<Copia> copias) {
+        Map<Integer, Pelicula> porId = peliculas.stream()
+                .collect(Collectors.toMap(Pelicula::getId, Function.identity(), (a, b) -> a, LinkedHashMap::new));
+
+        Map<Integer, List<Copia>> porUsuario = copias.parallelStream()
+                .map(copia -> enlazar(copia, porId))
+                .collect(Collectors.groupingByConcurrent(
+                        copia -> copia.getUser().getId(),
+                        Collectors.collectingAndThen(Collectors.toList(), CatalogSnapshot::ordenar)));
+
+        return new CatalogSnapshot(1, List.copyOf(porId.values()), Collections.unmodifiableMap(porId),
+                Collections.unmodifiableMap(new HashMap<>(porUsuario)));
+    }
+
+    /**
+     * Número de versión. Aumenta en uno con cada escritura aplicada.
+     *
+     * @return Versión del catálogo.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Devuelve todas las películas del catálogo.
+     *
+     * @return Lista inmutable de películas, compartidas con los demás lectores: no deben modificarse.
+     */
+    public List<Pelicula> getPeliculas() {
+        return peliculas;
+    }
+
+    /**
+     * Devuelve todas las entidades que retiene esta versión: las películas y las copias
+     * de todos los usuarios.
+     *
+     * @return Lista nueva con películas y copias.
+     */
+    List<Object> entidades() {
+        List<Object> entidades = new ArrayList<>(peliculas);
+        for (List<Copia> copias : copiasPorUsuario.values()) {
+            entidades.addAll(copias);
+        }
+        return entidades;
+    }
+
+    /**
+     * Busca una película por su ID.
+     *
+     * @param id ID de la película.
+     * @return La película, si está en el catálogo.
+     */
+    public Optional<Pelicula> findPelicula(Integer id) {
+        return Optional.ofNullable(peliculasPorId.get(id));
+    }
+
+    /**
+     * Devuelve las copias de un usuario, ordenadas por ID.
+     *
+     * @param user Usuario propietario.
+     * @return Lista inmutable de copias (vacía si no tiene ninguna), compartidas con los
+     *         demás lectores: no deben modificarse.
+     */
+    public List<Copia> getCopias(User user) {
+        return copiasPorUsuario.getOrDefault(user.getId(), List.of());
+    }
+
+    /**
+     * Devuelve una nueva versión con la copia insertada o reemplazada.
+     * <p>
+     * Se guarda un clon de la copia enlazado con la película del catálogo; la instancia
+     * recibida no se modifica.
+     * </p>
+     *
+     * @param copia Copia guardada.
+     * @return Nueva versión del catálogo.
+     */
+    CatalogSnapshot withCopia(Copia copia) {
+        Pelicula pelicula = copia.getPelicula();
+        if (pelicula != null) {
+            pelicula = peliculasPorId.getOrDefault(pelicula.getId(), pelicula);
+        }
+        return conCopia(clonar(copia, pelicula));
+    }
+
+    /**
+     * Inserta o reemplaza una copia que ya pertenece a la versión (no se clona).
+     */
+    private CatalogSnapshot conCopia(Copia copia) {
+        List<Copia> actuales = copiasPorUsuario.getOrDefault(copia.getUser().getId(), List.of());
+        List<Copia> nuevas = new ArrayList<>(actuales.size() + 1);
+        for (Copia c : actuales) {
+            if (!c.getId().equals(copia.getId())) {
+                nuevas.add(c);
+            }
+        }
+        nuevas.add(copia);
+        return withCopiasDe(copia.getUser().getId(), ordenar(nuevas));
+    }
+
+    /**
+     * Devuelve una nueva versión sin la copia indicada.
+     *
+     * @param copia Copia eliminada.
+     * @return Nueva versión del catálogo.
+     */
+    CatalogSnapshot withoutCopia(Copia copia) {
+        List<Copia> actuales = copiasPorUsuario.getOrDefault(copia.getUser().getId(), List.of());
+        List<Copia> nuevas = actuales.stream()
+                .filter(c -> !c.getId().equals(copia.getId()))
+                .toList();
+        return withCopiasDe(copia.getUser().getId(), nuevas);
+    }
+
+    /**
+     * Devuelve una nueva versión con los campos de una copia actualizados por una
+     * operación masiva.
+     * <p>
+     * La copia de la versión actual no se modifica: se sustituye por otra con los
+     * valores nuevos y la versión incrementada, igual que en la base de datos.
+     * </p>
+     *
+     * @param referencia Referencia a la copia (ID y usuario).
+     * @param fields Campos modificados.
+     * @return Nueva versión del catálogo, o esta misma si la copia no está en la caché.
+     */
+    CatalogSnapshot withCopiaActualizada(Copia referencia, Map<String, Object> fields) {
+        for (Copia actual : copiasPorUsuario.getOrDefault(referencia.getUser().getId(), List.of())) {
+            if (actual.getId().equals(referencia.getId())) {
+                Copia nueva = clonar(actual, actual.getPelicula());
+                nueva.setEstado(fields.containsKey("estado") ? EstadoCopia.fromEtiqueta((String) fields.get("estado")) : actual.getEstado());
+                nueva.setSoporte(fields.containsKey("soporte") ? SoporteCopia.fromEtiqueta((String) fields.get("soporte")) : actual.getSoporte());
+                nueva.setVersion(actual.getVersion() + 1);
+                nueva.clearDirtyFields();
+                return conCopia(nueva);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Devuelve una nueva versión con la película insertada o reemplazada.
+     * <p>
+     * Las copias de la película pasan a apuntar a la nueva instancia, para que la
+     * tabla muestre el título, el género y el director actuales. Las copias de la
+     * versión anterior no se modifican: se sustituyen por otras iguales.
+     * </p>
+     *
+     * @param pelicula Película guardada.
+     * @return Nueva versión del catálogo.
+     */
+    CatalogSnapshot withPelicula(Pelicula pelicula) {
+        Map<Integer, Pelicula> porId = new LinkedHashMap<>(peliculasPorId);
+        porId.put(pelicula.getId(), pelicula);
+        return new CatalogSnapshot(version + 1, List.copyOf(porId.values()), Collections.unmodifiableMap(porId),
+                withCopiasDePelicula(pelicula.getId(), copia -> clonar(copia, pelicula)));
+    }
+
+    /**
+     * Devuelve una nueva versión sin la película indicada ni sus copias, que la base de
+     * datos borra en cascada sin publicar un evento por cada una.
+     *
+     * @param pelicula Película eliminada.
+     * @return Nueva versión del catálogo.
+     */
+    CatalogSnapshot withoutPelicula(Pelicula pelicula) {
+        Map<Integer, Pelicula> porId = new LinkedHashMap<>(peliculasPorId);
+        porId.remove(pelicula.getId());
+        return new CatalogSnapshot(version + 1, List.copyOf(porId.values()), Collections.unmodifiableMap(porId),
+                withCopiasDePelicula(pelicula.getId(), copia -> null));
+    }
+
+    /**
+     * Aplica un cambio a las copias de una película en las listas de todos los usuarios,
+     * compartiendo las listas que no la contienen.
+     *
+     * @param peliculaId ID de la película.
+     * @param cambio Copia que sustituye a cada una, o {@code null} para quitarla.
+     * @return Copias por usuario resultantes.
+     */
+    private Map<Integer, List<Copia>> withCopiasDePelicula(Integer peliculaId, Function<Copia, Copia> cambio) {
+        Map<Integer, List<Copia>> porUsuario = null;
+        for (Map.Entry<Integer, List<Copia>> entry : copiasPorUsuario.entrySet()) {
+            if (entry.getValue().stream().noneMatch(c -> esDe(c, peliculaId))) {
+                continue;
+            }
+            List<Copia> nuevas = new ArrayList<>(entry.getValue().size());
+            for (Copia c : entry.getValue()) {
+                Copia nueva = esDe(c, peliculaId) ? cambio.apply(c) : c;
+                if (nueva != null) {
+                    nuevas.add(nueva);
+                }
+            }
+            if (porUsuario == null) {
+                porUsuario = new HashMap<>(copiasPorUsuario);
+            }
+            porUsuario.put(entry.getKey(), List.copyOf(nuevas));
+        }
+        return porUsuario == null ? copiasPorUsuario : Collections.unmodifiableMap(porUsuario);
+    }
+
+    private static boolean esDe(Copia copia, Integer peliculaId) {
+        return copia.getPelicula() != null && peliculaId.equals(copia.getPelicula().getId());
+    }
+
+    /**
+     * Crea una copia igual a otra (misma fila, sin campos modificados) que apunta a la
+     * película indicada.
+     */
+    private static Copia clonar(Copia actual, Pelicula pelicula) {
+        Copia nueva = new Copia();
+        nueva.setId(actual.getId());
+        nueva.setPelicula(pelicula);
+        nueva.setUser(actual.getUser());
+        nueva.setEstado(actual.getEstado());
+        nueva.setSoporte(actual.getSoporte());
+        nueva.setVersion(actual.getVersion());
+        nueva.tocar(actual.getModificadaEn());
+        nueva.clearDirtyFields();
+        return nueva;
+    }
+
+    /**
+     * Sustituye la lista de copias de un usuario compartiendo las del resto.
+     */
+    private CatalogSnapshot withCopiasDe(Integer userId, List<Copia> copias) {
+        Map<Integer, List<Copia>> porUsuario = new HashMap<>(copiasPorUsuario);
+        porUsuario.put(userId, copias);
+        return new CatalogSnapshot(version + 1, peliculas, peliculasPorId, Collections.unmodifiableMap(porUsuario));
+    }
+
+    /**
+     * Hace que la copia apunte a la instancia de película del catálogo, si existe, sin
+     * anotar la película como modificada.
+     */
+    private static Copia enlazar(Copia copia, Map<Integer, Pelicula> peliculasPorId) {
+        if (copia.getPelicula() != null) {
+            Pelicula compartida = peliculasPorId.get(copia.getPelicula().getId());
+            if (compartida != null && compartida != copia.getPelicula()) {
+                copia.compartir(compartida, copia.getUser());
+            }
+        }
+        return copia;
+    }
+
+    private static List<Copia> ordenar(List<Copia> copias) {
+        return copias.stream().sorted(Comparator.comparing(Copia::getId)).toList();
+    }
+}
@@ -1,19 +1,31 @@
 package org.example.retoconjuntoad_di_2.controllers;
 
+import jakarta.persistence.EntityManagerFactory;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
+import org.example.retoconjuntoad_di_2.cache.CatalogCache;
 import org.example.retoconjuntoad_di_2.model.copia.Copia;
 import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
 import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
 import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.recommendation.SimilarFilmsIndex;
+import org.example.retoconjuntoad_di_2.utils.ConflictPolicy;
 import org.example.retoconjuntoad_di_2.utils.DataProvider;
 import org.example.retoconjuntoad_di_2.utils.JavaFXUtil;
+import org.example.retoconjuntoad_di_2.utils.StaleEntityException;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+import org.example.retoconjuntoad_di_2.utils.WriteBehindQueue;
 
 import java.net.URL;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.stream.Collectors;
 
 /**
  * Controlador para gestionar los detalles de una copia.
@@ -69,19 +81,30 @@ public class CopyDetailController implements Initializable {
     @FXML
     private Label lblAnio;
 
+    /**
+     * Etiqueta para mostrar las películas parecidas a la seleccionada.
+     */
+    @FXML
+    private Label lblSimilares;
+
+    /**
+     * Número de películas parecidas que se muestran.
+     */
+    private static final int MAX_SIMILARES = 5;
+
     /**
      * ComboBox para seleccionar el estado de la copia.
-     * Opciones disponibles: "Nueva", "Buena", "Usada", "Deteriorada".
+     * Opciones disponibles: las de {@link EstadoCopia}.
      */
     @FXML
-    private ComboBox<String> comboEstado;
+    private ComboBox<EstadoCopia> comboEstado;
 
     /**
      * ComboBox para seleccionar el soporte físico de la copia.
-     * Opciones disponibles: "DVD", "Blu-ray", "VHS".
+     * Opciones disponibles: las de {@link SoporteCopia}.
      */
     @FXML
-    private ComboBox<String> comboSoporte;
+    private ComboBox<SoporteCopia> comboSoporte;
 
     /**
      * Objeto Copia que se está gestionando en esta ventana.
@@ -121,11 +144,14 @@ public class CopyDetailController implements Initializable {
         peliculaRepository = new PeliculaRepository(DataProvider.getEntityManagerFactory());
 
         // Configurar opciones de estado y soporte.
-        comboEstado.getItems().addAll("Nueva", "Buena", "Usada", "Deteriorada");
-        comboSoporte.getItems().addAll("DVD", "Blu-ray", "VHS");
+        comboEstado.getItems().addAll(EstadoCopia.values());
+        comboSoporte.getItems().addAll(SoporteCopia.values());
 
-        // Cargar todas las películas en el ComboBox.
-        comboPelicula.getItems().setAll(peliculaRepository.findAll());
+        // Cargar todas las películas en el ComboBox (desde la caché del catálogo si está disponible).
+        CatalogCache cache = CatalogCache.getInstance();
+        comboPelicula.getItems().setAll(cache.isLoaded()
+                ? cache.snapshot().getPeliculas()
+                : peliculaRepository.findAll());
 
         // Actualizar los campos de información al cambiar la película seleccionada.
         comboPelicula.getSelectionModel().selectedItemProperty().addListener(
@@ -196,7 +222,8 @@ public class CopyDetailController implements Initializable {
      * <p>
      * Este método se ejecuta automáticamente cuando el usuario selecciona una
      * película diferente en el ComboBox. Actualiza las etiquetas de título,
-     * género y año con los datos de la película seleccionada.
+     * género y año con los datos de la película seleccionada, y la de películas
+     * parecidas con las primeras de {@link SimilarFilmsIndex}.
      * </p>
      *
      * @param pelicula Película seleccionada. Puede ser {@code null} si no hay selección.
@@ -206,12 +233,35 @@ public class CopyDetailController implements Initializable {
             lblTitulo.setText("-");
             lblGenero.setText("-");
             lblAnio.setText("-");
+            lblSimilares.setText("-");
             return;
         }
 
         lblTitulo.setText(pelicula.getTitulo() != null ? pelicula.getTitulo() : "-");
         lblGenero.setText(pelicula.getGenero() != null ? pelicula.getGenero() : "-");
         lblAnio.setText(pelicula.getAnio() != null ? pelicula.getAnio().toString() : "-");
+        lblSimilares.setText(similares(pelicula));
+    }
+
+    /**
+     * Devuelve los títulos de las películas más parecidas, separados por comas.
+     *
+     * @param pelicula Película seleccionada.
+     * @return Títulos, o un guion si no hay datos.
+     */
+    private static String similares(Pelicula pelicula) {
+        SimilarFilmsIndex indice = SimilarFilmsIndex.getInstance();
+        CatalogCache cache = CatalogCache.getInstance();
+        if (!indice.isLoaded() || !cache.isLoaded()) {
+            return "-";
+        }
+        String titulos = indice.similares(pelicula.getId()).stream()
+                .limit(MAX_SIMILARES)
+                .map(similar -> cache.snapshot().findPelicula(similar.peliculaId()).orElse(null))
+                .filter(Objects::nonNull)
+                .map(Pelicula::getTitulo)
+                .collect(Collectors.joining(", "));
+        return titulos.isEmpty() ? "-" : titulos;
     }
 
     /**
@@ -221,8 +271,9 @@ public class CopyDetailController implements Initializable {
      * Realiza las siguientes acciones:
      * <ol>
      *   <li>Valida que todos los campos requeridos estén completos (película, estado, soporte)</li>
-     *   <li>Actualiza el objeto Copia con los valores de los campos</li>
-     *   <li>Guarda la copia en la base de datos</li>
+     *   <li>Prepara una copia de trabajo con los valores de los campos</li>
+     *   <li>Comprueba que la película sigue en el catálogo y guarda la copia, en una sola
+     *       unidad de trabajo</li>
      *   <li>Muestra un mensaje de confirmación</li>
      *   <li>Cierra la ventana</li>
      * </ol>
@@ -237,8 +288,8 @@ public class CopyDetailController implements Initializable {
         }
 
         Pelicula peliculaSeleccionada = comboPelicula.getSelectionModel().getSelectedItem();
-        String estado = comboEstado.getSelectionModel().getSelectedItem();
-        String soporte = comboSoporte.getSelectionModel().getSelectedItem();
+        EstadoCopia estado = comboEstado.getSelectionModel().getSelectedItem();
+        SoporteCopia soporte = comboSoporte.getSelectionModel().getSelectedItem();
 
         // Validar que todos los campos requeridos estén completos.
         if (peliculaSeleccionada == null || estado == null || soporte == null) {
@@ -251,13 +302,57 @@ public class CopyDetailController implements Initializable {
             return;
         }
 
-        // Actualizar los datos de la copia.
-        copia.setPelicula(peliculaSeleccionada);
-        copia.setEstado(estado);
-        copia.setSoporte(soporte);
+        // Preparar los cambios sobre una copia de trabajo: la instancia original puede
+        // estar compartida por la caché del catálogo y no debe modificarse a medias.
+        Copia cambios = new Copia();
+        cambios.setId(copia.getId());
+        cambios.setUser(copia.getUser());
+        cambios.setPelicula(peliculaSeleccionada);
+        cambios.setEstado(estado);
+        cambios.setSoporte(soporte);
+        // La versión leída permite detectar si otro usuario la ha modificado entretanto.
+        cambios.setVersion(copia.getVersion());
+
+        // Con escritura diferida, la ventana se cierra sin esperar al commit; los errores
+        // se notifican cuando el escritor confirma (o no) el lote.
+        WriteBehindQueue<Copia> writeBehind = DataProvider.getCopiaWriteBehind();
+        if (writeBehind != null) {
+            writeBehind.submit(cambios).whenComplete((guardada, error) -> {
+                if (error != null) {
+                    Platform.runLater(() -> mostrarErrorDiferido(error));
+                }
+            });
+            cerrarVentana();
+            return;
+        }
 
-        // Guardar la copia en el repositorio.
-        copiaRepository.save(copia);
+        // Comprobar la película y guardar la copia en una única transacción, sobre la base de
+        // datos de las copias del usuario; ante un conflicto se aplica la política configurada.
+        EntityManagerFactory base = copiaRepository.baseDe(cambios.getUser());
+        try {
+            copia = ConflictPolicy.<Copia>fromConfig().save(cambios,
+                    pendiente -> UnitOfWork.execute(base, em -> {
+                        Integer peliculaId = pendiente.getPelicula().getId();
+                        // La película puede haberse borrado mientras la ventana estaba abierta.
+                        if (peliculaRepository.findById(peliculaId.longValue()).isEmpty()) {
+                            throw new StaleEntityException(Pelicula.class, peliculaId, null);
+                        }
+                        return copiaRepository.save(pendiente);
+                    }),
+                    pendiente -> copiaRepository.findById(pendiente.getId().longValue()));
+        } catch (StaleEntityException e) {
+            if (e.getEntityType() == Pelicula.class) {
+                JavaFXUtil.showModal(
+                        Alert.AlertType.WARNING,
+                        "Guardar copia",
+                        "La película ya no existe",
+                        "Otro usuario ha eliminado la película seleccionada. Elige otra película."
+                );
+            } else {
+                mostrarConflicto("Guardar copia");
+            }
+            return;
+        }
 
         JavaFXUtil.showModal(
                 Alert.AlertType.INFORMATION,
@@ -291,7 +386,12 @@ public class CopyDetailController implements Initializable {
         }
 
         // Eliminar la copia del repositorio.
-        copiaRepository.delete(copia);
+        try {
+            copiaRepository.delete(copia);
+        } catch (StaleEntityException e) {
+            mostrarConflicto("Eliminar copia");
+            return;
+        }
 
         JavaFXUtil.showModal(
                 Alert.AlertType.INFORMATION,
@@ -303,6 +403,39 @@ public class CopyDetailController implements Initializable {
         cerrarVentana();
     }
 
+    /**
+     * Avisa de que la copia ha cambiado en la base de datos desde que se abrió la ventana
+     * y cierra la ventana para que el usuario vuelva a abrirla con los datos actuales.
+     *
+     * @param titulo Título del diálogo.
+     */
+    private void mostrarConflicto(String titulo) {
+        JavaFXUtil.showModal(
+                Alert.AlertType.WARNING,
+                titulo,
+                "La copia ha sido modificada por otro usuario",
+                "Vuelve a abrir la copia para ver los datos actuales antes de repetir la operación."
+        );
+        cerrarVentana();
+    }
+
+    /**
+     * Informa de un guardado diferido que no se ha podido escribir.
+     *
+     * @param error Causa del fallo.
+     */
+    private static void mostrarErrorDiferido(Throwable error) {
+        boolean conflicto = error instanceof StaleEntityException;
+        JavaFXUtil.showModal(
+                conflicto ? Alert.AlertType.WARNING : Alert.AlertType.ERROR,
+                "Guardar copia",
+                conflicto ? "La copia ha sido modificada por otro usuario" : "No se pudo guardar la copia",
+                conflicto
+                        ? "El cambio no se ha aplicado. Vuelve a abrir la copia para ver los datos actuales."
+                        : "El cambio no se ha aplicado: " + error.getMessage()
+        );
+    }
+
     /**
      * Cancela la operación y cierra la ventana sin guardar cambios.
      * <p>
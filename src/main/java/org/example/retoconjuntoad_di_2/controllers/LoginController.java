@@ -1,5 +1,6 @@
 package org.example.retoconjuntoad_di_2.controllers;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
@@ -134,13 +135,14 @@ public class LoginController implements Initializable {
      * Maneja el evento de salir de la aplicación.
      * <p>
      * Este método se ejecuta cuando el usuario hace clic en el botón "Salir".
-     * Finaliza la ejecución del programa Java de forma inmediata.
+     * Cierra la aplicación JavaFX, lo que ejecuta {@code App.stop()} para escribir
+     * los guardados pendientes y cerrar la base de datos antes de terminar.
      * </p>
      *
      * @param actionEvent Evento de acción generado al presionar el botón de salir.
      */
     @javafx.fxml.FXML
     public void Salir(ActionEvent actionEvent) {
-        System.exit(0);
+        Platform.exit();
     }
 }
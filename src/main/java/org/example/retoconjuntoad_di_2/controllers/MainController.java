@@ -1,5 +1,6 @@
 package org.example.retoconjuntoad_di_2.controllers;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -13,16 +14,26 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import org.example.retoconjuntoad_di_2.cache.CatalogCache;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChangeListener;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.metrics.HeapFootprint;
 import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaArchive;
 import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
 import org.example.retoconjuntoad_di_2.model.user.User;
 import org.example.retoconjuntoad_di_2.session.SimpleSessionService;
 import org.example.retoconjuntoad_di_2.utils.DataProvider;
 import org.example.retoconjuntoad_di_2.utils.JavaFXUtil;
+import org.example.retoconjuntoad_di_2.utils.PartialBulkChangeException;
+import org.example.retoconjuntoad_di_2.utils.StaleEntityException;
 
 import java.net.URL;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Controlador principal de la aplicación.
@@ -35,8 +46,10 @@ import java.util.ResourceBundle;
  *   <li>Buscar copias por título de película</li>
  *   <li>Añadir nuevas copias</li>
  *   <li>Ver detalles de una copia</li>
- *   <li>Eliminar copias</li>
+ *   <li>Eliminar copias y cambiar su estado, de una en una o en bloque</li>
+ *   <li>Mostrar también las copias archivadas ({@link CopiaArchive}), que se restauran al editarlas</li>
  *   <li>Añadir nuevas películas (solo para administradores)</li>
+ *   <li>Consultar las estadísticas de la colección (solo para administradores)</li>
  *   <li>Cerrar sesión</li>
  * </ul>
  * </p>
@@ -56,6 +69,8 @@ public class MainController implements Initializable {
     public Button btnBorrar;
     @FXML
     public Button btnDetalle;
+    @FXML
+    public Button btnCambiarEstado;
 
     @FXML
     private Button btnLogout;
@@ -93,6 +108,9 @@ public class MainController implements Initializable {
     @FXML
     private Button btnAddPelicula;
 
+    @FXML
+    private Button btnEstadisticas;
+
     /**
      * Campo de texto para realizar búsquedas por título de película.
      * El filtrado se aplica en tiempo real mientras el usuario escribe.
@@ -100,6 +118,13 @@ public class MainController implements Initializable {
     @FXML
     private TextField txtBuscar;
 
+    /**
+     * Casilla para incluir en la tabla las copias archivadas del usuario.
+     * Solo se muestra si la base de datos tiene archivo de copias frías.
+     */
+    @FXML
+    private CheckBox chkArchivadas;
+
     /**
      * Servicio de sesión para gestionar el usuario actualmente logueado.
      */
@@ -122,6 +147,22 @@ public class MainController implements Initializable {
      */
     private FilteredList<Copia> copiasFiltradas;
 
+    /**
+     * Oyente que recarga la tabla cuando se confirman cambios en copias hechos fuera
+     * de esta ventana (por ejemplo, guardados diferidos que se escriben más tarde).
+     */
+    private EntityChangeListener recargaCopias;
+
+    /**
+     * Evita encolar varias recargas seguidas cuando llega un lote de cambios.
+     */
+    private final AtomicBoolean recargaPendiente = new AtomicBoolean();
+
+    /**
+     * Nombre de la lista de la tabla en la contabilidad de memoria ({@link HeapFootprint}).
+     */
+    private static final String FOOTPRINT_HOLDER = "MainController.copiasUsuario";
+
     /**
      * Inicializa el controlador y configura la interfaz de usuario.
      * <p>
@@ -162,17 +203,39 @@ public class MainController implements Initializable {
         if (!user.isEsAdmin()) {
             btnAddPelicula.setVisible(false);
             btnAddPelicula.setManaged(false);
+            btnEstadisticas.setVisible(false);
+            btnEstadisticas.setManaged(false);
         }
 
         configurarTabla();
+        tabla.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
         // Configurar lista filtrada y búsqueda
         copiasFiltradas = new FilteredList<>(copiasUsuario, copia -> true);
         tabla.setItems(copiasFiltradas);
+        HeapFootprint.getInstance().track(FOOTPRINT_HOLDER, copiasUsuario);
 
         configurarBusqueda();
 
+        if (CopiaArchive.of(DataProvider.getEntityManagerFactory()) == null) {
+            chkArchivadas.setVisible(false);
+            chkArchivadas.setManaged(false);
+        }
+        chkArchivadas.selectedProperty().addListener((obs, antes, ahora) -> cargarCopiasUsuario(user));
+
         cargarCopiasUsuario(user);
+
+        recargaCopias = change -> {
+            if (change.entityType() == ChangeRecord.EntityType.COPIA && recargaPendiente.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    recargaPendiente.set(false);
+                    if (simpleSessionService.isLoggedIn()) {
+                        cargarCopiasUsuario(simpleSessionService.getActive());
+                    }
+                });
+            }
+        };
+        EntityChanges.register(recargaCopias);
     }
 
     /**
@@ -218,16 +281,17 @@ public class MainController implements Initializable {
 
         cEstado.setCellValueFactory(cellData ->
                 new SimpleStringProperty(
-                        cellData.getValue().getEstado() != null
-                                ? cellData.getValue().getEstado()
-                                : ""
+                        (cellData.getValue().getEstado() != null
+                                ? cellData.getValue().getEstado().getEtiqueta()
+                                : "")
+                                + (cellData.getValue().isArchivada() ? " (archivada)" : "")
                 )
         );
 
         cSoporte.setCellValueFactory(cellData ->
                 new SimpleStringProperty(
                         cellData.getValue().getSoporte() != null
-                                ? cellData.getValue().getSoporte()
+                                ? cellData.getValue().getSoporte().getEtiqueta()
                                 : ""
                 )
         );
@@ -265,15 +329,17 @@ public class MainController implements Initializable {
             });
 
             // Actualizar contador con las filas visibles
-            lblTotalCopias.setText("Total de copias: " + copiasFiltradas.size());
+            actualizarTotal();
         });
     }
 
     /**
      * Carga las copias del usuario especificado desde la base de datos.
      * <p>
-     * Este método consulta el repositorio para obtener todas las copias asociadas
-     * al usuario y las añade a la lista observable. Después de cargar, actualiza
+     * Este método obtiene todas las copias asociadas al usuario desde la caché del
+     * catálogo (o desde el repositorio si la caché no está cargada) y las añade a la
+     * lista observable. Si está marcada la casilla de archivadas, añade las copias del
+     * archivo de copias frías, que solo se consultan entonces. Después de cargar, actualiza
      * el contador de copias visibles (teniendo en cuenta el filtro activo).
      * </p>
      *
@@ -281,31 +347,69 @@ public class MainController implements Initializable {
      */
     private void cargarCopiasUsuario(User user) {
         copiasUsuario.clear();
-        List<Copia> copias = copiaRepository.findByUser(user);
+        CatalogCache cache = CatalogCache.getInstance();
+        List<Copia> copias = cache.isLoaded()
+                ? cache.snapshot().getCopias(user)
+                : copiaRepository.findByUser(user);
         copiasUsuario.addAll(copias);
+        CopiaArchive archivo = CopiaArchive.of(DataProvider.getEntityManagerFactory());
+        if (chkArchivadas.isSelected() && archivo != null) {
+            copiasUsuario.addAll(archivo.findByUser(user));
+        }
+        HeapFootprint.getInstance().checkBudget(FOOTPRINT_HOLDER, copiasUsuario);
 
         // Al recargar, se aplica el filtro actual automáticamente
+        actualizarTotal();
+    }
+
+    /**
+     * Actualiza el contador de copias visibles y su desglose por estado.
+     * <p>
+     * El desglose se muestra como tooltip del contador y se calcula con un array
+     * indexado por el ordinal de {@link EstadoCopia}.
+     * </p>
+     */
+    private void actualizarTotal() {
         lblTotalCopias.setText("Total de copias: " + copiasFiltradas.size());
+
+        EstadoCopia[] estados = EstadoCopia.values();
+        int[] porEstado = new int[estados.length];
+        for (Copia copia : copiasFiltradas) {
+            if (copia.getEstado() != null) {
+                porEstado[copia.getEstado().ordinal()]++;
+            }
+        }
+        StringBuilder desglose = new StringBuilder();
+        for (EstadoCopia estado : estados) {
+            if (porEstado[estado.ordinal()] > 0) {
+                if (!desglose.isEmpty()) {
+                    desglose.append('\n');
+                }
+                desglose.append(estado.getEtiqueta()).append(": ").append(porEstado[estado.ordinal()]);
+            }
+        }
+        lblTotalCopias.setTooltip(desglose.isEmpty() ? null : new Tooltip(desglose.toString()));
     }
 
     /**
-     * Maneja el evento de borrado de una copia.
+     * Maneja el evento de borrado de las copias seleccionadas.
      * <p>
      * Este método se ejecuta cuando el usuario hace clic en el botón "Borrar".
-     * Verifica que haya una copia seleccionada en la tabla y muestra un diálogo
-     * de confirmación antes de proceder con la eliminación.
+     * Verifica que haya al menos una copia seleccionada en la tabla y muestra un
+     * diálogo de confirmación antes de proceder con la eliminación.
      * </p>
      * <p>
-     * Si el usuario confirma, elimina la copia de la base de datos y recarga
-     * la lista de copias del usuario.
+     * Una sola copia se elimina con comprobación de versión; varias copias se
+     * eliminan con una única sentencia masiva ({@link CopiaRepository#deleteByIds}).
+     * Después se recarga la lista de copias del usuario.
      * </p>
      *
      * @param actionEvent Evento de acción generado al presionar el botón de borrar.
      */
     @FXML
     public void borrar(ActionEvent actionEvent) {
-        Copia seleccionada = tabla.getSelectionModel().getSelectedItem();
-        if (seleccionada == null) {
+        List<Copia> seleccionadas = List.copyOf(tabla.getSelectionModel().getSelectedItems());
+        if (seleccionadas.isEmpty()) {
             JavaFXUtil.showModal(
                     Alert.AlertType.INFORMATION,
                     "Borrar copia",
@@ -317,17 +421,96 @@ public class MainController implements Initializable {
 
         Alert confirmacion = new Alert(Alert.AlertType.CONFIRMATION);
         confirmacion.setTitle("Confirmar borrado");
-        confirmacion.setHeaderText("¿Seguro que quieres borrar esta copia?");
+        confirmacion.setHeaderText(seleccionadas.size() == 1
+                ? "¿Seguro que quieres borrar esta copia?"
+                : "¿Seguro que quieres borrar las " + seleccionadas.size() + " copias seleccionadas?");
         confirmacion.setContentText("Esta acción no se puede deshacer.");
 
         confirmacion.showAndWait()
                 .filter(boton -> boton == ButtonType.OK)
                 .ifPresent(botonOk -> {
-                    copiaRepository.delete(seleccionada);
+                    try {
+                        if (seleccionadas.size() == 1) {
+                            copiaRepository.delete(seleccionadas.get(0));
+                        } else {
+                            copiaRepository.deleteByIds(seleccionadas);
+                        }
+                    } catch (StaleEntityException e) {
+                        JavaFXUtil.showModal(
+                                Alert.AlertType.WARNING,
+                                "Borrar copia",
+                                "Alguna copia ha sido modificada por otro usuario",
+                                "No se ha borrado ninguna copia. Se ha recargado la lista; revísala antes de borrar."
+                        );
+                    } catch (PartialBulkChangeException e) {
+                        // Con shards, cada base de datos confirma por separado y no se deshace lo ya borrado.
+                        JavaFXUtil.showModal(
+                                Alert.AlertType.WARNING,
+                                "Borrar copia",
+                                "El borrado se ha completado solo en parte",
+                                "Se han borrado " + e.getApplied() + " de " + seleccionadas.size()
+                                        + " copias; las demás no se han podido borrar. Se ha recargado la lista."
+                        );
+                    }
                     cargarCopiasUsuario(simpleSessionService.getActive());
                 });
     }
 
+    /**
+     * Cambia el estado de todas las copias seleccionadas.
+     * <p>
+     * Pide el nuevo estado al usuario y lo aplica con una única sentencia masiva
+     * ({@link CopiaRepository#updateEstado}), sin cargar ni guardar cada copia. Las
+     * copias archivadas seleccionadas se restauran antes. Si alguna copia ha cambiado
+     * desde que se cargó la tabla, no se modifica ninguna y se avisa al usuario; con
+     * shards, las de los shards ya confirmados se quedan cambiadas y se informa de cuántas.
+     * </p>
+     *
+     * @param actionEvent Evento de acción generado al presionar el botón de cambiar estado.
+     */
+    @FXML
+    public void cambiarEstado(ActionEvent actionEvent) {
+        List<Copia> seleccionadas = List.copyOf(tabla.getSelectionModel().getSelectedItems());
+        if (seleccionadas.isEmpty()) {
+            JavaFXUtil.showModal(
+                    Alert.AlertType.INFORMATION,
+                    "Cambiar estado",
+                    "Ninguna copia seleccionada",
+                    "Selecciona una o varias copias en la tabla."
+            );
+            return;
+        }
+
+        ChoiceDialog<EstadoCopia> dialogo = new ChoiceDialog<>(
+                seleccionadas.get(0).getEstado(), EstadoCopia.values());
+        dialogo.setTitle("Cambiar estado");
+        dialogo.setHeaderText("Nuevo estado para " + seleccionadas.size() + " copia(s)");
+        dialogo.setContentText("Estado:");
+
+        dialogo.showAndWait().ifPresent(estado -> {
+            try {
+                copiaRepository.updateEstado(seleccionadas, estado);
+            } catch (StaleEntityException e) {
+                JavaFXUtil.showModal(
+                        Alert.AlertType.WARNING,
+                        "Cambiar estado",
+                        "Alguna copia ha sido modificada por otro usuario",
+                        "No se ha cambiado ninguna copia. Se ha recargado la lista; revísala y vuelve a intentarlo."
+                );
+            } catch (PartialBulkChangeException e) {
+                // Con shards, cada base de datos confirma por separado y no se deshace lo ya cambiado.
+                JavaFXUtil.showModal(
+                        Alert.AlertType.WARNING,
+                        "Cambiar estado",
+                        "El cambio se ha aplicado solo en parte",
+                        "Se ha cambiado el estado de " + e.getApplied() + " de " + seleccionadas.size()
+                                + " copias; las demás no se han podido cambiar. Se ha recargado la lista."
+                );
+            }
+            cargarCopiasUsuario(simpleSessionService.getActive());
+        });
+    }
+
     /**
      * Maneja el evento de añadir una nueva copia.
      * <p>
@@ -363,7 +546,7 @@ public class MainController implements Initializable {
             FXMLLoader loader = new FXMLLoader(
                     JavaFXUtil.class.getResource("/org/example/retoconjuntoad_di_2/copy-detail-view.fxml")
             );
-            Parent root = loader.load();
+            Parent root = JavaFXUtil.load(loader);
 
             CopyDetailController controller = loader.getController();
             controller.setCopia(nueva);
@@ -419,7 +602,7 @@ public class MainController implements Initializable {
             FXMLLoader loader = new FXMLLoader(
                     JavaFXUtil.class.getResource("/org/example/retoconjuntoad_di_2/copy-detail-view.fxml")
             );
-            Parent root = loader.load();
+            Parent root = JavaFXUtil.load(loader);
 
             CopyDetailController controller = loader.getController();
             controller.setCopia(seleccionada);
@@ -450,7 +633,7 @@ public class MainController implements Initializable {
             FXMLLoader loader = new FXMLLoader(
                     JavaFXUtil.class.getResource("/org/example/retoconjuntoad_di_2/pelicula-detail-view.fxml")
             );
-            Parent root = loader.load();
+            Parent root = JavaFXUtil.load(loader);
 
             Stage stage = new Stage();
             stage.initOwner(JavaFXUtil.getStage());
@@ -470,6 +653,43 @@ public class MainController implements Initializable {
         }
     }
 
+    /**
+     * Abre el panel de estadísticas de la colección.
+     * <p>
+     * El panel lee los agregados en memoria de todos los usuarios y se actualiza solo
+     * mientras está abierto; al cerrarlo deja de recibir cambios.
+     * </p>
+     *
+     * @param actionEvent Evento de acción generado al presionar el botón de estadísticas.
+     */
+    @FXML
+    public void verEstadisticas(ActionEvent actionEvent) {
+        try {
+            FXMLLoader loader = new FXMLLoader(
+                    JavaFXUtil.class.getResource("/org/example/retoconjuntoad_di_2/statistics-view.fxml")
+            );
+            Parent root = JavaFXUtil.load(loader);
+            StatisticsController controller = loader.getController();
+
+            Stage stage = new Stage();
+            stage.initOwner(JavaFXUtil.getStage());
+            stage.initModality(Modality.WINDOW_MODAL);
+            stage.setTitle("Estadísticas");
+            stage.setScene(new Scene(root));
+            stage.setOnHidden(event -> controller.detener());
+            stage.showAndWait();
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            JavaFXUtil.showModal(
+                    Alert.AlertType.ERROR,
+                    "Error",
+                    "No se pudo abrir la ventana de estadísticas",
+                    e.getMessage()
+            );
+        }
+    }
+
     /**
      * Maneja el evento de cierre de sesión.
      * <p>
@@ -489,6 +709,8 @@ public class MainController implements Initializable {
                 "Has cerrado la sesión correctamente."
         );
 
+        EntityChanges.unregister(recargaCopias);
+        HeapFootprint.getInstance().untrack(FOOTPRINT_HOLDER);
         simpleSessionService.logout();
         JavaFXUtil.setScene("/org/example/retoconjuntoad_di_2/login-view.fxml");
     }
@@ -0,0 +1,181 @@
+package org.example.retoconjuntoad_di_2.controllers;
+
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.Stage;
+import org.example.retoconjuntoad_di_2.journal.EntityChangeListener;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.statistics.CollectionStatistics;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Controlador del panel de estadísticas de la colección (solo para administradores).
+ * <p>
+ * Muestra las copias de todos los usuarios por género, década, soporte y estado, tal
+ * como las mantiene {@link CollectionStatistics}, sin consultar la base de datos. El
+ * panel se actualiza solo cuando se confirma una escritura.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public class StatisticsController implements Initializable {
+
+    /**
+     * Botón para cerrar la ventana.
+     */
+    @FXML
+    public Button btnCerrar;
+
+    /**
+     * Etiqueta con el total de copias y de películas con copias.
+     */
+    @FXML
+    private Label lblTotales;
+
+    /**
+     * Tabla de copias por género.
+     */
+    @FXML
+    private TableView<Map.Entry<String, Long>> tablaGenero;
+
+    /**
+     * Tabla de copias por década.
+     */
+    @FXML
+    private TableView<Map.Entry<String, Long>> tablaDecada;
+
+    /**
+     * Tabla de copias por soporte.
+     */
+    @FXML
+    private TableView<Map.Entry<String, Long>> tablaSoporte;
+
+    /**
+     * Tabla de copias por estado.
+     */
+    @FXML
+    private TableView<Map.Entry<String, Long>> tablaEstado;
+
+    /**
+     * Total de copias de la última versión mostrada, para calcular los porcentajes.
+     */
+    private long total;
+
+    /**
+     * Receptor que actualiza el panel tras cada escritura confirmada.
+     */
+    private EntityChangeListener recarga;
+
+    /**
+     * Indica si ya hay una actualización pendiente en el hilo de JavaFX, para agrupar
+     * las escrituras seguidas en una sola.
+     */
+    private final AtomicBoolean recargaPendiente = new AtomicBoolean();
+
+    /**
+     * Inicializa el controlador, configura las tablas y muestra las estadísticas.
+     * <p>
+     * Si aún se están calculando, se muestran en cuanto termine la carga.
+     * </p>
+     *
+     * @param url URL de inicialización (no utilizado).
+     * @param resourceBundle Recursos de inicialización (no utilizado).
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle resourceBundle) {
+        configurarTabla(tablaGenero, "Género");
+        configurarTabla(tablaDecada, "Década");
+        configurarTabla(tablaSoporte, "Soporte");
+        configurarTabla(tablaEstado, "Estado");
+
+        CollectionStatistics estadisticas = CollectionStatistics.getInstance();
+        if (estadisticas.isLoaded()) {
+            mostrar();
+        } else {
+            estadisticas.carga().thenRun(() -> Platform.runLater(this::mostrar));
+        }
+
+        recarga = change -> {
+            if (recargaPendiente.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    recargaPendiente.set(false);
+                    mostrar();
+                });
+            }
+        };
+        EntityChanges.register(recarga);
+    }
+
+    /**
+     * Crea las columnas de valor, número de copias y porcentaje sobre el total.
+     *
+     * @param tabla Tabla a configurar.
+     * @param titulo Título de la columna de valor.
+     */
+    private void configurarTabla(TableView<Map.Entry<String, Long>> tabla, String titulo) {
+        TableColumn<Map.Entry<String, Long>, String> valor = new TableColumn<>(titulo);
+        valor.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getKey()));
+
+        TableColumn<Map.Entry<String, Long>, String> copias = new TableColumn<>("Copias");
+        copias.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getValue().toString()));
+
+        TableColumn<Map.Entry<String, Long>, String> porcentaje = new TableColumn<>("%");
+        porcentaje.setCellValueFactory(cellData -> new SimpleStringProperty(
+                total > 0 ? String.format("%.1f", cellData.getValue().getValue() * 100.0 / total) : "-"));
+
+        tabla.getColumns().setAll(List.of(valor, copias, porcentaje));
+        tabla.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        tabla.setPlaceholder(new Label("Sin copias"));
+    }
+
+    /**
+     * Muestra la versión vigente de las estadísticas.
+     */
+    private void mostrar() {
+        CollectionStatistics.Resumen resumen = CollectionStatistics.getInstance().resumen();
+        if (resumen == null) {
+            lblTotales.setText("Estadísticas no disponibles");
+            return;
+        }
+        total = resumen.copias();
+        lblTotales.setText("Copias: " + resumen.copias() + "    Películas con copias: " + resumen.peliculas());
+        tablaGenero.getItems().setAll(resumen.porGenero().entrySet());
+        tablaDecada.getItems().setAll(resumen.porDecada().entrySet());
+        tablaSoporte.getItems().setAll(resumen.porSoporte().entrySet());
+        tablaEstado.getItems().setAll(resumen.porEstado().entrySet());
+    }
+
+    /**
+     * Deja de recibir las escrituras confirmadas. Se llama al cerrar la ventana.
+     */
+    public void detener() {
+        if (recarga != null) {
+            EntityChanges.unregister(recarga);
+            recarga = null;
+        }
+    }
+
+    /**
+     * Cierra la ventana.
+     *
+     * @param actionEvent Evento de acción generado al presionar el botón de cerrar.
+     */
+    @FXML
+    public void cerrar(ActionEvent actionEvent) {
+        Stage stage = (Stage) btnCerrar.getScene().getWindow();
+        stage.close();
+    }
+}
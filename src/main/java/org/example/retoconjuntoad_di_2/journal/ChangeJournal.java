@@ -0,0 +1,400 @@
+package org.example.retoconjuntoad_di_2.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Diario de cambios en modo "solo añadir" sobre segmentos mapeados en memoria.
+ * <p>
+ * El diario se registra como {@link EntityChangeListener} y añade un {@link ChangeRecord}
+ * por cada {@code save}/{@code delete} confirmado en los repositorios. Los registros se
+ * copian directamente en un {@link MappedByteBuffer}; un hilo de fondo fuerza los datos a disco agrupando todas las escrituras pendientes
+ * en una sola llamada a {@link MappedByteBuffer#force()} (group commit), de modo que
+ * el coste de sincronizar con el disco se reparte entre muchas operaciones.
+ * </p>
+ * <p>
+ * Cuando un segmento se llena, se fuerza a disco y se abre uno nuevo cuyo nombre es
+ * el número de secuencia de su primer registro (rotación de segmentos). Así un lector
+ * puede saltar directamente al segmento que contiene una secuencia dada.
+ * </p>
+ * <p>
+ * El registro se añade <b>después</b> de confirmar la transacción en la base de datos,
+ * no dentro de ella: confirmación y registro no son atómicos. Si la aplicación cae entre
+ * ambos, el cambio queda en {@code data.odb} pero no en el diario, y una réplica que solo
+ * aplique el diario no lo verá; en ese caso hay que partir de una instantánea nueva. En
+ * sentido contrario, una réplica puede recibir registros que su instantánea ya contenía
+ * (entrega "al menos una vez"), por lo que {@link JournalReplayer} aplica cada registro de
+ * forma idempotente. Como los repositorios publican el cambio mientras mantienen la puerta
+ * de escritura, una instantánea nunca queda entre la confirmación y el registro.
+ * </p>
+ * <p>
+ * El hilo de volcado fuerza el segmento a disco fuera del cerrojo principal para no
+ * bloquear a los escritores; un segundo cerrojo ({@code forceLock}) impide que la
+ * rotación o el cierre liberen el segmento mientras se está forzando.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ChangeRecord
+ * @see JournalReplayer
+ */
+public class ChangeJournal implements EntityChangeListener, AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(ChangeJournal.class.getName());
+
+    /**
+     * Extensión de los archivos de segmento.
+     */
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long groupCommitMillis;
+    private final boolean sync;
+
+    /**
+     * Cerrojo que protege el segmento activo y los contadores de secuencia.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Señal para despertar al hilo de volcado cuando hay datos pendientes.
+     */
+    private final Condition pending = lock.newCondition();
+
+    /**
+     * Señal para los hilos que esperan a que su registro sea duradero.
+     */
+    private final Condition durable = lock.newCondition();
+
+    /**
+     * Cerrojo que protege la llamada a {@link MappedByteBuffer#force()} del hilo de volcado
+     * frente a la rotación y el cierre del segmento. Se toma siempre después de {@link #lock}
+     * o sin él, nunca al revés.
+     */
+    private final ReentrantLock forceLock = new ReentrantLock();
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    /**
+     * Última secuencia asignada.
+     */
+    private long lastSequence;
+
+    /**
+     * Última secuencia que se sabe escrita en disco.
+     */
+    private long durableSequence;
+
+    private volatile boolean closed;
+    private final Thread flusher;
+
+    /**
+     * Abre (o crea) el diario en el directorio indicado y recupera la última secuencia.
+     *
+     * @param directory Directorio de los segmentos.
+     * @param segmentSize Tamaño en bytes de cada segmento.
+     * @param groupCommitMillis Tiempo máximo que un registro espera a ser volcado a disco.
+     * @param sync Si es {@code true}, {@link #onChange} espera a que cada registro esté en disco.
+     * @throws IOException Si no se puede abrir o crear el segmento activo.
+     */
+    public ChangeJournal(Path directory, int segmentSize, long groupCommitMillis, boolean sync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.groupCommitMillis = Math.max(1, groupCommitMillis);
+        this.sync = sync;
+        Files.createDirectories(directory);
+        recover();
+
+        flusher = new Thread(this::flushLoop, "change-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Registra en el diario una escritura confirmada por un repositorio.
+     * <p>
+     * Se invoca mientras el repositorio mantiene la puerta de escritura de
+     * {@link org.example.retoconjuntoad_di_2.utils.DataProvider}, de modo que las
+     * instantáneas anotan una secuencia coherente con su contenido.
+     * </p>
+     *
+     * @param change Cambio confirmado.
+     */
+    @Override
+    public void onChange(EntityChange change) {
+        Map<String, Object> fields = switch (change.operation()) {
+            case DELETE -> Map.of();
+            case UPDATE -> change.fields();
+            case SAVE -> ChangeRecord.fieldsOf(change.entity());
+        };
+        long sequence = append(change.entityType(), change.operation(), ChangeRecord.idOf(change.entity()), fields);
+        if (sync) {
+            try {
+                awaitDurable(sequence);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Añade un registro de cambio al diario.
+     * <p>
+     * El registro queda visible para los lectores inmediatamente, pero su escritura
+     * en disco la realiza el hilo de volcado en el siguiente grupo. Si se necesita
+     * durabilidad estricta, se puede llamar después a {@link #awaitDurable(long)}.
+     * </p>
+     *
+     * @param entityType Tipo de entidad modificada.
+     * @param operation Operación realizada.
+     * @param entityId ID de la entidad.
+     * @param fields Campos escritos (vacío para borrados).
+     * @return Número de secuencia asignado al registro.
+     */
+    public long append(ChangeRecord.EntityType entityType, ChangeRecord.Operation operation,
+                       int entityId, Map<String, Object> fields) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("El diario de cambios está cerrado");
+            }
+            // Solo se despierta al hilo de volcado si estaba ocioso: si ya está agrupando,
+            // este registro entra en el mismo grupo sin adelantar el volcado.
+            boolean idle = durableSequence == lastSequence;
+            long sequence = lastSequence + 1;
+            byte[] bytes = new ChangeRecord(sequence, entityType, operation, entityId, fields).encode();
+            // Se reservan 4 bytes para que siempre quede una longitud 0 al final del segmento.
+            if (segment.remaining() < bytes.length + Integer.BYTES) {
+                rotate(sequence, bytes.length + Integer.BYTES);
+            }
+            segment.put(bytes);
+            lastSequence = sequence;
+            if (idle) {
+                pending.signal();
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo rotar el segmento del diario", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Espera a que el registro con la secuencia indicada se haya escrito en disco.
+     *
+     * @param sequence Secuencia devuelta por {@link #append}.
+     * @throws InterruptedException Si el hilo se interrumpe mientras espera.
+     */
+    public void awaitDurable(long sequence) throws InterruptedException {
+        lock.lock();
+        try {
+            while (durableSequence < sequence && !closed) {
+                durable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devuelve la última secuencia asignada.
+     *
+     * @return Última secuencia, o 0 si el diario está vacío.
+     */
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Vuelca a disco los registros pendientes y detiene el hilo de volcado.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            forceLock.lock();
+            try {
+                segment.force();
+                durableSequence = lastSequence;
+                durable.signalAll();
+                pending.signalAll();
+                channel.close();
+            } finally {
+                forceLock.unlock();
+            }
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Error al cerrar el diario de cambios", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recorre los registros del diario a partir de una secuencia.
+     *
+     * @param directory Directorio de los segmentos.
+     * @param fromSequence Primera secuencia que interesa (inclusive).
+     * @param consumer Destino de los registros, en orden de secuencia.
+     * @throws IOException Si no se puede leer algún segmento.
+     */
+    public static void read(Path directory, long fromSequence, Consumer<ChangeRecord> consumer) throws IOException {
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            // Se salta el segmento si el siguiente ya empieza en una secuencia anterior o igual a la buscada.
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= fromSequence) {
+                continue;
+            }
+            try (FileChannel in = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                ChangeRecord record;
+                while ((record = ChangeRecord.decode(buffer)) != null) {
+                    if (record.sequence() >= fromSequence) {
+                        consumer.accept(record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Bucle del hilo de volcado: agrupa los registros pendientes y los fuerza a disco.
+     */
+    private void flushLoop() {
+        while (!closed) {
+            MappedByteBuffer toFlush;
+            long target;
+            lock.lock();
+            try {
+                while (durableSequence == lastSequence && !closed) {
+                    pending.await();
+                }
+                if (closed) {
+                    return;
+                }
+                // Esperar el plazo completo para que se acumulen más registros en el mismo grupo.
+                long remaining = TimeUnit.MILLISECONDS.toNanos(groupCommitMillis);
+                while (remaining > 0 && !closed) {
+                    remaining = pending.awaitNanos(remaining);
+                }
+                if (closed) {
+                    return;
+                }
+                toFlush = segment;
+                target = lastSequence;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            forceLock.lock();
+            try {
+                // Si entretanto se ha rotado o cerrado, el segmento ya está en disco.
+                if (toFlush != segment || closed) {
+                    continue;
+                }
+                toFlush.force();
+            } finally {
+                forceLock.unlock();
+            }
+
+            lock.lock();
+            try {
+                durableSequence = Math.max(durableSequence, target);
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Localiza el último segmento, lo abre y se posiciona tras su último registro válido.
+     *
+     * @throws IOException Si no se puede abrir el segmento.
+     */
+    private void recover() throws IOException {
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            openSegment(1, segmentSize);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        lastSequence = firstSequence(last) - 1;
+        ChangeRecord record;
+        while ((record = ChangeRecord.decode(segment)) != null) {
+            lastSequence = record.sequence();
+        }
+        durableSequence = lastSequence;
+    }
+
+    /**
+     * Fuerza a disco el segmento activo y abre uno nuevo.
+     *
+     * @param firstSequence Secuencia del primer registro del nuevo segmento.
+     * @param minSize Tamaño mínimo necesario para el registro que provoca la rotación.
+     * @throws IOException Si no se puede crear el nuevo segmento.
+     */
+    private void rotate(long firstSequence, int minSize) throws IOException {
+        forceLock.lock();
+        try {
+            segment.force();
+            durableSequence = lastSequence;
+            durable.signalAll();
+            channel.close();
+            openSegment(firstSequence, Math.max(segmentSize, minSize));
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    private void openSegment(long firstSequence, int size) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
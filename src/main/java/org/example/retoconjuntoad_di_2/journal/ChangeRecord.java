@@ -0,0 +1,284 @@
+package org.example.retoconjuntoad_di_2.journal;
+
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de cambio del diario de escrituras (change data capture).
+ * <p>
+ * Cada registro describe una operación {@code save} o {@code delete} confirmada
+ * sobre una entidad: tipo de entidad, ID, operación, campos escritos y número de
+ * secuencia global. Los registros se serializan en un formato binario compacto:
+ * </p>
+ * <pre>
+ * int   longitud del cuerpo
+ * long  secuencia
+ * byte  tipo de entidad
+ * byte  operación
+ * int   ID de la entidad
+ * short número de campos
+ *       por campo: short longitud + nombre UTF-8, byte etiqueta de tipo, valor
+ * int   CRC32 del cuerpo
+ * </pre>
+ * <p>
+ * Una longitud 0 indica el final de los datos escritos en un segmento.
+ * </p>
+ *
+ * @param sequence   Número de secuencia asignado por el diario.
+ * @param entityType Tipo de entidad modificada.
+ * @param operation  Operación realizada.
+ * @param entityId   ID de la entidad.
+ * @param fields     Campos escritos (vacío en los borrados; solo los modificados en {@code UPDATE}).
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ChangeJournal
+ */
+public record ChangeRecord(long sequence, EntityType entityType, Operation operation, int entityId,
+                           Map<String, Object> fields) {
+
+    /**
+     * Tipos de entidad registrados en el diario.
+     */
+    public enum EntityType { COPIA, PELICULA, USER }
+
+    /**
+     * Operaciones registradas en el diario.
+     * <p>
+     * {@code SAVE} lleva todos los campos de la entidad; {@code UPDATE} (actualizaciones
+     * masivas) solo los campos modificados.
+     * </p>
+     */
+    public enum Operation { SAVE, DELETE, UPDATE }
+
+    /**
+     * Bytes ocupados por la cabecera de longitud y la suma CRC de cada registro.
+     */
+    static final int FRAME_OVERHEAD = Integer.BYTES * 2;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_SHORT = 3;
+    private static final byte TAG_BOOLEAN = 4;
+    private static final byte TAG_LONG = 5;
+
+    /**
+     * Devuelve el ID de una entidad del modelo.
+     *
+     * @param entity Copia, película o usuario.
+     * @return ID de la entidad.
+     */
+    static int idOf(Object entity) {
+        if (entity instanceof Copia copia) {
+            return copia.getId();
+        } else if (entity instanceof Pelicula pelicula) {
+            return pelicula.getId();
+        } else if (entity instanceof User user) {
+            return user.getId();
+        }
+        throw new IllegalArgumentException("Entidad no soportada en el diario: " + entity);
+    }
+
+    /**
+     * Campos persistentes de una entidad del modelo.
+     *
+     * @param entity Copia, película o usuario.
+     * @return Mapa ordenado de nombre de campo a valor.
+     */
+    static Map<String, Object> fieldsOf(Object entity) {
+        if (entity instanceof Copia copia) {
+            return fieldsOf(copia);
+        } else if (entity instanceof Pelicula pelicula) {
+            return fieldsOf(pelicula);
+        } else if (entity instanceof User user) {
+            return fieldsOf(user);
+        }
+        throw new IllegalArgumentException("Entidad no soportada en el diario: " + entity);
+    }
+
+    /**
+     * Campos persistentes de una copia. Las relaciones se guardan como IDs.
+     *
+     * @param copia Copia a describir.
+     * @return Mapa ordenado de nombre de campo a valor.
+     */
+    public static Map<String, Object> fieldsOf(Copia copia) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("pelicula", copia.getPelicula() != null ? copia.getPelicula().getId() : null);
+        fields.put("user", copia.getUser() != null ? copia.getUser().getId() : null);
+        fields.put("estado", copia.getEstado() != null ? copia.getEstado().getEtiqueta() : null);
+        fields.put("soporte", copia.getSoporte() != null ? copia.getSoporte().getEtiqueta() : null);
+        return fields;
+    }
+
+    /**
+     * Campos persistentes de una película (sin la colección de copias).
+     *
+     * @param pelicula Película a describir.
+     * @return Mapa ordenado de nombre de campo a valor.
+     */
+    public static Map<String, Object> fieldsOf(Pelicula pelicula) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("titulo", pelicula.getTitulo());
+        fields.put("genero", pelicula.getGenero());
+        fields.put("anio", pelicula.getAnio());
+        fields.put("descripcion", pelicula.getDescripcion());
+        fields.put("director", pelicula.getDirector());
+        return fields;
+    }
+
+    /**
+     * Campos persistentes de un usuario, sin la contraseña.
+     * <p>
+     * Los segmentos del diario no están cifrados y se copian a las réplicas, así que la
+     * contraseña nunca se escribe en ellos: al reproducir el diario, la de un usuario
+     * existente se conserva y un usuario nuevo queda sin contraseña hasta que se le asigne.
+     * </p>
+     *
+     * @param user Usuario a describir.
+     * @return Mapa ordenado de nombre de campo a valor.
+     */
+    public static Map<String, Object> fieldsOf(User user) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("nombreUsuario", user.getNombreUsuario());
+        fields.put("esAdmin", user.isEsAdmin());
+        return fields;
+    }
+
+    /**
+     * Serializa el registro completo (cabecera, cuerpo y CRC).
+     *
+     * @return Bytes listos para añadir a un segmento del diario.
+     */
+    byte[] encode() {
+        byte[][] names = new byte[fields.size()][];
+        int bodySize = Long.BYTES + 2 + Integer.BYTES + Short.BYTES;
+        int i = 0;
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            names[i] = field.getKey().getBytes(StandardCharsets.UTF_8);
+            bodySize += Short.BYTES + names[i].length + 1 + valueSize(field.getValue());
+            i++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(bodySize + FRAME_OVERHEAD);
+        buffer.putInt(bodySize);
+        buffer.putLong(sequence);
+        buffer.put((byte) entityType.ordinal());
+        buffer.put((byte) operation.ordinal());
+        buffer.putInt(entityId);
+        buffer.putShort((short) fields.size());
+        i = 0;
+        for (Object value : fields.values()) {
+            buffer.putShort((short) names[i].length);
+            buffer.put(names[i]);
+            putValue(buffer, value);
+            i++;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES, bodySize);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Lee el siguiente registro de un búfer posicionado al inicio de un registro.
+     * <p>
+     * Si no quedan registros válidos (longitud 0, datos truncados o CRC incorrecto)
+     * devuelve {@code null} y deja la posición del búfer sin cambios.
+     * </p>
+     *
+     * @param buffer Búfer del segmento.
+     * @return El registro leído, o {@code null} si se ha llegado al final de los datos válidos.
+     */
+    static ChangeRecord decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < FRAME_OVERHEAD) {
+            return null;
+        }
+        int bodySize = buffer.getInt(start);
+        if (bodySize <= 0 || bodySize > buffer.remaining() - FRAME_OVERHEAD) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.slice(start + Integer.BYTES, bodySize);
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(start + Integer.BYTES + bodySize)) {
+            return null;
+        }
+
+        long sequence = body.getLong();
+        EntityType entityType = EntityType.values()[body.get()];
+        Operation operation = Operation.values()[body.get()];
+        int entityId = body.getInt();
+        int count = body.getShort();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[body.getShort()];
+            body.get(name);
+            fields.put(new String(name, StandardCharsets.UTF_8), getValue(body));
+        }
+
+        buffer.position(start + bodySize + FRAME_OVERHEAD);
+        return new ChangeRecord(sequence, entityType, operation, entityId, fields);
+    }
+
+    private static int valueSize(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String s) {
+            return Integer.BYTES + s.getBytes(StandardCharsets.UTF_8).length;
+        } else if (value instanceof Integer) {
+            return Integer.BYTES;
+        } else if (value instanceof Short) {
+            return Short.BYTES;
+        } else if (value instanceof Boolean) {
+            return 1;
+        } else if (value instanceof Long) {
+            return Long.BYTES;
+        }
+        throw new IllegalArgumentException("Tipo no soportado en el diario: " + value.getClass());
+    }
+
+    private static void putValue(ByteBuffer buffer, Object value) {
+        if (value == null) {
+            buffer.put(TAG_NULL);
+        } else if (value instanceof String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            buffer.put(TAG_STRING).putInt(bytes.length).put(bytes);
+        } else if (value instanceof Integer n) {
+            buffer.put(TAG_INT).putInt(n);
+        } else if (value instanceof Short n) {
+            buffer.put(TAG_SHORT).putShort(n);
+        } else if (value instanceof Boolean b) {
+            buffer.put(TAG_BOOLEAN).put((byte) (b ? 1 : 0));
+        } else if (value instanceof Long n) {
+            buffer.put(TAG_LONG).putLong(n);
+        }
+    }
+
+    private static Object getValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_STRING -> {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            case TAG_INT -> buffer.getInt();
+            case TAG_SHORT -> buffer.getShort();
+            case TAG_BOOLEAN -> buffer.get() != 0;
+            case TAG_LONG -> buffer.getLong();
+            default -> throw new IllegalStateException("Etiqueta de tipo desconocida: " + tag);
+        };
+    }
+}
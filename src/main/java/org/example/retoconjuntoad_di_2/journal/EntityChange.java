@@ -0,0 +1,43 @@
+package org.example.retoconjuntoad_di_2.journal;
+
+import java.util.Map;
+
+/**
+ * Evento que describe una escritura confirmada sobre una entidad.
+ * <p>
+ * Los repositorios publican un evento por cada {@code save}/{@code delete} después
+ * del commit mediante {@link EntityChanges#publish(EntityChange)}. En los guardados,
+ * {@code entity} es la instancia resultante de la operación; en los borrados, la
+ * instancia eliminada.
+ * </p>
+ * <p>
+ * Las operaciones masivas ({@code UPDATE} y los borrados por lote) no cargan las
+ * entidades: {@code entity} es entonces una referencia con solo el ID y el propietario
+ * rellenos, y en {@code UPDATE} los valores nuevos van en {@code fields}. Una
+ * actualización masiva incrementa además la versión de cada entidad en uno.
+ * </p>
+ *
+ * @param entityType Tipo de entidad modificada.
+ * @param operation  Operación realizada.
+ * @param entity     Entidad afectada ({@link org.example.retoconjuntoad_di_2.model.copia.Copia},
+ *                   {@link org.example.retoconjuntoad_di_2.model.pelicula.Pelicula} o
+ *                   {@link org.example.retoconjuntoad_di_2.model.user.User}).
+ * @param fields     Campos modificados en {@code UPDATE}; {@code null} en el resto.
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see EntityChangeListener
+ */
+public record EntityChange(ChangeRecord.EntityType entityType, ChangeRecord.Operation operation, Object entity,
+                           Map<String, Object> fields) {
+
+    /**
+     * Crea un evento de guardado o borrado de una entidad completa.
+     *
+     * @param entityType Tipo de entidad modificada.
+     * @param operation Operación realizada.
+     * @param entity Entidad afectada.
+     */
+    public EntityChange(ChangeRecord.EntityType entityType, ChangeRecord.Operation operation, Object entity) {
+        this(entityType, operation, entity, null);
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.retoconjuntoad_di_2.journal;
+
+/**
+ * Receptor de las escrituras confirmadas en los repositorios.
+ * <p>
+ * Los receptores se invocan de forma síncrona, en el hilo que realizó la escritura
+ * y en el mismo orden en que se confirmaron las transacciones, por lo que deben
+ * ser rápidos y no lanzar excepciones.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see EntityChanges
+ */
+@FunctionalInterface
+public interface EntityChangeListener {
+
+    /**
+     * Notifica una escritura confirmada.
+     *
+     * @param change Descripción del cambio.
+     */
+    void onChange(EntityChange change);
+}
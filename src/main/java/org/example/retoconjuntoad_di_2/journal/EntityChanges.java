@@ -0,0 +1,67 @@
+package org.example.retoconjuntoad_di_2.journal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registro de receptores de cambios de entidades.
+ * <p>
+ * Es el punto único por el que los repositorios anuncian sus escrituras. El diario
+ * de cambios, la caché del catálogo y el resto de consumidores se registran aquí,
+ * de modo que un repositorio no necesita conocerlos.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see EntityChangeListener
+ */
+public final class EntityChanges {
+
+    private static final System.Logger LOG = System.getLogger(EntityChanges.class.getName());
+
+    /**
+     * Receptores registrados. Las altas y bajas son poco frecuentes frente a las publicaciones.
+     */
+    private static final List<EntityChangeListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor privado para prevenir la instanciación de esta clase de utilidad.
+     */
+    private EntityChanges() {}
+
+    /**
+     * Registra un receptor de cambios.
+     *
+     * @param listener Receptor a registrar.
+     */
+    public static void register(EntityChangeListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Elimina un receptor previamente registrado.
+     *
+     * @param listener Receptor a eliminar.
+     */
+    public static void unregister(EntityChangeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Publica un cambio a todos los receptores registrados.
+     * <p>
+     * Un error en un receptor se registra y no impide notificar al resto.
+     * </p>
+     *
+     * @param change Cambio confirmado.
+     */
+    public static void publish(EntityChange change) {
+        for (EntityChangeListener listener : LISTENERS) {
+            try {
+                listener.onChange(change);
+            } catch (RuntimeException e) {
+                LOG.log(System.Logger.Level.ERROR, "Error en un receptor de cambios", e);
+            }
+        }
+    }
+}
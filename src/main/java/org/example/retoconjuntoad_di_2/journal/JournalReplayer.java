@@ -0,0 +1,248 @@
+package org.example.retoconjuntoad_di_2.journal;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaCounterReconciler;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.id.IdBlock;
+import org.example.retoconjuntoad_di_2.model.pelicula.CatalogDictionary;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Herramienta que aplica el diario de cambios sobre otro archivo ObjectDB.
+ * <p>
+ * Está pensada para mantener una réplica incremental: se parte de una instantánea
+ * de {@code data.odb} (ver {@link org.example.retoconjuntoad_di_2.utils.DatabaseSnapshotService},
+ * que anota la última secuencia del diario en un archivo {@code .journal}) y se aplican
+ * los registros posteriores a esa secuencia. Los registros se aplican en lotes, cada uno
+ * en su propia transacción.
+ * </p>
+ * <p>
+ * Los IDs los asigna la aplicación, así que cada inserción se aplica con el mismo ID
+ * que tenía en el origen. Si el destino asignara otro ID (por ejemplo, porque la entidad
+ * vuelve a usar un ID generado), los registros posteriores se aplicarían sobre la entidad
+ * equivocada: en ese caso la reproducción se detiene con una excepción y se deshace el
+ * lote en curso, en lugar de seguir con una réplica divergente.
+ * </p>
+ * <p>
+ * Las contraseñas no viajan en el diario: los usuarios creados en el origen aparecen en la
+ * réplica sin contraseña, y los existentes conservan la suya.
+ * </p>
+ * <p>
+ * El diario se entrega "al menos una vez" (ver {@link ChangeJournal}): cada registro se
+ * aplica de forma idempotente, como inserción o actualización según exista o no.
+ * </p>
+ * <p>
+ * Uso: {@code JournalReplayer <directorio-diario> <archivo-destino.odb> <secuencia-inicial>}
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ChangeJournal
+ */
+public class JournalReplayer {
+
+    /**
+     * Número de registros aplicados por transacción.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private final EntityManagerFactory target;
+    private EntityManager em;
+    private int inBatch;
+    private long applied;
+    private long lastSequence;
+
+    /**
+     * Mayor ID insertado de cada entidad, para adelantar los contadores de bloques.
+     */
+    private final Map<Class<?>, Integer> maxInserted = new HashMap<>();
+
+    /**
+     * Crea un reproductor que escribe en la base de datos indicada.
+     *
+     * @param target Factoría de EntityManager del archivo destino.
+     */
+    public JournalReplayer(EntityManagerFactory target) {
+        this.target = target;
+    }
+
+    /**
+     * Punto de entrada de la herramienta de línea de comandos.
+     *
+     * @param args Directorio del diario, archivo destino y secuencia inicial.
+     * @throws IOException Si no se puede leer el diario.
+     * @throws InterruptedException Si se interrumpe el recálculo de los contadores.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 3) {
+            System.err.println("Uso: JournalReplayer <directorio-diario> <archivo-destino.odb> <secuencia-inicial>");
+            System.exit(1);
+        }
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(args[1]);
+        try {
+            JournalReplayer replayer = new JournalReplayer(emf);
+            long applied = replayer.replay(Path.of(args[0]), Long.parseLong(args[2]));
+            System.out.println("Registros aplicados: " + applied + " (última secuencia " + replayer.lastSequence + ")");
+            // Los registros se aplican sin pasar por los repositorios: se traducen los géneros y
+            // directores escritos como texto y se recalculan los contadores de copias.
+            CatalogDictionary.of(emf).normalizarPeliculas(BATCH_SIZE);
+            new CopiaCounterReconciler(emf, BATCH_SIZE, Runtime.getRuntime().availableProcessors()).reconcile();
+        } finally {
+            emf.close();
+        }
+    }
+
+    /**
+     * Aplica todos los registros del diario a partir de una secuencia.
+     *
+     * @param journalDir Directorio de los segmentos del diario.
+     * @param fromSequence Primera secuencia a aplicar (inclusive).
+     * @return Número de registros aplicados.
+     * @throws IOException Si no se puede leer el diario.
+     * @throws IllegalStateException Si una inserción recibe en el destino un ID distinto
+     *         del registrado; los lotes ya confirmados se conservan.
+     */
+    public long replay(Path journalDir, long fromSequence) throws IOException {
+        em = target.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            ChangeJournal.read(journalDir, fromSequence, this::apply);
+            // Los contadores de bloques de la instantánea pueden ser anteriores a los IDs
+            // aplicados: se adelantan por encima del mayor ID insertado. No se eliminan,
+            // porque al recalcularlos solo se vería esta base de datos y no sus shards
+            // ni el archivo.
+            for (Map.Entry<Class<?>, Integer> max : maxInserted.entrySet()) {
+                IdBlock block = em.find(IdBlock.class, max.getKey().getSimpleName());
+                if (block != null && block.getNext() <= max.getValue()) {
+                    block.setNext(max.getValue() + 1);
+                }
+            }
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+        return applied;
+    }
+
+    /**
+     * Aplica un registro dentro del lote actual, confirmando el lote cuando se llena.
+     *
+     * @param record Registro a aplicar.
+     */
+    private void apply(ChangeRecord record) {
+        Class<?> type = switch (record.entityType()) {
+            case COPIA -> Copia.class;
+            case PELICULA -> Pelicula.class;
+            case USER -> User.class;
+        };
+        Object existing = em.find(type, record.entityId());
+
+        if (record.operation() == ChangeRecord.Operation.DELETE) {
+            if (existing != null) {
+                em.remove(existing);
+            }
+        } else if (record.operation() == ChangeRecord.Operation.UPDATE) {
+            if (existing != null) {
+                copyFields(existing, record.fields());
+            }
+        } else {
+            Object entity = existing;
+            if (entity == null) {
+                entity = newInstance(record.entityType(), record.entityId());
+            }
+            copyFields(entity, record.fields());
+            maxInserted.merge(type, record.entityId(), Math::max);
+            if (existing == null) {
+                em.persist(entity);
+                Object id = target.getPersistenceUnitUtil().getIdentifier(entity);
+                if (!Integer.valueOf(record.entityId()).equals(id)) {
+                    throw new IllegalStateException("La secuencia " + record.sequence() + " inserta "
+                            + record.entityType() + " " + record.entityId() + " pero el destino le asignó el ID "
+                            + id + "; la réplica ya no corresponde al origen");
+                }
+            }
+        }
+
+        applied++;
+        lastSequence = record.sequence();
+        if (++inBatch >= BATCH_SIZE) {
+            em.getTransaction().commit();
+            em.clear();
+            em.getTransaction().begin();
+            inBatch = 0;
+        }
+    }
+
+    private static Object newInstance(ChangeRecord.EntityType type, int id) {
+        return switch (type) {
+            case COPIA -> {
+                Copia copia = new Copia();
+                copia.setId(id);
+                yield copia;
+            }
+            case PELICULA -> {
+                Pelicula pelicula = new Pelicula();
+                pelicula.setId(id);
+                yield pelicula;
+            }
+            case USER -> {
+                User user = new User();
+                user.setId(id);
+                yield user;
+            }
+        };
+    }
+
+    /**
+     * Copia los campos del registro sobre la entidad destino.
+     * <p>
+     * Solo se escriben los campos presentes en el registro: todos en un {@code SAVE},
+     * únicamente los modificados en un {@code UPDATE}.
+     * </p>
+     *
+     * @param entity Entidad gestionada o nueva.
+     * @param fields Campos del registro.
+     */
+    private void copyFields(Object entity, Map<String, Object> fields) {
+        if (entity instanceof Copia copia) {
+            if (fields.containsKey("pelicula")) {
+                Integer peliculaId = (Integer) fields.get("pelicula");
+                copia.setPelicula(peliculaId != null ? em.find(Pelicula.class, peliculaId) : null);
+            }
+            if (fields.containsKey("user")) {
+                Integer userId = (Integer) fields.get("user");
+                copia.setUser(userId != null ? em.find(User.class, userId) : null);
+            }
+            if (fields.containsKey("estado")) {
+                copia.setEstado(EstadoCopia.fromEtiqueta((String) fields.get("estado")));
+            }
+            if (fields.containsKey("soporte")) {
+                copia.setSoporte(SoporteCopia.fromEtiqueta((String) fields.get("soporte")));
+            }
+        } else if (entity instanceof Pelicula pelicula) {
+            pelicula.setTitulo((String) fields.get("titulo"));
+            pelicula.setGenero((String) fields.get("genero"));
+            pelicula.setAnio((Short) fields.get("anio"));
+            pelicula.setDescripcion((String) fields.get("descripcion"));
+            pelicula.setDirector((String) fields.get("director"));
+        } else if (entity instanceof User user) {
+            user.setNombreUsuario((String) fields.get("nombreUsuario"));
+            // El diario no lleva la contraseña (ver ChangeRecord.fieldsOf(User)); los registros
+            // antiguos que sí la lleven tampoco la aplican, para no depender de su contenido.
+            user.setEsAdmin(Boolean.TRUE.equals(fields.get("esAdmin")));
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import javafx.application.Platform;
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Vigilante de bloqueos del hilo de aplicación de JavaFX.
+ * <p>
+ * Un hilo en segundo plano envía cada {@code intervalMillis} un latido al hilo de JavaFX
+ * con {@link Platform#runLater(Runnable)} y mide cuánto tarda en ejecutarse. Si un latido
+ * lleva pendiente más de {@code thresholdMillis}, el hilo de JavaFX está ocupado con otra
+ * tarea (por ejemplo, un manejador que accede a la base de datos): mientras dure el
+ * bloqueo se muestrea su pila en cada comprobación y, cuando el latido por fin se ejecuta,
+ * se registra el bloqueo con el manejador que aparecía más a menudo en las muestras,
+ * por ejemplo {@code MainController.borrar -> CopiaRepository.delete}.
+ * </p>
+ * <p>
+ * Las duraciones de los bloqueos se acumulan en un histograma por ventanas de
+ * {@code windowMinutes}; al cerrar cada ventana con bloqueos se registra un resumen
+ * (número, percentiles y manejadores más frecuentes) y se empieza una ventana nueva.
+ * </p>
+ * <p>
+ * Configuración: {@code -Dgestor.fx.stall.enabled} (true), {@code .thresholdMillis} (200),
+ * {@code .intervalMillis} (50) y {@code .windowMinutes} (5).
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public final class FxStallDetector {
+
+    private static final System.Logger LOG = System.getLogger(FxStallDetector.class.getName());
+
+    /**
+     * Paquete de la aplicación, para distinguir sus marcos de pila de los de JavaFX y del JDK.
+     */
+    private static final String APP_PACKAGE = "org.example.retoconjuntoad_di_2.";
+
+    /**
+     * Paquetes de infraestructura ({@link RepositoryMetrics}, {@code UnitOfWork}...) que no
+     * se atribuyen como manejadores.
+     */
+    private static final String[] INFRASTRUCTURE = {APP_PACKAGE + "metrics.", APP_PACKAGE + "utils."};
+
+    private static FxStallDetector instance = null;
+
+    private final long thresholdNanos;
+    private final long windowNanos;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Instante en que se envió el latido pendiente, o 0 si no hay ninguno.
+     */
+    private final AtomicLong pendingSince = new AtomicLong();
+
+    private volatile Thread fxThread;
+
+    /**
+     * Duraciones de los latidos (latencia del hilo de JavaFX) en nanosegundos.
+     */
+    private final LatencyHistogram pulses = new LatencyHistogram();
+
+    private volatile LatencyHistogram stalls = new LatencyHistogram();
+    private volatile LatencyHistogram previousStalls = new LatencyHistogram();
+    private final Map<String, LongAdder> stallsByHandler = new ConcurrentHashMap<>();
+    private long windowStart = System.nanoTime();
+
+    /**
+     * Muestras de pila del bloqueo en curso, por manejador.
+     */
+    private final Map<String, Integer> samples = new HashMap<>();
+
+    private FxStallDetector(long thresholdMillis, long intervalMillis, long windowMinutes) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.windowNanos = TimeUnit.MINUTES.toNanos(Math.max(1, windowMinutes));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fx-stall-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Inicia el vigilante con la configuración de la aplicación, si está activado y no
+     * se ha iniciado ya. Debe llamarse con el toolkit de JavaFX en marcha.
+     */
+    public static synchronized void start() {
+        if (instance == null && AppConfig.getBoolean("fx.stall.enabled", true)) {
+            instance = new FxStallDetector(
+                    Math.max(1, AppConfig.getLong("fx.stall.thresholdMillis", 200)),
+                    Math.max(1, AppConfig.getLong("fx.stall.intervalMillis", 50)),
+                    AppConfig.getLong("fx.stall.windowMinutes", 5));
+        }
+    }
+
+    /**
+     * Detiene el vigilante y registra el resumen de la ventana en curso.
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.scheduler.shutdownNow();
+            instance.rotate();
+            instance = null;
+        }
+    }
+
+    /**
+     * Devuelve el vigilante en marcha.
+     *
+     * @return El vigilante, o {@code null} si no está iniciado.
+     */
+    public static synchronized FxStallDetector getInstance() {
+        return instance;
+    }
+
+    /**
+     * Histograma de la latencia de todos los latidos, en nanosegundos.
+     *
+     * @return Histograma acumulado desde el arranque.
+     */
+    public LatencyHistogram getPulseLatency() {
+        return pulses;
+    }
+
+    /**
+     * Histograma de las duraciones de los bloqueos de la ventana en curso, en nanosegundos.
+     *
+     * @return Histograma de la ventana actual.
+     */
+    public LatencyHistogram getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Histograma de las duraciones de los bloqueos de la ventana anterior, en nanosegundos.
+     *
+     * @return Histograma de la última ventana cerrada.
+     */
+    public LatencyHistogram getPreviousStalls() {
+        return previousStalls;
+    }
+
+    /**
+     * Comprobación periódica (hilo del vigilante).
+     */
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            long since = pendingSince.get();
+            if (since == 0) {
+                if (pendingSince.compareAndSet(0, now)) {
+                    Platform.runLater(this::pulse);
+                }
+            } else if (now - since > thresholdNanos) {
+                sample();
+            }
+            if (now - windowStart >= windowNanos) {
+                rotate();
+            }
+        } catch (RuntimeException e) {
+            // El toolkit puede haberse detenido; el vigilante no debe morir por ello.
+            LOG.log(System.Logger.Level.DEBUG, "Fallo en la comprobación del hilo de JavaFX", e);
+        }
+    }
+
+    /**
+     * Latido (hilo de JavaFX).
+     */
+    private void pulse() {
+        fxThread = Thread.currentThread();
+        long since = pendingSince.getAndSet(0);
+        if (since == 0) {
+            return;
+        }
+        long latency = System.nanoTime() - since;
+        pulses.record(latency);
+        if (latency > thresholdNanos) {
+            stallEnded(latency);
+        }
+    }
+
+    /**
+     * Toma una muestra de la pila del hilo de JavaFX bloqueado.
+     */
+    private synchronized void sample() {
+        Thread thread = fxThread;
+        if (thread == null) {
+            return;
+        }
+        samples.merge(handlerOf(thread.getStackTrace()), 1, Integer::sum);
+    }
+
+    /**
+     * Registra un bloqueo terminado y lo atribuye al manejador más muestreado.
+     */
+    private synchronized void stallEnded(long latency) {
+        String handler = samples.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse("desconocido");
+        samples.clear();
+        stalls.record(latency);
+        stallsByHandler.computeIfAbsent(handler, k -> new LongAdder()).increment();
+        LOG.log(System.Logger.Level.WARNING, "Hilo de JavaFX bloqueado {0} ms en {1}",
+                TimeUnit.NANOSECONDS.toMillis(latency), handler);
+    }
+
+    /**
+     * Cierra la ventana actual de bloqueos y registra su resumen.
+     */
+    private synchronized void rotate() {
+        windowStart = System.nanoTime();
+        LatencyHistogram closed = stalls;
+        if (closed.getCount() == 0) {
+            return;
+        }
+        String top = stallsByHandler.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+                .limit(3)
+                .map(e -> e.getKey() + " (" + e.getValue().sum() + ")")
+                .collect(Collectors.joining(", "));
+        LOG.log(System.Logger.Level.INFO,
+                "Bloqueos del hilo de JavaFX: {0}, p50 {1} ms, p99 {2} ms, máx. {3} ms; más frecuentes: {4}",
+                closed.getCount(),
+                TimeUnit.NANOSECONDS.toMillis(closed.getValueAtPercentile(50)),
+                TimeUnit.NANOSECONDS.toMillis(closed.getValueAtPercentile(99)),
+                TimeUnit.NANOSECONDS.toMillis(closed.getMax()),
+                top);
+        previousStalls = closed;
+        stalls = new LatencyHistogram();
+        stallsByHandler.clear();
+    }
+
+    /**
+     * Resume una pila como {@code Manejador.metodo -> Clase.metodo}: el marco de la
+     * aplicación más externo (normalmente el manejador del controlador) y el más interno
+     * (donde está trabajando). Sin marcos de la aplicación, devuelve el marco superior.
+     */
+    static String handlerOf(StackTraceElement[] stack) {
+        StackTraceElement inner = null;
+        StackTraceElement outer = null;
+        for (StackTraceElement frame : stack) {
+            if (isApplicationFrame(frame.getClassName())) {
+                if (inner == null) {
+                    inner = frame;
+                }
+                outer = frame;
+            }
+        }
+        if (outer == null) {
+            return stack.length > 0 ? describe(stack[0]) : "desconocido";
+        }
+        String outerName = describe(outer);
+        String innerName = describe(inner);
+        return outerName.equals(innerName) ? outerName : outerName + " -> " + innerName;
+    }
+
+    private static boolean isApplicationFrame(String className) {
+        if (!className.startsWith(APP_PACKAGE)) {
+            return false;
+        }
+        for (String prefix : INFRASTRUCTURE) {
+            if (className.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@code ClaseSimple.metodo}, sin clases anidadas ni prefijos de lambdas.
+     */
+    private static String describe(StackTraceElement frame) {
+        String className = frame.getClassName();
+        className = className.substring(className.lastIndexOf('.') + 1);
+        int nested = className.indexOf('$');
+        if (nested > 0) {
+            className = className.substring(0, nested);
+        }
+        String method = frame.getMethodName();
+        if (method.startsWith("lambda$")) {
+            // lambda$delete$3 -> delete
+            int end = method.indexOf('$', 7);
+            method = method.substring(7, end > 7 ? end : method.length());
+        }
+        return className + "." + method;
+    }
+}
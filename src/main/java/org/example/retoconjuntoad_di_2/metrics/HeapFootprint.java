@@ -0,0 +1,371 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.Temporal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Contabilidad aproximada de la memoria que ocupan las entidades cargadas.
+ * <p>
+ * Los componentes que retienen entidades durante mucho tiempo (la tabla de la ventana
+ * principal, {@link org.example.retoconjuntoad_di_2.cache.CatalogCache}...) se registran
+ * como contenedores con {@link #track(String, Collection)} o
+ * {@link #track(String, Supplier)}. {@link #report()} recorre el grafo de objetos
+ * alcanzable desde cada contenedor (una {@link Pelicula} arrastra sus copias, cada
+ * {@link Copia} su película y su usuario) y cuenta las instancias distintas de
+ * {@code Copia}, {@code Pelicula} y {@code User}, junto con los bytes estimados que
+ * retiene cada tipo: su propia cabecera y campos más las cadenas, números y colecciones
+ * que solo cuelgan de él.
+ * </p>
+ * <p>
+ * Los tamaños se estiman con la disposición habitual de la JVM de 64 bits con
+ * referencias comprimidas (cabecera de 12 bytes, referencias de 4 y alineación a 8);
+ * son una guía para comparar, no una medida exacta. Los contextos de persistencia no
+ * aparecen como contenedores porque los repositorios los cierran al terminar cada
+ * operación ({@link org.example.retoconjuntoad_di_2.utils.UnitOfWork}).
+ * </p>
+ * <p>
+ * {@link #checkBudget(String, Collection)} avisa en el log cuando una lista supera
+ * {@code -Dgestor.heap.tableBudgetRows} filas (5000 por defecto). El informe puede
+ * pedirse también desde JMX ({@code org.example.retoconjuntoad_di_2:type=HeapFootprint}).
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public final class HeapFootprint implements HeapFootprintMBean {
+
+    private static final System.Logger LOG = System.getLogger(HeapFootprint.class.getName());
+
+    private static final HeapFootprint INSTANCE = new HeapFootprint();
+
+    private static final int HEADER = 12;
+    private static final int REFERENCE = 4;
+    private static final int ARRAY_HEADER = 16;
+
+    /**
+     * Tipos de fila que se contabilizan.
+     */
+    private static final List<Class<?>> ROW_TYPES = List.of(Copia.class, Pelicula.class, User.class);
+
+    static {
+        if (AppConfig.getBoolean("metrics.jmx", true)) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                        new ObjectName(RepositoryMetrics.JMX_DOMAIN + ":type=HeapFootprint"));
+            } catch (JMException e) {
+                LOG.log(System.Logger.Level.WARNING, "No se pudo registrar la contabilidad de memoria en JMX", e);
+            }
+        }
+    }
+
+    /**
+     * Fila del informe: instancias y bytes estimados de un tipo en un contenedor.
+     *
+     * @param holder Nombre del contenedor ({@code "Total"} para el conjunto sin duplicados).
+     * @param type Nombre simple del tipo de entidad.
+     * @param instances Instancias distintas alcanzables.
+     * @param bytes Bytes estimados retenidos por esas instancias.
+     */
+    public record Row(String holder, String type, long instances, long bytes) {
+
+        /**
+         * @return Bytes estimados por instancia (0 si no hay instancias).
+         */
+        public long bytesPerInstance() {
+            return instances == 0 ? 0 : bytes / instances;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %-9s %8d instancias %10d bytes (%d B/fila)",
+                    holder, type, instances, bytes, bytesPerInstance());
+        }
+    }
+
+    /**
+     * Contenedores registrados, por nombre. Los valores devuelven {@code null} cuando el
+     * contenedor ya no existe.
+     */
+    private final Map<String, Supplier<Collection<?>>> holders = new ConcurrentHashMap<>();
+
+    /**
+     * Nombres de las listas que están por encima de su presupuesto.
+     */
+    private final Set<String> overBudget = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Tamaño superficial estimado de cada clase de la aplicación.
+     */
+    private static final ClassValue<Long> SHALLOW_SIZE = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            long size = HEADER;
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        size += fieldSize(field.getType());
+                    }
+                }
+            }
+            return align(size);
+        }
+    };
+
+    private HeapFootprint() {}
+
+    /**
+     * Devuelve la instancia de la aplicación.
+     *
+     * @return Instancia única.
+     */
+    public static HeapFootprint getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registra una colección como contenedor. Se guarda una referencia débil: cuando el
+     * propietario (por ejemplo, un controlador cerrado) la libera, desaparece del informe.
+     *
+     * @param holder Nombre del contenedor.
+     * @param rows Colección de entidades.
+     */
+    public void track(String holder, Collection<?> rows) {
+        WeakReference<Collection<?>> ref = new WeakReference<>(rows);
+        holders.put(holder, ref::get);
+    }
+
+    /**
+     * Registra un contenedor cuyas entidades se obtienen en el momento del informe.
+     *
+     * @param holder Nombre del contenedor.
+     * @param roots Proveedor de las entidades raíz (puede devolver {@code null}).
+     */
+    public void track(String holder, Supplier<Collection<?>> roots) {
+        holders.put(holder, roots);
+    }
+
+    /**
+     * Elimina un contenedor del informe.
+     *
+     * @param holder Nombre del contenedor.
+     */
+    public void untrack(String holder) {
+        holders.remove(holder);
+        overBudget.remove(holder);
+    }
+
+    /**
+     * Calcula el informe: una fila por contenedor y tipo, más las filas {@code "Total"}
+     * con las instancias distintas de todos los contenedores juntos.
+     *
+     * @return Filas del informe.
+     */
+    public List<Row> report() {
+        List<Row> rows = new ArrayList<>();
+        List<Object> allRoots = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Collection<?>>> holder : new LinkedHashMap<>(holders).entrySet()) {
+            Collection<?> roots = holder.getValue().get();
+            if (roots == null) {
+                holders.remove(holder.getKey());
+                continue;
+            }
+            List<Object> copy;
+            try {
+                copy = new ArrayList<>(roots);
+            } catch (ConcurrentModificationException e) {
+                // La lista se está modificando en el hilo de JavaFX: se omite en este informe.
+                continue;
+            }
+            allRoots.addAll(copy);
+            addRows(rows, holder.getKey(), measure(copy, Collections.newSetFromMap(new IdentityHashMap<>())));
+        }
+        addRows(rows, "Total", measure(allRoots, Collections.newSetFromMap(new IdentityHashMap<>())));
+        return rows;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Row row : report()) {
+            out.append(row).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Comprueba si una lista supera el presupuesto de filas y, al cruzarlo, lo avisa en
+     * el log con su tamaño estimado. Vuelve a avisar si baja del presupuesto y lo supera
+     * de nuevo.
+     *
+     * @param holder Nombre de la lista (por ejemplo, {@code "MainController.copiasUsuario"}).
+     * @param rows Lista a comprobar.
+     * @return {@code true} si la lista supera el presupuesto.
+     */
+    public boolean checkBudget(String holder, Collection<?> rows) {
+        int budget = AppConfig.getInt("heap.tableBudgetRows", 5000);
+        if (rows.size() <= budget) {
+            overBudget.remove(holder);
+            return false;
+        }
+        if (overBudget.add(holder)) {
+            long bytes = 0;
+            for (long[] counts : measure(new ArrayList<>(rows), Collections.newSetFromMap(new IdentityHashMap<>())).values()) {
+                bytes += counts[1];
+            }
+            LOG.log(System.Logger.Level.WARNING,
+                    "{0} tiene {1} filas (presupuesto: {2}); retiene unos {3} KB",
+                    holder, rows.size(), budget, bytes / 1024);
+        }
+        return true;
+    }
+
+    private static void addRows(List<Row> rows, String holder, Map<Class<?>, long[]> counts) {
+        for (Class<?> type : ROW_TYPES) {
+            long[] c = counts.get(type);
+            rows.add(new Row(holder, type.getSimpleName(), c[0], c[1]));
+        }
+    }
+
+    /**
+     * Recorre el grafo desde las raíces y acumula, por tipo de fila, instancias y bytes.
+     * Cada objeto se atribuye a la entidad más cercana desde la que se alcanzó.
+     *
+     * @param roots Entidades raíz.
+     * @param seen Objetos ya contabilizados (no se vuelven a contar).
+     * @return Por tipo de fila, {@code [instancias, bytes]}.
+     */
+    private static Map<Class<?>, long[]> measure(List<Object> roots, Set<Object> seen) {
+        Map<Class<?>, long[]> counts = new LinkedHashMap<>();
+        for (Class<?> type : ROW_TYPES) {
+            counts.put(type, new long[2]);
+        }
+        Deque<Object[]> pending = new ArrayDeque<>();
+        for (Object root : roots) {
+            pending.push(new Object[]{root, null});
+        }
+        while (!pending.isEmpty()) {
+            Object[] next = pending.pop();
+            Object obj = next[0];
+            if (obj == null || !seen.add(obj)) {
+                continue;
+            }
+            Class<?> owner = rowType(obj.getClass());
+            if (owner != null) {
+                counts.get(owner)[0]++;
+            } else {
+                owner = (Class<?>) next[1];
+            }
+            long size = visit(obj, owner, pending);
+            if (owner != null) {
+                counts.get(owner)[1] += size;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Tamaño superficial estimado de un objeto; apila sus referencias a recorrer.
+     */
+    private static long visit(Object obj, Class<?> owner, Deque<Object[]> pending) {
+        if (obj instanceof String s) {
+            boolean latin1 = s.chars().allMatch(ch -> ch < 256);
+            return align(HEADER + REFERENCE + 4 + 1 + 1) + align(ARRAY_HEADER + (long) s.length() * (latin1 ? 1 : 2));
+        }
+        if (obj instanceof Number || obj instanceof Boolean || obj instanceof Character || obj instanceof Enum<?>) {
+            return obj instanceof Long || obj instanceof Double ? 24 : 16;
+        }
+        if (obj instanceof Temporal) {
+            return 24;
+        }
+        if (obj instanceof Collection<?> collection) {
+            // ArrayList o similar: objeto, arreglo de referencias y una entrada por elemento en conjuntos.
+            int size = collection.size();
+            long bytes = align(HEADER + 4 + 4 + REFERENCE) + align(ARRAY_HEADER + (long) size * REFERENCE);
+            if (collection instanceof Set<?>) {
+                bytes += (long) size * 32;
+            }
+            for (Object element : collection) {
+                pending.push(new Object[]{element, owner});
+            }
+            return bytes;
+        }
+        if (obj instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                pending.push(new Object[]{entry.getKey(), owner});
+                pending.push(new Object[]{entry.getValue(), owner});
+            }
+            return align(HEADER + 4 * 4 + REFERENCE * 3) + align(ARRAY_HEADER + (long) map.size() * REFERENCE * 2)
+                    + (long) map.size() * 32;
+        }
+        if (!obj.getClass().getName().startsWith("org.example.retoconjuntoad_di_2.")) {
+            // Clases de bibliotecas: sin acceso a sus campos, se cuentan como un objeto vacío.
+            return align(HEADER);
+        }
+        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    pending.push(new Object[]{field.get(obj), owner});
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // Campo inaccesible: se omite de la estimación.
+                }
+            }
+        }
+        return SHALLOW_SIZE.get(obj.getClass());
+    }
+
+    private static Class<?> rowType(Class<?> type) {
+        for (Class<?> rowType : ROW_TYPES) {
+            if (rowType.isAssignableFrom(type)) {
+                return rowType;
+            }
+        }
+        return null;
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+/**
+ * Interfaz JMX de la contabilidad de memoria de las entidades cargadas.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see HeapFootprint
+ */
+public interface HeapFootprintMBean {
+
+    /**
+     * @return Informe en texto: instancias y bytes estimados por contenedor y tipo de entidad.
+     */
+    String dump();
+}
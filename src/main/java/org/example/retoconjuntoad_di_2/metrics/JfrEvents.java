@@ -0,0 +1,55 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Configuración común de los eventos propios de JDK Flight Recorder.
+ * <p>
+ * Los eventos ({@link RepositoryCallEvent}, {@link TransactionEvent} y
+ * {@link SceneLoadEvent}) solo se crean si se arranca la aplicación con
+ * {@code -Dgestor.jfr.enabled=true}. Con la opción desactivada, cada punto de emisión
+ * se reduce a comprobar una constante, sin crear objetos. Con la opción activada, los
+ * eventos aparecen en la categoría "Gestor de Películas" de cualquier grabación, por
+ * ejemplo con {@code -XX:StartFlightRecording=filename=gestor.jfr}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public final class JfrEvents {
+
+    /**
+     * Categoría de los eventos en JDK Mission Control.
+     */
+    static final String CATEGORY = "Gestor de Películas";
+
+    /**
+     * Indica si se emiten los eventos.
+     */
+    public static final boolean ENABLED = AppConfig.getBoolean("jfr.enabled", false);
+
+    private JfrEvents() {}
+
+    /**
+     * Número de filas que representa el resultado de un método de repositorio.
+     *
+     * @param result Resultado devuelto por el método.
+     * @return Tamaño de la lista, valor del contador, 1 o 0 para un Optional o una
+     *         entidad, o -1 si no se puede deducir.
+     */
+    static long rows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof Number number) {
+            return number.longValue();
+        }
+        return result != null ? 1 : -1;
+    }
+}
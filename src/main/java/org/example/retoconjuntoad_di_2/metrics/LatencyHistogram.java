@@ -0,0 +1,159 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias con cubetas log-lineales, al estilo de HdrHistogram.
+ * <p>
+ * Cada potencia de dos se divide en {@value #SUB_BUCKETS} cubetas iguales, de modo que
+ * el error relativo de cualquier valor registrado es inferior al 7 % en todo el rango
+ * (de 1 ns a varios siglos) con menos de mil contadores. Registrar un valor solo
+ * incrementa contadores atómicos: no hay cerrojos y varios hilos pueden registrar a la
+ * vez sin bloquearse.
+ * </p>
+ * <p>
+ * Las lecturas ({@link #getValueAtPercentile}, {@link #getCount}...) no detienen a los
+ * hilos que registran, así que pueden no incluir los valores que se están registrando en
+ * ese momento.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Bits de la mantisa: cada potencia de dos se divide en 2<sup>{@value #SUB_BITS}-1</sup> cubetas.
+     */
+    private static final int SUB_BITS = 5;
+
+    /**
+     * Número de cubetas por potencia de dos a partir de 2<sup>{@value #SUB_BITS}</sup>.
+     */
+    private static final int SUB_BUCKETS = 1 << (SUB_BITS - 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Registra un valor.
+     *
+     * @param value Valor a registrar (los negativos se registran como 0).
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(v));
+        total.increment();
+        sum.add(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Número de valores registrados.
+     *
+     * @return Total de valores.
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Suma de los valores registrados.
+     *
+     * @return Suma exacta de los valores.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Mayor valor registrado.
+     *
+     * @return Máximo exacto, o 0 si no hay valores.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Media de los valores registrados.
+     *
+     * @return Media, o 0 si no hay valores.
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * Devuelve el valor por debajo del cual queda el porcentaje indicado de registros.
+     *
+     * @param percentile Percentil entre 0 y 100.
+     * @return Límite superior de la cubeta que contiene el percentil (como máximo el
+     *         máximo registrado), o 0 si no hay valores.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Pone a cero todos los contadores.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Cubeta de un valor no negativo.
+     */
+    private static int indexOf(long value) {
+        if (value < (1L << SUB_BITS)) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1);
+        int mantissa = (int) (value >>> shift);
+        return shift * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * Mayor valor que cae en una cubeta.
+     */
+    private static long highestEquivalent(int index) {
+        if (index < (1 << SUB_BITS)) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        long lowest = mantissa << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de un método de repositorio: llamadas, errores e histograma de latencias.
+ * <p>
+ * Las latencias se registran en nanosegundos en un {@link LatencyHistogram}; todos los
+ * contadores admiten registros concurrentes sin cerrojos.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see RepositoryMetrics
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String entity;
+    private final String method;
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Crea las métricas de un método.
+     *
+     * @param entity Nombre simple de la entidad del repositorio.
+     * @param method Nombre del método.
+     */
+    OperationMetrics(String entity, String method) {
+        this.entity = entity;
+        this.method = method;
+    }
+
+    /**
+     * Registra una llamada completada.
+     *
+     * @param elapsedNanos Duración de la llamada en nanosegundos.
+     * @param failed {@code true} si la llamada lanzó una excepción.
+     */
+    public void record(long elapsedNanos, boolean failed) {
+        latency.record(elapsedNanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * @return Nombre simple de la entidad del repositorio.
+     */
+    public String getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return Nombre del método.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return Histograma de latencias en nanosegundos.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return latency.getValueAtPercentile(90) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.reset();
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+/**
+ * Interfaz JMX de las métricas de un método de repositorio.
+ * <p>
+ * Cada método instrumentado se publica en el servidor de MBeans de la plataforma con el
+ * nombre {@code org.example.retoconjuntoad_di_2:type=Repository,entity=<Entidad>,method=<método>},
+ * de modo que puede consultarse con JConsole o VisualVM mientras la aplicación se ejecuta.
+ * Las latencias se expresan en milisegundos.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see OperationMetrics
+ */
+public interface OperationMetricsMBean {
+
+    /**
+     * @return Número de llamadas completadas (con o sin error).
+     */
+    long getCalls();
+
+    /**
+     * @return Número de llamadas que terminaron lanzando una excepción.
+     */
+    long getErrors();
+
+    /**
+     * @return Latencia media en milisegundos.
+     */
+    double getMeanMillis();
+
+    /**
+     * @return Mediana de la latencia en milisegundos.
+     */
+    double getP50Millis();
+
+    /**
+     * @return Percentil 90 de la latencia en milisegundos.
+     */
+    double getP90Millis();
+
+    /**
+     * @return Percentil 99 de la latencia en milisegundos.
+     */
+    double getP99Millis();
+
+    /**
+     * @return Percentil 99,9 de la latencia en milisegundos.
+     */
+    double getP999Millis();
+
+    /**
+     * @return Latencia máxima en milisegundos.
+     */
+    double getMaxMillis();
+
+    /**
+     * Pone a cero los contadores y el histograma.
+     */
+    void reset();
+}
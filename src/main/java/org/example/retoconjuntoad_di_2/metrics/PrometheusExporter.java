@@ -0,0 +1,142 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Exporta las métricas de los repositorios en el formato de texto de Prometheus.
+ * <p>
+ * {@link #scrape()} genera el volcado completo en cualquier momento. Además,
+ * {@link #start(int)} publica ese mismo texto en {@code http://127.0.0.1:<puerto>/metrics}
+ * para que un Prometheus local (o un simple {@code curl}) pueda consultarlo. El servidor
+ * solo escucha en la interfaz de bucle local.
+ * </p>
+ * <p>
+ * Por cada método de repositorio se exportan:
+ * </p>
+ * <ul>
+ *     <li>{@code gestor_repository_calls_total}: llamadas completadas.</li>
+ *     <li>{@code gestor_repository_errors_total}: llamadas terminadas con excepción.</li>
+ *     <li>{@code gestor_repository_latency_seconds}: resumen con los cuantiles 0,5, 0,9,
+ *     0,99 y 0,999, la suma y el número de llamadas.</li>
+ *     <li>{@code gestor_repository_latency_max_seconds}: latencia máxima.</li>
+ * </ul>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see RepositoryMetrics
+ */
+public final class PrometheusExporter {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static HttpServer server = null;
+
+    private PrometheusExporter() {}
+
+    /**
+     * Genera el volcado de todas las métricas en formato de texto de Prometheus.
+     *
+     * @return Texto de exposición (versión 0.0.4).
+     */
+    public static String scrape() {
+        List<OperationMetrics> all = RepositoryMetrics.all();
+        StringBuilder out = new StringBuilder(256 + all.size() * 512);
+
+        header(out, "gestor_repository_calls_total", "counter", "Llamadas a metodos de repositorio.");
+        for (OperationMetrics m : all) {
+            sample(out, "gestor_repository_calls_total", m, null, m.getCalls());
+        }
+        header(out, "gestor_repository_errors_total", "counter", "Llamadas a metodos de repositorio terminadas con excepcion.");
+        for (OperationMetrics m : all) {
+            sample(out, "gestor_repository_errors_total", m, null, m.getErrors());
+        }
+        header(out, "gestor_repository_latency_seconds", "summary", "Latencia de los metodos de repositorio.");
+        for (OperationMetrics m : all) {
+            LatencyHistogram latency = m.getLatency();
+            for (double q : QUANTILES) {
+                sample(out, "gestor_repository_latency_seconds", m, q,
+                        latency.getValueAtPercentile(q * 100) / NANOS_PER_SECOND);
+            }
+            sample(out, "gestor_repository_latency_seconds_sum", m, null, latency.getSum() / NANOS_PER_SECOND);
+            sample(out, "gestor_repository_latency_seconds_count", m, null, latency.getCount());
+        }
+        header(out, "gestor_repository_latency_max_seconds", "gauge", "Latencia maxima de los metodos de repositorio.");
+        for (OperationMetrics m : all) {
+            sample(out, "gestor_repository_latency_max_seconds", m, null, m.getLatency().getMax() / NANOS_PER_SECOND);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Inicia el servidor HTTP local que publica {@link #scrape()} en {@code /metrics}.
+     * No hace nada si ya está iniciado.
+     *
+     * @param port Puerto TCP en la interfaz de bucle local.
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public static synchronized void start(int port) throws IOException {
+        if (server != null) {
+            return;
+        }
+        HttpServer created = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        created.createContext("/metrics", PrometheusExporter::handle);
+        created.start();
+        server = created;
+    }
+
+    /**
+     * Detiene el servidor HTTP, si está iniciado.
+     */
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, OperationMetrics m, Double quantile, double value) {
+        out.append(name)
+                .append("{entity=\"").append(m.getEntity())
+                .append("\",method=\"").append(m.getMethod()).append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        out.append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.9g", value));
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Parameter;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.example.retoconjuntoad_di_2.utils.VersionedEntity;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Capa de intercepción de consultas JPA.
+ * <p>
+ * {@link #wrap(EntityManager)} devuelve un EntityManager que delega todo en el original
+ * salvo la creación de consultas: las consultas que crea recuerdan su texto y los
+ * parámetros que se les enlazan, y miden su ejecución ({@code getResultList},
+ * {@code getSingleResult}, {@code executeUpdate}...) para anotarla en {@link SlowQueryLog}
+ * si supera el umbral. {@link org.example.retoconjuntoad_di_2.utils.UnitOfWork} entrega
+ * este EntityManager a los repositorios, de modo que todas sus consultas pasan por aquí
+ * sin cambiar su código.
+ * </p>
+ * <p>
+ * Los parámetros que son entidades se anotan como {@code Tipo#id}, sin su contenido
+ * (por ejemplo, sin la contraseña de un {@code User}).
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see SlowQueryLog
+ */
+public final class QueryInterceptor {
+
+    /**
+     * Métodos que ejecutan la consulta.
+     */
+    private static final Set<String> EXECUTIONS =
+            Set.of("getResultList", "getSingleResult", "getSingleResultOrNull", "executeUpdate");
+
+    /**
+     * Longitud máxima del texto de un parámetro.
+     */
+    private static final int MAX_PARAMETER_LENGTH = 80;
+
+    private QueryInterceptor() {}
+
+    /**
+     * Envuelve un EntityManager para medir sus consultas.
+     *
+     * @param em EntityManager original.
+     * @return EntityManager interceptado, o el original si el registro está desactivado.
+     */
+    public static EntityManager wrap(EntityManager em) {
+        if (!SlowQueryLog.getInstance().isEnabled() || Proxy.isProxyClass(em.getClass())) {
+            return em;
+        }
+        return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+                    Object result = invoke(em, method, args);
+                    if (result instanceof Query query && method.getName().startsWith("create")) {
+                        String jpql = args != null && args.length > 0 ? String.valueOf(args[0]) : "?";
+                        Class<?> type = result instanceof TypedQuery<?> ? TypedQuery.class : Query.class;
+                        return Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+                                new Class<?>[]{type}, new QueryHandler(query, jpql));
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Intercepta una consulta: enlace de parámetros y ejecución.
+     */
+    private static final class QueryHandler implements InvocationHandler {
+        private final Query target;
+        private final String jpql;
+        private final Map<String, String> parameters = new LinkedHashMap<>();
+
+        private QueryHandler(Query target, String jpql) {
+            this.target = target;
+            this.jpql = jpql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("setParameter") && args != null && args.length >= 2) {
+                parameters.put(parameterName(args[0]), describe(args[1]));
+            }
+            if (!EXECUTIONS.contains(name)) {
+                Object result = QueryInterceptor.invoke(target, method, args);
+                // Las llamadas encadenadas deben seguir pasando por el proxy.
+                return result == target ? proxy : result;
+            }
+
+            long start = System.nanoTime();
+            Object result = QueryInterceptor.invoke(target, method, args);
+            long elapsed = System.nanoTime() - start;
+            SlowQueryLog.getInstance().record(jpql, Map.copyOf(parameters), rows(result), elapsed);
+            return result;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int rows(Object result) {
+        if (result instanceof List<?> list) {
+            return list.size();
+        }
+        if (result instanceof Integer updated) {
+            return updated;
+        }
+        return result != null ? 1 : 0;
+    }
+
+    private static String parameterName(Object key) {
+        if (key instanceof Parameter<?> parameter) {
+            return parameter.getName() != null ? parameter.getName() : "?" + parameter.getPosition();
+        }
+        return key instanceof Integer position ? "?" + position : String.valueOf(key);
+    }
+
+    private static String describe(Object value) {
+        if (value instanceof VersionedEntity entity) {
+            return entity.getClass().getSimpleName() + "#" + entity.getId();
+        }
+        if (value instanceof Collection<?> values) {
+            String text = values.size() + " valores " + values;
+            return text.length() > MAX_PARAMETER_LENGTH ? text.substring(0, MAX_PARAMETER_LENGTH) + "...]" : text;
+        }
+        String text = String.valueOf(value);
+        return text.length() > MAX_PARAMETER_LENGTH ? text.substring(0, MAX_PARAMETER_LENGTH) + "..." : text;
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento de JFR de una llamada a un método de repositorio.
+ * <p>
+ * Lo emite {@link RepositoryMetrics#time} con la entidad, el método, las filas
+ * devueltas o afectadas y si terminó con error; su duración es la de la llamada.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see JfrEvents
+ */
+@Name("org.example.retoconjuntoad_di_2.RepositoryCall")
+@Label("Llamada a repositorio")
+@Category({JfrEvents.CATEGORY, "Persistencia"})
+@Description("Llamada a un método de un repositorio")
+public final class RepositoryCallEvent extends Event {
+
+    @Label("Entidad")
+    private String entity;
+
+    @Label("Método")
+    private String method;
+
+    @Label("Filas")
+    @Description("Filas devueltas o afectadas (-1 si no se conocen)")
+    private long rows;
+
+    @Label("Error")
+    private boolean failed;
+
+    /**
+     * Inicia un evento si los eventos están activados.
+     *
+     * @return Evento iniciado, o {@code null} si están desactivados.
+     */
+    static RepositoryCallEvent start() {
+        if (!JfrEvents.ENABLED) {
+            return null;
+        }
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Termina y confirma un evento iniciado con {@link #start()}.
+     *
+     * @param event Evento (se ignora si es {@code null}).
+     * @param entity Nombre simple de la entidad.
+     * @param method Nombre del método.
+     * @param result Resultado de la llamada.
+     * @param failed {@code true} si la llamada lanzó una excepción.
+     */
+    static void end(RepositoryCallEvent event, String entity, String method, Object result, boolean failed) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.entity = entity;
+            event.method = method;
+            event.rows = failed ? -1 : JfrEvents.rows(result);
+            event.failed = failed;
+            event.commit();
+        }
+    }
+}
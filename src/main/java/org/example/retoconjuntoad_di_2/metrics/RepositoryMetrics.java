@@ -0,0 +1,157 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registro de métricas de los repositorios.
+ * <p>
+ * Cada repositorio obtiene con {@link #forEntity(Class)} las métricas de su entidad y
+ * envuelve cada método público con {@link #time(String, Supplier)}, que cuenta la llamada,
+ * mide su duración y anota si terminó con una excepción. Las métricas de cada par
+ * entidad/método ({@link OperationMetrics}) se crean en la primera llamada, se registran
+ * como MBean en el servidor JMX de la plataforma y pueden exportarse en formato de texto
+ * de Prometheus con {@link PrometheusExporter}.
+ * </p>
+ * <p>
+ * Las llamadas anidadas (por ejemplo, {@code deleteById} que invoca a {@code delete}) se
+ * miden por separado, cada una con su propia duración.
+ * </p>
+ * <p>
+ * La medición se desactiva con {@code -Dgestor.metrics.enabled=false} y el registro JMX
+ * con {@code -Dgestor.metrics.jmx=false}. Si están activados los eventos de JFR
+ * ({@link JfrEvents}), cada llamada emite además un {@link RepositoryCallEvent}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see OperationMetrics
+ */
+public final class RepositoryMetrics {
+
+    private static final System.Logger LOG = System.getLogger(RepositoryMetrics.class.getName());
+
+    /**
+     * Dominio JMX de las métricas.
+     */
+    static final String JMX_DOMAIN = "org.example.retoconjuntoad_di_2";
+
+    private static final boolean ENABLED = AppConfig.getBoolean("metrics.enabled", true);
+    private static final boolean JMX = AppConfig.getBoolean("metrics.jmx", true);
+
+    /**
+     * Métricas de todas las entidades, por nombre simple de la entidad.
+     */
+    private static final Map<String, RepositoryMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String entity;
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    private RepositoryMetrics(String entity) {
+        this.entity = entity;
+    }
+
+    /**
+     * Devuelve las métricas de los repositorios de una entidad, creándolas si no existen.
+     *
+     * @param entityClass Clase de la entidad.
+     * @return Métricas compartidas por todos los repositorios de esa entidad.
+     */
+    public static RepositoryMetrics forEntity(Class<?> entityClass) {
+        return REGISTRY.computeIfAbsent(entityClass.getSimpleName(), RepositoryMetrics::new);
+    }
+
+    /**
+     * Ejecuta y mide una llamada a un método del repositorio.
+     *
+     * @param method Nombre del método.
+     * @param call Cuerpo del método.
+     * @param <T> Tipo del resultado.
+     * @return Resultado de la llamada.
+     */
+    public <T> T time(String method, Supplier<T> call) {
+        if (!ENABLED && !JfrEvents.ENABLED) {
+            return call.get();
+        }
+        RepositoryCallEvent event = RepositoryCallEvent.start();
+        long start = System.nanoTime();
+        boolean failed = true;
+        T result = null;
+        try {
+            result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            if (ENABLED) {
+                operation(method).record(System.nanoTime() - start, failed);
+            }
+            RepositoryCallEvent.end(event, entity, method, result, failed);
+        }
+    }
+
+    /**
+     * Devuelve las métricas de un método, creándolas y registrándolas en JMX si no existen.
+     *
+     * @param method Nombre del método.
+     * @return Métricas del método.
+     */
+    public OperationMetrics operation(String method) {
+        OperationMetrics metrics = operations.get(method);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(method, m -> {
+                OperationMetrics created = new OperationMetrics(entity, m);
+                if (JMX) {
+                    register(created);
+                }
+                return created;
+            });
+        }
+        return metrics;
+    }
+
+    /**
+     * Devuelve las métricas de todos los métodos medidos, ordenadas por entidad y método.
+     *
+     * @return Lista de métricas (una copia; las métricas siguen actualizándose).
+     */
+    public static List<OperationMetrics> all() {
+        List<OperationMetrics> result = new ArrayList<>();
+        for (RepositoryMetrics repository : REGISTRY.values()) {
+            result.addAll(repository.operations.values());
+        }
+        result.sort(Comparator.comparing(OperationMetrics::getEntity).thenComparing(OperationMetrics::getMethod));
+        return result;
+    }
+
+    /**
+     * Pone a cero las métricas de todos los métodos.
+     */
+    public static void resetAll() {
+        for (OperationMetrics metrics : all()) {
+            metrics.reset();
+        }
+    }
+
+    private static void register(OperationMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Repository,entity="
+                    + metrics.getEntity() + ",method=" + metrics.getMethod());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            LOG.log(System.Logger.Level.WARNING, "No se pudo registrar la métrica en JMX", e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento de JFR de la carga de una vista FXML (escena principal o diálogo).
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see JfrEvents
+ * @see org.example.retoconjuntoad_di_2.utils.JavaFXUtil#load(javafx.fxml.FXMLLoader)
+ */
+@Name("org.example.retoconjuntoad_di_2.SceneLoad")
+@Label("Carga de vista FXML")
+@Category({JfrEvents.CATEGORY, "Interfaz"})
+@Description("Carga de un archivo FXML con su controlador")
+public final class SceneLoadEvent extends Event {
+
+    @Label("Vista")
+    private String fxml;
+
+    @Label("Error")
+    private boolean failed;
+
+    /**
+     * Inicia un evento si los eventos están activados.
+     *
+     * @return Evento iniciado, o {@code null} si están desactivados.
+     */
+    public static SceneLoadEvent start() {
+        if (!JfrEvents.ENABLED) {
+            return null;
+        }
+        SceneLoadEvent event = new SceneLoadEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Termina y confirma un evento iniciado con {@link #start()}.
+     *
+     * @param event Evento (se ignora si es {@code null}).
+     * @param fxml Vista cargada.
+     * @param failed {@code true} si la carga falló.
+     */
+    public static void end(SceneLoadEvent event, String fxml, boolean failed) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.fxml = fxml;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registro de consultas lentas en un búfer circular de tamaño fijo.
+ * <p>
+ * {@link QueryInterceptor} mide cada consulta JPQL que ejecutan los repositorios y, si
+ * tarda más que el umbral configurado, la anota aquí con su texto, sus parámetros, el
+ * número de filas devueltas o modificadas y su duración. Cuando el búfer se llena, cada
+ * entrada nueva sustituye a la más antigua; anotar una entrada no usa cerrojos.
+ * </p>
+ * <p>
+ * El contenido puede volcarse en cualquier momento con {@link #dump()}, también desde
+ * JMX ({@code org.example.retoconjuntoad_di_2:type=SlowQueryLog}). Cada consulta lenta se
+ * registra además en el log con nivel {@code WARNING}.
+ * </p>
+ * <p>
+ * Configuración: {@code -Dgestor.queries.slowMillis} (umbral, 100 ms),
+ * {@code -Dgestor.queries.slowLog.capacity} (256 entradas) y
+ * {@code -Dgestor.queries.slowLog.enabled} (true).
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see QueryInterceptor
+ */
+public final class SlowQueryLog implements SlowQueryLogMBean {
+
+    private static final System.Logger LOG = System.getLogger(SlowQueryLog.class.getName());
+
+    private static final SlowQueryLog INSTANCE = new SlowQueryLog(
+            AppConfig.getBoolean("queries.slowLog.enabled", true),
+            AppConfig.getLong("queries.slowMillis", 100),
+            AppConfig.getInt("queries.slowLog.capacity", 256));
+
+    static {
+        if (INSTANCE.enabled && AppConfig.getBoolean("metrics.jmx", true)) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                        new ObjectName(RepositoryMetrics.JMX_DOMAIN + ":type=SlowQueryLog"));
+            } catch (JMException e) {
+                LOG.log(System.Logger.Level.WARNING, "No se pudo registrar el registro de consultas lentas en JMX", e);
+            }
+        }
+    }
+
+    /**
+     * Consulta lenta anotada.
+     *
+     * @param at Instante en que terminó la consulta.
+     * @param jpql Texto de la consulta.
+     * @param parameters Parámetros enlazados, ya convertidos a texto.
+     * @param rows Filas devueltas o modificadas (-1 si no se conocen).
+     * @param elapsedNanos Duración de la ejecución en nanosegundos.
+     * @param thread Nombre del hilo que la ejecutó.
+     */
+    public record Entry(Instant at, String jpql, Map<String, String> parameters,
+                        int rows, long elapsedNanos, String thread) {
+
+        @Override
+        public String toString() {
+            return String.format("%s [%s] %d ms, %d filas: %s %s", at, thread,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rows, jpql, parameters);
+        }
+    }
+
+    private final boolean enabled;
+    private final long thresholdNanos;
+    private final AtomicReferenceArray<Entry> ring;
+
+    /**
+     * Número de entradas anotadas desde el arranque; su resto módulo la capacidad es la
+     * siguiente posición del búfer.
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    private SlowQueryLog(boolean enabled, long thresholdMillis, int capacity) {
+        this.enabled = enabled;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, thresholdMillis));
+        this.ring = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Devuelve el registro de la aplicación.
+     *
+     * @return Instancia única.
+     */
+    public static SlowQueryLog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Indica si hay que medir las consultas.
+     *
+     * @return {@code false} si el registro está desactivado.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Anota una consulta si ha superado el umbral.
+     *
+     * @param jpql Texto de la consulta.
+     * @param parameters Parámetros enlazados.
+     * @param rows Filas devueltas o modificadas (-1 si no se conocen).
+     * @param elapsedNanos Duración de la ejecución.
+     */
+    void record(String jpql, Map<String, String> parameters, int rows, long elapsedNanos) {
+        if (elapsedNanos < thresholdNanos) {
+            return;
+        }
+        Entry entry = new Entry(Instant.now(), jpql, parameters, rows, elapsedNanos,
+                Thread.currentThread().getName());
+        ring.set((int) (written.getAndIncrement() % ring.length()), entry);
+        LOG.log(System.Logger.Level.WARNING, "Consulta lenta: {0}", entry);
+    }
+
+    /**
+     * Devuelve las entradas del búfer, de la más antigua a la más reciente.
+     *
+     * @return Copia de las entradas actuales.
+     */
+    public List<Entry> entries() {
+        long end = written.get();
+        long start = Math.max(0, end - ring.length());
+        List<Entry> result = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Entry entry = ring.get((int) (i % ring.length()));
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Entry entry : entries()) {
+            out.append(entry).append('\n');
+        }
+        return out.toString();
+    }
+
+    @Override
+    public long getSlowQueries() {
+        return written.get();
+    }
+
+    @Override
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+    }
+}
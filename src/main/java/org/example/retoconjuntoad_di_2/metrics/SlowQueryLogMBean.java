@@ -0,0 +1,31 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+/**
+ * Interfaz JMX del registro de consultas lentas.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see SlowQueryLog
+ */
+public interface SlowQueryLogMBean {
+
+    /**
+     * @return Texto con las consultas lentas del búfer, una por línea, de la más antigua a la más reciente.
+     */
+    String dump();
+
+    /**
+     * @return Número de consultas lentas anotadas desde el arranque (incluidas las ya descartadas del búfer).
+     */
+    long getSlowQueries();
+
+    /**
+     * @return Umbral a partir del cual una consulta se considera lenta, en milisegundos.
+     */
+    long getThresholdMillis();
+
+    /**
+     * Vacía el búfer.
+     */
+    void clear();
+}
@@ -0,0 +1,67 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento de JFR de una transacción de {@link org.example.retoconjuntoad_di_2.utils.UnitOfWork}.
+ * <p>
+ * Abarca desde el {@code begin} hasta el {@code commit} o el {@code rollback} de la
+ * unidad más externa, e incluye por separado el tiempo del propio {@code commit}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see JfrEvents
+ */
+@Name("org.example.retoconjuntoad_di_2.Transaction")
+@Label("Transacción")
+@Category({JfrEvents.CATEGORY, "Persistencia"})
+@Description("Transacción de una unidad de trabajo, de begin a commit o rollback")
+public final class TransactionEvent extends Event {
+
+    @Label("Resultado")
+    @Description("COMMIT o ROLLBACK")
+    private String outcome;
+
+    @Label("Duración del commit")
+    @Timespan(Timespan.NANOSECONDS)
+    private long commitDuration;
+
+    /**
+     * Inicia un evento si los eventos están activados.
+     *
+     * @return Evento iniciado, o {@code null} si están desactivados.
+     */
+    public static TransactionEvent start() {
+        if (!JfrEvents.ENABLED) {
+            return null;
+        }
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Termina y confirma un evento iniciado con {@link #start()}.
+     *
+     * @param event Evento (se ignora si es {@code null}).
+     * @param committed {@code true} si la transacción se confirmó.
+     * @param commitNanos Tiempo del {@code commit} en nanosegundos (0 si no se llegó a hacer).
+     */
+    public static void end(TransactionEvent event, boolean committed, long commitNanos) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = committed ? "COMMIT" : "ROLLBACK";
+            event.commitDuration = commitNanos;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.retoconjuntoad_di_2.migration;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Paso de migración de la base de datos a una versión del esquema.
+ * <p>
+ * Una migración se ejecuta por lotes: {@link SchemaMigrator} llama a
+ * {@link #migrateBatch(EntityManager, Long, int)} una y otra vez, cada vez en una
+ * transacción nueva, pasándole el punto de control que devolvió la llamada anterior,
+ * hasta que devuelve {@code null}. El punto de control se guarda en la misma transacción
+ * que los cambios del lote, así que una migración interrumpida continúa por el lote
+ * siguiente al último confirmado, y ningún lote carga más de {@code batchSize} filas.
+ * </p>
+ * <p>
+ * Las migraciones se ejecutan en segundo plano con la aplicación ya abierta: la
+ * aplicación debe funcionar igual con los datos a medio migrar, y cada lote debe poder
+ * repetirse sin efectos si se confirma dos veces.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see SchemaMigrator
+ */
+public interface Migration {
+
+    /**
+     * @return Versión del esquema a la que lleva esta migración. Las versiones son
+     *         consecutivas desde 1 y nunca se reutilizan.
+     */
+    int getVersion();
+
+    /**
+     * @return Descripción breve, que se guarda con la versión aplicada.
+     */
+    String getDescription();
+
+    /**
+     * Migra un lote.
+     *
+     * @param em EntityManager de la transacción del lote.
+     * @param checkpoint Punto de control del lote anterior, o {@code null} en el primero.
+     * @param batchSize Número máximo de filas del lote.
+     * @return Punto de control para el lote siguiente, o {@code null} si la migración ha terminado.
+     */
+    Long migrateBatch(EntityManager em, Long checkpoint, int batchSize);
+}
@@ -0,0 +1,186 @@
+package org.example.retoconjuntoad_di_2.migration;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaCounterMigration;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaEnumMigration;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaTimestampMigration;
+import org.example.retoconjuntoad_di_2.model.pelicula.CatalogTermMigration;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Motor de migraciones del esquema de la base de datos.
+ * <p>
+ * Aplica en orden de versión las {@link Migration} que la base de datos aún no tiene
+ * completadas, registrando en {@link SchemaVersion} la versión y el punto de control de
+ * cada una. Cada lote es una transacción propia que avanza el punto de control junto
+ * con sus cambios, de modo que la memoria usada no depende del tamaño de la base de
+ * datos y una ejecución interrumpida (cierre de la aplicación, caída del proceso)
+ * continúa en el siguiente arranque por el último lote confirmado.
+ * </p>
+ * <p>
+ * {@code DataProvider} lo ejecuta al abrir la base de datos, en un hilo de baja
+ * prioridad, con lotes de {@code gestor.migration.batchSize} (500) filas y una pausa de
+ * {@code gestor.migration.pauseMillis} (20) entre lotes para no acaparar la puerta de
+ * escritura. Si la base de datos tiene aplicada una versión que esta aplicación no
+ * conoce (la ha abierto una versión más nueva), no se migra nada.
+ * </p>
+ * <p>
+ * Para añadir una migración, se implementa {@link Migration} con la versión siguiente a
+ * la última y se añade a {@link #migrations()}. Las versiones publicadas no se modifican.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public class SchemaMigrator {
+
+    private static final System.Logger LOG = System.getLogger(SchemaMigrator.class.getName());
+
+    private final EntityManagerFactory emf;
+    private final List<Migration> migrations;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final Thread worker;
+
+    /**
+     * Crea el motor sin iniciarlo.
+     *
+     * @param emf Factoría de la base de datos a migrar.
+     * @param migrations Migraciones conocidas, en cualquier orden.
+     * @param batchSize Número máximo de filas por lote.
+     * @param pauseMillis Pausa entre lotes, en milisegundos.
+     */
+    public SchemaMigrator(EntityManagerFactory emf, List<Migration> migrations, int batchSize, long pauseMillis) {
+        this.emf = emf;
+        this.migrations = migrations.stream().sorted(Comparator.comparingInt(Migration::getVersion)).toList();
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.worker = new Thread(this::runInBackground, "schema-migrator");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Devuelve las migraciones de la aplicación, en orden de versión.
+     *
+     * @return Instancias nuevas de todas las migraciones.
+     */
+    public static List<Migration> migrations() {
+        return List.of(
+                new CopiaEnumMigration(),
+                new CatalogTermMigration(),
+                new CopiaCounterMigration(),
+                new CopiaTimestampMigration());
+    }
+
+    /**
+     * Devuelve la versión del esquema de la base de datos.
+     *
+     * @return Mayor versión completada, o 0 si no hay ninguna.
+     */
+    public int getVersion() {
+        return maxVersion(" where v.completed = true");
+    }
+
+    private int maxVersion(String where) {
+        Integer max = UnitOfWork.read(emf, em -> em.createQuery(
+                "select max(v.version) from SchemaVersion v" + where, Integer.class).getSingleResult());
+        return max != null ? max : 0;
+    }
+
+    /**
+     * Inicia la migración en segundo plano.
+     */
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * Detiene la migración al terminar el lote en curso y espera a que acabe.
+     */
+    public void stop() {
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runInBackground() {
+        try {
+            migrate();
+        } catch (InterruptedException e) {
+            LOG.log(System.Logger.Level.INFO, "Migración del esquema interrumpida; continuará en el próximo arranque");
+        } catch (RuntimeException e) {
+            LOG.log(System.Logger.Level.WARNING, "La migración del esquema ha fallado", e);
+        }
+    }
+
+    /**
+     * Aplica en el hilo actual las migraciones pendientes.
+     *
+     * @return Versión del esquema al terminar.
+     * @throws InterruptedException Si se interrumpe el hilo entre dos lotes.
+     */
+    public int migrate() throws InterruptedException {
+        int known = migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+        int applied = maxVersion("");
+        if (applied > known) {
+            LOG.log(System.Logger.Level.WARNING,
+                    "La base de datos tiene la versión {0} del esquema y esta aplicación solo conoce hasta la {1}; no se migra",
+                    applied, known);
+            return getVersion();
+        }
+
+        for (Migration migration : migrations) {
+            SchemaVersion state = UnitOfWork.read(emf, em -> em.find(SchemaVersion.class, migration.getVersion()));
+            if (state != null && state.isCompleted()) {
+                continue;
+            }
+            if (state == null) {
+                LOG.log(System.Logger.Level.INFO, "Migrando a la versión {0} del esquema: {1}",
+                        migration.getVersion(), migration.getDescription());
+            } else {
+                LOG.log(System.Logger.Level.INFO, "Continuando la migración a la versión {0} tras {1} lotes",
+                        migration.getVersion(), state.getBatches());
+            }
+            run(migration);
+        }
+        return getVersion();
+    }
+
+    /**
+     * Ejecuta los lotes de una migración hasta completarla.
+     */
+    private void run(Migration migration) throws InterruptedException {
+        boolean completed = false;
+        while (!completed) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            completed = UnitOfWork.execute(emf, em -> {
+                SchemaVersion state = em.find(SchemaVersion.class, migration.getVersion());
+                if (state == null) {
+                    state = new SchemaVersion(migration);
+                    em.persist(state);
+                }
+                Long next = migration.migrateBatch(em, state.getCheckpoint(), batchSize);
+                state.setCheckpoint(next);
+                state.setBatches(state.getBatches() + 1);
+                if (next == null) {
+                    state.setCompleted(true);
+                    state.setCompletedAt(System.currentTimeMillis());
+                }
+                return next == null;
+            });
+            if (!completed && pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+        LOG.log(System.Logger.Level.INFO, "Versión {0} del esquema aplicada", migration.getVersion());
+    }
+}
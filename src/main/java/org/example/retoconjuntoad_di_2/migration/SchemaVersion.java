@@ -0,0 +1,75 @@
+package org.example.retoconjuntoad_di_2.migration;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Estado de una migración del esquema en la base de datos.
+ * <p>
+ * Hay una fila por cada {@link Migration} que se ha empezado a aplicar. Mientras no
+ * está completada, {@link #checkpoint} indica dónde continuar; la versión del esquema
+ * de la base de datos es la mayor de las completadas.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see SchemaMigrator
+ */
+@Entity
+@Table(name = "SchemaVersion")
+@Data
+@NoArgsConstructor
+public class SchemaVersion implements Serializable {
+
+    /**
+     * Versión del esquema a la que lleva la migración.
+     */
+    @Id
+    private int version;
+
+    /**
+     * Descripción de la migración.
+     */
+    private String description;
+
+    /**
+     * Punto de control del último lote confirmado, o {@code null} si aún no hay ninguno.
+     */
+    private Long checkpoint;
+
+    /**
+     * Número de lotes confirmados.
+     */
+    private long batches;
+
+    /**
+     * Indica si la migración ha terminado.
+     */
+    private boolean completed;
+
+    /**
+     * Momento en que empezó la migración (milisegundos desde la época).
+     */
+    private long startedAt;
+
+    /**
+     * Momento en que terminó la migración, o 0 si no ha terminado.
+     */
+    private long completedAt;
+
+    /**
+     * Crea el estado de una migración que empieza ahora.
+     *
+     * @param migration Migración.
+     */
+    SchemaVersion(Migration migration) {
+        this.version = migration.getVersion();
+        this.description = migration.getDescription();
+        this.startedAt = System.currentTimeMillis();
+    }
+}
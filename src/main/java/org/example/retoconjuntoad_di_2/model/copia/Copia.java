@@ -4,8 +4,13 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
 import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.TrackedEntity;
+import org.example.retoconjuntoad_di_2.utils.VersionedEntity;
 
 import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Clase que representa una copia física de una película en el sistema.
@@ -34,17 +39,17 @@ import java.io.Serializable;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class Copia implements Serializable {
+public class Copia implements Serializable, VersionedEntity, TrackedEntity {
 
     /**
      * Identificador único de la copia.
      * <p>
-     * Este campo es la clave primaria de la entidad y se genera automáticamente
-     * por la base de datos utilizando una estrategia de identidad.
+     * Este campo es la clave primaria de la entidad. Lo asigna el repositorio al
+     * insertar, a partir de un bloque de IDs reservado por
+     * {@link org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator}.
      * </p>
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
     /**
@@ -70,31 +75,260 @@ public class Copia implements Serializable {
     private User user;
 
     /**
-     * Estado físico de la copia.
+     * Estado físico de la copia, guardado como código ({@link EstadoCopia#getCodigo()}).
      * <p>
-     * Describe la condición de la copia física. Valores comunes incluyen:
-     * "Nueva", "Buena", "Usada", "Deteriorada".
+     * Este campo es obligatorio: toda copia nueva o modificada lo tiene. Solo puede ser
+     * {@code null} en copias anteriores a los códigos que aún no se han migrado
+     * ({@link CopiaEnumMigration}), cuyo valor sigue en {@link #estado}. Se guarda el
+     * código explícito y no el ordinal, para que reordenar las constantes no cambie el
+     * significado de las filas existentes.
      * </p>
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Short estadoCodigo;
+
+    /**
+     * Tipo de soporte físico de la copia, guardado como código ({@link SoporteCopia#getCodigo()}).
      * <p>
-     * Este campo es obligatorio y no puede ser {@code null}.
+     * Como {@link #estadoCodigo}, solo es {@code null} en copias aún no migradas.
      * </p>
      */
-    @Column(nullable = false)
-    private String estado;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Short soporteCodigo;
 
     /**
-     * Tipo de soporte físico de la copia.
+     * Estado en texto libre, tal como se guardaba antes de usar códigos.
      * <p>
-     * Indica el formato físico en el que está almacenada la película.
-     * Valores comunes incluyen: "DVD", "Blu-ray", "VHS".
+     * Se conserva para leer las copias que la migración aún no ha convertido; al
+     * migrar una copia, o al cambiar su estado, pasa a {@code null}.
      * </p>
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String estado;
+
+    /**
+     * Soporte en texto libre, tal como se guardaba antes de usar códigos.
      * <p>
-     * Este campo es obligatorio y no puede ser {@code null}.
+     * Igual que {@link #estado}: solo se lee en copias no migradas.
      * </p>
      */
-    @Column(nullable = false)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
     private String soporte;
 
+    /**
+     * Versión de la copia para el control de concurrencia optimista.
+     * <p>
+     * JPA la incrementa en cada actualización. Si dos ventanas editan la misma copia,
+     * la segunda en guardar recibe un conflicto en lugar de sobrescribir a la primera.
+     * </p>
+     */
+    @Version
+    private long version;
+
+    /**
+     * Momento de la última escritura de la copia, en milisegundos desde la época.
+     * <p>
+     * Lo actualiza {@link CopiaRepository} en cada guardado o cambio de estado; las
+     * copias anteriores a este campo lo reciben de {@link CopiaTimestampMigration}. Es
+     * el criterio de antigüedad de {@link CopiaArchive}.
+     * </p>
+     */
+    @Setter(AccessLevel.NONE)
+    private long modificadaEn;
+
+    /**
+     * Indica que la copia se ha leído del archivo de copias frías ({@link CopiaArchive})
+     * y no de la base de datos principal. No se persiste.
+     */
+    @Setter(AccessLevel.NONE)
+    private transient boolean archivada;
+
+    /**
+     * Campos modificados mediante los setters desde que se leyó la copia.
+     * <p>
+     * No se persiste ni participa en {@code equals}/{@code hashCode}; los repositorios
+     * lo usan para escribir solo los campos que han cambiado.
+     * </p>
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Set<String> dirtyFields;
+
+    /**
+     * Establece la película de la copia y anota el campo como modificado.
+     *
+     * @param pelicula Nuevo valor.
+     */
+    public void setPelicula(Pelicula pelicula) {
+        this.pelicula = pelicula;
+        markDirty("pelicula");
+    }
+
+    /**
+     * Establece el usuario propietario y anota el campo como modificado.
+     *
+     * @param user Nuevo valor.
+     */
+    public void setUser(User user) {
+        this.user = user;
+        markDirty("user");
+    }
+
+    /**
+     * Sustituye la película y el usuario por las instancias compartidas del mapa de
+     * identidad, sin anotarlos como modificados: siguen siendo la misma fila. También
+     * lo usa la caché del catálogo para enlazar sus copias con sus películas.
+     *
+     * @param pelicula Instancia compartida de la película.
+     * @param user Instancia compartida del usuario.
+     */
+    public void compartir(Pelicula pelicula, User user) {
+        this.pelicula = pelicula;
+        this.user = user;
+    }
+
+    /**
+     * Anota el momento de la última escritura. Lo llaman quienes escriben la copia:
+     * {@link CopiaRepository}, el archivo de copias frías y el reparto en shards.
+     *
+     * @param momento Milisegundos desde la época.
+     */
+    public void tocar(long momento) {
+        this.modificadaEn = momento;
+    }
+
+    /**
+     * Marca la copia como leída del archivo de copias frías.
+     */
+    void marcarArchivada() {
+        this.archivada = true;
+    }
+
+    /**
+     * Devuelve el estado de la copia.
+     * <p>
+     * Si la copia aún no se ha migrado a códigos, se obtiene del texto guardado.
+     * </p>
+     *
+     * @return Estado, o {@code null} si no tiene o el texto guardado no es un estado válido.
+     */
+    public EstadoCopia getEstado() {
+        if (estadoCodigo != null) {
+            return EstadoCopia.fromCodigo(estadoCodigo);
+        }
+        if (estado == null) {
+            return null;
+        }
+        try {
+            return EstadoCopia.fromEtiqueta(estado);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Establece el estado de la copia y anota el campo como modificado.
+     *
+     * @param estado Nuevo valor.
+     */
+    public void setEstado(EstadoCopia estado) {
+        this.estadoCodigo = estado != null ? estado.getCodigo() : null;
+        this.estado = null;
+        markDirty("estado");
+    }
+
+    /**
+     * Devuelve el soporte de la copia.
+     * <p>
+     * Si la copia aún no se ha migrado a códigos, se obtiene del texto guardado.
+     * </p>
+     *
+     * @return Soporte, o {@code null} si no tiene o el texto guardado no es un soporte válido.
+     */
+    public SoporteCopia getSoporte() {
+        if (soporteCodigo != null) {
+            return SoporteCopia.fromCodigo(soporteCodigo);
+        }
+        if (soporte == null) {
+            return null;
+        }
+        try {
+            return SoporteCopia.fromEtiqueta(soporte);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Establece el soporte de la copia y anota el campo como modificado.
+     *
+     * @param soporte Nuevo valor.
+     */
+    public void setSoporte(SoporteCopia soporte) {
+        this.soporteCodigo = soporte != null ? soporte.getCodigo() : null;
+        this.soporte = null;
+        markDirty("soporte");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getDirtyFields() {
+        return dirtyFields == null ? Set.of() : Set.copyOf(dirtyFields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearDirtyFields() {
+        dirtyFields = null;
+    }
+
+    private void markDirty(String field) {
+        if (dirtyFields == null) {
+            dirtyFields = new HashSet<>(4);
+        }
+        dirtyFields.add(field);
+    }
+
+    /**
+     * Compara por identidad de entidad: dos instancias son iguales si son de la misma
+     * clase y tienen el mismo ID.
+     * <p>
+     * Sustituye al {@code equals} generado por Lombok, que comparaba todos los campos y
+     * recorría la película y, desde ella, todas sus copias.
+     * Una copia sin guardar (sin ID) solo es igual a sí misma.
+     * </p>
+     *
+     * @param o Objeto a comparar.
+     * @return {@code true} si representan la misma fila.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o != null && getClass() == o.getClass()
+                && id != null && id.equals(((Copia) o).id);
+    }
+
+    /**
+     * Devuelve un hash derivado solo del ID, en tiempo constante.
+     * <p>
+     * Una copia sin guardar cambia de hash cuando el repositorio le asigna el ID, así que
+     * no debe añadirse a un {@code HashSet} o usarse como clave antes de guardarla.
+     * </p>
+     *
+     * @return Hash de la entidad.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), id);
+    }
+
     /**
      * Representación en forma de cadena de la copia.
      * <p>
@@ -111,8 +345,8 @@ public class Copia implements Serializable {
                 "id=" + id +
                 ", pelicula=" + (pelicula != null ? pelicula.getTitulo() : "null") +
                 ", user=" + (user != null ? user.getNombreUsuario() : "null") +
-                ", estado='" + estado + '\'' +
-                ", soporte='" + soporte + '\'' +
+                ", estado='" + getEstado() + '\'' +
+                ", soporte='" + getSoporte() + '\'' +
                 '}';
     }
 }
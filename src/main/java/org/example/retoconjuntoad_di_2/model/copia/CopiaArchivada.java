@@ -0,0 +1,146 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Copia guardada en el archivo de copias frías ({@code data/archive.odb}).
+ * <p>
+ * Es una fila plana: la película y el usuario se guardan como IDs, porque sus entidades
+ * están en la base de datos principal. Conserva el ID, la versión y el momento de la
+ * última escritura de la copia original, de modo que al restaurarla vuelve a ser la
+ * misma copia. Las filas no se modifican: una copia archivada se restaura antes de
+ * cambiarla.
+ * </p>
+ * <p>
+ * El estado y el soporte se guardan, como en {@link Copia}, por su código explícito
+ * ({@link EstadoCopia#getCodigo()}, {@link SoporteCopia#getCodigo()}).
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see CopiaArchive
+ */
+@Entity
+@Table(name = "CopiasArchivadas", indexes = {
+        @Index(columnList = "userId"),
+        @Index(columnList = "peliculaId")
+})
+@Data
+@NoArgsConstructor
+public class CopiaArchivada implements Serializable {
+
+    /**
+     * ID de la copia original.
+     */
+    @Id
+    private Integer id;
+
+    /**
+     * ID de la película en la base de datos principal.
+     */
+    private Integer peliculaId;
+
+    /**
+     * ID del usuario propietario en la base de datos principal.
+     */
+    private Integer userId;
+
+    /**
+     * Código del estado de la copia al archivarla.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Short estadoCodigo;
+
+    /**
+     * Código del soporte de la copia al archivarla.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Short soporteCodigo;
+
+    /**
+     * Versión de la copia original.
+     */
+    private long version;
+
+    /**
+     * Momento de la última escritura de la copia original (milisegundos desde la época).
+     */
+    private long modificadaEn;
+
+    /**
+     * Momento en que se archivó (milisegundos desde la época).
+     */
+    private long archivadaEn;
+
+    /**
+     * Crea la fila de una copia archivada.
+     *
+     * @param id ID de la copia original.
+     * @param peliculaId ID de la película.
+     * @param userId ID del usuario propietario.
+     * @param estado Estado de la copia, o {@code null}.
+     * @param soporte Soporte de la copia, o {@code null}.
+     * @param version Versión de la copia original.
+     * @param modificadaEn Momento de la última escritura de la copia original.
+     * @param archivadaEn Momento en que se archiva.
+     */
+    public CopiaArchivada(Integer id, Integer peliculaId, Integer userId, EstadoCopia estado, SoporteCopia soporte,
+                          long version, long modificadaEn, long archivadaEn) {
+        this.id = id;
+        this.peliculaId = peliculaId;
+        this.userId = userId;
+        setEstado(estado);
+        setSoporte(soporte);
+        this.version = version;
+        this.modificadaEn = modificadaEn;
+        this.archivadaEn = archivadaEn;
+    }
+
+    /**
+     * Devuelve el estado de la copia al archivarla.
+     *
+     * @return Estado, o {@code null} si no tenía.
+     */
+    public EstadoCopia getEstado() {
+        return estadoCodigo != null ? EstadoCopia.fromCodigo(estadoCodigo) : null;
+    }
+
+    /**
+     * Establece el estado de la copia.
+     *
+     * @param estado Nuevo valor.
+     */
+    public void setEstado(EstadoCopia estado) {
+        this.estadoCodigo = estado != null ? estado.getCodigo() : null;
+    }
+
+    /**
+     * Devuelve el soporte de la copia al archivarla.
+     *
+     * @return Soporte, o {@code null} si no tenía.
+     */
+    public SoporteCopia getSoporte() {
+        return soporteCodigo != null ? SoporteCopia.fromCodigo(soporteCodigo) : null;
+    }
+
+    /**
+     * Establece el soporte de la copia.
+     *
+     * @param soporte Nuevo valor.
+     */
+    public void setSoporte(SoporteCopia soporte) {
+        this.soporteCodigo = soporte != null ? soporte.getCodigo() : null;
+    }
+}
@@ -0,0 +1,551 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.metrics.RepositoryMetrics;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.EntityIdentityMap;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archivo de copias frías: mueve a una segunda base de datos ObjectDB las copias que casi
+ * nunca se consultan.
+ * <p>
+ * Una copia es fría si su estado está entre los configurados (por defecto
+ * {@link EstadoCopia#DETERIORADA}) o si no se ha escrito desde hace más de un número de
+ * días ({@link Copia#getModificadaEn()}). {@link #archive()} recorre las copias frías por
+ * lotes: escribe cada lote en el archivo ({@link CopiaArchivada}) y después lo borra de la
+ * base de datos principal, solo si la copia no ha cambiado entretanto. Así
+ * {@code data.odb} conserva solo las copias activas y su caché de páginas las abarca.
+ * </p>
+ * <p>
+ * Las dos bases de datos no comparten transacción, de modo que el orden importa: al
+ * archivar se escribe primero el archivo y al restaurar, primero la base de datos
+ * principal. Si el proceso se interrumpe entre los dos pasos, la copia queda en ambas;
+ * la principal manda, y la siguiente pasada termina el movimiento.
+ * </p>
+ * <p>
+ * {@link CopiaRepository} lo usa de forma transparente: {@code findById} busca en el
+ * archivo las copias que no están en la principal, guardar una copia archivada la
+ * restaura en la misma transacción y borrarla la elimina del archivo. Los listados por
+ * usuario solo devuelven las copias activas; las archivadas se piden aparte con
+ * {@link #findByUser(User)}, que es lo que hace la ventana principal cuando se marca
+ * "Incluir archivadas". Los contadores de copias de las películas cuentan solo las
+ * copias activas: archivar los descuenta y restaurar los vuelve a sumar.
+ * </p>
+ * <p>
+ * Hay un archivo por base de datos principal. {@code DataProvider} lo abre sobre
+ * {@code data/archive.odb} y lo pasa cada {@code gestor.archive.intervalMinutes} (1440)
+ * minutos.
+ * </p>
+ * <p>
+ * Si las copias están repartidas en shards, solo se archivan las que siguen en la base de
+ * datos principal; una copia archivada se restaura en el shard de su usuario.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see CopiaArchivada
+ */
+public class CopiaArchive {
+
+    private static final System.Logger LOG = System.getLogger(CopiaArchive.class.getName());
+
+    /**
+     * Métricas de llamadas y latencia de los métodos del archivo.
+     */
+    private static final RepositoryMetrics METRICS = RepositoryMetrics.forEntity(CopiaArchivada.class);
+
+    private static final SoporteCopia[] SOPORTES = SoporteCopia.values();
+
+    /**
+     * Archivos por base de datos principal. Las factorías cerradas se liberan solas.
+     */
+    private static final Map<EntityManagerFactory, CopiaArchive> ARCHIVES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final EntityManagerFactory emf;
+    private final EntityManagerFactory archiveEmf;
+    private final Set<EstadoCopia> estadosFrios;
+    private final long maxAgeMillis;
+    private final int batchSize;
+    private final EntityIdentityMap<Pelicula> peliculas;
+    private final EntityIdentityMap<User> usuarios;
+
+    private ScheduledExecutorService scheduler;
+
+    private CopiaArchive(EntityManagerFactory emf, EntityManagerFactory archiveEmf, Set<EstadoCopia> estadosFrios,
+                         long maxAgeDays, int batchSize) {
+        this.emf = emf;
+        this.archiveEmf = archiveEmf;
+        this.estadosFrios = estadosFrios.isEmpty() ? Set.of() : EnumSet.copyOf(estadosFrios);
+        this.maxAgeMillis = maxAgeDays > 0 ? TimeUnit.DAYS.toMillis(maxAgeDays) : 0;
+        this.batchSize = Math.max(1, batchSize);
+        this.peliculas = EntityIdentityMap.forEntity(emf, Pelicula.class);
+        this.usuarios = EntityIdentityMap.forEntity(emf, User.class);
+    }
+
+    /**
+     * Crea el archivo de una base de datos y lo registra para que lo usen sus repositorios.
+     *
+     * @param emf Factoría de la base de datos principal.
+     * @param archiveEmf Factoría de la base de datos del archivo.
+     * @param estadosFrios Estados cuyas copias se archivan siempre.
+     * @param maxAgeDays Días sin escribir tras los que se archiva una copia; 0 o negativo desactiva la regla.
+     * @param batchSize Número máximo de copias por lote.
+     * @return El archivo registrado.
+     */
+    public static CopiaArchive open(EntityManagerFactory emf, EntityManagerFactory archiveEmf,
+                                    Set<EstadoCopia> estadosFrios, long maxAgeDays, int batchSize) {
+        CopiaArchive archive = new CopiaArchive(emf, archiveEmf, estadosFrios, maxAgeDays, batchSize);
+        ARCHIVES.put(emf, archive);
+        return archive;
+    }
+
+    /**
+     * Devuelve el archivo de una base de datos.
+     *
+     * @param emf Factoría de la base de datos principal.
+     * @return El archivo, o {@code null} si no se ha abierto ninguno.
+     */
+    public static CopiaArchive of(EntityManagerFactory emf) {
+        return ARCHIVES.get(emf);
+    }
+
+    /**
+     * Inicia el archivado periódico en un hilo en segundo plano. La primera pasada se
+     * hace un minuto después, para no competir con el arranque.
+     *
+     * @param intervalMinutes Minutos entre pasadas. Si es 0 o negativo no se planifica nada.
+     */
+    public synchronized void start(long intervalMinutes) {
+        if (intervalMinutes <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "copia-archive");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (RuntimeException e) {
+                LOG.log(System.Logger.Level.WARNING, "No se pudieron archivar las copias frías", e);
+            }
+        }, 1, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Detiene el archivado periódico (al terminar el lote en curso) y retira el archivo
+     * del registro. No cierra la factoría del archivo.
+     */
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        ARCHIVES.remove(emf, this);
+    }
+
+    /**
+     * Mueve al archivo todas las copias frías de la base de datos principal.
+     * <p>
+     * Se detiene entre dos lotes si se interrumpe el hilo.
+     * </p>
+     *
+     * @return Número de copias archivadas.
+     */
+    public int archive() {
+        return METRICS.time("archive", () -> {
+            long ahora = System.currentTimeMillis();
+            int archivadas = 0;
+            Integer desde = Integer.MIN_VALUE;
+            while (!Thread.currentThread().isInterrupted()) {
+                Integer inicio = desde;
+                List<CopiaArchivada> frias = UnitOfWork.read(emf, em -> candidatas(em, inicio, ahora));
+                if (frias.isEmpty()) {
+                    break;
+                }
+                UnitOfWork.run(archiveEmf, em -> frias.forEach(em::merge));
+                archivadas += retirar(frias);
+                if (frias.size() < batchSize) {
+                    break;
+                }
+                desde = frias.get(frias.size() - 1).getId();
+            }
+            if (archivadas > 0) {
+                LOG.log(System.Logger.Level.INFO, "Copias frías archivadas: {0}", archivadas);
+            }
+            return archivadas;
+        });
+    }
+
+    /**
+     * Lee el siguiente lote de copias frías como filas del archivo.
+     */
+    private List<CopiaArchivada> candidatas(EntityManager em, Integer despuesDe, long ahora) {
+        List<String> reglas = new ArrayList<>(2);
+        if (!estadosFrios.isEmpty()) {
+            reglas.add("c.estadoCodigo in :estados");
+        }
+        if (maxAgeMillis > 0) {
+            reglas.add("c.modificadaEn > 0 and c.modificadaEn < :corte");
+        }
+        if (reglas.isEmpty()) {
+            return List.of();
+        }
+        TypedQuery<Object[]> query = em.createQuery("select c.id, c.pelicula.id, c.user.id, c.estadoCodigo, c.estado,"
+                        + " c.soporteCodigo, c.soporte, c.version, c.modificadaEn from Copia c"
+                        + " where c.id > :desde and (" + String.join(" or ", reglas) + ") order by c.id",
+                Object[].class)
+                .setParameter("desde", despuesDe)
+                .setMaxResults(batchSize);
+        if (!estadosFrios.isEmpty()) {
+            query.setParameter("estados", estadosFrios.stream().map(EstadoCopia::getCodigo).toList());
+        }
+        if (maxAgeMillis > 0) {
+            query.setParameter("corte", ahora - maxAgeMillis);
+        }
+        List<CopiaArchivada> frias = new ArrayList<>();
+        for (Object[] fila : query.getResultList()) {
+            EstadoCopia estado = fila[3] != null ? EstadoCopia.fromCodigo((Short) fila[3]) : CopiaRepository.legado(EstadoCopia::fromEtiqueta, fila[4]);
+            SoporteCopia soporte = fila[5] != null ? SoporteCopia.fromCodigo((Short) fila[5]) : CopiaRepository.legado(SoporteCopia::fromEtiqueta, fila[6]);
+            frias.add(new CopiaArchivada((Integer) fila[0], (Integer) fila[1], (Integer) fila[2], estado, soporte,
+                    (Long) fila[7], (Long) fila[8], ahora));
+        }
+        return frias;
+    }
+
+    /**
+     * Borra de la base de datos principal las copias de un lote ya escrito en el archivo,
+     * salvo las que han cambiado o desaparecido desde que se leyeron, que se quitan del
+     * archivo.
+     *
+     * @return Número de copias retiradas.
+     */
+    private int retirar(List<CopiaArchivada> lote) {
+        List<Integer> descartadas = new ArrayList<>();
+        int retiradas = UnitOfWork.execute(emf, em -> {
+            List<Object[]> borradas = new ArrayList<>();
+            // Copias retiradas por película: una posición por soporte y la última sin soporte.
+            Map<Integer, int[]> porPelicula = new HashMap<>();
+            for (CopiaArchivada copia : lote) {
+                int n = em.createQuery("delete from Copia c where c.id = :id and c.version = :version")
+                        .setParameter("id", copia.getId())
+                        .setParameter("version", copia.getVersion())
+                        .executeUpdate();
+                if (n == 0) {
+                    descartadas.add(copia.getId());
+                    continue;
+                }
+                borradas.add(new Object[]{copia.getId(), copia.getUserId()});
+                int[] cuenta = porPelicula.computeIfAbsent(copia.getPeliculaId(), k -> new int[SOPORTES.length + 1]);
+                cuenta[copia.getSoporte() != null ? copia.getSoporte().ordinal() : SOPORTES.length]++;
+            }
+            for (Map.Entry<Integer, int[]> entrada : porPelicula.entrySet()) {
+                int[] cuenta = entrada.getValue();
+                for (int i = 0; i < cuenta.length; i++) {
+                    CopiaRepository.ajustarContadores(em, entrada.getKey(), i < SOPORTES.length ? SOPORTES[i] : null,
+                            -cuenta[i]);
+                }
+            }
+            if (!borradas.isEmpty()) {
+                em.getEntityManagerFactory().getCache().evict(Copia.class);
+                List<Copia> afectadas = CopiaRepository.referencias(borradas);
+                UnitOfWork.afterCommit(() -> {
+                    for (Copia copia : afectadas) {
+                        EntityChanges.publish(
+                                new EntityChange(ChangeRecord.EntityType.COPIA, ChangeRecord.Operation.DELETE, copia));
+                    }
+                });
+            }
+            return borradas.size();
+        });
+        borrar(descartadas);
+        return retiradas;
+    }
+
+    /**
+     * Devuelve a la base de datos principal (o, con shards, al shard de cada usuario)
+     * varias copias archivadas.
+     *
+     * @param ids IDs de las copias.
+     * @return Número de copias restauradas.
+     */
+    public int restore(Collection<Integer> ids) {
+        return METRICS.time("restore", () -> {
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            ShardRouter router = ShardRouter.of(emf);
+            if (router == null) {
+                return restore(emf, ids);
+            }
+            // Cada copia vuelve al shard de su usuario: una transacción por shard.
+            Map<EntityManagerFactory, List<Integer>> porBase = new HashMap<>();
+            for (Object[] fila : UnitOfWork.read(archiveEmf, em -> em.createQuery(
+                    "select a.id, a.userId from CopiaArchivada a where a.id in :ids", Object[].class)
+                    .setParameter("ids", ids)
+                    .getResultList())) {
+                porBase.computeIfAbsent(router.forUser((Integer) fila[1]), k -> new ArrayList<>()).add((Integer) fila[0]);
+            }
+            int restauradas = 0;
+            for (Map.Entry<EntityManagerFactory, List<Integer>> base : porBase.entrySet()) {
+                restauradas += restore(base.getKey(), base.getValue());
+            }
+            return restauradas;
+        });
+    }
+
+    private int restore(EntityManagerFactory base, Collection<Integer> ids) {
+        return UnitOfWork.execute(base, em -> {
+            List<Copia> restauradas = new ArrayList<>();
+            for (Integer id : ids) {
+                Copia copia = restaurar(em, id);
+                if (copia != null) {
+                    restauradas.add(copia);
+                }
+            }
+            UnitOfWork.afterCommit(() -> {
+                for (Copia copia : restauradas) {
+                    EntityChanges.publish(
+                            new EntityChange(ChangeRecord.EntityType.COPIA, ChangeRecord.Operation.SAVE, copia));
+                }
+            });
+            return restauradas.size();
+        });
+    }
+
+    /**
+     * Inserta en la transacción de {@code em} (sobre la base de datos principal o el shard
+     * del usuario) una copia archivada, con su ID, y la quita del archivo cuando se confirma.
+     *
+     * @param em EntityManager de la transacción.
+     * @param id ID de la copia.
+     * @return Copia gestionada, o {@code null} si no está archivada o su película o su
+     *         usuario ya no existen.
+     */
+    Copia restaurar(EntityManager em, Integer id) {
+        CopiaArchivada archivada = UnitOfWork.read(archiveEmf, aem -> aem.find(CopiaArchivada.class, id));
+        if (archivada == null) {
+            return null;
+        }
+        Copia existente = em.find(Copia.class, id);
+        if (existente != null) {
+            // Movimiento interrumpido: la principal manda.
+            UnitOfWork.afterCommit(() -> borrar(List.of(id)));
+            return existente;
+        }
+        // En un shard, la copia se relaciona con las filas de enlace del catálogo.
+        Pelicula pelicula = ShardRouter.pelicula(em, archivada.getPeliculaId());
+        User user = ShardRouter.usuario(em, archivada.getUserId());
+        if (pelicula == null || user == null) {
+            LOG.log(System.Logger.Level.WARNING,
+                    "La copia archivada {0} no se puede restaurar: su película o su usuario ya no existen", id);
+            return null;
+        }
+        Copia copia = new Copia();
+        copia.setId(id);
+        copia.setPelicula(pelicula);
+        copia.setUser(user);
+        copia.setEstado(archivada.getEstado());
+        copia.setSoporte(archivada.getSoporte());
+        copia.tocar(archivada.getModificadaEn());
+        copia.clearDirtyFields();
+        em.persist(copia);
+        CopiaRepository.ajustarContadores(em, pelicula.getId(), archivada.getSoporte(), 1);
+        UnitOfWork.afterCommit(() -> borrar(List.of(id)));
+        return copia;
+    }
+
+    /**
+     * Indica si una copia está en el archivo, sin construirla.
+     *
+     * @param id ID de la copia.
+     * @return {@code true} si el archivo tiene una fila con ese ID.
+     */
+    boolean contiene(Integer id) {
+        return UnitOfWork.read(archiveEmf, em -> em.find(CopiaArchivada.class, id)) != null;
+    }
+
+    /**
+     * Busca una copia archivada por su ID.
+     *
+     * @param id ID de la copia.
+     * @return La copia, marcada como archivada, si está en el archivo.
+     */
+    public Optional<Copia> findById(Integer id) {
+        return METRICS.time("findById", () -> {
+            CopiaArchivada archivada = UnitOfWork.read(archiveEmf, em -> em.find(CopiaArchivada.class, id));
+            if (archivada == null) {
+                return Optional.empty();
+            }
+            User user = usuario(archivada.getUserId());
+            List<Copia> copias = copias(List.of(archivada), user);
+            return copias.isEmpty() ? Optional.empty() : Optional.of(copias.get(0));
+        });
+    }
+
+    /**
+     * Obtiene las copias archivadas de un usuario.
+     *
+     * @param user Usuario propietario.
+     * @return Copias archivadas, marcadas como tales.
+     */
+    public List<Copia> findByUser(User user) {
+        return METRICS.time("findByUser", () -> copias(UnitOfWork.read(archiveEmf, em -> em.createQuery(
+                        "select a from CopiaArchivada a where a.userId = :user order by a.id", CopiaArchivada.class)
+                .setParameter("user", user.getId())
+                .getResultList()), usuarios.canonical(user)));
+    }
+
+    /**
+     * Cuenta las copias archivadas de un usuario.
+     *
+     * @param user Usuario propietario.
+     * @return Número de copias archivadas.
+     */
+    public long countByUser(User user) {
+        return METRICS.time("countByUser", () -> UnitOfWork.read(archiveEmf, em -> em.createQuery(
+                        "select count(a) from CopiaArchivada a where a.userId = :user", Long.class)
+                .setParameter("user", user.getId())
+                .getSingleResult()));
+    }
+
+    /**
+     * Mayor ID de las copias archivadas, para que el generador de IDs no los vuelva a usar.
+     *
+     * @return Mayor ID archivado, o 0 si el archivo está vacío.
+     */
+    public int maxId() {
+        Integer max = UnitOfWork.read(archiveEmf, em -> em.createQuery(
+                "select max(a.id) from CopiaArchivada a", Integer.class).getSingleResult());
+        return max != null ? max : 0;
+    }
+
+    /**
+     * Elimina del archivo las copias de una película.
+     *
+     * @param peliculaId ID de la película.
+     * @return Número de copias eliminadas.
+     */
+    public int deleteByPelicula(Integer peliculaId) {
+        return METRICS.time("deleteByPelicula", () -> UnitOfWork.execute(archiveEmf, em -> em.createQuery(
+                        "delete from CopiaArchivada a where a.peliculaId = :pelicula")
+                .setParameter("pelicula", peliculaId)
+                .executeUpdate()));
+    }
+
+    /**
+     * Elimina del archivo las copias de un usuario.
+     *
+     * @param userId ID del usuario.
+     * @return Número de copias eliminadas.
+     */
+    int deleteByUser(Integer userId) {
+        return UnitOfWork.execute(archiveEmf, em -> em.createQuery(
+                        "delete from CopiaArchivada a where a.userId = :user")
+                .setParameter("user", userId)
+                .executeUpdate());
+    }
+
+    /**
+     * Elimina del archivo las copias con esos IDs.
+     *
+     * @param ids IDs de las copias.
+     * @return Número de copias eliminadas.
+     */
+    int borrar(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return UnitOfWork.execute(archiveEmf, em -> em.createQuery(
+                        "delete from CopiaArchivada a where a.id in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate());
+    }
+
+    /**
+     * Construye copias desprendidas a partir de filas del archivo, con las instancias
+     * compartidas de sus películas.
+     */
+    private List<Copia> copias(List<CopiaArchivada> archivadas, User user) {
+        if (archivadas.isEmpty() || user == null) {
+            return List.of();
+        }
+        Map<Integer, Pelicula> porId = new HashMap<>();
+        List<Integer> pendientes = new ArrayList<>();
+        for (CopiaArchivada archivada : archivadas) {
+            Integer id = archivada.getPeliculaId();
+            if (!porId.containsKey(id)) {
+                Pelicula conocida = id != null ? peliculas.get(id) : null;
+                porId.put(id, conocida);
+                if (conocida == null && id != null) {
+                    pendientes.add(id);
+                }
+            }
+        }
+        if (!pendientes.isEmpty()) {
+            for (Pelicula pelicula : peliculas.canonicalAll(UnitOfWork.read(emf, em -> em.createQuery(
+                            "select p from Pelicula p where p.id in :ids", Pelicula.class)
+                    .setParameter("ids", pendientes)
+                    .getResultList()))) {
+                porId.put(pelicula.getId(), pelicula);
+            }
+        }
+
+        List<Copia> copias = new ArrayList<>(archivadas.size());
+        for (CopiaArchivada archivada : archivadas) {
+            Pelicula pelicula = porId.get(archivada.getPeliculaId());
+            if (pelicula == null) {
+                continue;
+            }
+            Copia copia = new Copia();
+            copia.setId(archivada.getId());
+            copia.compartir(pelicula, user);
+            copia.setEstado(archivada.getEstado());
+            copia.setSoporte(archivada.getSoporte());
+            copia.setVersion(archivada.getVersion());
+            copia.tocar(archivada.getModificadaEn());
+            copia.clearDirtyFields();
+            copia.marcarArchivada();
+            copias.add(copia);
+        }
+        return copias;
+    }
+
+    private User usuario(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        User conocido = usuarios.get(id);
+        return conocido != null ? conocido : usuarios.canonical(UnitOfWork.read(emf, em -> em.find(User.class, id)));
+    }
+}
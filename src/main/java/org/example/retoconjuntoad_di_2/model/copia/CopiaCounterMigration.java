@@ -0,0 +1,54 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManager;
+import org.example.retoconjuntoad_di_2.migration.Migration;
+
+/**
+ * Versión 3 del esquema: contadores de copias de las películas.
+ * <p>
+ * Inicializa {@code Pelicula.copiasCount} y los contadores por soporte de las películas
+ * existentes, recorriéndolas por rangos de IDs del tamaño del lote con
+ * {@link CopiaCounterReconciler}. El punto de control es el inicio del rango siguiente.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public class CopiaCounterMigration implements Migration {
+
+    /**
+     * Final (exclusivo) del rango de IDs a recorrer en esta ejecución. Las películas
+     * posteriores ya nacen con los contadores al día.
+     */
+    private Long hasta;
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Contadores de copias de las películas";
+    }
+
+    @Override
+    public Long migrateBatch(EntityManager em, Long checkpoint, int batchSize) {
+        if (hasta == null) {
+            Integer max = em.createQuery("select max(p.id) from Pelicula p", Integer.class).getSingleResult();
+            hasta = max != null ? max + 1L : 0L;
+        }
+        long desde;
+        if (checkpoint != null) {
+            desde = checkpoint;
+        } else {
+            Integer min = em.createQuery("select min(p.id) from Pelicula p", Integer.class).getSingleResult();
+            desde = min != null ? min : hasta;
+        }
+        long fin = Math.min(desde + batchSize, hasta);
+        if (desde < fin) {
+            CopiaCounterReconciler.reconcile(em, desde, fin);
+        }
+        return fin >= hasta ? null : fin;
+    }
+}
@@ -0,0 +1,226 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.utils.EntityIdentityMap;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Recalcula los contadores de copias de las películas ({@link Pelicula#getCopiasCount()}
+ * y los de cada soporte) a partir de las copias.
+ * <p>
+ * Los contadores se mantienen en cada escritura de {@code CopiaRepository}, pero pueden
+ * desviarse cuando las copias se escriben por otro camino (el diario, el cargador de datos
+ * de prueba, las herramientas de rendimiento). El
+ * recálculo reparte las películas en rangos de IDs de {@code gestor.counters.batchSize}
+ * (1000) y los procesa en paralelo con {@code gestor.counters.threads} hilos (por defecto,
+ * los procesadores disponibles). Cada rango es una transacción: cuenta las copias de sus
+ * películas agrupando en la base de datos y corrige solo los contadores que no coinciden.
+ * </p>
+ * <p>
+ * Los contadores de las bases de datos anteriores los inicializa
+ * {@link CopiaCounterMigration}; este recálculo se lanza tras aplicar el diario
+ * ({@link org.example.retoconjuntoad_di_2.journal.JournalReplayer}) y, si se activa con
+ * {@code -Dgestor.counters.reconcileOnStartup=true} (o si hay shards), al arrancar. Una copia que se dé de
+ * alta o se borre justo mientras se recalcula su rango puede quedar fuera de la cuenta;
+ * el siguiente recálculo la corrige.
+ * </p>
+ * <p>
+ * Si las copias están repartidas en shards ({@link ShardRouter}), la cuenta de cada rango
+ * suma las del catálogo y las de cada shard. Es lo que hace consistentes, al arrancar,
+ * los contadores de las copias de los shards, que se ajustan en el catálogo fuera de la
+ * transacción del shard.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public class CopiaCounterReconciler {
+
+    private static final System.Logger LOG = System.getLogger(CopiaCounterReconciler.class.getName());
+
+    private static final SoporteCopia[] SOPORTES = SoporteCopia.values();
+
+    private final EntityManagerFactory emf;
+    private final int batchSize;
+    private final int threads;
+
+    /**
+     * Crea el recálculo.
+     *
+     * @param emf Factoría de la base de datos.
+     * @param batchSize Número de IDs de película por rango.
+     * @param threads Número de rangos que se procesan a la vez.
+     */
+    public CopiaCounterReconciler(EntityManagerFactory emf, int batchSize, int threads) {
+        this.emf = emf;
+        this.batchSize = Math.max(1, batchSize);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Recalcula los contadores de todas las películas.
+     *
+     * @return Número de películas cuyos contadores se han corregido.
+     * @throws InterruptedException Si se interrumpe mientras espera a los rangos.
+     */
+    public int reconcile() throws InterruptedException {
+        Object[] rango = UnitOfWork.read(emf, em -> em.createQuery(
+                "select min(p.id), max(p.id) from Pelicula p", Object[].class).getSingleResult());
+        if (rango[0] == null) {
+            return 0;
+        }
+        long desdeMin = ((Number) rango[0]).longValue();
+        long hastaMax = ((Number) rango[1]).longValue() + 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "copia-counter-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Integer>> rangos = new ArrayList<>();
+            for (long desde = desdeMin; desde < hastaMax; desde += batchSize) {
+                long inicio = desde;
+                long fin = Math.min(desde + batchSize, hastaMax);
+                rangos.add(executor.submit(() -> reconcile(inicio, fin)));
+            }
+            int corregidas = 0;
+            for (Future<Integer> r : rangos) {
+                corregidas += r.get();
+            }
+            if (corregidas > 0) {
+                LOG.log(System.Logger.Level.INFO, "Contadores de copias corregidos en {0} películas", corregidas);
+            }
+            return corregidas;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("No se pudieron recalcular los contadores de copias", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Recalcula los contadores de las películas con ID en {@code [desde, hasta)}.
+     *
+     * @return Número de películas corregidas.
+     */
+    private int reconcile(long desde, long hasta) {
+        return UnitOfWork.execute(emf, em -> reconcile(em, desde, hasta));
+    }
+
+    /**
+     * Recalcula, en la transacción de {@code em}, los contadores de las películas con ID
+     * en {@code [desde, hasta)}.
+     *
+     * @return Número de películas corregidas.
+     */
+    static int reconcile(EntityManager em, long desde, long hasta) {
+        // Cuentas reales: [total, uno por soporte] por película.
+        Map<Integer, int[]> reales = new HashMap<>();
+        contar(em, desde, hasta, reales);
+        ShardRouter router = ShardRouter.of(em.getEntityManagerFactory());
+        if (router != null) {
+            for (int i = 0; i < router.getShardCount(); i++) {
+                UnitOfWork.read(router.shard(i), shard -> {
+                    contar(shard, desde, hasta, reales);
+                    return null;
+                });
+            }
+        }
+
+        StringBuilder select = new StringBuilder("select p.id, p.copiasCount");
+        for (SoporteCopia soporte : SOPORTES) {
+            select.append(", p.").append(Pelicula.campoCopias(soporte));
+        }
+        int corregidas = 0;
+        for (Object[] fila : em.createQuery(
+                select.append(" from Pelicula p where p.id >= :desde and p.id < :hasta").toString(), Object[].class)
+                .setParameter("desde", desde)
+                .setParameter("hasta", hasta)
+                .getResultList()) {
+            Integer peliculaId = (Integer) fila[0];
+            int[] cuenta = reales.getOrDefault(peliculaId, new int[1 + SOPORTES.length]);
+            if (!coincide(fila, cuenta)) {
+                StringBuilder jpql = new StringBuilder("update Pelicula p set p.copiasCount = :total");
+                for (SoporteCopia soporte : SOPORTES) {
+                    jpql.append(", p.").append(Pelicula.campoCopias(soporte)).append(" = :").append(soporte.name());
+                }
+                Query update = em.createQuery(jpql.append(" where p.id = :id").toString())
+                        .setParameter("total", cuenta[0])
+                        .setParameter("id", peliculaId);
+                for (SoporteCopia soporte : SOPORTES) {
+                    update.setParameter(soporte.name(), cuenta[1 + soporte.ordinal()]);
+                }
+                update.executeUpdate();
+                corregidas++;
+            }
+        }
+        if (corregidas > 0) {
+            EntityManagerFactory emf = em.getEntityManagerFactory();
+            UnitOfWork.afterCommit(() -> {
+                emf.getCache().evict(Pelicula.class);
+                EntityIdentityMap.forEntity(emf, Pelicula.class).clear();
+            });
+        }
+        return corregidas;
+    }
+
+    /**
+     * Suma a {@code reales} las copias de la base de datos de {@code em} de las películas
+     * con ID en {@code [desde, hasta)}.
+     */
+    private static void contar(EntityManager em, long desde, long hasta, Map<Integer, int[]> reales) {
+        for (Object[] fila : em.createQuery(
+                "select c.pelicula.id, c.soporteCodigo, c.soporte, count(c) from Copia c"
+                        + " where c.pelicula.id >= :desde and c.pelicula.id < :hasta"
+                        + " group by c.pelicula.id, c.soporteCodigo, c.soporte", Object[].class)
+                .setParameter("desde", desde)
+                .setParameter("hasta", hasta)
+                .getResultList()) {
+            int[] cuenta = reales.computeIfAbsent((Integer) fila[0], k -> new int[1 + SOPORTES.length]);
+            int numero = ((Long) fila[3]).intValue();
+            cuenta[0] += numero;
+            SoporteCopia soporte = soporte(fila[1], fila[2]);
+            if (soporte != null) {
+                cuenta[1 + soporte.ordinal()] += numero;
+            }
+        }
+    }
+
+    /**
+     * Compara la fila {@code [id, total, uno por soporte]} con la cuenta real, que tiene
+     * el mismo orden sin el ID.
+     */
+    private static boolean coincide(Object[] fila, int[] cuenta) {
+        for (int i = 0; i < cuenta.length; i++) {
+            if ((Integer) fila[1 + i] != cuenta[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static SoporteCopia soporte(Object codigo, Object legado) {
+        if (codigo != null) {
+            return SoporteCopia.fromCodigo((Short) codigo);
+        }
+        try {
+            return SoporteCopia.fromEtiqueta((String) legado);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
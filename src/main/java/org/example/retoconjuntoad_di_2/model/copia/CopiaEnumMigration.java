@@ -0,0 +1,123 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManager;
+import org.example.retoconjuntoad_di_2.migration.Migration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Versión 1 del esquema: estado y soporte de las copias como códigos.
+ * <p>
+ * Las copias guardadas antes de {@link EstadoCopia} y {@link SoporteCopia} tienen el estado
+ * y el soporte como texto. Esta migración los pasa a códigos recorriendo las copias por
+ * rangos de IDs del tamaño del lote, con una actualización masiva por cada valor antiguo
+ * distinto; el punto de control es el inicio del rango siguiente.
+ * </p>
+ * <p>
+ * Solo toca filas cuyo código sigue vacío, así que una copia guardada desde la interfaz
+ * mientras tanto (que ya escribe el código) no se vuelve a modificar. No incrementa la
+ * versión de las copias, porque su valor no cambia. Los textos que no corresponden a
+ * ningún valor se registran y se dejan como están; {@link Copia#getEstado()} los devuelve
+ * como {@code null}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see org.example.retoconjuntoad_di_2.migration.SchemaMigrator
+ */
+public class CopiaEnumMigration implements Migration {
+
+    private static final System.Logger LOG = System.getLogger(CopiaEnumMigration.class.getName());
+
+    /**
+     * Valores antiguos distintos y su código, por campo. Se calculan en el primer lote de
+     * cada ejecución.
+     */
+    private Map<String, Short> estados;
+    private Map<String, Short> soportes;
+
+    /**
+     * Final (exclusivo) del rango de IDs a recorrer en esta ejecución.
+     */
+    private long hasta;
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Estado y soporte de las copias como códigos";
+    }
+
+    @Override
+    public Long migrateBatch(EntityManager em, Long checkpoint, int batchSize) {
+        if (estados == null) {
+            estados = valoresAntiguos(em, "estado", legado -> EstadoCopia.fromEtiqueta(legado).getCodigo());
+            soportes = valoresAntiguos(em, "soporte", legado -> SoporteCopia.fromEtiqueta(legado).getCodigo());
+            Integer max = em.createQuery("select max(c.id) from Copia c", Integer.class).getSingleResult();
+            hasta = max != null ? max + 1L : 0;
+        }
+        if (estados.isEmpty() && soportes.isEmpty()) {
+            return null;
+        }
+        long desde;
+        if (checkpoint != null) {
+            desde = checkpoint;
+        } else {
+            Integer min = em.createQuery("select min(c.id) from Copia c", Integer.class).getSingleResult();
+            desde = min != null ? min : hasta;
+        }
+        long fin = Math.min(desde + batchSize, hasta);
+        if (desde < fin) {
+            migrar(em, "estado", estados, desde, fin);
+            migrar(em, "soporte", soportes, desde, fin);
+        }
+        if (fin >= hasta) {
+            // Las actualizaciones masivas no pasan por la caché de segundo nivel.
+            em.getEntityManagerFactory().getCache().evict(Copia.class);
+            return null;
+        }
+        return fin;
+    }
+
+    /**
+     * Devuelve los textos distintos de un campo en las copias sin código, con su valor.
+     */
+    private static Map<String, Short> valoresAntiguos(EntityManager em, String campo,
+                                                      Function<String, Short> conversion) {
+        Map<String, Short> valores = new LinkedHashMap<>();
+        for (String legado : em.createQuery("select distinct c." + campo + " from Copia c where c." + campo
+                + "Codigo is null and c." + campo + " is not null", String.class).getResultList()) {
+            try {
+                valores.put(legado, conversion.apply(legado));
+            } catch (IllegalArgumentException e) {
+                LOG.log(System.Logger.Level.WARNING, "Valor de {0} sin código, se deja sin migrar: {1}",
+                        campo, legado);
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Pasa a código un campo de texto ({@code campo + "Codigo"}) en las copias con ID en
+     * {@code [desde, hasta)}.
+     */
+    private static void migrar(EntityManager em, String campo, Map<String, Short> valores,
+                               long desde, long hasta) {
+        String jpql = "update Copia c set c." + campo + "Codigo = :codigo, c." + campo + " = null"
+                + " where c." + campo + "Codigo is null and c." + campo + " = :legado"
+                + " and c.id >= :desde and c.id < :hasta";
+        for (Map.Entry<String, Short> valor : valores.entrySet()) {
+            em.createQuery(jpql)
+                    .setParameter("codigo", valor.getValue())
+                    .setParameter("legado", valor.getKey())
+                    .setParameter("desde", desde)
+                    .setParameter("hasta", hasta)
+                    .executeUpdate();
+        }
+    }
+}
@@ -3,11 +3,36 @@ package org.example.retoconjuntoad_di_2.model.copia;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.metrics.RepositoryMetrics;
+import org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
 import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.ConflictPolicy;
+import org.example.retoconjuntoad_di_2.utils.EntityIdentityMap;
+import org.example.retoconjuntoad_di_2.utils.PartialBulkChangeException;
 import org.example.retoconjuntoad_di_2.utils.Repository;
+import org.example.retoconjuntoad_di_2.utils.StaleEntityException;
+import org.example.retoconjuntoad_di_2.utils.TrackedEntity;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+import org.example.retoconjuntoad_di_2.utils.VersionedEntity;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * Repositorio para gestionar las operaciones CRUD de la entidad {@link Copia}.
@@ -21,9 +46,32 @@ import java.util.Optional;
  * sustituyendo al acceso anterior basado en Hibernate.
  * </p>
  * <p>
- * Cada operación crea su propio EntityManager y lo cierra después de completarse,
- * siguiendo el patrón de "una transacción por operación" para garantizar la
- * consistencia de los datos.
+ * Cada operación se ejecuta dentro de una {@link UnitOfWork}: si se invoca sola,
+ * abre su propio EntityManager y su propia transacción ("una transacción por
+ * operación"); si se invoca dentro de una unidad ya abierta (por ejemplo, desde
+ * otro repositorio), comparte su contexto y se confirma junto con ella.
+ * </p>
+ * <p>
+ * Las copias leídas fuera de una unidad de trabajo apuntan a las instancias compartidas
+ * de su película y su usuario ({@link EntityIdentityMap}): todas las copias de una misma
+ * película, aunque vengan de lecturas distintas, comparten el mismo objeto.
+ * </p>
+ * <p>
+ * Si la base de datos tiene un {@link CopiaArchive}, las copias archivadas se buscan en él
+ * por ID, se restauran al guardarlas y se eliminan de él al borrarlas. Para guardar o
+ * borrar basta con el ID: si la fila no está en la base de datos principal se busca en el
+ * archivo, aunque la copia no venga marcada como archivada. Los listados solo ven las
+ * copias activas; el cambio de estado masivo restaura antes las archivadas.
+ * </p>
+ * <p>
+ * Si la base de datos está repartida en shards ({@link ShardRouter}), cada operación sobre
+ * las copias de un usuario va a su shard; las búsquedas por ID, los listados completos y
+ * las operaciones masivas por IDs recorren el catálogo y todos los shards. Las copias
+ * leídas de un shard se enlazan con la película y el usuario del catálogo, y los
+ * contadores de las películas se ajustan en el catálogo al confirmar la transacción del
+ * shard, en otra transacción: con shards los contadores son eventualmente consistentes
+ * y se recalculan al arrancar ({@link CopiaCounterReconciler}). Cambiar el propietario de una copia a un usuario de otro shard no está admitido:
+ * para eso se mueve al usuario ({@link org.example.retoconjuntoad_di_2.model.shard.ShardRebalancer}).
  * </p>
  *
  * @author Sistema de Gestión de Películas
@@ -33,8 +81,36 @@ import java.util.Optional;
  */
 public class CopiaRepository implements Repository<Copia> {
 
+    private static final System.Logger LOG = System.getLogger(CopiaRepository.class.getName());
+
+    /**
+     * Métricas de llamadas y latencia de los métodos de este repositorio.
+     */
+    private static final RepositoryMetrics METRICS = RepositoryMetrics.forEntity(Copia.class);
+
+    /**
+     * Número máximo de IDs por consulta al enlazar las copias de un shard con el catálogo.
+     */
+    private static final int LOTE_CATALOGO = 1000;
+
     private final EntityManagerFactory entityManagerFactory;
 
+    /**
+     * Generador de IDs para las nuevas entidades.
+     */
+    private final BlockIdGenerator ids;
+
+    /**
+     * Instancias compartidas de las películas y los usuarios de las copias leídas.
+     */
+    private final EntityIdentityMap<Pelicula> peliculas;
+    private final EntityIdentityMap<User> usuarios;
+
+    /**
+     * Política aplicada cuando un guardado choca con una modificación concurrente.
+     */
+    private ConflictPolicy<Copia> conflictPolicy = ConflictPolicy.fromConfig();
+
     /**
      * Constructor que inicializa el repositorio con una factoría de EntityManager.
      *
@@ -42,35 +118,153 @@ public class CopiaRepository implements Repository<Copia> {
      */
     public CopiaRepository(EntityManagerFactory entityManagerFactory) {
         this.entityManagerFactory = entityManagerFactory;
+        this.ids = BlockIdGenerator.forEntity(entityManagerFactory, Copia.class);
+        this.peliculas = EntityIdentityMap.forEntity(entityManagerFactory, Pelicula.class);
+        this.usuarios = EntityIdentityMap.forEntity(entityManagerFactory, User.class);
+    }
+
+    /**
+     * Cambia la política de resolución de conflictos de concurrencia optimista.
+     *
+     * @param conflictPolicy Nueva política (por defecto, la configurada en {@link ConflictPolicy#fromConfig()}).
+     */
+    public void setConflictPolicy(ConflictPolicy<Copia> conflictPolicy) {
+        this.conflictPolicy = conflictPolicy;
     }
 
     /**
      * Guarda una copia en la base de datos.
-     * Si la copia no tiene ID, se inserta como nueva; de lo contrario, se actualiza.
+     * Si la copia no tiene ID, se inserta como nueva; de lo contrario, se actualizan solo
+     * los campos modificados ({@link org.example.retoconjuntoad_di_2.utils.TrackedEntity}).
      *
      * @param entity Copia a guardar.
      * @return La copia gestionada (persistida o actualizada).
+     * @throws StaleEntityException Si otro usuario ha modificado la copia y la política de conflictos no lo resuelve.
      */
     @Override
     public Copia save(Copia entity) {
-        EntityManager em = entityManagerFactory.createEntityManager();
+        return METRICS.time("save", () -> {
+            if (UnitOfWork.isActive()) {
+                // Dentro de una unidad mayor no se puede reintentar: el conflicto se detecta al confirmarla.
+                return saveOnce(entity);
+            }
+            return conflictPolicy.save(entity, this::saveOnce, e -> findById(e.getId().longValue()));
+        });
+    }
+
+    /**
+     * Guarda la copia en una única transacción, sin tratar los conflictos.
+     *
+     * @param entity Copia a guardar.
+     * @return La copia gestionada (persistida o actualizada).
+     */
+    private Copia saveOnce(Copia entity) {
+        EntityManagerFactory base = baseDe(entity.getUser());
+        boolean enShard = base != entityManagerFactory;
+        Pelicula pelicula = entity.getPelicula();
+        User user = entity.getUser();
+        if (enShard && !UnitOfWork.isActive()) {
+            ShardRouter.enlazar(base, peliculaId(entity), user.getId());
+        }
         try {
-            em.getTransaction().begin();
+            return saveOnce(entity, base, enShard);
+        } catch (RuntimeException e) {
+            if (enShard) {
+                // La inserción apuntaba a las filas de enlace del shard.
+                entity.compartir(pelicula, user);
+            }
+            throw e;
+        }
+    }
 
+    private Copia saveOnce(Copia entity, EntityManagerFactory base, boolean enShard) {
+        return UnitOfWork.execute(base, em -> {
             Copia managed;
-            if (entity.getId() == null) {
-                // Nueva copia -> INSERT
+            long ahora = System.currentTimeMillis();
+            CopiaArchive archivo = archivo();
+            // Nueva (o con un ID asignado en un intento que se deshizo) -> INSERT
+            if (entity.getId() == null
+                    || entity.getVersion() == 0 && !entity.isArchivada() && em.find(Copia.class, entity.getId()) == null
+                    && (archivo == null || !archivo.contiene(entity.getId()))) {
+                if (entity.getId() == null) {
+                    entity.setId(ids.next());
+                }
+                entity.tocar(ahora);
+                if (enShard) {
+                    enlazarEnShard(em, entity, entity.getPelicula(), entity.getUser());
+                }
                 em.persist(entity);
                 managed = entity;
+                ajustarContadores(em, peliculaId(managed), managed.getSoporte(), 1);
             } else {
-                // Copia ya existente -> UPDATE
-                managed = em.merge(entity);
+                // Copia ya existente -> UPDATE solo de los campos modificados
+                Copia actual = em.find(Copia.class, entity.getId());
+                if (actual == null && archivo != null) {
+                    // Si está archivada (aunque la copia de trabajo no lo indique) se restaura en esta
+                    // transacción. Las filas archivadas no cambian: no hay versión que comprobar.
+                    managed = archivo.restaurar(em, entity.getId());
+                    if (managed == null) {
+                        ConflictPolicy.checkVersion(entity, null);
+                    }
+                } else {
+                    managed = actual;
+                    ConflictPolicy.checkVersion(entity, managed);
+                }
+                Integer peliculaAntes = peliculaId(managed);
+                SoporteCopia soporteAntes = managed.getSoporte();
+                applyChanges(entity, managed, em);
+                if (!Objects.equals(peliculaAntes, peliculaId(managed)) || soporteAntes != managed.getSoporte()) {
+                    ajustarContadores(em, peliculaAntes, soporteAntes, -1);
+                    ajustarContadores(em, peliculaId(managed), managed.getSoporte(), 1);
+                }
+                managed.tocar(ahora);
+                if (enShard) {
+                    Copia copia = managed;
+                    UnitOfWork.afterCommit(() -> copia.compartir(entity.getPelicula(), entity.getUser()));
+                }
             }
-
-            em.getTransaction().commit();
+            managed.clearDirtyFields();
+            UnitOfWork.afterCommit(() -> EntityChanges.publish(
+                    new EntityChange(ChangeRecord.EntityType.COPIA, ChangeRecord.Operation.SAVE, managed)));
             return managed;
-        } finally {
-            em.close();
+        });
+    }
+
+    /**
+     * Relaciona la copia, en la transacción de un shard, con las filas de enlace de su
+     * película y su usuario, y la devuelve a las instancias del catálogo al confirmar.
+     */
+    private static void enlazarEnShard(EntityManager em, Copia copia, Pelicula pelicula, User user) {
+        copia.compartir(pelicula != null ? ShardRouter.pelicula(em, pelicula.getId()) : null,
+                user != null ? ShardRouter.usuario(em, user.getId()) : null);
+        UnitOfWork.afterCommit(() -> copia.compartir(pelicula, user));
+    }
+
+    /**
+     * Copia sobre la instancia gestionada solo los campos modificados en la desprendida.
+     * <p>
+     * A diferencia de {@code merge}, no recorre ni propaga nada a las asociaciones
+     * que no han cambiado.
+     * </p>
+     *
+     * @param source Instancia desprendida con los cambios.
+     * @param target Instancia gestionada.
+     * @param em EntityManager de la transacción, para resolver las referencias (en un
+     *           shard, las filas de enlace).
+     */
+    private static void applyChanges(Copia source, Copia target, EntityManager em) {
+        for (String field : source.getDirtyFields()) {
+            switch (field) {
+                case "pelicula" -> target.setPelicula(source.getPelicula() == null ? null
+                        : ShardRouter.isShard(em) ? ShardRouter.pelicula(em, source.getPelicula().getId())
+                        : em.getReference(Pelicula.class, source.getPelicula().getId()));
+                case "user" -> target.setUser(source.getUser() == null ? null
+                        : ShardRouter.isShard(em) ? ShardRouter.usuario(em, source.getUser().getId())
+                        : em.getReference(User.class, source.getUser().getId()));
+                case "estado" -> target.setEstado(source.getEstado());
+                case "soporte" -> target.setSoporte(source.getSoporte());
+                default -> throw new IllegalArgumentException("Campo desconocido: " + field);
+            }
         }
     }
 
@@ -79,19 +273,37 @@ public class CopiaRepository implements Repository<Copia> {
      *
      * @param entity Copia a eliminar.
      * @return Un Optional que contiene la copia eliminada.
+     * @throws StaleEntityException Si la copia se ha modificado desde que se leyó.
      */
     @Override
     public Optional<Copia> delete(Copia entity) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            em.getTransaction().begin();
-            Copia managed = em.contains(entity) ? entity : em.merge(entity);
-            em.remove(managed);
-            em.getTransaction().commit();
-            return Optional.of(entity);
-        } finally {
-            em.close();
-        }
+        return METRICS.time("delete", () -> {
+            try {
+                return UnitOfWork.execute(baseDe(entity.getUser()), em -> {
+                    Copia managed = em.contains(entity) ? entity : em.find(Copia.class, entity.getId());
+                    CopiaArchive archivo = archivo();
+                    if (managed == null && archivo != null && (entity.isArchivada() || archivo.contiene(entity.getId()))) {
+                        UnitOfWork.afterCommit(() -> {
+                            archivo.borrar(List.of(entity.getId()));
+                            EntityChanges.publish(
+                                    new EntityChange(ChangeRecord.EntityType.COPIA, ChangeRecord.Operation.DELETE, entity));
+                        });
+                        return Optional.of(entity);
+                    }
+                    ConflictPolicy.checkVersion(entity, managed);
+                    em.remove(managed);
+                    ajustarContadores(em, peliculaId(managed), managed.getSoporte(), -1);
+                    UnitOfWork.afterCommit(() -> EntityChanges.publish(
+                            new EntityChange(ChangeRecord.EntityType.COPIA, ChangeRecord.Operation.DELETE, entity)));
+                    return Optional.of(entity);
+                });
+            } catch (RuntimeException e) {
+                if (ConflictPolicy.isOptimisticFailure(e)) {
+                    throw new StaleEntityException(Copia.class, entity.getId(), e);
+                }
+                throw e;
+            }
+        });
     }
 
     /**
@@ -102,9 +314,382 @@ public class CopiaRepository implements Repository<Copia> {
      */
     @Override
     public Optional<Copia> deleteById(Long id) {
-        Optional<Copia> copia = findById(id);
-        copia.ifPresent(this::delete);
-        return copia;
+        return METRICS.time("deleteById", () -> {
+            if (router() != null) {
+                // No se sabe en qué shard está: se busca primero y se borra en el suyo.
+                Optional<Copia> copia = findById(id);
+                copia.ifPresent(this::delete);
+                return copia;
+            }
+            // Búsqueda y borrado en la misma unidad de trabajo: un único contexto y un único commit.
+            return UnitOfWork.execute(entityManagerFactory, em -> {
+                Optional<Copia> copia = Optional.ofNullable(em.find(Copia.class, id.intValue()));
+                copia.ifPresent(this::delete);
+                return copia;
+            });
+        });
+    }
+
+    /**
+     * Elimina varias copias con sentencias {@code DELETE} masivas, sin cargarlas.
+     * <p>
+     * Cada copia se borra solo si sigue en la versión con la que se leyó, igual que
+     * {@link #delete}: la sentencia lleva {@code c.version = :version} (una por cada
+     * versión distinta) y, si alguna copia ha cambiado, se deshace la transacción y se
+     * lanza {@link StaleEntityException}. La {@link ConflictPolicy} no reintenta estas
+     * operaciones: el llamante debe recargar las copias. Solo se leen el ID, el usuario
+     * y la versión necesarios para comprobarla y notificar el cambio a la caché y al
+     * diario. Las que estén archivadas se eliminan del archivo al confirmar, sin
+     * comprobar versión. Con shards, se aplica en cada base de datos en su propia
+     * transacción, sin compensación: si falla una después de confirmar otras, lo
+     * confirmado se queda y se lanza {@link PartialBulkChangeException}.
+     * </p>
+     *
+     * @param copias Copias a eliminar, con la versión leída.
+     * @return Número de copias activas eliminadas.
+     * @throws StaleEntityException Si alguna copia activa se ha modificado desde que se leyó
+     *         y no se ha borrado ninguna.
+     * @throws PartialBulkChangeException Si el fallo llega cuando ya se habían borrado
+     *         copias en otra base de datos.
+     */
+    public int deleteByIds(Collection<Copia> copias) {
+        return METRICS.time("deleteByIds", () -> {
+            if (copias.isEmpty()) {
+                return 0;
+            }
+            List<Integer> ids = copias.stream().map(Copia::getId).toList();
+            Map<Integer, Long> esperadas = versionesEsperadas(copias);
+            return porBase(base -> UnitOfWork.execute(base, em -> {
+                List<Object[]> filas = em.createQuery(
+                        "select c.id, c.user.id, c.version from Copia c where c.id in :ids", Object[].class)
+                        .setParameter("ids", ids)
+                        .getResultList();
+                Map<Long, List<Integer>> grupos = porVersion(filas, esperadas);
+                List<Copia> afectadas = referencias(filas);
+                descontarCopias(em, em.createQuery(
+                        "select c.pelicula.id, c.soporteCodigo, c.soporte, count(c) from Copia c where c.id in :ids"
+                                + " group by c.pelicula.id, c.soporteCodigo, c.soporte", Object[].class)
+                        .setParameter("ids", ids)
+                        .getResultList());
+                int borradas = aplicarPorVersion(grupos, (grupo, version) -> em.createQuery(
+                        "delete from Copia c where c.id in :ids and c.version = :version")
+                        .setParameter("ids", grupo)
+                        .setParameter("version", version)
+                        .executeUpdate());
+                afterBulkChange(base, afectadas, ChangeRecord.Operation.DELETE, null);
+                CopiaArchive archivo = archivo();
+                if (archivo != null && base == entityManagerFactory) {
+                    UnitOfWork.afterCommit(() -> archivo.borrar(ids));
+                }
+                return borradas;
+            }));
+        });
+    }
+
+    /**
+     * Elimina todas las copias de un usuario con una única sentencia {@code DELETE}.
+     *
+     * @param user Usuario propietario.
+     * @return Número de copias eliminadas.
+     */
+    public int deleteByUser(User user) {
+        EntityManagerFactory base = baseDe(user);
+        return METRICS.time("deleteByUser", () -> UnitOfWork.execute(base, em -> {
+            User propietario = propietario(em, user);
+            List<Copia> afectadas = referencias(em.createQuery(
+                    "select c.id, c.user.id from Copia c where c.user = :user", Object[].class)
+                    .setParameter("user", propietario)
+                    .getResultList());
+            descontarCopias(em, em.createQuery(
+                    "select c.pelicula.id, c.soporteCodigo, c.soporte, count(c) from Copia c where c.user = :user"
+                            + " group by c.pelicula.id, c.soporteCodigo, c.soporte", Object[].class)
+                    .setParameter("user", propietario)
+                    .getResultList());
+            int borradas = em.createQuery("delete from Copia c where c.user = :user")
+                    .setParameter("user", propietario)
+                    .executeUpdate();
+            afterBulkChange(base, afectadas, ChangeRecord.Operation.DELETE, null);
+            CopiaArchive archivo = archivo();
+            if (archivo != null) {
+                UnitOfWork.afterCommit(() -> archivo.deleteByUser(user.getId()));
+            }
+            return borradas;
+        }));
+    }
+
+    /**
+     * Cambia el estado de varias copias con sentencias {@code UPDATE} masivas, sin
+     * cargarlas.
+     * <p>
+     * Igual que en {@link #deleteByIds}, cada copia solo se modifica si sigue en la versión
+     * con la que se leyó; si no, se deshace la transacción y se lanza
+     * {@link StaleEntityException}. La versión de cada copia se incrementa, de modo que una
+     * edición abierta sobre una de ellas detectará el cambio al guardar. Las copias
+     * archivadas se restauran antes (con su propia transacción) y se modifican sin
+     * comprobar versión. Con shards, se aplica en cada base de datos en su propia
+     * transacción, sin compensación: si falla una después de confirmar otras, lo
+     * confirmado se queda y se lanza {@link PartialBulkChangeException}.
+     * </p>
+     *
+     * @param copias Copias a modificar, con la versión leída.
+     * @param estado Nuevo estado.
+     * @return Número de copias modificadas.
+     * @throws StaleEntityException Si alguna copia activa se ha modificado desde que se leyó
+     *         y no se ha modificado ninguna.
+     * @throws PartialBulkChangeException Si el fallo llega cuando ya se habían modificado
+     *         copias en otra base de datos.
+     */
+    public int updateEstado(Collection<Copia> copias, EstadoCopia estado) {
+        return METRICS.time("updateEstado", () -> {
+            if (copias.isEmpty()) {
+                return 0;
+            }
+            List<Integer> archivadas = copias.stream().filter(Copia::isArchivada).map(Copia::getId).toList();
+            CopiaArchive archivo = archivo();
+            if (archivo != null && !archivadas.isEmpty()) {
+                archivo.restore(archivadas);
+            }
+            List<Integer> ids = copias.stream().map(Copia::getId).toList();
+            Map<Integer, Long> esperadas = versionesEsperadas(copias);
+            long ahora = System.currentTimeMillis();
+            return porBase(base -> UnitOfWork.execute(base, em -> {
+                List<Object[]> filas = em.createQuery(
+                        "select c.id, c.user.id, c.version from Copia c where c.id in :ids", Object[].class)
+                        .setParameter("ids", ids)
+                        .getResultList();
+                Map<Long, List<Integer>> grupos = porVersion(filas, esperadas);
+                List<Copia> afectadas = referencias(filas);
+                int modificadas = aplicarPorVersion(grupos, (grupo, version) -> em.createQuery(
+                        "update Copia c set c.estadoCodigo = :estado, c.estado = null, c.version = c.version + 1,"
+                                + " c.modificadaEn = :ahora where c.id in :ids and c.version = :version")
+                        .setParameter("estado", estado.getCodigo())
+                        .setParameter("ahora", ahora)
+                        .setParameter("ids", grupo)
+                        .setParameter("version", version)
+                        .executeUpdate());
+                afterBulkChange(base, afectadas, ChangeRecord.Operation.UPDATE, Map.of("estado", estado.getEtiqueta()));
+                return modificadas;
+            }));
+        });
+    }
+
+    /**
+     * Aplica una operación masiva en cada base de datos con copias, cada una en su
+     * propia transacción, y suma las filas afectadas.
+     * <p>
+     * Si falla una base de datos sin que ninguna anterior haya cambiado filas, se relanza
+     * el fallo tal cual; si ya había cambios confirmados, se envuelve en
+     * {@link PartialBulkChangeException} con el número aplicado.
+     * </p>
+     */
+    private int porBase(ToIntFunction<EntityManagerFactory> operacion) {
+        int total = 0;
+        for (EntityManagerFactory base : bases()) {
+            try {
+                total += operacion.applyAsInt(base);
+            } catch (RuntimeException e) {
+                if (total == 0) {
+                    throw e;
+                }
+                throw new PartialBulkChangeException(total, e);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Versiones leídas de las copias activas, por ID. Las archivadas no se incluyen: su
+     * versión es la del archivo, no la de la base de datos principal.
+     */
+    private static Map<Integer, Long> versionesEsperadas(Collection<Copia> copias) {
+        Map<Integer, Long> esperadas = new HashMap<>();
+        for (Copia copia : copias) {
+            if (!copia.isArchivada()) {
+                esperadas.put(copia.getId(), copia.getVersion());
+            }
+        }
+        return esperadas;
+    }
+
+    /**
+     * Comprueba que las filas {@code [id, userId, version]} leídas en la transacción siguen en
+     * la versión esperada y agrupa sus IDs por versión, para que cada sentencia masiva lleve
+     * su condición {@code c.version = :version}.
+     *
+     * @throws StaleEntityException Con el ID de la primera copia que ha cambiado.
+     */
+    private static Map<Long, List<Integer>> porVersion(List<Object[]> filas, Map<Integer, Long> esperadas) {
+        Map<Long, List<Integer>> grupos = new HashMap<>();
+        for (Object[] fila : filas) {
+            Integer id = (Integer) fila[0];
+            long version = ((Number) fila[2]).longValue();
+            Long esperada = esperadas.get(id);
+            if (esperada != null && esperada != version) {
+                throw new StaleEntityException(Copia.class, id, null);
+            }
+            grupos.computeIfAbsent(version, v -> new ArrayList<>()).add(id);
+        }
+        return grupos;
+    }
+
+    /**
+     * Ejecuta una sentencia masiva por cada grupo de versión y comprueba que ha afectado a
+     * todas las copias del grupo: si no, otra transacción las ha cambiado entre la lectura
+     * y la sentencia.
+     *
+     * @throws StaleEntityException Si alguna copia no se ha podido modificar o borrar.
+     */
+    private static int aplicarPorVersion(Map<Long, List<Integer>> grupos,
+                                         BiFunction<List<Integer>, Long, Integer> sentencia) {
+        int total = 0;
+        for (Map.Entry<Long, List<Integer>> grupo : grupos.entrySet()) {
+            int afectadas = sentencia.apply(grupo.getValue(), grupo.getKey());
+            if (afectadas != grupo.getValue().size()) {
+                throw new StaleEntityException(Copia.class, grupo.getValue().get(0), null);
+            }
+            total += afectadas;
+        }
+        return total;
+    }
+
+    private CopiaArchive archivo() {
+        return CopiaArchive.of(entityManagerFactory);
+    }
+
+    /**
+     * Encaminador de las copias, o {@code null} si la base de datos no está repartida.
+     */
+    private ShardRouter router() {
+        return ShardRouter.of(entityManagerFactory);
+    }
+
+    /**
+     * Devuelve la base de datos de las copias de un usuario: su shard o, sin shards, la
+     * principal. Es sobre la que hay que abrir una {@link UnitOfWork} que incluya guardados
+     * de sus copias.
+     *
+     * @param user Usuario propietario.
+     * @return Factoría de la base de datos de sus copias.
+     */
+    public EntityManagerFactory baseDe(User user) {
+        ShardRouter router = router();
+        return router != null && user != null ? router.forUser(user.getId()) : entityManagerFactory;
+    }
+
+    /**
+     * Todas las bases de datos con copias: la principal y, si hay, los shards.
+     */
+    private List<EntityManagerFactory> bases() {
+        ShardRouter router = router();
+        return router != null ? router.all() : List.of(entityManagerFactory);
+    }
+
+    /**
+     * Usuario con el que filtrar las copias en la base de datos de {@code em}: en un shard,
+     * su fila de enlace.
+     */
+    private static User propietario(EntityManager em, User user) {
+        return ShardRouter.isShard(em) ? em.getReference(User.class, user.getId()) : user;
+    }
+
+    private static Integer peliculaId(Copia copia) {
+        return copia.getPelicula() != null ? copia.getPelicula().getId() : null;
+    }
+
+    /**
+     * Suma {@code delta} a los contadores de copias de una película
+     * ({@link Pelicula#getCopiasCount()} y el de su soporte) dentro de la transacción actual.
+     * <p>
+     * Es una actualización atómica en la base de datos: las altas simultáneas de copias
+     * de la misma película no se pisan ni chocan por la versión, que no se modifica.
+     * </p>
+     * <p>
+     * Si {@code em} trabaja sobre un shard, las películas están en el catálogo: el ajuste
+     * se hace allí, en su propia transacción, cuando se confirma la del shard. No hay
+     * transacción común a las dos bases de datos, así que los contadores de las copias
+     * de los shards son eventualmente consistentes: entre los dos commits un lector ve
+     * el contador anterior, y si el ajuste falla o el proceso termina entremedias, el
+     * contador queda desviado hasta el recálculo que {@link org.example.retoconjuntoad_di_2.utils.DataProvider}
+     * lanza al arrancar con shards ({@link CopiaCounterReconciler}). Un fallo del ajuste
+     * se anota y no se propaga, porque la copia ya está confirmada en el shard.
+     * </p>
+     */
+    static void ajustarContadores(EntityManager em, Integer peliculaId, SoporteCopia soporte, int delta) {
+        if (peliculaId == null || delta == 0) {
+            return;
+        }
+        if (ShardRouter.isShard(em)) {
+            EntityManagerFactory catalogo = ShardRouter.of(em.getEntityManagerFactory()).getCatalog();
+            UnitOfWork.afterCommit(() -> {
+                try {
+                    UnitOfWork.run(catalogo, c -> ajustarContadores(c, peliculaId, soporte, delta));
+                } catch (RuntimeException e) {
+                    LOG.log(System.Logger.Level.WARNING, "No se pudo ajustar el contador de copias de la película "
+                            + peliculaId + "; se corregirá en el próximo recálculo", e);
+                }
+            });
+            return;
+        }
+        StringBuilder jpql = new StringBuilder("update Pelicula p set p.copiasCount = p.copiasCount + :delta");
+        if (soporte != null) {
+            String campo = Pelicula.campoCopias(soporte);
+            jpql.append(", p.").append(campo).append(" = p.").append(campo).append(" + :delta");
+        }
+        em.createQuery(jpql.append(" where p.id = :id").toString())
+                .setParameter("delta", delta)
+                .setParameter("id", peliculaId)
+                .executeUpdate();
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        UnitOfWork.afterCommit(() -> {
+            emf.getCache().evict(Pelicula.class, peliculaId);
+            // La versión no cambia: la instancia compartida tiene los contadores y las copias anteriores.
+            EntityIdentityMap.forEntity(emf, Pelicula.class).evict(peliculaId);
+        });
+    }
+
+    /**
+     * Descuenta de los contadores las copias que va a borrar una operación masiva, a
+     * partir de filas {@code [peliculaId, código del soporte, soporte antiguo, número]}.
+     */
+    private static void descontarCopias(EntityManager em, List<Object[]> filas) {
+        for (Object[] fila : filas) {
+            SoporteCopia soporte = fila[1] != null ? SoporteCopia.fromCodigo((Short) fila[1]) : legado(SoporteCopia::fromEtiqueta, fila[2]);
+            ajustarContadores(em, (Integer) fila[0], soporte, -((Long) fila[3]).intValue());
+        }
+    }
+
+    /**
+     * Tras el commit, invalida la caché de segundo nivel y publica un evento por cada
+     * copia afectada por una operación masiva.
+     */
+    private static void afterBulkChange(EntityManagerFactory base, List<Copia> afectadas,
+                                        ChangeRecord.Operation operation, Map<String, Object> fields) {
+        UnitOfWork.afterCommit(() -> {
+            // Las sentencias masivas no pasan por el contexto de persistencia ni por la caché L2.
+            // Se invalida después del commit: antes, un lector podría volver a cargar en la
+            // caché las filas anteriores mientras la transacción sigue abierta.
+            base.getCache().evict(Copia.class);
+            for (Copia copia : afectadas) {
+                EntityChanges.publish(new EntityChange(ChangeRecord.EntityType.COPIA, operation, copia, fields));
+            }
+        });
+    }
+
+    /**
+     * Construye referencias ligeras (ID y usuario) a partir de pares {@code [id, userId]}.
+     */
+    static List<Copia> referencias(List<Object[]> filas) {
+        List<Copia> copias = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+            User user = new User();
+            user.setId((Integer) fila[1]);
+            Copia copia = new Copia();
+            copia.setId((Integer) fila[0]);
+            copia.setUser(user);
+            copia.clearDirtyFields();
+            copias.add(copia);
+        }
+        return copias;
     }
 
     /**
@@ -115,12 +700,25 @@ public class CopiaRepository implements Repository<Copia> {
      */
     @Override
     public Optional<Copia> findById(Long id) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            return Optional.ofNullable(em.find(Copia.class, id.intValue()));
-        } finally {
-            em.close();
-        }
+        return METRICS.time("findById", () -> {
+            Optional<Copia> copia = Optional.empty();
+            for (EntityManagerFactory base : bases()) {
+                copia = UnitOfWork.read(base, em -> {
+                    return Optional.ofNullable(em.find(Copia.class, id.intValue()));
+                });
+                if (copia.isPresent()) {
+                    compartidas(base, List.of(copia.get()));
+                    break;
+                }
+            }
+            if (!UnitOfWork.isActive()) {
+                CopiaArchive archivo = archivo();
+                if (copia.isEmpty() && archivo != null) {
+                    return archivo.findById(id.intValue());
+                }
+            }
+            return copia;
+        });
     }
 
     /**
@@ -130,13 +728,16 @@ public class CopiaRepository implements Repository<Copia> {
      */
     @Override
     public List<Copia> findAll() {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            TypedQuery<Copia> q = em.createQuery("select c from Copia c", Copia.class);
-            return q.getResultList();
-        } finally {
-            em.close();
-        }
+        return METRICS.time("findAll", () -> {
+            List<Copia> copias = new ArrayList<>();
+            for (EntityManagerFactory base : bases()) {
+                copias.addAll(compartidas(base, UnitOfWork.read(base, em -> {
+                    TypedQuery<Copia> q = em.createQuery("select c from Copia c", Copia.class);
+                    return q.getResultList();
+                })));
+            }
+            return copias;
+        });
     }
 
     /**
@@ -146,14 +747,17 @@ public class CopiaRepository implements Repository<Copia> {
      */
     @Override
     public Long count() {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            return em.createQuery(
-                    "select count(c) from Copia c", Long.class
-            ).getSingleResult();
-        } finally {
-            em.close();
-        }
+        return METRICS.time("count", () -> {
+            long total = 0;
+            for (EntityManagerFactory base : bases()) {
+                total += UnitOfWork.read(base, em -> {
+                    return em.createQuery(
+                            "select count(c) from Copia c", Long.class
+                    ).getSingleResult();
+                });
+            }
+            return total;
+        });
     }
 
     /**
@@ -163,15 +767,170 @@ public class CopiaRepository implements Repository<Copia> {
      * @return Una lista con las copias del usuario.
      */
     public List<Copia> findByUser(User user) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
+        EntityManagerFactory base = baseDe(user);
+        return METRICS.time("findByUser", () -> compartidas(base, UnitOfWork.read(base, em -> {
             TypedQuery<Copia> query = em.createQuery(
                     "select c from Copia c where c.user = :user", Copia.class
             );
-            query.setParameter("user", user);
+            query.setParameter("user", propietario(em, user));
             return query.getResultList();
-        } finally {
-            em.close();
+        })));
+    }
+
+    /**
+     * Obtiene las copias de un usuario con un estado dado.
+     * <p>
+     * El filtro compara el código del estado; las copias aún no migradas a códigos
+     * ({@link CopiaEnumMigration}) se comparan por su etiqueta.
+     * </p>
+     *
+     * @param user Usuario propietario.
+     * @param estado Estado buscado.
+     * @return Copias del usuario con ese estado.
+     */
+    public List<Copia> findByUserAndEstado(User user, EstadoCopia estado) {
+        EntityManagerFactory base = baseDe(user);
+        return METRICS.time("findByUserAndEstado", () -> compartidas(base, UnitOfWork.read(base, em -> {
+            return em.createQuery(
+                    "select c from Copia c where c.user = :user and (c.estadoCodigo = :estado"
+                            + " or c.estadoCodigo is null and c.estado = :etiqueta)", Copia.class)
+                    .setParameter("user", propietario(em, user))
+                    .setParameter("estado", estado.getCodigo())
+                    .setParameter("etiqueta", estado.getEtiqueta())
+                    .getResultList();
+        })));
+    }
+
+    /**
+     * Cuenta las copias de un usuario por estado, agrupando en la base de datos por el
+     * código del estado.
+     *
+     * @param user Usuario propietario.
+     * @return Número de copias por estado (solo los estados con alguna copia).
+     */
+    public Map<EstadoCopia, Long> contarPorEstado(User user) {
+        return METRICS.time("contarPorEstado", () -> UnitOfWork.read(baseDe(user), em -> {
+            Map<EstadoCopia, Long> conteo = new EnumMap<>(EstadoCopia.class);
+            for (Object[] fila : facetas(em, user, "estado")) {
+                EstadoCopia estado = fila[0] != null ? EstadoCopia.fromCodigo((Short) fila[0]) : legado(EstadoCopia::fromEtiqueta, fila[1]);
+                if (estado != null) {
+                    conteo.merge(estado, (Long) fila[2], Long::sum);
+                }
+            }
+            return conteo;
+        }));
+    }
+
+    /**
+     * Cuenta las copias de un usuario por soporte, agrupando en la base de datos por el
+     * código del soporte.
+     *
+     * @param user Usuario propietario.
+     * @return Número de copias por soporte (solo los soportes con alguna copia).
+     */
+    public Map<SoporteCopia, Long> contarPorSoporte(User user) {
+        return METRICS.time("contarPorSoporte", () -> UnitOfWork.read(baseDe(user), em -> {
+            Map<SoporteCopia, Long> conteo = new EnumMap<>(SoporteCopia.class);
+            for (Object[] fila : facetas(em, user, "soporte")) {
+                SoporteCopia soporte = fila[0] != null ? SoporteCopia.fromCodigo((Short) fila[0]) : legado(SoporteCopia::fromEtiqueta, fila[1]);
+                if (soporte != null) {
+                    conteo.merge(soporte, (Long) fila[2], Long::sum);
+                }
+            }
+            return conteo;
+        }));
+    }
+
+    /**
+     * Filas {@code [código, etiqueta antigua, número]} agrupadas por un campo codificado.
+     * La etiqueta solo tiene valor en las copias aún no migradas.
+     */
+    private static List<Object[]> facetas(EntityManager em, User user, String campo) {
+        return em.createQuery(
+                "select c." + campo + "Codigo, c." + campo + ", count(c) from Copia c where c.user = :user"
+                        + " group by c." + campo + "Codigo, c." + campo, Object[].class)
+                .setParameter("user", propietario(em, user))
+                .getResultList();
+    }
+
+    /**
+     * Enlaza las copias leídas de una base de datos con las instancias compartidas de su
+     * película y su usuario si ya están desprendidas (fuera de una unidad de trabajo).
+     * <p>
+     * Las copias de un shard apuntan a filas de enlace: se sustituyen por las del catálogo,
+     * leyendo de una vez las que el mapa de identidad no tiene.
+     * </p>
+     */
+    private List<Copia> compartidas(EntityManagerFactory base, List<Copia> copias) {
+        if (UnitOfWork.isActive()) {
+            return copias;
+        }
+        if (base == entityManagerFactory) {
+            copias.forEach(this::compartir);
+            return copias;
+        }
+        Set<Integer> peliculaIds = new HashSet<>();
+        Set<Integer> userIds = new HashSet<>();
+        for (Copia copia : copias) {
+            if (copia.getPelicula() != null) {
+                peliculaIds.add(copia.getPelicula().getId());
+            }
+            if (copia.getUser() != null) {
+                userIds.add(copia.getUser().getId());
+            }
+        }
+        Map<Integer, Pelicula> catalogoPeliculas = delCatalogo(peliculas, Pelicula.class, peliculaIds);
+        Map<Integer, User> catalogoUsuarios = delCatalogo(usuarios, User.class, userIds);
+        for (Copia copia : copias) {
+            Pelicula pelicula = copia.getPelicula();
+            User user = copia.getUser();
+            copia.compartir(pelicula != null ? catalogoPeliculas.getOrDefault(pelicula.getId(), pelicula) : null,
+                    user != null ? catalogoUsuarios.getOrDefault(user.getId(), user) : null);
+        }
+        return copias;
+    }
+
+    private void compartir(Copia copia) {
+        copia.compartir(peliculas.canonical(copia.getPelicula()), usuarios.canonical(copia.getUser()));
+    }
+
+    /**
+     * Devuelve las instancias compartidas del catálogo con unos IDs, leyendo por lotes las
+     * que el mapa de identidad no tiene (o tiene con cambios sin guardar).
+     */
+    private <T extends VersionedEntity & TrackedEntity> Map<Integer, T> delCatalogo(
+            EntityIdentityMap<T> identidad, Class<T> tipo, Set<Integer> ids) {
+        Map<Integer, T> encontradas = new HashMap<>();
+        List<Integer> faltan = new ArrayList<>();
+        for (Integer id : ids) {
+            T conocida = identidad.get(id);
+            if (conocida != null && conocida.getDirtyFields().isEmpty()) {
+                encontradas.put(id, conocida);
+            } else {
+                faltan.add(id);
+            }
+        }
+        for (int i = 0; i < faltan.size(); i += LOTE_CATALOGO) {
+            List<Integer> lote = faltan.subList(i, Math.min(i + LOTE_CATALOGO, faltan.size()));
+            List<T> leidas = UnitOfWork.read(entityManagerFactory, em -> em.createQuery(
+                    "select e from " + tipo.getSimpleName() + " e where e.id in :ids", tipo)
+                    .setParameter("ids", lote)
+                    .getResultList());
+            for (T entidad : identidad.canonicalAll(leidas)) {
+                encontradas.put(entidad.getId(), entidad);
+            }
+        }
+        return encontradas;
+    }
+
+    /**
+     * Convierte una etiqueta antigua, o devuelve {@code null} si no es válida.
+     */
+    static <E> E legado(Function<String, E> conversion, Object etiqueta) {
+        try {
+            return conversion.apply((String) etiqueta);
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 
@@ -0,0 +1,73 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManager;
+import org.example.retoconjuntoad_di_2.migration.Migration;
+
+/**
+ * Versión 4 del esquema: momento de la última escritura de las copias.
+ * <p>
+ * Las copias guardadas antes de {@link Copia#getModificadaEn()} no tienen ese dato. Esta
+ * migración les pone el momento en que empieza a aplicarse, de modo que la regla de
+ * antigüedad de {@link CopiaArchive} cuenta desde la actualización en lugar de
+ * archivarlas todas de golpe. Recorre las copias por rangos de IDs del tamaño del lote,
+ * con una actualización masiva por rango; el punto de control es el inicio del rango
+ * siguiente. No incrementa la versión de las copias.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see org.example.retoconjuntoad_di_2.migration.SchemaMigrator
+ */
+public class CopiaTimestampMigration implements Migration {
+
+    /**
+     * Momento que se asigna, fijado en el primer lote de cada ejecución.
+     */
+    private long ahora;
+
+    /**
+     * Final (exclusivo) del rango de IDs a recorrer en esta ejecución.
+     */
+    private long hasta = -1;
+
+    @Override
+    public int getVersion() {
+        return 4;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Momento de la última escritura de las copias";
+    }
+
+    @Override
+    public Long migrateBatch(EntityManager em, Long checkpoint, int batchSize) {
+        if (hasta < 0) {
+            ahora = System.currentTimeMillis();
+            Integer max = em.createQuery("select max(c.id) from Copia c", Integer.class).getSingleResult();
+            hasta = max != null ? max + 1L : 0;
+        }
+        long desde;
+        if (checkpoint != null) {
+            desde = checkpoint;
+        } else {
+            Integer min = em.createQuery("select min(c.id) from Copia c", Integer.class).getSingleResult();
+            desde = min != null ? min : hasta;
+        }
+        long fin = Math.min(desde + batchSize, hasta);
+        if (desde < fin) {
+            em.createQuery("update Copia c set c.modificadaEn = :ahora"
+                            + " where c.modificadaEn = 0 and c.id >= :desde and c.id < :hasta")
+                    .setParameter("ahora", ahora)
+                    .setParameter("desde", desde)
+                    .setParameter("hasta", fin)
+                    .executeUpdate();
+        }
+        if (fin >= hasta) {
+            // Las actualizaciones masivas no pasan por la caché de segundo nivel.
+            em.getEntityManagerFactory().getCache().evict(Copia.class);
+            return null;
+        }
+        return fin;
+    }
+}
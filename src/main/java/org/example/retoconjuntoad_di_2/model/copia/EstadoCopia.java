@@ -0,0 +1,93 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+/**
+ * Estado físico de una copia.
+ * <p>
+ * Se persiste por su código ({@link #getCodigo()}), un {@code short} explícito, de modo
+ * que cada copia guarda un número pequeño en lugar del texto, y filtros y recuentos
+ * comparan enteros. El código forma parte del formato de la base de datos y no depende
+ * del orden de las constantes: se pueden reordenar, pero un código asignado no se cambia
+ * ni se reutiliza, y las constantes nuevas reciben uno nuevo.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see Copia#getEstado()
+ */
+public enum EstadoCopia {
+
+    NUEVA(0, "Nueva"),
+    BUENA(1, "Buena"),
+    USADA(2, "Usada"),
+    DETERIORADA(3, "Deteriorada");
+
+    private static final EstadoCopia[] VALUES = values();
+
+    private final short codigo;
+    private final String etiqueta;
+
+    EstadoCopia(int codigo, String etiqueta) {
+        this.codigo = (short) codigo;
+        this.etiqueta = etiqueta;
+    }
+
+    /**
+     * Código con el que se persiste el estado.
+     *
+     * @return Código estable del estado.
+     */
+    public short getCodigo() {
+        return codigo;
+    }
+
+    /**
+     * Texto que se muestra en la interfaz (y que se guardaba antes de usar códigos).
+     *
+     * @return Etiqueta del estado.
+     */
+    public String getEtiqueta() {
+        return etiqueta;
+    }
+
+    /**
+     * Devuelve el estado con un código dado.
+     *
+     * @param codigo Código persistido.
+     * @return Estado correspondiente.
+     * @throws IllegalArgumentException Si el código no corresponde a ningún estado.
+     */
+    public static EstadoCopia fromCodigo(int codigo) {
+        for (EstadoCopia estado : VALUES) {
+            if (estado.codigo == codigo) {
+                return estado;
+            }
+        }
+        throw new IllegalArgumentException("Código de estado desconocido: " + codigo);
+    }
+
+    /**
+     * Convierte una etiqueta de texto libre (como las guardadas antes de usar códigos)
+     * en un estado. No distingue mayúsculas ni tildes.
+     *
+     * @param etiqueta Texto del estado, por ejemplo {@code "Usada"}.
+     * @return Estado correspondiente, o {@code null} si la etiqueta es {@code null}.
+     * @throws IllegalArgumentException Si la etiqueta no corresponde a ningún estado.
+     */
+    public static EstadoCopia fromEtiqueta(String etiqueta) {
+        if (etiqueta == null) {
+            return null;
+        }
+        String clave = Etiquetas.normalizar(etiqueta);
+        for (EstadoCopia estado : VALUES) {
+            if (Etiquetas.normalizar(estado.etiqueta).equals(clave)) {
+                return estado;
+            }
+        }
+        throw new IllegalArgumentException("Estado desconocido: " + etiqueta);
+    }
+
+    @Override
+    public String toString() {
+        return etiqueta;
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Normalización de las etiquetas de texto libre de estados y soportes.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+final class Etiquetas {
+
+    private Etiquetas() {}
+
+    /**
+     * Pasa a minúsculas y elimina tildes, espacios, guiones y guiones bajos.
+     *
+     * @param texto Texto original.
+     * @return Clave de comparación.
+     */
+    static String normalizar(String texto) {
+        String sinTildes = Normalizer.normalize(texto.trim(), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sinTildes.toLowerCase(Locale.ROOT).replaceAll("[\\s_-]", "");
+    }
+}
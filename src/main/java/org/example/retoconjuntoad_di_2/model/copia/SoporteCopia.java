@@ -0,0 +1,89 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+/**
+ * Soporte físico de una copia.
+ * <p>
+ * Como {@link EstadoCopia}, se persiste por un código explícito ({@link #getCodigo()}):
+ * un código asignado no se cambia ni se reutiliza.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see Copia#getSoporte()
+ */
+public enum SoporteCopia {
+
+    DVD(0, "DVD"),
+    BLU_RAY(1, "Blu-ray"),
+    VHS(2, "VHS");
+
+    private static final SoporteCopia[] VALUES = values();
+
+    private final short codigo;
+    private final String etiqueta;
+
+    SoporteCopia(int codigo, String etiqueta) {
+        this.codigo = (short) codigo;
+        this.etiqueta = etiqueta;
+    }
+
+    /**
+     * Código con el que se persiste el soporte.
+     *
+     * @return Código estable del soporte.
+     */
+    public short getCodigo() {
+        return codigo;
+    }
+
+    /**
+     * Texto que se muestra en la interfaz (y que se guardaba antes de usar códigos).
+     *
+     * @return Etiqueta del soporte.
+     */
+    public String getEtiqueta() {
+        return etiqueta;
+    }
+
+    /**
+     * Devuelve el soporte con un código dado.
+     *
+     * @param codigo Código persistido.
+     * @return Soporte correspondiente.
+     * @throws IllegalArgumentException Si el código no corresponde a ningún soporte.
+     */
+    public static SoporteCopia fromCodigo(int codigo) {
+        for (SoporteCopia soporte : VALUES) {
+            if (soporte.codigo == codigo) {
+                return soporte;
+            }
+        }
+        throw new IllegalArgumentException("Código de soporte desconocido: " + codigo);
+    }
+
+    /**
+     * Convierte una etiqueta de texto libre en un soporte. No distingue mayúsculas,
+     * tildes, espacios ni guiones ({@code "blu ray"} equivale a {@code "Blu-ray"}).
+     *
+     * @param etiqueta Texto del soporte.
+     * @return Soporte correspondiente, o {@code null} si la etiqueta es {@code null}.
+     * @throws IllegalArgumentException Si la etiqueta no corresponde a ningún soporte.
+     */
+    public static SoporteCopia fromEtiqueta(String etiqueta) {
+        if (etiqueta == null) {
+            return null;
+        }
+        String clave = Etiquetas.normalizar(etiqueta);
+        for (SoporteCopia soporte : VALUES) {
+            if (Etiquetas.normalizar(soporte.etiqueta).equals(clave) || Etiquetas.normalizar(soporte.name()).equals(clave)) {
+                return soporte;
+            }
+        }
+        throw new IllegalArgumentException("Soporte desconocido: " + etiqueta);
+    }
+
+    @Override
+    public String toString() {
+        return etiqueta;
+    }
+}
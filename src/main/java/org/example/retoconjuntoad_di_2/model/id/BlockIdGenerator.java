@@ -0,0 +1,212 @@
+package org.example.retoconjuntoad_di_2.model.id;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaArchive;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+import org.example.retoconjuntoad_di_2.utils.ConflictPolicy;
+import org.example.retoconjuntoad_di_2.utils.DataProvider;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Generador de IDs por bloques (hi-lo) para las entidades del modelo.
+ * <p>
+ * En lugar de pedir un ID a la base de datos en cada inserción, el generador reserva
+ * un bloque de {@code allocationSize} IDs consecutivos en el contador persistente
+ * ({@link IdBlock}) y lo reparte en memoria entre todos los hilos, con un cerrojo que
+ * solo protege dos enteros. Únicamente el hilo que agota el bloque accede a la base
+ * de datos para reservar el siguiente; los demás esperan a ese bloque en lugar de
+ * reservar cada uno el suyo.
+ * </p>
+ * <p>
+ * Los IDs reservados y no usados (por ejemplo, al cerrar la aplicación) se pierden,
+ * de modo que los IDs son únicos y crecientes, pero no consecutivos. La primera vez
+ * que se usa el generador sobre una base de datos existente, el contador parte del
+ * mayor ID ya almacenado en la base de datos, en sus shards ({@link ShardRouter}) y,
+ * para las copias, en el archivo de copias frías ({@link CopiaArchive}).
+ * </p>
+ * <p>
+ * El tamaño de bloque se configura con {@code -Dgestor.ids.allocationSize} (50 por defecto).
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see IdBlock
+ */
+public final class BlockIdGenerator {
+
+    /**
+     * Generadores por base de datos y entidad. Las factorías cerradas se liberan solas.
+     */
+    private static final Map<EntityManagerFactory, Map<Class<?>, BlockIdGenerator>> GENERATORS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Número máximo de intentos si otro proceso reserva un bloque a la vez.
+     */
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final EntityManagerFactory emf;
+    private final Class<?> entityClass;
+    private final int allocationSize;
+
+    /**
+     * Bloque actual, compartido por todos los hilos: {@code [nextId, limit)}.
+     */
+    private final ReentrantLock blockLock = new ReentrantLock();
+    private int nextId;
+    private int limit;
+
+    private final LongAdder blocksReserved = new LongAdder();
+
+    /**
+     * Crea un generador para una entidad.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @param entityClass Clase de la entidad (su nombre simple identifica el contador).
+     * @param allocationSize Número de IDs que reserva cada bloque.
+     */
+    public BlockIdGenerator(EntityManagerFactory emf, Class<?> entityClass, int allocationSize) {
+        this.emf = emf;
+        this.entityClass = entityClass;
+        this.allocationSize = Math.max(1, allocationSize);
+    }
+
+    /**
+     * Devuelve el generador compartido de una entidad en una base de datos,
+     * creándolo con el tamaño de bloque configurado si no existe.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @param entityClass Clase de la entidad.
+     * @return Generador de IDs de esa entidad.
+     */
+    public static BlockIdGenerator forEntity(EntityManagerFactory emf, Class<?> entityClass) {
+        synchronized (GENERATORS) {
+            return GENERATORS.computeIfAbsent(emf, k -> new HashMap<>())
+                    .computeIfAbsent(entityClass, k -> new BlockIdGenerator(
+                            emf, entityClass, AppConfig.getInt("ids.allocationSize", 50)));
+        }
+    }
+
+    /**
+     * Devuelve el siguiente ID del bloque actual, reservando otro si se ha agotado.
+     *
+     * @return ID nuevo, distinto de cualquier otro devuelto por este contador.
+     */
+    public int next() {
+        blockLock.lock();
+        try {
+            if (nextId < limit) {
+                return nextId++;
+            }
+        } finally {
+            blockLock.unlock();
+        }
+
+        // La puerta se toma antes que el cerrojo del bloque para no bloquear las
+        // instantáneas mientras se espera turno.
+        Lock writeGate = DataProvider.getWriteGate();
+        writeGate.lock();
+        try {
+            blockLock.lock();
+            try {
+                // Otro hilo puede haber reservado un bloque mientras se esperaba la puerta.
+                if (nextId >= limit) {
+                    nextId = reserve();
+                    limit = nextId + allocationSize;
+                }
+                return nextId++;
+            } finally {
+                blockLock.unlock();
+            }
+        } finally {
+            writeGate.unlock();
+        }
+    }
+
+    /**
+     * Número de bloques reservados en la base de datos por este generador.
+     *
+     * @return Total de bloques reservados.
+     */
+    public long getBlocksReserved() {
+        return blocksReserved.sum();
+    }
+
+    /**
+     * Reserva un bloque en el contador persistente con su propia transacción.
+     * Se llama con la puerta de escritura y el cerrojo del bloque tomados.
+     *
+     * @return Primer ID del bloque.
+     */
+    private int reserve() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    em.getTransaction().begin();
+                    IdBlock row = em.find(IdBlock.class, entityClass.getSimpleName());
+                    if (row == null) {
+                        row = new IdBlock(entityClass.getSimpleName(), maxStoredId(em) + 1, 0);
+                        em.persist(row);
+                    }
+                    int start = row.getNext();
+                    row.setNext(start + allocationSize);
+                    em.getTransaction().commit();
+                    blocksReserved.increment();
+                    return start;
+                } catch (RuntimeException e) {
+                    if (!ConflictPolicy.isOptimisticFailure(e) || attempt >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    em.clear();
+                } finally {
+                    if (em.getTransaction().isActive()) {
+                        em.getTransaction().rollback();
+                    }
+                }
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Mayor ID ya almacenado de la entidad (0 si no hay ninguna), para continuar a
+     * partir de los IDs generados antes de usar bloques. Además de esta base de datos
+     * se consultan sus shards y, para las copias, el archivo: una copia movida a
+     * cualquiera de ellos conserva su ID.
+     */
+    private int maxStoredId(EntityManager em) {
+        int max = maxId(em);
+        ShardRouter router = ShardRouter.of(emf);
+        if (router != null) {
+            for (EntityManagerFactory shard : router.all()) {
+                if (shard != emf) {
+                    max = Math.max(max, UnitOfWork.read(shard, this::maxId));
+                }
+            }
+        }
+        CopiaArchive archivo = entityClass == Copia.class ? CopiaArchive.of(emf) : null;
+        if (archivo != null) {
+            max = Math.max(max, archivo.maxId());
+        }
+        return max;
+    }
+
+    private int maxId(EntityManager em) {
+        Integer max = em.createQuery("select max(e.id) from " + entityClass.getSimpleName() + " e", Integer.class)
+                .getSingleResult();
+        return max != null ? max : 0;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.retoconjuntoad_di_2.model.id;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Contador persistente de un generador de IDs por bloques.
+ * <p>
+ * Hay una fila por entidad ({@code Copia}, {@code Pelicula}, {@code User}). El campo
+ * {@code next} es el primer ID que todavía no se ha reservado: cada vez que un
+ * generador necesita un bloque, lee el valor, lo avanza en el tamaño del bloque y
+ * confirma, de modo que los IDs del bloque ya no pueden repetirse aunque el proceso
+ * termine sin usarlos todos.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see BlockIdGenerator
+ */
+@Entity
+@Table(name = "IdBlocks")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdBlock implements Serializable {
+
+    /**
+     * Nombre del generador (nombre simple de la entidad).
+     */
+    @Id
+    private String name;
+
+    /**
+     * Primer ID aún no reservado.
+     */
+    private int next;
+
+    /**
+     * Versión para que dos procesos no reserven el mismo bloque.
+     */
+    @Version
+    private long version;
+}
@@ -0,0 +1,331 @@
+package org.example.retoconjuntoad_di_2.model.pelicula;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Diccionario en memoria de los géneros y directores de una base de datos.
+ * <p>
+ * Guarda una única instancia de cada {@link Genero} y {@link Director}, indexada por ID
+ * y por clave normalizada. Sirve para tres cosas:
+ * </p>
+ * <ul>
+ *   <li>Al guardar una película, {@link PeliculaRepository} traduce el texto escrito a su
+ *       término, creándolo si no existe, de modo que las variantes de un mismo nombre
+ *       ("Ciencia ficción", "ciencia ficcion") acaban en el mismo.</li>
+ *   <li>Las películas leídas por el repositorio se internan: todas las de un mismo género
+ *       apuntan a la misma instancia de {@link Genero} y comparten su nombre.</li>
+ *   <li>Los listados y agrupaciones por género o director comparan IDs.</li>
+ * </ul>
+ * <p>
+ * Se carga entero en el primer uso (son pocos términos) y solo crece: los términos
+ * nuevos se añaden cuando se confirma la transacción que los crea. Hay un diccionario
+ * por factoría de EntityManager, como los generadores de IDs.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see TerminoCatalogo
+ */
+public final class CatalogDictionary {
+
+    private static final System.Logger LOG = System.getLogger(CatalogDictionary.class.getName());
+
+    /**
+     * Diccionarios por base de datos. Las factorías cerradas se liberan solas.
+     */
+    private static final Map<EntityManagerFactory, CatalogDictionary> DICTIONARIES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final EntityManagerFactory emf;
+    private final Terminos<Genero> generos;
+    private final Terminos<Director> directores;
+
+    private CatalogDictionary(EntityManagerFactory emf) {
+        this.emf = emf;
+        this.generos = new Terminos<>(Genero.class, Genero::new);
+        this.directores = new Terminos<>(Director.class, Director::new);
+    }
+
+    /**
+     * Devuelve el diccionario de una base de datos, creándolo si no existe.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @return Diccionario compartido de esa base de datos.
+     */
+    public static CatalogDictionary of(EntityManagerFactory emf) {
+        return DICTIONARIES.computeIfAbsent(emf, CatalogDictionary::new);
+    }
+
+    /**
+     * Normaliza un nombre: sin tildes, en minúsculas, sin espacios en los extremos y con
+     * los espacios intermedios reducidos a uno.
+     *
+     * @param nombre Nombre escrito.
+     * @return Clave del nombre, o una cadena vacía si es {@code null} o está en blanco.
+     */
+    public static String clave(String nombre) {
+        if (nombre == null) {
+            return "";
+        }
+        return Normalizer.normalize(nombre, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .strip()
+                .replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Devuelve el género con un ID.
+     *
+     * @param id ID del género.
+     * @return Instancia compartida, o {@code null} si no existe.
+     */
+    public Genero genero(Integer id) {
+        return generos.porId(id);
+    }
+
+    /**
+     * Devuelve el director con un ID.
+     *
+     * @param id ID del director.
+     * @return Instancia compartida, o {@code null} si no existe.
+     */
+    public Director director(Integer id) {
+        return directores.porId(id);
+    }
+
+    /**
+     * Devuelve todos los géneros, ordenados por nombre.
+     *
+     * @return Lista inmutable de géneros.
+     */
+    public List<Genero> getGeneros() {
+        return generos.todos();
+    }
+
+    /**
+     * Devuelve todos los directores, ordenados por nombre.
+     *
+     * @return Lista inmutable de directores.
+     */
+    public List<Director> getDirectores() {
+        return directores.todos();
+    }
+
+    /**
+     * Sustituye los géneros y directores de las películas leídas por las instancias
+     * compartidas del diccionario.
+     * <p>
+     * Solo debe llamarse con películas desprendidas: en una película gestionada el
+     * cambio de referencia se guardaría al confirmar.
+     * </p>
+     *
+     * @param peliculas Películas leídas.
+     */
+    void internar(Collection<Pelicula> peliculas) {
+        for (Pelicula pelicula : peliculas) {
+            internar(pelicula);
+        }
+    }
+
+    /**
+     * Como {@link #internar(Collection)}, para una sola película.
+     *
+     * @param pelicula Película leída.
+     */
+    void internar(Pelicula pelicula) {
+        Genero genero = pelicula.getGeneroRef();
+        Director director = pelicula.getDirectorRef();
+        pelicula.internar(
+                genero != null ? generos.compartido(genero) : null,
+                director != null ? directores.compartido(director) : null);
+    }
+
+    /**
+     * Asigna a una película gestionada los términos de su género y director escritos
+     * como texto, creando los que no existan.
+     * <p>
+     * Se ejecuta dentro de la transacción que guarda la película.
+     * </p>
+     *
+     * @param em EntityManager de la transacción.
+     * @param pelicula Película gestionada.
+     */
+    void resolver(EntityManager em, Pelicula pelicula) {
+        if (pelicula.getGeneroRef() == null && pelicula.getGeneroPendiente() != null) {
+            pelicula.asignarGenero(generos.resolver(em, pelicula.getGeneroPendiente()));
+        }
+        if (pelicula.getDirectorRef() == null && pelicula.getDirectorPendiente() != null) {
+            pelicula.asignarDirector(directores.resolver(em, pelicula.getDirectorPendiente()));
+        }
+    }
+
+    /**
+     * Convierte a términos el género y el director de las películas guardadas como texto,
+     * por lotes de {@code batchSize} películas, cada uno en su propia transacción.
+     * <p>
+     * Las películas anteriores a los términos las convierte {@link CatalogTermMigration};
+     * este método es para las que se escriben después sin pasar por el repositorio, como
+     * las restauradas desde el diario.
+     * </p>
+     *
+     * @param batchSize Número de películas por lote.
+     * @return Número de películas convertidas.
+     */
+    public int normalizarPeliculas(int batchSize) {
+        int convertidas = 0;
+        Integer desde = null;
+        do {
+            Integer inicio = desde;
+            int[] lote = new int[1];
+            desde = UnitOfWork.execute(emf, em -> {
+                List<Pelicula> pendientes = normalizarLote(em, inicio, batchSize);
+                lote[0] = pendientes.size();
+                return pendientes.size() < batchSize ? null : pendientes.get(pendientes.size() - 1).getId();
+            });
+            convertidas += lote[0];
+        } while (desde != null);
+        if (convertidas > 0) {
+            LOG.log(System.Logger.Level.INFO, "Películas convertidas a géneros y directores normalizados: {0}",
+                    convertidas);
+        }
+        return convertidas;
+    }
+
+    /**
+     * Convierte el siguiente lote de películas con el género o el director como texto.
+     *
+     * @param em EntityManager de la transacción del lote.
+     * @param despuesDe ID de la última película del lote anterior, o {@code null} en el primero.
+     * @param batchSize Número máximo de películas del lote.
+     * @return Películas convertidas, en orden de ID.
+     */
+    List<Pelicula> normalizarLote(EntityManager em, Integer despuesDe, int batchSize) {
+        List<Pelicula> pendientes = em.createQuery(
+                "select p from Pelicula p where p.id > :desde and (p.generoRef is null and p.genero is not null"
+                        + " or p.directorRef is null and p.director is not null) order by p.id", Pelicula.class)
+                .setParameter("desde", despuesDe != null ? despuesDe : Integer.MIN_VALUE)
+                .setMaxResults(batchSize)
+                .getResultList();
+        for (Pelicula pelicula : pendientes) {
+            resolver(em, pelicula);
+        }
+        return pendientes;
+    }
+
+    /**
+     * Términos de un tipo, por ID y por clave.
+     */
+    private final class Terminos<T extends TerminoCatalogo> {
+
+        private final Class<T> tipo;
+        private final BiFunction<Integer, String, T> factoria;
+        private final Map<Integer, T> porId = new ConcurrentHashMap<>();
+        private final Map<String, T> porClave = new ConcurrentHashMap<>();
+        private volatile boolean cargado;
+
+        Terminos(Class<T> tipo, BiFunction<Integer, String, T> factoria) {
+            this.tipo = tipo;
+            this.factoria = factoria;
+        }
+
+        private void cargar() {
+            if (cargado) {
+                return;
+            }
+            synchronized (this) {
+                if (!cargado) {
+                    UnitOfWork.read(emf, em -> em.createQuery(
+                            "select t from " + tipo.getSimpleName() + " t", tipo).getResultList())
+                            .forEach(this::registrar);
+                    cargado = true;
+                }
+            }
+        }
+
+        /**
+         * Registra un término si no estaba y devuelve la instancia compartida.
+         */
+        private T registrar(T termino) {
+            T compartido = porClave.putIfAbsent(termino.getClave(), termino);
+            if (compartido == null) {
+                compartido = termino;
+            }
+            porId.putIfAbsent(compartido.getId(), compartido);
+            return compartido;
+        }
+
+        T porId(Integer id) {
+            if (id == null) {
+                return null;
+            }
+            cargar();
+            T termino = porId.get(id);
+            if (termino == null) {
+                // Creado por otra aplicación sobre la misma base de datos.
+                termino = UnitOfWork.read(emf, em -> em.find(tipo, id));
+                if (termino != null) {
+                    termino = registrar(termino);
+                }
+            }
+            return termino;
+        }
+
+        T compartido(T termino) {
+            T compartido = porId(termino.getId());
+            return compartido != null ? compartido : termino;
+        }
+
+        List<T> todos() {
+            cargar();
+            List<T> todos = new ArrayList<>(porId.values());
+            todos.sort(Comparator.comparing(TerminoCatalogo::getClave));
+            return List.copyOf(todos);
+        }
+
+        /**
+         * Devuelve el término gestionado por {@code em} para un nombre, creándolo si no existe.
+         */
+        T resolver(EntityManager em, String nombre) {
+            String clave = clave(nombre);
+            if (clave.isEmpty()) {
+                return null;
+            }
+            cargar();
+            T conocido = porClave.get(clave);
+            if (conocido != null) {
+                return em.find(tipo, conocido.getId());
+            }
+            List<T> existentes = em.createQuery(
+                    "select t from " + tipo.getSimpleName() + " t where t.clave = :clave", tipo)
+                    .setParameter("clave", clave)
+                    .getResultList();
+            T termino;
+            if (existentes.isEmpty()) {
+                termino = factoria.apply(BlockIdGenerator.forEntity(emf, tipo).next(), nombre.strip());
+                em.persist(termino);
+            } else {
+                termino = existentes.get(0);
+            }
+            // Solo se comparte si la transacción se confirma.
+            T creado = termino;
+            UnitOfWork.afterCommit(() -> registrar(creado));
+            return termino;
+        }
+    }
+}
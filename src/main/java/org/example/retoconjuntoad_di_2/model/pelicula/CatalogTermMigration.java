@@ -0,0 +1,38 @@
+package org.example.retoconjuntoad_di_2.model.pelicula;
+
+import jakarta.persistence.EntityManager;
+import org.example.retoconjuntoad_di_2.migration.Migration;
+
+import java.util.List;
+
+/**
+ * Versión 2 del esquema: género y director de las películas como términos normalizados.
+ * <p>
+ * Recorre por orden de ID las películas que aún tienen el género o el director como
+ * texto y los traduce a su {@link Genero} y {@link Director}, creando los que falten. El
+ * punto de control es el ID de la última película del lote.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see CatalogDictionary
+ */
+public class CatalogTermMigration implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 2;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Género y director de las películas como términos normalizados";
+    }
+
+    @Override
+    public Long migrateBatch(EntityManager em, Long checkpoint, int batchSize) {
+        CatalogDictionary diccionario = CatalogDictionary.of(em.getEntityManagerFactory());
+        List<Pelicula> lote = diccionario.normalizarLote(em, checkpoint != null ? checkpoint.intValue() : null, batchSize);
+        return lote.size() < batchSize ? null : lote.get(lote.size() - 1).getId().longValue();
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.retoconjuntoad_di_2.model.pelicula;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.NoArgsConstructor;
+
+/**
+ * Director (o directores, si co-dirigen) normalizado, compartido por todas sus películas.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see Pelicula#getDirectorRef()
+ */
+@Entity
+@Table(name = "Directores", indexes = @Index(columnList = "clave", unique = true))
+@NoArgsConstructor
+public class Director extends TerminoCatalogo {
+
+    /**
+     * Crea un director nuevo.
+     *
+     * @param id ID asignado.
+     * @param nombre Nombre del director, por ejemplo "Francis Ford Coppola".
+     */
+    public Director(Integer id, String nombre) {
+        super(id, nombre);
+    }
+}
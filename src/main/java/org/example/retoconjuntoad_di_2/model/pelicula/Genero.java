@@ -0,0 +1,29 @@
+package org.example.retoconjuntoad_di_2.model.pelicula;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.NoArgsConstructor;
+
+/**
+ * Género cinematográfico normalizado, compartido por todas las películas del género.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see Pelicula#getGeneroRef()
+ */
+@Entity
+@Table(name = "Generos", indexes = @Index(columnList = "clave", unique = true))
+@NoArgsConstructor
+public class Genero extends TerminoCatalogo {
+
+    /**
+     * Crea un género nuevo.
+     *
+     * @param id ID asignado.
+     * @param nombre Nombre del género, por ejemplo "Ciencia ficción".
+     */
+    public Genero(Integer id, String nombre) {
+        super(id, nombre);
+    }
+}
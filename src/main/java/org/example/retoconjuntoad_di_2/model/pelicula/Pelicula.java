@@ -3,8 +3,14 @@ package org.example.retoconjuntoad_di_2.model.pelicula;
 import jakarta.persistence.*;
 import lombok.*;
 import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.utils.TrackedEntity;
+import org.example.retoconjuntoad_di_2.utils.VersionedEntity;
 
 import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +28,13 @@ import java.util.List;
  * con carga eager para facilitar el acceso a las copias.
  * </p>
  * <p>
+ * El género y el director no se guardan como texto en cada película, sino como
+ * referencias a términos normalizados ({@link Genero}, {@link Director}) con índice,
+ * de modo que agrupar o filtrar por ellos compara IDs. Los setters reciben el texto
+ * escrito y el repositorio lo traduce a su término al guardar
+ * ({@link CatalogDictionary}).
+ * </p>
+ * <p>
  * Esta clase utiliza las anotaciones de Lombok para generar automáticamente
  * los métodos getter, setter, constructores y otros métodos comunes.
  * </p>
@@ -31,21 +44,24 @@ import java.util.List;
  * @see org.example.retoconjuntoad_di_2.model.copia.Copia
  */
 @Entity
-@Table(name = "Peliculas")
+@Table(name = "Peliculas", indexes = {
+        @Index(columnList = "generoRef"),
+        @Index(columnList = "directorRef")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class Pelicula implements Serializable {
+public class Pelicula implements Serializable, VersionedEntity, TrackedEntity {
 
     /**
      * Identificador único de la película.
      * <p>
-     * Este campo es la clave primaria de la entidad y se genera automáticamente
-     * por la base de datos utilizando una estrategia de identidad.
+     * Este campo es la clave primaria de la entidad. Lo asigna el repositorio al
+     * insertar, a partir de un bloque de IDs reservado por
+     * {@link org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator}.
      * </p>
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
     /**
@@ -62,6 +78,20 @@ public class Pelicula implements Serializable {
      * Ejemplos: "Drama", "Comedia", "Acción", "Ciencia ficción", "Fantasía", etc.
      * </p>
      */
+    @ManyToOne(fetch = FetchType.EAGER)
+    @Setter(AccessLevel.NONE)
+    private Genero generoRef;
+
+    /**
+     * Género escrito como texto y aún sin traducir a {@link #generoRef}.
+     * <p>
+     * Es el campo en el que se guardaba el género antes de los términos normalizados.
+     * Tiene valor en las películas nuevas hasta que se guardan y en las antiguas hasta
+     * que {@link CatalogTermMigration} las convierte.
+     * </p>
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
     private String genero;
 
     /**
@@ -96,6 +126,16 @@ public class Pelicula implements Serializable {
      * Este campo es opcional y puede ser {@code null}.
      * </p>
      */
+    @ManyToOne(fetch = FetchType.EAGER)
+    @Setter(AccessLevel.NONE)
+    private Director directorRef;
+
+    /**
+     * Director escrito como texto y aún sin traducir a {@link #directorRef}
+     * (como {@link #genero}).
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
     private String director;
 
     /**
@@ -116,6 +156,251 @@ public class Pelicula implements Serializable {
     @OneToMany(cascade = {CascadeType.ALL}, mappedBy = "pelicula", fetch = FetchType.EAGER)
     private List<Copia> copias = new ArrayList<>();
 
+    /**
+     * Número de copias activas de la película, de todos los usuarios. Las copias
+     * archivadas ({@link org.example.retoconjuntoad_di_2.model.copia.CopiaArchive}) no cuentan.
+     * <p>
+     * Es un contador desnormalizado: lo mantiene {@code CopiaRepository} en la misma
+     * transacción que da de alta, cambia o borra cada copia, con una actualización
+     * atómica que no modifica la versión. Permite ordenar por popularidad sin leer
+     * las copias. {@link org.example.retoconjuntoad_di_2.model.copia.CopiaCounterReconciler}
+     * lo recalcula si se desvía (por ejemplo, tras restaurar desde el diario).
+     * </p>
+     */
+    @Setter(AccessLevel.NONE)
+    private int copiasCount;
+
+    /**
+     * Número de copias en DVD (contador como {@link #copiasCount}).
+     */
+    @Setter(AccessLevel.NONE)
+    private int copiasDvd;
+
+    /**
+     * Número de copias en Blu-ray (contador como {@link #copiasCount}).
+     */
+    @Setter(AccessLevel.NONE)
+    private int copiasBluRay;
+
+    /**
+     * Número de copias en VHS (contador como {@link #copiasCount}).
+     */
+    @Setter(AccessLevel.NONE)
+    private int copiasVhs;
+
+    /**
+     * Versión de la película para el control de concurrencia optimista.
+     * <p>
+     * JPA la incrementa en cada actualización. Si dos administradores editan la misma
+     * película, el segundo en guardar recibe un conflicto en lugar de sobrescribir al primero.
+     * </p>
+     */
+    @Version
+    private long version;
+
+    /**
+     * Campos modificados mediante los setters desde que se leyó la película.
+     * <p>
+     * No se persiste ni participa en {@code equals}/{@code hashCode}; los repositorios
+     * lo usan para escribir solo los campos que han cambiado.
+     * </p>
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Set<String> dirtyFields;
+
+    /**
+     * Establece el título y anota el campo como modificado.
+     *
+     * @param titulo Nuevo valor.
+     */
+    public void setTitulo(String titulo) {
+        this.titulo = titulo;
+        markDirty("titulo");
+    }
+
+    /**
+     * Devuelve el nombre del género.
+     *
+     * @return Nombre del término del género o, si aún no se ha traducido, el texto escrito.
+     */
+    public String getGenero() {
+        return generoRef != null ? generoRef.getNombre() : genero;
+    }
+
+    /**
+     * Establece el género y anota el campo como modificado.
+     * <p>
+     * El texto se traduce a su {@link Genero} al guardar la película.
+     * </p>
+     *
+     * @param genero Nuevo valor.
+     */
+    public void setGenero(String genero) {
+        this.generoRef = null;
+        this.genero = genero;
+        markDirty("genero");
+    }
+
+    /**
+     * Establece el año de lanzamiento y anota el campo como modificado.
+     *
+     * @param anio Nuevo valor.
+     */
+    public void setAnio(Short anio) {
+        this.anio = anio;
+        markDirty("anio");
+    }
+
+    /**
+     * Establece la descripción y anota el campo como modificado.
+     *
+     * @param descripcion Nuevo valor.
+     */
+    public void setDescripcion(String descripcion) {
+        this.descripcion = descripcion;
+        markDirty("descripcion");
+    }
+
+    /**
+     * Devuelve el nombre del director.
+     *
+     * @return Nombre del término del director o, si aún no se ha traducido, el texto escrito.
+     */
+    public String getDirector() {
+        return directorRef != null ? directorRef.getNombre() : director;
+    }
+
+    /**
+     * Establece el director y anota el campo como modificado.
+     * <p>
+     * El texto se traduce a su {@link Director} al guardar la película.
+     * </p>
+     *
+     * @param director Nuevo valor.
+     */
+    public void setDirector(String director) {
+        this.directorRef = null;
+        this.director = director;
+        markDirty("director");
+    }
+
+    /**
+     * @return Texto del género pendiente de traducir, o {@code null}.
+     */
+    String getGeneroPendiente() {
+        return generoRef == null ? genero : null;
+    }
+
+    /**
+     * @return Texto del director pendiente de traducir, o {@code null}.
+     */
+    String getDirectorPendiente() {
+        return directorRef == null ? director : null;
+    }
+
+    /**
+     * Asigna el término del género y descarta el texto escrito.
+     *
+     * @param genero Término del género.
+     */
+    void asignarGenero(Genero genero) {
+        this.generoRef = genero;
+        this.genero = null;
+    }
+
+    /**
+     * Asigna el término del director y descarta el texto escrito.
+     *
+     * @param director Término del director.
+     */
+    void asignarDirector(Director director) {
+        this.directorRef = director;
+        this.director = null;
+    }
+
+    /**
+     * Sustituye los términos por las instancias compartidas del diccionario, sin
+     * anotar ningún campo como modificado.
+     */
+    void internar(Genero genero, Director director) {
+        this.generoRef = genero;
+        this.directorRef = director;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getDirtyFields() {
+        return dirtyFields == null ? Set.of() : Set.copyOf(dirtyFields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearDirtyFields() {
+        dirtyFields = null;
+    }
+
+    private void markDirty(String field) {
+        if (dirtyFields == null) {
+            dirtyFields = new HashSet<>(4);
+        }
+        dirtyFields.add(field);
+    }
+
+    /**
+     * Devuelve el número de copias de la película en un soporte.
+     *
+     * @param soporte Soporte.
+     * @return Valor del contador de ese soporte.
+     */
+    public int getCopiasCount(SoporteCopia soporte) {
+        return switch (soporte) {
+            case DVD -> copiasDvd;
+            case BLU_RAY -> copiasBluRay;
+            case VHS -> copiasVhs;
+        };
+    }
+
+    /**
+     * Devuelve el nombre del campo contador de un soporte, para las actualizaciones
+     * masivas de los contadores.
+     *
+     * @param soporte Soporte.
+     * @return Nombre del campo persistente.
+     */
+    public static String campoCopias(SoporteCopia soporte) {
+        return switch (soporte) {
+            case DVD -> "copiasDvd";
+            case BLU_RAY -> "copiasBluRay";
+            case VHS -> "copiasVhs";
+        };
+    }
+
+    /**
+     * Inicializa los contadores a partir de la lista de copias, antes de insertar la
+     * película junto con sus copias.
+     */
+    void recontarCopias() {
+        copiasCount = copias.size();
+        copiasDvd = 0;
+        copiasBluRay = 0;
+        copiasVhs = 0;
+        for (Copia copia : copias) {
+            SoporteCopia soporte = copia.getSoporte();
+            if (soporte != null) {
+                switch (soporte) {
+                    case DVD -> copiasDvd++;
+                    case BLU_RAY -> copiasBluRay++;
+                    case VHS -> copiasVhs++;
+                }
+            }
+        }
+    }
+
     /**
      * Añade una copia a la lista de copias asociadas a la película.
      * <p>
@@ -131,6 +416,38 @@ public class Pelicula implements Serializable {
         this.copias.add(copia);
     }
 
+    /**
+     * Compara por identidad de entidad: dos instancias son iguales si son de la misma
+     * clase y tienen el mismo ID.
+     * <p>
+     * Sustituye al {@code equals} generado por Lombok, que comparaba todos los campos y
+     * recorría la lista de copias y, desde cada una, otra vez la película.
+     * Una película sin guardar (sin ID) solo es igual a sí misma.
+     * </p>
+     *
+     * @param o Objeto a comparar.
+     * @return {@code true} si representan la misma fila.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o != null && getClass() == o.getClass()
+                && id != null && id.equals(((Pelicula) o).id);
+    }
+
+    /**
+     * Devuelve un hash derivado solo del ID, en tiempo constante.
+     * <p>
+     * Una película sin guardar cambia de hash cuando el repositorio le asigna el ID, así que
+     * no debe añadirse a un {@code HashSet} o usarse como clave antes de guardarla.
+     * </p>
+     *
+     * @return Hash de la entidad.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), id);
+    }
+
     /**
      * Representación en forma de cadena de la película.
      * <p>
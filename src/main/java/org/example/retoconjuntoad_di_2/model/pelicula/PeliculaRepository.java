@@ -1,11 +1,24 @@
 package org.example.retoconjuntoad_di_2.model.pelicula;
 
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaArchive;
+import org.example.retoconjuntoad_di_2.metrics.RepositoryMetrics;
+import org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.utils.ConflictPolicy;
+import org.example.retoconjuntoad_di_2.utils.EntityIdentityMap;
 import org.example.retoconjuntoad_di_2.utils.Repository;
+import org.example.retoconjuntoad_di_2.utils.StaleEntityException;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -20,9 +33,17 @@ import java.util.Optional;
  * sustituyendo al acceso anterior basado en Hibernate.
  * </p>
  * <p>
- * Cada operación crea su propio EntityManager y lo cierra después de completarse,
- * siguiendo el patrón de "una transacción por operación" para garantizar la
- * consistencia de los datos.
+ * Cada operación se ejecuta dentro de una {@link UnitOfWork}: si se invoca sola,
+ * abre su propio EntityManager y su propia transacción ("una transacción por
+ * operación"); si se invoca dentro de una unidad ya abierta (por ejemplo, desde
+ * otro repositorio), comparte su contexto y se confirma junto con ella.
+ * </p>
+ * <p>
+ * Al guardar, traduce el género y el director escritos a sus términos normalizados, y
+ * las películas que devuelve comparten las instancias de {@link Genero} y
+ * {@link Director} del {@link CatalogDictionary}. Las que se leen fuera de una unidad de
+ * trabajo son además las instancias compartidas de su {@link EntityIdentityMap}: leer dos
+ * veces la misma película sin cambios devuelve el mismo objeto.
  * </p>
  *
  * @author Sistema de Gestión de Películas
@@ -32,8 +53,33 @@ import java.util.Optional;
  */
 public class PeliculaRepository implements Repository<Pelicula> {
 
+    /**
+     * Métricas de llamadas y latencia de los métodos de este repositorio.
+     */
+    private static final RepositoryMetrics METRICS = RepositoryMetrics.forEntity(Pelicula.class);
+
     private final EntityManagerFactory entityManagerFactory;
 
+    /**
+     * Generador de IDs para las nuevas entidades.
+     */
+    private final BlockIdGenerator ids;
+
+    /**
+     * Géneros y directores de la base de datos.
+     */
+    private final CatalogDictionary diccionario;
+
+    /**
+     * Instancias compartidas de las películas leídas.
+     */
+    private final EntityIdentityMap<Pelicula> identidad;
+
+    /**
+     * Política aplicada cuando un guardado choca con una modificación concurrente.
+     */
+    private ConflictPolicy<Pelicula> conflictPolicy = ConflictPolicy.fromConfig();
+
     /**
      * Constructor que inicializa el repositorio con una factoría de EntityManager.
      *
@@ -41,50 +87,146 @@ public class PeliculaRepository implements Repository<Pelicula> {
      */
     public PeliculaRepository(EntityManagerFactory entityManagerFactory) {
         this.entityManagerFactory = entityManagerFactory;
+        this.ids = BlockIdGenerator.forEntity(entityManagerFactory, Pelicula.class);
+        this.diccionario = CatalogDictionary.of(entityManagerFactory);
+        this.identidad = EntityIdentityMap.forEntity(entityManagerFactory, Pelicula.class);
+    }
+
+    /**
+     * Cambia la política de resolución de conflictos de concurrencia optimista.
+     *
+     * @param conflictPolicy Nueva política (por defecto, la configurada en {@link ConflictPolicy#fromConfig()}).
+     */
+    public void setConflictPolicy(ConflictPolicy<Pelicula> conflictPolicy) {
+        this.conflictPolicy = conflictPolicy;
     }
 
     /**
      * Guarda una película en la base de datos.
-     * Si la película no tiene ID, se inserta como nueva; de lo contrario, se actualiza.
+     * Si la película no tiene ID, se inserta como nueva; de lo contrario, se actualizan solo
+     * los campos modificados ({@link org.example.retoconjuntoad_di_2.utils.TrackedEntity}).
      *
      * @param entity Película a guardar.
      * @return La película gestionada (persistida o actualizada).
+     * @throws StaleEntityException Si otro usuario ha modificado la película y la política de conflictos no lo resuelve.
      */
     @Override
     public Pelicula save(Pelicula entity) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            em.getTransaction().begin();
-            if (entity.getId() == null) {
+        return METRICS.time("save", () -> {
+            if (UnitOfWork.isActive()) {
+                // Dentro de una unidad mayor no se puede reintentar: el conflicto se detecta al confirmarla.
+                return saveOnce(entity);
+            }
+            return conflictPolicy.save(entity, this::saveOnce, e -> findById(e.getId().longValue()));
+        });
+    }
+
+    /**
+     * Guarda la película en una única transacción, sin tratar los conflictos.
+     *
+     * @param entity Película a guardar.
+     * @return La película gestionada (persistida o actualizada).
+     */
+    private Pelicula saveOnce(Pelicula entity) {
+        return UnitOfWork.execute(entityManagerFactory, em -> {
+            Pelicula managed;
+            // Nueva (o con un ID asignado en un intento que se deshizo) -> INSERT
+            if (entity.getId() == null || entity.getVersion() == 0 && em.find(Pelicula.class, entity.getId()) == null) {
+                if (entity.getId() == null) {
+                    entity.setId(ids.next());
+                }
+                // Las copias nuevas se insertan en cascada y también necesitan ID.
+                BlockIdGenerator copiaIds = BlockIdGenerator.forEntity(entityManagerFactory, Copia.class);
+                for (Copia copia : entity.getCopias()) {
+                    if (copia.getId() == null) {
+                        copia.setId(copiaIds.next());
+                    }
+                }
+                diccionario.resolver(em, entity);
+                entity.recontarCopias();
                 em.persist(entity);
+                managed = entity;
             } else {
-                entity = em.merge(entity);
+                managed = em.find(Pelicula.class, entity.getId());
+                ConflictPolicy.checkVersion(entity, managed);
+                applyChanges(entity, managed);
+                diccionario.resolver(em, managed);
+            }
+            managed.clearDirtyFields();
+            Integer id = managed.getId();
+            UnitOfWork.afterCommit(() -> {
+                identidad.evict(id);
+                EntityChanges.publish(
+                        new EntityChange(ChangeRecord.EntityType.PELICULA, ChangeRecord.Operation.SAVE, managed));
+            });
+            return managed;
+        });
+    }
+
+    /**
+     * Copia sobre la instancia gestionada solo los campos modificados en la desprendida.
+     * <p>
+     * A diferencia de {@code merge}, no recorre ni propaga nada a las asociaciones
+     * que no han cambiado.
+     * </p>
+     *
+     * @param source Instancia desprendida con los cambios.
+     * @param target Instancia gestionada.
+     */
+    private static void applyChanges(Pelicula source, Pelicula target) {
+        for (String field : source.getDirtyFields()) {
+            switch (field) {
+                case "titulo" -> target.setTitulo(source.getTitulo());
+                case "genero" -> target.setGenero(source.getGenero());
+                case "anio" -> target.setAnio(source.getAnio());
+                case "descripcion" -> target.setDescripcion(source.getDescripcion());
+                case "director" -> target.setDirector(source.getDirector());
+                default -> throw new IllegalArgumentException("Campo desconocido: " + field);
             }
-            em.getTransaction().commit();
-            return entity;
-        } finally {
-            em.close();
         }
     }
 
     /**
      * Elimina una película de la base de datos.
+     * <p>
+     * Sus copias activas se eliminan en cascada y las archivadas, del archivo de copias
+     * frías, al confirmar. Las que están en shards se borran también al confirmar.
+     * </p>
      *
      * @param entity Película a eliminar.
      * @return Un Optional que contiene la película eliminada.
+     * @throws StaleEntityException Si la película se ha modificado desde que se leyó.
      */
     @Override
     public Optional<Pelicula> delete(Pelicula entity) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            em.getTransaction().begin();
-            Pelicula managed = em.contains(entity) ? entity : em.merge(entity);
-            em.remove(managed);
-            em.getTransaction().commit();
-            return Optional.of(entity);
-        } finally {
-            em.close();
-        }
+        return METRICS.time("delete", () -> {
+            try {
+                return UnitOfWork.execute(entityManagerFactory, em -> {
+                    Pelicula managed = em.contains(entity) ? entity : em.find(Pelicula.class, entity.getId());
+                    ConflictPolicy.checkVersion(entity, managed);
+                    em.remove(managed);
+                    UnitOfWork.afterCommit(() -> {
+                        identidad.evict(entity.getId());
+                        CopiaArchive archivo = CopiaArchive.of(entityManagerFactory);
+                        if (archivo != null) {
+                            archivo.deleteByPelicula(entity.getId());
+                        }
+                        ShardRouter router = ShardRouter.of(entityManagerFactory);
+                        if (router != null) {
+                            router.deletePelicula(entity.getId());
+                        }
+                        EntityChanges.publish(
+                                new EntityChange(ChangeRecord.EntityType.PELICULA, ChangeRecord.Operation.DELETE, entity));
+                    });
+                    return Optional.of(entity);
+                });
+            } catch (RuntimeException e) {
+                if (ConflictPolicy.isOptimisticFailure(e)) {
+                    throw new StaleEntityException(Pelicula.class, entity.getId(), e);
+                }
+                throw e;
+            }
+        });
     }
 
     /**
@@ -95,9 +237,12 @@ public class PeliculaRepository implements Repository<Pelicula> {
      */
     @Override
     public Optional<Pelicula> deleteById(Long id) {
-        Optional<Pelicula> pelicula = findById(id);
-        pelicula.ifPresent(this::delete);
-        return pelicula;
+        // Búsqueda y borrado en la misma unidad de trabajo: un único contexto y un único commit.
+        return METRICS.time("deleteById", () -> UnitOfWork.execute(entityManagerFactory, em -> {
+            Optional<Pelicula> pelicula = Optional.ofNullable(em.find(Pelicula.class, id.intValue()));
+            pelicula.ifPresent(this::delete);
+            return pelicula;
+        }));
     }
 
     /**
@@ -108,12 +253,16 @@ public class PeliculaRepository implements Repository<Pelicula> {
      */
     @Override
     public Optional<Pelicula> findById(Long id) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            return Optional.ofNullable(em.find(Pelicula.class, id.intValue()));
-        } finally {
-            em.close();
-        }
+        return METRICS.time("findById", () -> {
+            Optional<Pelicula> pelicula = UnitOfWork.read(entityManagerFactory, em -> {
+                return Optional.ofNullable(em.find(Pelicula.class, id.intValue()));
+            });
+            if (!UnitOfWork.isActive()) {
+                pelicula = pelicula.map(identidad::canonical);
+                pelicula.ifPresent(diccionario::internar);
+            }
+            return pelicula;
+        });
     }
 
     /**
@@ -123,13 +272,110 @@ public class PeliculaRepository implements Repository<Pelicula> {
      */
     @Override
     public List<Pelicula> findAll() {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
+        return METRICS.time("findAll", () -> internadas(UnitOfWork.read(entityManagerFactory, em -> {
             TypedQuery<Pelicula> q = em.createQuery("select p from Pelicula p", Pelicula.class);
             return q.getResultList();
-        } finally {
-            em.close();
+        })));
+    }
+
+    /**
+     * Película y número de copias, para los listados por popularidad.
+     *
+     * @param peliculaId ID de la película.
+     * @param titulo Título de la película.
+     * @param copias Número de copias de todos los usuarios.
+     */
+    public record Popularidad(Integer peliculaId, String titulo, int copias) {
+    }
+
+    /**
+     * Obtiene las películas con más copias, según el contador {@link Pelicula#getCopiasCount()}.
+     * <p>
+     * Es una proyección sobre los campos de la película: no lee ni la lista de copias
+     * (que se carga con la película completa) ni la tabla de copias.
+     * </p>
+     *
+     * @param limite Número máximo de películas.
+     * @return Películas ordenadas de más a menos copias.
+     */
+    public List<Popularidad> findMasColeccionadas(int limite) {
+        return METRICS.time("findMasColeccionadas", () -> UnitOfWork.read(entityManagerFactory, em -> {
+            return em.createQuery("select p.id, p.titulo, p.copiasCount from Pelicula p"
+                            + " order by p.copiasCount desc, p.titulo", Object[].class)
+                    .setMaxResults(limite)
+                    .getResultList()
+                    .stream()
+                    .map(fila -> new Popularidad((Integer) fila[0], (String) fila[1], (Integer) fila[2]))
+                    .toList();
+        }));
+    }
+
+    /**
+     * Obtiene las películas de un género.
+     * <p>
+     * La búsqueda compara la referencia indexada al género, no el texto.
+     * </p>
+     *
+     * @param genero Género buscado.
+     * @return Películas del género.
+     */
+    public List<Pelicula> findByGenero(Genero genero) {
+        return METRICS.time("findByGenero", () -> internadas(UnitOfWork.read(entityManagerFactory, em -> {
+            return em.createQuery("select p from Pelicula p where p.generoRef = :genero", Pelicula.class)
+                    .setParameter("genero", em.getReference(Genero.class, genero.getId()))
+                    .getResultList();
+        })));
+    }
+
+    /**
+     * Obtiene las películas de un director.
+     *
+     * @param director Director buscado.
+     * @return Películas del director.
+     */
+    public List<Pelicula> findByDirector(Director director) {
+        return METRICS.time("findByDirector", () -> internadas(UnitOfWork.read(entityManagerFactory, em -> {
+            return em.createQuery("select p from Pelicula p where p.directorRef = :director", Pelicula.class)
+                    .setParameter("director", em.getReference(Director.class, director.getId()))
+                    .getResultList();
+        })));
+    }
+
+    /**
+     * Cuenta las películas de cada género, agrupando por el ID del género.
+     * <p>
+     * Las películas cuyo género aún no se ha traducido a un término no se cuentan.
+     * </p>
+     *
+     * @return Número de películas por género, con las instancias compartidas del diccionario.
+     */
+    public Map<Genero, Long> contarPorGenero() {
+        return METRICS.time("contarPorGenero", () -> {
+            List<Object[]> filas = UnitOfWork.read(entityManagerFactory, em -> em.createQuery(
+                    "select p.generoRef.id, count(p) from Pelicula p where p.generoRef is not null"
+                            + " group by p.generoRef.id", Object[].class).getResultList());
+            Map<Genero, Long> conteo = new LinkedHashMap<>();
+            for (Object[] fila : filas) {
+                Genero genero = diccionario.genero((Integer) fila[0]);
+                if (genero != null) {
+                    conteo.put(genero, (Long) fila[1]);
+                }
+            }
+            return conteo;
+        });
+    }
+
+    /**
+     * Sustituye las películas por sus instancias compartidas, y sus términos por los del
+     * diccionario, si ya están desprendidas (fuera de una unidad de trabajo).
+     */
+    private List<Pelicula> internadas(List<Pelicula> peliculas) {
+        if (UnitOfWork.isActive()) {
+            return peliculas;
         }
+        List<Pelicula> compartidas = identidad.canonicalAll(peliculas);
+        diccionario.internar(compartidas);
+        return compartidas;
     }
 
     /**
@@ -139,13 +385,10 @@ public class PeliculaRepository implements Repository<Pelicula> {
      */
     @Override
     public Long count() {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
+        return METRICS.time("count", () -> UnitOfWork.read(entityManagerFactory, em -> {
             return em.createQuery(
                     "select count(p) from Pelicula p", Long.class
             ).getSingleResult();
-        } finally {
-            em.close();
-        }
+        }));
     }
 }
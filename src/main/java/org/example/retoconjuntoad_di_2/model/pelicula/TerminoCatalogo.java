@@ -0,0 +1,79 @@
+package org.example.retoconjuntoad_di_2.model.pelicula;
+
+import jakarta.persistence.Id;
+import jakarta.persistence.MappedSuperclass;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Base de los términos normalizados del catálogo: géneros y directores.
+ * <p>
+ * Cada término se guarda una sola vez y las películas lo referencian por su ID, en
+ * lugar de repetir el texto en cada película. La {@link #getClave() clave} es el nombre
+ * normalizado (sin tildes, en minúsculas y con los espacios simplificados), de modo
+ * que "Ciencia ficción" y "ciencia  ficcion" son el mismo término; el
+ * {@link #getNombre() nombre} conserva la primera forma con la que se registró.
+ * </p>
+ * <p>
+ * Los términos no se modifican una vez creados. Dos instancias son iguales si son del
+ * mismo tipo y tienen el mismo ID.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see CatalogDictionary
+ */
+@MappedSuperclass
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public abstract class TerminoCatalogo implements Serializable {
+
+    /**
+     * Identificador del término, asignado por
+     * {@link org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator}.
+     */
+    @Id
+    private Integer id;
+
+    /**
+     * Nombre tal como se muestra.
+     */
+    private String nombre;
+
+    /**
+     * Nombre normalizado, único entre los términos del mismo tipo.
+     */
+    private String clave;
+
+    /**
+     * Crea un término nuevo.
+     *
+     * @param id ID asignado.
+     * @param nombre Nombre tal como se muestra.
+     */
+    protected TerminoCatalogo(Integer id, String nombre) {
+        this.id = id;
+        this.nombre = nombre;
+        this.clave = CatalogDictionary.clave(nombre);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o != null && getClass() == o.getClass()
+                && id != null && id.equals(((TerminoCatalogo) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), id);
+    }
+
+    @Override
+    public String toString() {
+        return nombre;
+    }
+}
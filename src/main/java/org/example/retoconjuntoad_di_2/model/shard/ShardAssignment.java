@@ -0,0 +1,40 @@
+package org.example.retoconjuntoad_di_2.model.shard;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Shard en el que están las copias de un usuario.
+ * <p>
+ * Se guarda en la base de datos del catálogo, una fila por usuario. Los usuarios sin
+ * fila (los anteriores al reparto en shards) siguen teniendo sus copias en el catálogo.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ShardRouter
+ */
+@Entity
+@Table(name = "ShardAssignments")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ShardAssignment implements Serializable {
+
+    /**
+     * ID del usuario.
+     */
+    @Id
+    private Integer userId;
+
+    /**
+     * Número del shard ({@code 0..N-1}).
+     */
+    private int shard;
+}
@@ -0,0 +1,277 @@
+package org.example.retoconjuntoad_di_2.model.shard;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+import org.example.retoconjuntoad_di_2.utils.DataProvider;
+import org.example.retoconjuntoad_di_2.utils.EntityIdentityMap;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Mueve las copias de un usuario de un shard a otro (o entre un shard y el catálogo)
+ * sin parar la aplicación.
+ * <p>
+ * El movimiento tiene dos fases. Primero copia en caliente las copias del usuario al
+ * destino, por lotes de IDs y cada lote en su propia transacción, mientras el usuario
+ * sigue trabajando sobre el origen. Después, con las escrituras detenidas
+ * ({@link DataProvider#withWritesPaused}), vuelve a copiar solo las que han cambiado de
+ * versión, borra del destino las que ya no existen en el origen, cambia la asignación y
+ * borra las del origen. El corte solo recorre los pares (ID, versión) del usuario, así que
+ * la pausa es corta aunque tenga muchas copias.
+ * </p>
+ * <p>
+ * Escribir en el destino es idempotente: si el proceso se interrumpe antes de cambiar la
+ * asignación, el origen sigue siendo el bueno y basta con repetir el movimiento. Las
+ * copias movidas conservan su ID; su versión vuelve a empezar en el destino, de modo que
+ * una edición abierta durante el movimiento se trata como un conflicto al guardarla. Los
+ * contadores de copias de las películas no cambian.
+ * </p>
+ * <p>
+ * La base de datos embebida solo admite un proceso: los movimientos en línea se hacen
+ * desde la propia aplicación con {@link #moveUser}. La herramienta de línea de comandos
+ * sirve con la aplicación cerrada.
+ * </p>
+ * <p>
+ * Uso: {@code ShardRebalancer <id-usuario> <shard|catalog>} o {@code ShardRebalancer --spread}
+ * (mueve cada usuario que sigue en el catálogo a su shard por hash).
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ShardRouter
+ */
+public class ShardRebalancer {
+
+    private static final System.Logger LOG = System.getLogger(ShardRebalancer.class.getName());
+
+    /**
+     * Campos de la proyección de una copia que se mueve.
+     */
+    private static final String CAMPOS =
+            "c.id, c.pelicula.id, c.estadoCodigo, c.estado, c.soporteCodigo, c.soporte, c.version, c.modificadaEn";
+
+    private final ShardRouter router;
+    private final int batchSize;
+
+    /**
+     * Crea el movimiento de usuarios.
+     *
+     * @param router Encaminador de la base de datos.
+     * @param batchSize Número de copias por transacción en la copia en caliente.
+     */
+    public ShardRebalancer(ShardRouter router, int batchSize) {
+        this.router = router;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Punto de entrada de la herramienta de línea de comandos.
+     *
+     * @param args ID del usuario y shard de destino, o {@code --spread}.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 && !(args.length == 1 && args[0].equals("--spread"))) {
+            System.err.println("Uso: ShardRebalancer <id-usuario> <shard|catalog> | ShardRebalancer --spread");
+            System.exit(1);
+        }
+        EntityManagerFactory emf = DataProvider.getEntityManagerFactory();
+        try {
+            ShardRouter router = ShardRouter.of(emf);
+            if (router == null) {
+                System.err.println("La base de datos no está repartida (-Dgestor.shards.count)");
+                System.exit(1);
+            }
+            ShardRebalancer rebalancer = new ShardRebalancer(router, AppConfig.getInt("shards.batchSize", 500));
+            if (args.length == 1) {
+                System.out.println("Usuarios movidos: " + rebalancer.spread());
+            } else {
+                int destino = args[1].equals("catalog") ? ShardRouter.CATALOG : Integer.parseInt(args[1]);
+                System.out.println("Copias movidas: " + rebalancer.moveUser(Integer.valueOf(args[0]), destino));
+            }
+        } finally {
+            DataProvider.shutdown();
+        }
+    }
+
+    /**
+     * Mueve a su shard por hash a todos los usuarios que siguen en el catálogo.
+     *
+     * @return Número de usuarios movidos.
+     */
+    public int spread() {
+        List<Integer> usuarios = UnitOfWork.read(router.getCatalog(), em -> em.createQuery(
+                "select u.id from User u order by u.id", Integer.class).getResultList());
+        int movidos = 0;
+        for (Integer userId : usuarios) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (router.shardOf(userId) == ShardRouter.CATALOG && router.getShardCount() > 0) {
+                moveUser(userId, router.hashShard(userId));
+                movidos++;
+            }
+        }
+        return movidos;
+    }
+
+    /**
+     * Mueve las copias de un usuario a otro shard y cambia su asignación.
+     *
+     * @param userId ID del usuario.
+     * @param destino Shard de destino, o {@link ShardRouter#CATALOG}.
+     * @return Número de copias movidas.
+     */
+    public int moveUser(Integer userId, int destino) {
+        int origen = router.shardOf(userId);
+        if (origen == destino) {
+            return 0;
+        }
+        EntityManagerFactory desde = router.shard(origen);
+        EntityManagerFactory hacia = router.shard(destino);
+
+        // Copia en caliente: versión de cada copia escrita en el destino.
+        Map<Integer, Long> copiadas = new HashMap<>();
+        Integer ultimo = Integer.MIN_VALUE;
+        while (true) {
+            Integer despues = ultimo;
+            List<Object[]> lote = UnitOfWork.read(desde, em -> em.createQuery(
+                    "select " + CAMPOS + " from Copia c where c.user.id = :user and c.id > :despues order by c.id",
+                    Object[].class)
+                    .setParameter("user", userId)
+                    .setParameter("despues", despues)
+                    .setMaxResults(batchSize)
+                    .getResultList());
+            if (lote.isEmpty()) {
+                break;
+            }
+            escribir(hacia, userId, lote, copiadas);
+            ultimo = (Integer) lote.get(lote.size() - 1)[0];
+        }
+
+        // Corte: sin escrituras, se ponen al día los cambios y se cambia la asignación.
+        int movidas = DataProvider.withWritesPaused(() -> {
+            Map<Integer, Long> actuales = new HashMap<>();
+            for (Object[] fila : UnitOfWork.read(desde, em -> em.createQuery(
+                    "select c.id, c.version from Copia c where c.user.id = :user", Object[].class)
+                    .setParameter("user", userId)
+                    .getResultList())) {
+                actuales.put((Integer) fila[0], (Long) fila[1]);
+            }
+            List<Integer> cambiadas = new ArrayList<>();
+            actuales.forEach((id, version) -> {
+                if (!Objects.equals(copiadas.get(id), version)) {
+                    cambiadas.add(id);
+                }
+            });
+            for (int i = 0; i < cambiadas.size(); i += batchSize) {
+                List<Integer> ids = cambiadas.subList(i, Math.min(i + batchSize, cambiadas.size()));
+                escribir(hacia, userId, UnitOfWork.read(desde, em -> em.createQuery(
+                        "select " + CAMPOS + " from Copia c where c.id in :ids", Object[].class)
+                        .setParameter("ids", ids)
+                        .getResultList()), copiadas);
+            }
+            Set<Integer> sobrantes = new HashSet<>(copiadas.keySet());
+            sobrantes.removeAll(actuales.keySet());
+            if (!sobrantes.isEmpty()) {
+                UnitOfWork.run(hacia, em -> em.createQuery("delete from Copia c where c.id in :ids")
+                        .setParameter("ids", sobrantes)
+                        .executeUpdate());
+                despuesDeEscribir(hacia);
+            }
+            router.reassign(userId, destino);
+            borrarOrigen(desde, userId);
+            return actuales.size();
+        });
+        LOG.log(System.Logger.Level.INFO, "Usuario {0} movido del shard {1} al {2}: {3} copias",
+                userId, origen, destino, movidas);
+        return movidas;
+    }
+
+    /**
+     * Escribe en el destino, en una transacción, las copias de las filas de {@link #CAMPOS}:
+     * inserta las que no están y actualiza las demás. Anota la versión de origen de cada una.
+     */
+    private void escribir(EntityManagerFactory hacia, Integer userId, List<Object[]> filas, Map<Integer, Long> copiadas) {
+        UnitOfWork.run(hacia, em -> {
+            User user = ShardRouter.usuario(em, userId);
+            for (Object[] fila : filas) {
+                Integer id = (Integer) fila[0];
+                Copia copia = em.find(Copia.class, id);
+                boolean nueva = copia == null;
+                if (nueva) {
+                    copia = new Copia();
+                    copia.setId(id);
+                    copia.setUser(user);
+                }
+                Integer peliculaId = (Integer) fila[1];
+                if (copia.getPelicula() == null || !peliculaId.equals(copia.getPelicula().getId())) {
+                    copia.setPelicula(ShardRouter.pelicula(em, peliculaId));
+                }
+                copia.setEstado(fila[2] != null ? EstadoCopia.fromCodigo((Short) fila[2]) : legado(EstadoCopia::fromEtiqueta, fila[3]));
+                copia.setSoporte(fila[4] != null ? SoporteCopia.fromCodigo((Short) fila[4]) : legado(SoporteCopia::fromEtiqueta, fila[5]));
+                copia.tocar((Long) fila[7]);
+                copia.clearDirtyFields();
+                if (nueva) {
+                    em.persist(copia);
+                }
+            }
+        });
+        for (Object[] fila : filas) {
+            copiadas.put((Integer) fila[0], (Long) fila[6]);
+        }
+        despuesDeEscribir(hacia);
+    }
+
+    /**
+     * Borra del origen las copias del usuario y, si es un shard, su fila de enlace.
+     */
+    private void borrarOrigen(EntityManagerFactory desde, Integer userId) {
+        UnitOfWork.run(desde, em -> {
+            em.createQuery("delete from Copia c where c.user.id = :user")
+                    .setParameter("user", userId)
+                    .executeUpdate();
+            if (router.isShard(desde)) {
+                em.createQuery("delete from User u where u.id = :user")
+                        .setParameter("user", userId)
+                        .executeUpdate();
+            }
+        });
+        despuesDeEscribir(desde);
+    }
+
+    /**
+     * Invalida las cachés tras escribir copias sin pasar por el repositorio. En el catálogo,
+     * las listas de copias de las películas también cambian.
+     */
+    private void despuesDeEscribir(EntityManagerFactory emf) {
+        emf.getCache().evict(Copia.class);
+        if (emf == router.getCatalog()) {
+            emf.getCache().evict(Pelicula.class);
+            EntityIdentityMap.forEntity(emf, Pelicula.class).clear();
+        }
+    }
+
+    /**
+     * Convierte una etiqueta antigua, o devuelve {@code null} si no es válida.
+     */
+    private static <E> E legado(Function<String, E> conversion, Object etiqueta) {
+        try {
+            return conversion.apply((String) etiqueta);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
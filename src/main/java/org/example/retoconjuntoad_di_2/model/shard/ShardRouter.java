@@ -0,0 +1,369 @@
+package org.example.retoconjuntoad_di_2.model.shard;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Reparto de las copias de los usuarios entre varios archivos ObjectDB (shards).
+ * <p>
+ * El catálogo compartido ({@link Pelicula}, {@link User}, los términos, los contadores
+ * de IDs) sigue en la base de datos principal; las copias de cada usuario están en uno
+ * de los N shards, según su {@link ShardAssignment}. Los usuarios nuevos se asignan al
+ * dar de alta con un hash de su ID; los usuarios anteriores al reparto no tienen
+ * asignación y sus copias siguen en el catálogo ({@link #CATALOG}) hasta que
+ * {@link ShardRebalancer} los mueve. Las asignaciones se leen enteras al abrir y se
+ * mantienen en memoria: encaminar una operación no consulta la base de datos.
+ * </p>
+ * <p>
+ * Una copia en un shard necesita filas de su película y su usuario en ese mismo archivo
+ * para la relación: son filas de enlace que solo tienen el ID ({@link #pelicula} y
+ * {@link #usuario}). Los datos reales se leen siempre del catálogo, y los repositorios
+ * enlazan las copias leídas de un shard con las instancias del catálogo.
+ * </p>
+ * <p>
+ * Hay un encaminador por base de datos principal, registrado también con la factoría de
+ * cada shard, como los archivos de copias frías.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see org.example.retoconjuntoad_di_2.model.copia.CopiaRepository
+ */
+public final class ShardRouter {
+
+    private static final System.Logger LOG = System.getLogger(ShardRouter.class.getName());
+
+    /**
+     * Número de "shard" de los usuarios cuyas copias siguen en el catálogo.
+     */
+    public static final int CATALOG = -1;
+
+    /**
+     * Encaminadores por factoría (la del catálogo y la de cada shard). Las factorías
+     * cerradas se liberan solas.
+     */
+    private static final Map<EntityManagerFactory, ShardRouter> ROUTERS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final EntityManagerFactory catalog;
+    private final List<EntityManagerFactory> shards;
+
+    /**
+     * El catálogo seguido de los shards.
+     */
+    private final List<EntityManagerFactory> all;
+
+    /**
+     * Shard de cada usuario asignado.
+     */
+    private final Map<Integer, Integer> asignaciones = new ConcurrentHashMap<>();
+
+    private ShardRouter(EntityManagerFactory catalog, List<EntityManagerFactory> shards) {
+        this.catalog = catalog;
+        this.shards = List.copyOf(shards);
+        List<EntityManagerFactory> todas = new ArrayList<>(shards.size() + 1);
+        todas.add(catalog);
+        todas.addAll(shards);
+        this.all = List.copyOf(todas);
+    }
+
+    /**
+     * Crea el encaminador de una base de datos, carga sus asignaciones y lo registra para
+     * que lo usen sus repositorios.
+     *
+     * @param catalog Factoría de la base de datos del catálogo.
+     * @param shards Factorías de los shards, en orden.
+     * @return El encaminador registrado.
+     */
+    public static ShardRouter open(EntityManagerFactory catalog, List<EntityManagerFactory> shards) {
+        ShardRouter router = new ShardRouter(catalog, shards);
+        UnitOfWork.read(catalog, em -> {
+            for (ShardAssignment a : em.createQuery("select a from ShardAssignment a", ShardAssignment.class)
+                    .getResultList()) {
+                router.asignaciones.put(a.getUserId(), a.getShard());
+            }
+            return null;
+        });
+        for (EntityManagerFactory emf : router.all) {
+            ROUTERS.put(emf, router);
+        }
+        LOG.log(System.Logger.Level.INFO, "Copias repartidas en {0} shards ({1} usuarios asignados)",
+                shards.size(), router.asignaciones.size());
+        return router;
+    }
+
+    /**
+     * Devuelve el encaminador de una base de datos (el catálogo o uno de sus shards).
+     *
+     * @param emf Factoría de la base de datos.
+     * @return El encaminador, o {@code null} si no está repartida.
+     */
+    public static ShardRouter of(EntityManagerFactory emf) {
+        return ROUTERS.get(emf);
+    }
+
+    /**
+     * Retira el encaminador del registro. No cierra ninguna factoría.
+     */
+    public void close() {
+        for (EntityManagerFactory emf : all) {
+            ROUTERS.remove(emf, this);
+        }
+    }
+
+    /**
+     * Devuelve la factoría del catálogo.
+     *
+     * @return Base de datos principal.
+     */
+    public EntityManagerFactory getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Devuelve el número de shards.
+     *
+     * @return Número de shards, sin contar el catálogo.
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Devuelve la factoría de un shard.
+     *
+     * @param shard Número del shard, o {@link #CATALOG}.
+     * @return Su base de datos.
+     */
+    public EntityManagerFactory shard(int shard) {
+        if (shard == CATALOG) {
+            return catalog;
+        }
+        if (shard < 0 || shard >= shards.size()) {
+            throw new IllegalStateException("El shard " + shard + " no está abierto (hay " + shards.size() + ")");
+        }
+        return shards.get(shard);
+    }
+
+    /**
+     * Devuelve el catálogo y todos los shards, en ese orden.
+     *
+     * @return Bases de datos con copias.
+     */
+    public List<EntityManagerFactory> all() {
+        return all;
+    }
+
+    /**
+     * Indica si una factoría es uno de los shards (y no el catálogo).
+     *
+     * @param emf Factoría de la base de datos.
+     * @return {@code true} si es un shard.
+     */
+    public boolean isShard(EntityManagerFactory emf) {
+        return emf != catalog && shards.contains(emf);
+    }
+
+    /**
+     * Devuelve el shard de un usuario.
+     *
+     * @param userId ID del usuario.
+     * @return Número del shard, o {@link #CATALOG} si no está asignado.
+     */
+    public int shardOf(Integer userId) {
+        Integer shard = userId != null ? asignaciones.get(userId) : null;
+        return shard != null ? shard : CATALOG;
+    }
+
+    /**
+     * Devuelve la base de datos de las copias de un usuario.
+     *
+     * @param userId ID del usuario.
+     * @return Su shard, o el catálogo si no está asignado.
+     * @throws IllegalStateException Si está asignado a un shard que no está abierto.
+     */
+    public EntityManagerFactory forUser(Integer userId) {
+        return shard(shardOf(userId));
+    }
+
+    /**
+     * Devuelve el shard que corresponde por hash a un usuario nuevo.
+     *
+     * @param userId ID del usuario.
+     * @return Número del shard, o {@link #CATALOG} si no hay shards.
+     */
+    public int hashShard(int userId) {
+        if (shards.isEmpty()) {
+            return CATALOG;
+        }
+        // Los IDs se reservan por bloques consecutivos: se mezclan para repartirlos bien.
+        int h = userId * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards.size());
+    }
+
+    /**
+     * Asigna un usuario recién creado a su shard, en la transacción de {@code em} (sobre
+     * el catálogo). La asignación se publica en memoria al confirmar.
+     *
+     * @param em EntityManager de la transacción que da de alta al usuario.
+     * @param userId ID del usuario.
+     */
+    public void assignNew(EntityManager em, Integer userId) {
+        int shard = hashShard(userId);
+        if (shard == CATALOG || asignaciones.containsKey(userId)) {
+            return;
+        }
+        em.persist(new ShardAssignment(userId, shard));
+        UnitOfWork.afterCommit(() -> asignaciones.put(userId, shard));
+    }
+
+    /**
+     * Cambia el shard de un usuario en su propia transacción sobre el catálogo. Solo debe
+     * llamarse cuando sus copias ya están en el destino.
+     *
+     * @param userId ID del usuario.
+     * @param shard Nuevo shard, o {@link #CATALOG}.
+     */
+    void reassign(Integer userId, int shard) {
+        shard(shard);
+        UnitOfWork.run(catalog, em -> {
+            ShardAssignment asignacion = em.find(ShardAssignment.class, userId);
+            if (shard == CATALOG) {
+                if (asignacion != null) {
+                    em.remove(asignacion);
+                }
+                UnitOfWork.afterCommit(() -> asignaciones.remove(userId));
+            } else {
+                if (asignacion == null) {
+                    em.persist(new ShardAssignment(userId, shard));
+                } else {
+                    asignacion.setShard(shard);
+                }
+                UnitOfWork.afterCommit(() -> asignaciones.put(userId, shard));
+            }
+        });
+    }
+
+    /**
+     * Borra de todos los shards las copias de una película eliminada del catálogo, y su
+     * fila de enlace.
+     *
+     * @param peliculaId ID de la película.
+     * @return Número de copias borradas.
+     */
+    public int deletePelicula(Integer peliculaId) {
+        int borradas = 0;
+        for (EntityManagerFactory shard : shards) {
+            borradas += UnitOfWork.execute(shard, em -> {
+                int n = em.createQuery("delete from Copia c where c.pelicula.id = :id")
+                        .setParameter("id", peliculaId)
+                        .executeUpdate();
+                em.createQuery("delete from Pelicula p where p.id = :id")
+                        .setParameter("id", peliculaId)
+                        .executeUpdate();
+                shard.getCache().evict(Copia.class);
+                shard.getCache().evict(Pelicula.class);
+                return n;
+            });
+        }
+        return borradas;
+    }
+
+    /**
+     * Indica si {@code em} trabaja sobre un shard.
+     *
+     * @param em EntityManager de la transacción.
+     * @return {@code true} si su base de datos es un shard.
+     */
+    public static boolean isShard(EntityManager em) {
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        ShardRouter router = of(emf);
+        return router != null && router.isShard(emf);
+    }
+
+    /**
+     * Crea en un shard las filas de enlace que falten de una película y un usuario, cada
+     * una en su propia transacción.
+     * <p>
+     * Se llama antes de la transacción que da de alta la copia: si dos altas crean a la
+     * vez la misma fila, la que falla es esta pequeña transacción y no el guardado.
+     * </p>
+     *
+     * @param shard Factoría del shard.
+     * @param peliculaId ID de la película, o {@code null}.
+     * @param userId ID del usuario, o {@code null}.
+     */
+    public static void enlazar(EntityManagerFactory shard, Integer peliculaId, Integer userId) {
+        if (peliculaId != null) {
+            asegurar(shard, em -> pelicula(em, peliculaId));
+        }
+        if (userId != null) {
+            asegurar(shard, em -> usuario(em, userId));
+        }
+    }
+
+    private static void asegurar(EntityManagerFactory shard, Consumer<EntityManager> enlace) {
+        try {
+            UnitOfWork.run(shard, enlace);
+        } catch (RuntimeException e) {
+            // Otra transacción ha creado la misma fila a la vez.
+            LOG.log(System.Logger.Level.DEBUG, "Fila de enlace creada por otra transacción", e);
+        }
+    }
+
+    /**
+     * Devuelve la película con la que relacionar una copia en la base de datos de {@code em}.
+     * <p>
+     * En el catálogo es la propia película. En un shard es su fila de enlace, que se crea
+     * en la transacción de {@code em} si aún no existe.
+     * </p>
+     *
+     * @param em EntityManager de la transacción.
+     * @param id ID de la película.
+     * @return La película gestionada, o {@code null} si no existe en el catálogo.
+     */
+    public static Pelicula pelicula(EntityManager em, Integer id) {
+        Pelicula pelicula = em.find(Pelicula.class, id);
+        if (pelicula == null && isShard(em)) {
+            pelicula = new Pelicula();
+            pelicula.setId(id);
+            pelicula.clearDirtyFields();
+            em.persist(pelicula);
+        }
+        return pelicula;
+    }
+
+    /**
+     * Devuelve el usuario con el que relacionar una copia en la base de datos de {@code em},
+     * como {@link #pelicula}. Las filas de enlace tienen un nombre de usuario propio
+     * ({@code #<id>}), para no chocar con la restricción de unicidad.
+     *
+     * @param em EntityManager de la transacción.
+     * @param id ID del usuario.
+     * @return El usuario gestionado, o {@code null} si no existe en el catálogo.
+     */
+    public static User usuario(EntityManager em, Integer id) {
+        User user = em.find(User.class, id);
+        if (user == null && isShard(em)) {
+            user = new User();
+            user.setId(id);
+            user.setNombreUsuario("#" + id);
+            user.setContrasena("");
+            user.clearDirtyFields();
+            em.persist(user);
+        }
+        return user;
+    }
+}
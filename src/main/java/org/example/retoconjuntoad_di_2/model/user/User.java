@@ -2,8 +2,13 @@ package org.example.retoconjuntoad_di_2.model.user;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.example.retoconjuntoad_di_2.utils.TrackedEntity;
+import org.example.retoconjuntoad_di_2.utils.VersionedEntity;
 
 import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Clase que representa un usuario en el sistema.
@@ -18,7 +23,8 @@ import java.io.Serializable;
  * </p>
  * <p>
  * Esta clase utiliza las anotaciones de Lombok ({@code @Data}) para generar
- * automáticamente los métodos getter, setter, toString, equals y hashCode.
+ * automáticamente los métodos getter, setter y toString. {@code equals} y
+ * {@code hashCode} comparan solo el ID.
  * </p>
  *
  * @author Sistema de Gestión de Películas
@@ -28,17 +34,17 @@ import java.io.Serializable;
 @Data
 @Entity
 @Table(name = "Usuarios")
-public class User implements Serializable {
+public class User implements Serializable, VersionedEntity, TrackedEntity {
 
     /**
      * Identificador único del usuario.
      * <p>
-     * Este campo es la clave primaria de la entidad y se genera automáticamente
-     * por la base de datos utilizando una estrategia de identidad.
+     * Este campo es la clave primaria de la entidad. Lo asigna el repositorio al
+     * insertar, a partir de un bloque de IDs reservado por
+     * {@link org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator}.
      * </p>
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
     /**
@@ -72,4 +78,101 @@ public class User implements Serializable {
     @Column(name = "es_admin", nullable = false)
     private boolean esAdmin;
 
+    /**
+     * Versión del usuario para el control de concurrencia optimista.
+     * <p>
+     * JPA la incrementa en cada actualización. Si dos sesiones modifican el mismo usuario,
+     * la segunda en guardar recibe un conflicto en lugar de sobrescribir a la primera.
+     * </p>
+     */
+    @Version
+    private long version;
+
+    /**
+     * Campos modificados mediante los setters desde que se leyó el usuario.
+     * <p>
+     * No se persiste ni participa en {@code equals}/{@code hashCode}; los repositorios
+     * lo usan para escribir solo los campos que han cambiado.
+     * </p>
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient Set<String> dirtyFields;
+
+    /**
+     * Establece el nombre de usuario y anota el campo como modificado.
+     *
+     * @param nombreUsuario Nuevo valor.
+     */
+    public void setNombreUsuario(String nombreUsuario) {
+        this.nombreUsuario = nombreUsuario;
+        markDirty("nombreUsuario");
+    }
+
+    /**
+     * Establece la contraseña y anota el campo como modificado.
+     *
+     * @param contrasena Nuevo valor.
+     */
+    public void setContrasena(String contrasena) {
+        this.contrasena = contrasena;
+        markDirty("contrasena");
+    }
+
+    /**
+     * Establece si el usuario es administrador y anota el campo como modificado.
+     *
+     * @param esAdmin Nuevo valor.
+     */
+    public void setEsAdmin(boolean esAdmin) {
+        this.esAdmin = esAdmin;
+        markDirty("esAdmin");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getDirtyFields() {
+        return dirtyFields == null ? Set.of() : Set.copyOf(dirtyFields);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearDirtyFields() {
+        dirtyFields = null;
+    }
+
+    private void markDirty(String field) {
+        if (dirtyFields == null) {
+            dirtyFields = new HashSet<>(4);
+        }
+        dirtyFields.add(field);
+    }
+
+    /**
+     * Compara por identidad de entidad: dos instancias son iguales si son de la misma
+     * clase y tienen el mismo ID. Un usuario sin guardar (sin ID) solo es igual a sí mismo.
+     *
+     * @param o Objeto a comparar.
+     * @return {@code true} si representan la misma fila.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o != null && getClass() == o.getClass()
+                && id != null && id.equals(((User) o).id);
+    }
+
+    /**
+     * Devuelve un hash derivado solo del ID, en tiempo constante.
+     *
+     * @return Hash de la entidad.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), id);
+    }
 }
@@ -1,9 +1,18 @@
 package org.example.retoconjuntoad_di_2.model.user;
 
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.metrics.RepositoryMetrics;
+import org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.utils.ConflictPolicy;
+import org.example.retoconjuntoad_di_2.utils.EntityIdentityMap;
 import org.example.retoconjuntoad_di_2.utils.Repository;
+import org.example.retoconjuntoad_di_2.utils.StaleEntityException;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
 
 import java.util.List;
 import java.util.Optional;
@@ -21,9 +30,18 @@ import java.util.Optional;
  * local y no es necesario un servidor de base de datos externo.
  * </p>
  * <p>
- * Cada operación crea su propio EntityManager y lo cierra después de completarse,
- * siguiendo el patrón de "una transacción por operación" para garantizar la
- * consistencia de los datos.
+ * Cada operación se ejecuta dentro de una {@link UnitOfWork}: si se invoca sola,
+ * abre su propio EntityManager y su propia transacción ("una transacción por
+ * operación"); si se invoca dentro de una unidad ya abierta (por ejemplo, desde
+ * otro repositorio), comparte su contexto y se confirma junto con ella.
+ * </p>
+ * <p>
+ * Los usuarios leídos fuera de una unidad de trabajo son las instancias compartidas de
+ * su {@link EntityIdentityMap}, las mismas a las que apuntan sus copias.
+ * </p>
+ * <p>
+ * Si las copias están repartidas en shards, cada usuario nuevo se asigna a su shard en la
+ * misma transacción que lo da de alta ({@link ShardRouter#assignNew}).
  * </p>
  *
  * @author Sistema de Gestión de Películas
@@ -33,8 +51,28 @@ import java.util.Optional;
  */
 public class UserRepository implements Repository<User> {
 
+    /**
+     * Métricas de llamadas y latencia de los métodos de este repositorio.
+     */
+    private static final RepositoryMetrics METRICS = RepositoryMetrics.forEntity(User.class);
+
     private final EntityManagerFactory entityManagerFactory;
 
+    /**
+     * Generador de IDs para las nuevas entidades.
+     */
+    private final BlockIdGenerator ids;
+
+    /**
+     * Instancias compartidas de los usuarios leídos.
+     */
+    private final EntityIdentityMap<User> identidad;
+
+    /**
+     * Política aplicada cuando un guardado choca con una modificación concurrente.
+     */
+    private ConflictPolicy<User> conflictPolicy = ConflictPolicy.fromConfig();
+
     /**
      * Constructor que inicializa el repositorio con una factoría de EntityManager.
      *
@@ -42,29 +80,92 @@ public class UserRepository implements Repository<User> {
      */
     public UserRepository(EntityManagerFactory entityManagerFactory) {
         this.entityManagerFactory = entityManagerFactory;
+        this.ids = BlockIdGenerator.forEntity(entityManagerFactory, User.class);
+        this.identidad = EntityIdentityMap.forEntity(entityManagerFactory, User.class);
+    }
+
+    /**
+     * Cambia la política de resolución de conflictos de concurrencia optimista.
+     *
+     * @param conflictPolicy Nueva política (por defecto, la configurada en {@link ConflictPolicy#fromConfig()}).
+     */
+    public void setConflictPolicy(ConflictPolicy<User> conflictPolicy) {
+        this.conflictPolicy = conflictPolicy;
     }
 
     /**
      * Guarda un usuario en la base de datos.
-     * Si el usuario no tiene ID, se inserta como nuevo; de lo contrario, se actualiza.
+     * Si el usuario no tiene ID, se inserta como nuevo; de lo contrario, se actualizan solo
+     * los campos modificados ({@link org.example.retoconjuntoad_di_2.utils.TrackedEntity}).
      *
      * @param entity Usuario a guardar.
      * @return El usuario gestionado (persistido o actualizado).
+     * @throws StaleEntityException Si otro usuario ha modificado este usuario y la política de conflictos no lo resuelve.
      */
     @Override
     public User save(User entity) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            em.getTransaction().begin();
-            if (entity.getId() == null) {
+        return METRICS.time("save", () -> {
+            if (UnitOfWork.isActive()) {
+                // Dentro de una unidad mayor no se puede reintentar: el conflicto se detecta al confirmarla.
+                return saveOnce(entity);
+            }
+            return conflictPolicy.save(entity, this::saveOnce, e -> findById(e.getId().longValue()));
+        });
+    }
+
+    /**
+     * Guarda el usuario en una única transacción, sin tratar los conflictos.
+     *
+     * @param entity Usuario a guardar.
+     * @return El usuario gestionado (persistido o actualizado).
+     */
+    private User saveOnce(User entity) {
+        return UnitOfWork.execute(entityManagerFactory, em -> {
+            User managed;
+            // Nueva (o con un ID asignado en un intento que se deshizo) -> INSERT
+            if (entity.getId() == null || entity.getVersion() == 0 && em.find(User.class, entity.getId()) == null) {
+                if (entity.getId() == null) {
+                    entity.setId(ids.next());
+                }
                 em.persist(entity);
+                managed = entity;
+                ShardRouter router = ShardRouter.of(entityManagerFactory);
+                if (router != null) {
+                    router.assignNew(em, managed.getId());
+                }
             } else {
-                entity = em.merge(entity);
+                managed = em.find(User.class, entity.getId());
+                ConflictPolicy.checkVersion(entity, managed);
+                applyChanges(entity, managed);
+            }
+            managed.clearDirtyFields();
+            Integer id = managed.getId();
+            UnitOfWork.afterCommit(() -> {
+                identidad.evict(id);
+                EntityChanges.publish(new EntityChange(ChangeRecord.EntityType.USER, ChangeRecord.Operation.SAVE, managed));
+            });
+            return managed;
+        });
+    }
+
+    /**
+     * Copia sobre la instancia gestionada solo los campos modificados en la desprendida.
+     * <p>
+     * A diferencia de {@code merge}, no recorre ni propaga nada a las asociaciones
+     * que no han cambiado.
+     * </p>
+     *
+     * @param source Instancia desprendida con los cambios.
+     * @param target Instancia gestionada.
+     */
+    private static void applyChanges(User source, User target) {
+        for (String field : source.getDirtyFields()) {
+            switch (field) {
+                case "nombreUsuario" -> target.setNombreUsuario(source.getNombreUsuario());
+                case "contrasena" -> target.setContrasena(source.getContrasena());
+                case "esAdmin" -> target.setEsAdmin(source.isEsAdmin());
+                default -> throw new IllegalArgumentException("Campo desconocido: " + field);
             }
-            em.getTransaction().commit();
-            return entity;
-        } finally {
-            em.close();
         }
     }
 
@@ -73,19 +174,30 @@ public class UserRepository implements Repository<User> {
      *
      * @param entity Usuario a eliminar.
      * @return Un Optional que contiene el usuario eliminado.
+     * @throws StaleEntityException Si el usuario se ha modificado desde que se leyó.
      */
     @Override
     public Optional<User> delete(User entity) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            em.getTransaction().begin();
-            User managed = em.contains(entity) ? entity : em.merge(entity);
-            em.remove(managed);
-            em.getTransaction().commit();
-            return Optional.of(entity);
-        } finally {
-            em.close();
-        }
+        return METRICS.time("delete", () -> {
+            try {
+                return UnitOfWork.execute(entityManagerFactory, em -> {
+                    User managed = em.contains(entity) ? entity : em.find(User.class, entity.getId());
+                    ConflictPolicy.checkVersion(entity, managed);
+                    em.remove(managed);
+                    UnitOfWork.afterCommit(() -> {
+                        identidad.evict(entity.getId());
+                        EntityChanges.publish(
+                                new EntityChange(ChangeRecord.EntityType.USER, ChangeRecord.Operation.DELETE, entity));
+                    });
+                    return Optional.of(entity);
+                });
+            } catch (RuntimeException e) {
+                if (ConflictPolicy.isOptimisticFailure(e)) {
+                    throw new StaleEntityException(User.class, entity.getId(), e);
+                }
+                throw e;
+            }
+        });
     }
 
     /**
@@ -96,11 +208,12 @@ public class UserRepository implements Repository<User> {
      */
     @Override
     public Optional<User> deleteById(Long id) {
-        Optional<User> user = findById(id);
-        if (user.isPresent()) {
-            delete(user.get());
-        }
-        return user;
+        // Búsqueda y borrado en la misma unidad de trabajo: un único contexto y un único commit.
+        return METRICS.time("deleteById", () -> UnitOfWork.execute(entityManagerFactory, em -> {
+            Optional<User> user = Optional.ofNullable(em.find(User.class, id.intValue()));
+            user.ifPresent(this::delete);
+            return user;
+        }));
     }
 
     /**
@@ -111,12 +224,9 @@ public class UserRepository implements Repository<User> {
      */
     @Override
     public Optional<User> findById(Long id) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
+        return METRICS.time("findById", () -> compartido(UnitOfWork.read(entityManagerFactory, em -> {
             return Optional.ofNullable(em.find(User.class, id.intValue()));
-        } finally {
-            em.close();
-        }
+        })));
     }
 
     /**
@@ -126,13 +236,13 @@ public class UserRepository implements Repository<User> {
      */
     @Override
     public List<User> findAll() {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
-            TypedQuery<User> q = em.createQuery("select u from User u", User.class);
-            return q.getResultList();
-        } finally {
-            em.close();
-        }
+        return METRICS.time("findAll", () -> {
+            List<User> users = UnitOfWork.read(entityManagerFactory, em -> {
+                TypedQuery<User> q = em.createQuery("select u from User u", User.class);
+                return q.getResultList();
+            });
+            return UnitOfWork.isActive() ? users : identidad.canonicalAll(users);
+        });
     }
 
     /**
@@ -142,14 +252,11 @@ public class UserRepository implements Repository<User> {
      */
     @Override
     public Long count() {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
+        return METRICS.time("count", () -> UnitOfWork.read(entityManagerFactory, em -> {
             return em.createQuery(
                     "select count(u) from User u", Long.class
             ).getSingleResult();
-        } finally {
-            em.close();
-        }
+        }));
     }
 
     /**
@@ -159,8 +266,7 @@ public class UserRepository implements Repository<User> {
      * @return Un Optional que contiene el usuario encontrado, si existe.
      */
     public Optional<User> findByNombreUsuario(String nombreUsuario) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        try {
+        return METRICS.time("findByNombreUsuario", () -> compartido(UnitOfWork.read(entityManagerFactory, em -> {
             TypedQuery<User> q = em.createQuery(
                     "select u from User u where u.nombreUsuario = :nombreUsuario",
                     User.class
@@ -168,8 +274,14 @@ public class UserRepository implements Repository<User> {
             q.setParameter("nombreUsuario", nombreUsuario);
             List<User> result = q.getResultList();
             return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
-        } finally {
-            em.close();
-        }
+        })));
+    }
+
+    /**
+     * Sustituye el usuario por su instancia compartida si ya está desprendido (fuera de
+     * una unidad de trabajo).
+     */
+    private Optional<User> compartido(Optional<User> user) {
+        return UnitOfWork.isActive() ? user : user.map(identidad::canonical);
     }
 }
@@ -0,0 +1,670 @@
+package org.example.retoconjuntoad_di_2.recommendation;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.cache.CatalogCache;
+import org.example.retoconjuntoad_di_2.journal.ChangeRecord;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChangeListener;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Índice de películas parecidas ("quien tiene X también tiene Y") calculado a partir de
+ * las copias de todos los usuarios.
+ * <p>
+ * Para cada par de películas se cuenta cuántos usuarios tienen copia de las dos. La
+ * puntuación de {@code b} como parecida a {@code a} es la fracción de propietarios de
+ * {@code a} que también tienen {@code b}, multiplicada por un peso que premia compartir
+ * género ({@value #PESO_GENERO}), director ({@value #PESO_DIRECTOR}) y década
+ * ({@value #PESO_DECADA}). De cada película se guardan solo las {@code K} mejores
+ * ({@code gestor.recommendation.topK}, 10) en dos arrays inmutables, de modo que
+ * {@link #similares(Integer)} responde en O(K) sin cerrojos.
+ * </p>
+ * <p>
+ * El modelo se construye en segundo plano en un {@link ForkJoinPool} propio
+ * ({@code gestor.recommendation.threads}): las copias se leen por páginas
+ * ({@code gestor.recommendation.pageSize}, 5000) de cada base de datos (el catálogo y los
+ * shards), a la vez, y las filas de coocurrencias se calculan en paralelo, una por
+ * película. Después se mantiene al día con los {@link EntityChange} de los repositorios:
+ * el receptor solo encola el cambio y un único trabajo del mismo pool los aplica por
+ * lotes, actualizando las coocurrencias de las películas del usuario afectado. Una
+ * película que sube de puntuación se inserta en los vecinos en O(K); solo se vuelve a
+ * recorrer la fila completa de una película cuando cambian sus propietarios, sus datos o
+ * baja un vecino que estaba entre los K mejores.
+ * </p>
+ * <p>
+ * Aplicar un cambio es idempotente (se guarda la película y el usuario de cada copia),
+ * así que los cambios que llegan durante la construcción se aplican después sin contar
+ * dos veces lo que ya se leyó.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see EntityChanges
+ */
+public final class SimilarFilmsIndex implements EntityChangeListener {
+
+    private static final System.Logger LOG = System.getLogger(SimilarFilmsIndex.class.getName());
+
+    private static final SimilarFilmsIndex INSTANCE = new SimilarFilmsIndex();
+
+    /**
+     * Peso añadido cuando dos películas comparten género.
+     */
+    static final double PESO_GENERO = 0.5;
+
+    /**
+     * Peso añadido cuando dos películas comparten director.
+     */
+    static final double PESO_DIRECTOR = 0.75;
+
+    /**
+     * Peso añadido cuando dos películas son de la misma década.
+     */
+    static final double PESO_DECADA = 0.25;
+
+    /**
+     * Película parecida a otra, con su puntuación.
+     *
+     * @param peliculaId ID de la película parecida.
+     * @param puntuacion Puntuación; mayor cuanto más parecida.
+     */
+    public record Similar(int peliculaId, float puntuacion) {
+    }
+
+    /**
+     * Mejores vecinos de una película, ordenados de mayor a menor puntuación.
+     */
+    private record Vecinos(int[] ids, float[] puntuaciones) {
+
+        int indexOf(int id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Datos de una película que intervienen en el peso de un par.
+     */
+    private record Atributos(String genero, String director, Integer decada) {
+
+        static Atributos de(Pelicula pelicula) {
+            return new Atributos(pelicula.getGenero(), pelicula.getDirector(),
+                    pelicula.getAnio() != null ? pelicula.getAnio() / 10 : null);
+        }
+
+        double peso(Atributos otra) {
+            double peso = 1;
+            if (genero != null && genero.equalsIgnoreCase(otra.genero)) {
+                peso += PESO_GENERO;
+            }
+            if (director != null && director.equalsIgnoreCase(otra.director)) {
+                peso += PESO_DIRECTOR;
+            }
+            if (decada != null && decada.equals(otra.decada)) {
+                peso += PESO_DECADA;
+            }
+            return peso;
+        }
+    }
+
+    /**
+     * Orden de los vecinos: mayor puntuación primero y, a igualdad, menor ID.
+     */
+    private static final Comparator<Similar> ORDEN = Comparator.comparingDouble(Similar::puntuacion).reversed()
+            .thenComparingInt(Similar::peliculaId);
+
+    /**
+     * Vecinos publicados por película. Es lo único que leen las consultas.
+     */
+    private final Map<Integer, Vecinos> vecinos = new ConcurrentHashMap<>();
+
+    // Modelo de coocurrencias. Solo lo modifica quien tiene el monitor de la instancia.
+
+    /**
+     * Película y usuario de cada copia (ID del usuario en los 32 bits altos).
+     */
+    private Map<Integer, Long> copias = new HashMap<>();
+
+    /**
+     * Películas de cada usuario, con el número de copias que tiene de cada una.
+     */
+    private Map<Integer, Map<Integer, Integer>> peliculasDe = new HashMap<>();
+
+    /**
+     * Número de usuarios con copia de cada película.
+     */
+    private Map<Integer, Integer> propietarios = new HashMap<>();
+
+    /**
+     * Fila de coocurrencias de cada película: usuarios que tienen copia de ella y de otra.
+     */
+    private Map<Integer, Map<Integer, Integer>> coocurrencias = new HashMap<>();
+
+    private Map<Integer, Atributos> atributos = new HashMap<>();
+
+    /**
+     * Cambios recibidos y aún no aplicados.
+     */
+    private final Queue<EntityChange> pendientes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean aplicando = new AtomicBoolean();
+
+    private volatile boolean cargado;
+    private volatile ForkJoinPool pool;
+    private int topK;
+    private int pageSize;
+
+    private SimilarFilmsIndex() {
+    }
+
+    /**
+     * Devuelve la instancia única del índice.
+     *
+     * @return El índice de películas parecidas.
+     */
+    public static SimilarFilmsIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Empieza a recibir cambios y construye el modelo en segundo plano.
+     * <p>
+     * Si el índice ya está en marcha no hace nada.
+     * </p>
+     *
+     * @param emf Factoría de EntityManager del catálogo.
+     * @param topK Número de películas parecidas que se guardan de cada una.
+     * @param pageSize Número de copias por consulta al construir el modelo.
+     * @param threads Hilos del pool de cálculo.
+     */
+    public synchronized void start(EntityManagerFactory emf, int topK, int pageSize, int threads) {
+        if (pool != null) {
+            return;
+        }
+        this.topK = Math.max(1, topK);
+        this.pageSize = Math.max(1, pageSize);
+        pool = new ForkJoinPool(Math.max(1, threads), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("recommendation-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+        EntityChanges.register(this);
+        ForkJoinPool propio = pool;
+        pool.execute(() -> build(emf, propio));
+    }
+
+    /**
+     * Deja de recibir cambios, detiene el pool y descarta el modelo.
+     */
+    public synchronized void stop() {
+        if (pool == null) {
+            return;
+        }
+        EntityChanges.unregister(this);
+        pool.shutdownNow();
+        pool = null;
+        cargado = false;
+        pendientes.clear();
+        vecinos.clear();
+        instalar(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+    }
+
+    /**
+     * Indica si el modelo ya está construido.
+     *
+     * @return {@code true} si {@link #similares(Integer)} responde con datos.
+     */
+    public boolean isLoaded() {
+        return cargado;
+    }
+
+    /**
+     * Devuelve las películas más parecidas a una, de más a menos parecida.
+     *
+     * @param peliculaId ID de la película.
+     * @return Hasta K películas parecidas (vacía si no hay datos o el índice no está cargado).
+     */
+    public List<Similar> similares(Integer peliculaId) {
+        Vecinos actuales = peliculaId != null ? vecinos.get(peliculaId) : null;
+        if (actuales == null) {
+            return List.of();
+        }
+        List<Similar> resultado = new ArrayList<>(actuales.ids().length);
+        for (int i = 0; i < actuales.ids().length; i++) {
+            resultado.add(new Similar(actuales.ids()[i], actuales.puntuaciones()[i]));
+        }
+        return resultado;
+    }
+
+    /**
+     * Encola una escritura confirmada; se aplica en el pool, fuera del hilo que escribe.
+     *
+     * @param change Cambio confirmado.
+     */
+    @Override
+    public void onChange(EntityChange change) {
+        pendientes.add(change);
+        programar();
+    }
+
+    private void programar() {
+        ForkJoinPool actual = pool;
+        if (cargado && actual != null && !pendientes.isEmpty() && aplicando.compareAndSet(false, true)) {
+            actual.execute(this::aplicarPendientes);
+        }
+    }
+
+    /**
+     * Lee las copias de todas las bases de datos, calcula las coocurrencias y publica
+     * los vecinos de cada película.
+     *
+     * @param propio Pool que lanzó la construcción; si el índice se ha detenido, no se publica nada.
+     */
+    private void build(EntityManagerFactory emf, ForkJoinPool propio) {
+        long inicio = System.nanoTime();
+        try {
+            CatalogCache cache = CatalogCache.getInstance();
+            List<Pelicula> peliculas = cache.isLoaded()
+                    ? cache.snapshot().getPeliculas()
+                    : new PeliculaRepository(emf).findAll();
+            Map<Integer, Atributos> nuevosAtributos = new HashMap<>();
+            for (Pelicula pelicula : peliculas) {
+                nuevosAtributos.put(pelicula.getId(), Atributos.de(pelicula));
+            }
+
+            ShardRouter router = ShardRouter.of(emf);
+            List<EntityManagerFactory> bases = router != null ? router.all() : List.of(emf);
+            Map<Integer, Long> nuevasCopias = new HashMap<>();
+            bases.parallelStream().map(this::leerCopias).toList().forEach(nuevasCopias::putAll);
+
+            Map<Integer, Map<Integer, Integer>> nuevasPeliculasDe = new HashMap<>();
+            Map<Integer, List<Integer>> usuariosDe = new HashMap<>();
+            for (long copia : nuevasCopias.values()) {
+                Map<Integer, Integer> suyas = nuevasPeliculasDe.computeIfAbsent(usuario(copia), u -> new HashMap<>());
+                if (suyas.merge(pelicula(copia), 1, Integer::sum) == 1) {
+                    usuariosDe.computeIfAbsent(pelicula(copia), p -> new ArrayList<>()).add(usuario(copia));
+                }
+            }
+            Map<Integer, Integer> nuevosPropietarios = new HashMap<>();
+            usuariosDe.forEach((pelicula, usuarios) -> nuevosPropietarios.put(pelicula, usuarios.size()));
+
+            // Una fila por película: se recorren sus propietarios y las películas de cada uno.
+            Map<Integer, Map<Integer, Integer>> filas = usuariosDe.entrySet().parallelStream()
+                    .collect(Collectors.toConcurrentMap(Map.Entry::getKey,
+                            e -> fila(e.getKey(), e.getValue(), nuevasPeliculasDe)));
+
+            synchronized (this) {
+                if (pool != propio) {
+                    return;
+                }
+                instalar(nuevasCopias, nuevasPeliculasDe, nuevosPropietarios, new HashMap<>(filas), nuevosAtributos);
+                vecinos.clear();
+                coocurrencias.keySet().parallelStream().forEach(this::recalcular);
+                cargado = true;
+            }
+            LOG.log(System.Logger.Level.INFO, "Índice de películas parecidas: {0} películas, {1} copias en {2} ms",
+                    filas.size(), nuevasCopias.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+            programar();
+        } catch (RuntimeException e) {
+            LOG.log(System.Logger.Level.WARNING, "No se pudo construir el índice de películas parecidas", e);
+        }
+    }
+
+    private void instalar(Map<Integer, Long> copias, Map<Integer, Map<Integer, Integer>> peliculasDe,
+                          Map<Integer, Integer> propietarios, Map<Integer, Map<Integer, Integer>> coocurrencias,
+                          Map<Integer, Atributos> atributos) {
+        this.copias = copias;
+        this.peliculasDe = peliculasDe;
+        this.propietarios = propietarios;
+        this.coocurrencias = coocurrencias;
+        this.atributos = atributos;
+    }
+
+    /**
+     * Lee, por páginas de IDs, la película y el usuario de cada copia de una base de datos.
+     */
+    private Map<Integer, Long> leerCopias(EntityManagerFactory base) {
+        Map<Integer, Long> leidas = new HashMap<>();
+        Integer ultimo = Integer.MIN_VALUE;
+        while (true) {
+            Integer despues = ultimo;
+            List<Object[]> pagina = UnitOfWork.read(base, em -> em.createQuery(
+                    "select c.id, c.user.id, c.pelicula.id from Copia c where c.id > :despues order by c.id",
+                    Object[].class)
+                    .setParameter("despues", despues)
+                    .setMaxResults(pageSize)
+                    .getResultList());
+            for (Object[] fila : pagina) {
+                if (fila[1] != null && fila[2] != null) {
+                    leidas.put((Integer) fila[0], empaquetar((Integer) fila[1], (Integer) fila[2]));
+                }
+            }
+            if (pagina.size() < pageSize) {
+                return leidas;
+            }
+            ultimo = (Integer) pagina.get(pagina.size() - 1)[0];
+        }
+    }
+
+    /**
+     * Cuenta, para una película, cuántos de sus propietarios tienen cada otra película.
+     */
+    private static Map<Integer, Integer> fila(Integer pelicula, List<Integer> usuarios,
+                                              Map<Integer, Map<Integer, Integer>> peliculasDe) {
+        Map<Integer, Integer> fila = new HashMap<>();
+        for (Integer usuario : usuarios) {
+            for (Integer otra : peliculasDe.get(usuario).keySet()) {
+                if (!otra.equals(pelicula)) {
+                    fila.merge(otra, 1, Integer::sum);
+                }
+            }
+        }
+        return fila;
+    }
+
+    /**
+     * Aplica por lotes los cambios encolados y vuelve a calcular, en paralelo, los
+     * vecinos de las películas afectadas.
+     */
+    private void aplicarPendientes() {
+        try {
+            synchronized (this) {
+                Set<Integer> sucias = new HashSet<>();
+                EntityChange change;
+                while ((change = pendientes.poll()) != null) {
+                    aplicar(change, sucias);
+                }
+                sucias.parallelStream().forEach(this::recalcular);
+            }
+        } catch (RuntimeException e) {
+            LOG.log(System.Logger.Level.WARNING, "No se pudo actualizar el índice de películas parecidas", e);
+        } finally {
+            aplicando.set(false);
+            programar();
+        }
+    }
+
+    private void aplicar(EntityChange change, Set<Integer> sucias) {
+        if (change.entity() instanceof Copia copia) {
+            switch (change.operation()) {
+                case SAVE -> guardarCopia(copia, sucias);
+                case DELETE -> borrarCopia(copia.getId(), sucias);
+                case UPDATE -> {
+                    // Las actualizaciones masivas solo cambian el estado.
+                }
+            }
+        } else if (change.entity() instanceof Pelicula pelicula) {
+            switch (change.operation()) {
+                case SAVE -> guardarPelicula(pelicula, sucias);
+                case DELETE -> borrarPelicula(pelicula.getId(), sucias);
+                case UPDATE -> {
+                }
+            }
+        } else if (change.entity() instanceof User user && change.operation() == ChangeRecord.Operation.DELETE) {
+            borrarUsuario(user.getId(), sucias);
+        }
+    }
+
+    private void guardarCopia(Copia copia, Set<Integer> sucias) {
+        if (copia.getId() == null || copia.getUser() == null || copia.getPelicula() == null) {
+            return;
+        }
+        long nueva = empaquetar(copia.getUser().getId(), copia.getPelicula().getId());
+        Long anterior = copias.put(copia.getId(), nueva);
+        if (anterior != null) {
+            if (anterior == nueva) {
+                return;
+            }
+            quitar(usuario(anterior), pelicula(anterior), sucias);
+        }
+        añadir(usuario(nueva), pelicula(nueva), sucias);
+    }
+
+    private void borrarCopia(Integer id, Set<Integer> sucias) {
+        Long anterior = id != null ? copias.remove(id) : null;
+        if (anterior != null) {
+            quitar(usuario(anterior), pelicula(anterior), sucias);
+        }
+    }
+
+    /**
+     * Suma una copia de una película a un usuario. Si es su primera copia de esa
+     * película, cuenta el par con cada otra película del usuario.
+     */
+    private void añadir(Integer usuario, Integer pelicula, Set<Integer> sucias) {
+        Map<Integer, Integer> suyas = peliculasDe.computeIfAbsent(usuario, u -> new HashMap<>());
+        if (suyas.merge(pelicula, 1, Integer::sum) > 1) {
+            return;
+        }
+        propietarios.merge(pelicula, 1, Integer::sum);
+        Map<Integer, Integer> fila = coocurrencias.computeIfAbsent(pelicula, p -> new HashMap<>());
+        for (Integer otra : suyas.keySet()) {
+            if (!otra.equals(pelicula)) {
+                fila.merge(otra, 1, Integer::sum);
+                coocurrencias.computeIfAbsent(otra, p -> new HashMap<>()).merge(pelicula, 1, Integer::sum);
+                if (!sucias.contains(otra)) {
+                    subir(otra, pelicula);
+                }
+            }
+        }
+        // Cambian sus propietarios: cambian todas sus puntuaciones.
+        sucias.add(pelicula);
+    }
+
+    /**
+     * Resta una copia de una película a un usuario. Si era la última, descuenta el par
+     * con cada otra película del usuario.
+     */
+    private void quitar(Integer usuario, Integer pelicula, Set<Integer> sucias) {
+        Map<Integer, Integer> suyas = peliculasDe.get(usuario);
+        Integer cuantas = suyas != null ? suyas.get(pelicula) : null;
+        if (cuantas == null) {
+            return;
+        }
+        if (cuantas > 1) {
+            suyas.put(pelicula, cuantas - 1);
+            return;
+        }
+        suyas.remove(pelicula);
+        if (suyas.isEmpty()) {
+            peliculasDe.remove(usuario);
+        }
+        if (propietarios.merge(pelicula, -1, Integer::sum) <= 0) {
+            propietarios.remove(pelicula);
+        }
+        for (Integer otra : suyas.keySet()) {
+            restar(pelicula, otra);
+            restar(otra, pelicula);
+            bajar(otra, pelicula, sucias);
+        }
+        sucias.add(pelicula);
+    }
+
+    private void restar(Integer pelicula, Integer otra) {
+        Map<Integer, Integer> fila = coocurrencias.get(pelicula);
+        if (fila != null && fila.merge(otra, -1, Integer::sum) <= 0) {
+            fila.remove(otra);
+            if (fila.isEmpty()) {
+                coocurrencias.remove(pelicula);
+            }
+        }
+    }
+
+    /**
+     * Registra los datos de una película. Si cambian, cambian los pesos de todos sus pares.
+     */
+    private void guardarPelicula(Pelicula pelicula, Set<Integer> sucias) {
+        Atributos nuevos = Atributos.de(pelicula);
+        if (Objects.equals(atributos.put(pelicula.getId(), nuevos), nuevos)) {
+            return;
+        }
+        Map<Integer, Integer> fila = coocurrencias.get(pelicula.getId());
+        if (fila != null) {
+            sucias.add(pelicula.getId());
+            sucias.addAll(fila.keySet());
+        }
+    }
+
+    /**
+     * Quita una película borrada (sus copias se borran en cascada, sin evento propio).
+     */
+    private void borrarPelicula(Integer id, Set<Integer> sucias) {
+        atributos.remove(id);
+        propietarios.remove(id);
+        copias.values().removeIf(copia -> pelicula(copia) == id);
+        for (Map<Integer, Integer> suyas : peliculasDe.values()) {
+            suyas.remove(id);
+        }
+        peliculasDe.values().removeIf(Map::isEmpty);
+        Map<Integer, Integer> fila = coocurrencias.remove(id);
+        if (fila != null) {
+            for (Integer otra : fila.keySet()) {
+                Map<Integer, Integer> suya = coocurrencias.get(otra);
+                if (suya != null) {
+                    suya.remove(id);
+                    if (suya.isEmpty()) {
+                        coocurrencias.remove(otra);
+                    }
+                }
+                bajar(otra, id, sucias);
+            }
+        }
+        sucias.add(id);
+    }
+
+    private void borrarUsuario(Integer id, Set<Integer> sucias) {
+        copias.entrySet().removeIf(entry -> {
+            if (usuario(entry.getValue()) != id) {
+                return false;
+            }
+            quitar(id, pelicula(entry.getValue()), sucias);
+            return true;
+        });
+    }
+
+    /**
+     * La puntuación de {@code otra} en la fila de {@code pelicula} ha subido y las demás
+     * no cambian: basta con colocarla entre los vecinos publicados, en O(K).
+     */
+    private void subir(Integer pelicula, Integer otra) {
+        Vecinos actuales = vecinos.get(pelicula);
+        float puntuacion = puntuacion(pelicula, otra);
+        int[] ids = actuales != null ? actuales.ids() : new int[0];
+        float[] puntuaciones = actuales != null ? actuales.puntuaciones() : new float[0];
+        int previa = actuales != null ? actuales.indexOf(otra) : -1;
+        int restantes = ids.length - (previa >= 0 ? 1 : 0);
+        int[] nuevosIds = new int[Math.min(topK, restantes + 1)];
+        float[] nuevasPuntuaciones = new float[nuevosIds.length];
+        int n = 0;
+        boolean colocada = false;
+        for (int i = 0; i < ids.length && n < nuevosIds.length; i++) {
+            if (i == previa) {
+                continue;
+            }
+            if (!colocada && ORDEN.compare(new Similar(otra, puntuacion), new Similar(ids[i], puntuaciones[i])) < 0) {
+                nuevosIds[n] = otra;
+                nuevasPuntuaciones[n++] = puntuacion;
+                colocada = true;
+                if (n == nuevosIds.length) {
+                    break;
+                }
+            }
+            nuevosIds[n] = ids[i];
+            nuevasPuntuaciones[n++] = puntuaciones[i];
+        }
+        if (!colocada && n < nuevosIds.length) {
+            nuevosIds[n] = otra;
+            nuevasPuntuaciones[n] = puntuacion;
+        }
+        vecinos.put(pelicula, new Vecinos(nuevosIds, nuevasPuntuaciones));
+    }
+
+    /**
+     * La puntuación de {@code otra} en la fila de {@code pelicula} ha bajado: si estaba
+     * entre los vecinos publicados, otra película de la fila puede ocupar su sitio.
+     */
+    private void bajar(Integer pelicula, Integer otra, Set<Integer> sucias) {
+        Vecinos actuales = vecinos.get(pelicula);
+        if (actuales != null && actuales.indexOf(otra) >= 0) {
+            sucias.add(pelicula);
+        }
+    }
+
+    /**
+     * Recorre la fila de una película y publica sus K mejores vecinos.
+     */
+    private void recalcular(Integer pelicula) {
+        Map<Integer, Integer> fila = coocurrencias.get(pelicula);
+        if (fila == null || fila.isEmpty()) {
+            vecinos.remove(pelicula);
+            return;
+        }
+        PriorityQueue<Similar> mejores = new PriorityQueue<>(topK + 1, ORDEN.reversed());
+        for (Integer otra : fila.keySet()) {
+            mejores.add(new Similar(otra, puntuacion(pelicula, otra)));
+            if (mejores.size() > topK) {
+                mejores.poll();
+            }
+        }
+        int[] ids = new int[mejores.size()];
+        float[] puntuaciones = new float[ids.length];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            Similar similar = mejores.poll();
+            ids[i] = similar.peliculaId();
+            puntuaciones[i] = similar.puntuacion();
+        }
+        vecinos.put(pelicula, new Vecinos(ids, puntuaciones));
+    }
+
+    private float puntuacion(Integer pelicula, Integer otra) {
+        Map<Integer, Integer> fila = coocurrencias.get(pelicula);
+        int comunes = fila != null ? fila.getOrDefault(otra, 0) : 0;
+        int suyos = propietarios.getOrDefault(pelicula, 0);
+        if (comunes == 0 || suyos == 0) {
+            return 0;
+        }
+        Atributos a = atributos.get(pelicula);
+        Atributos b = atributos.get(otra);
+        double peso = a != null && b != null ? a.peso(b) : 1;
+        return (float) (comunes * peso / suyos);
+    }
+
+    private static long empaquetar(int usuario, int pelicula) {
+        return (long) usuario << 32 | pelicula & 0xFFFFFFFFL;
+    }
+
+    private static int usuario(long copia) {
+        return (int) (copia >> 32);
+    }
+
+    private static int pelicula(long copia) {
+        return (int) copia;
+    }
+}
@@ -0,0 +1,545 @@
+package org.example.retoconjuntoad_di_2.statistics;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.cache.CatalogCache;
+import org.example.retoconjuntoad_di_2.journal.EntityChange;
+import org.example.retoconjuntoad_di_2.journal.EntityChangeListener;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Estadísticas de las copias de todos los usuarios: cuántas hay por género, por década,
+ * por soporte y por estado.
+ * <p>
+ * Los agregados se calculan una vez al arrancar, en segundo plano: el rango de IDs de
+ * cada base de datos (el catálogo y los shards) se reparte en tramos que se leen en
+ * paralelo, cada uno por páginas ({@code gestor.statistics.pageSize}, 5000) y sin cargar
+ * las entidades, y los contadores se agrupan con flujos paralelos. Después se mantienen
+ * con los {@link EntityChange} de los repositorios: cada copia guardada, borrada o
+ * actualizada en bloque mueve una unidad entre contadores, en tiempo constante.
+ * </p>
+ * <p>
+ * De cada copia se guarda su película, su soporte y su estado, de modo que aplicar un
+ * cambio es idempotente y los borrados masivos (que solo traen el ID) se pueden descontar.
+ * Los cambios que llegan durante la carga se guardan y se aplican después, como en
+ * {@link CatalogCache}. {@link #resumen()} devuelve una versión inmutable que solo se
+ * vuelve a montar, a partir de los contadores, cuando ha habido cambios.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see org.example.retoconjuntoad_di_2.controllers.StatisticsController
+ */
+public final class CollectionStatistics implements EntityChangeListener {
+
+    private static final System.Logger LOG = System.getLogger(CollectionStatistics.class.getName());
+
+    private static final CollectionStatistics INSTANCE = new CollectionStatistics();
+
+    private static final String SIN_GENERO = "Sin género";
+    private static final String SIN_ANIO = "Sin año";
+    private static final String SIN_SOPORTE = "Sin soporte";
+    private static final String SIN_ESTADO = "Sin estado";
+
+    private static final EstadoCopia[] ESTADOS = EstadoCopia.values();
+    private static final SoporteCopia[] SOPORTES = SoporteCopia.values();
+
+    /**
+     * Versión inmutable de las estadísticas.
+     *
+     * @param copias Número total de copias.
+     * @param peliculas Número de películas con al menos una copia.
+     * @param porGenero Copias por género, de más a menos.
+     * @param porDecada Copias por década, en orden cronológico.
+     * @param porSoporte Copias por soporte, en el orden de {@link SoporteCopia}.
+     * @param porEstado Copias por estado, en el orden de {@link EstadoCopia}.
+     */
+    public record Resumen(long copias, int peliculas, Map<String, Long> porGenero, Map<String, Long> porDecada,
+                          Map<String, Long> porSoporte, Map<String, Long> porEstado) {
+    }
+
+    /**
+     * Etiquetas de género y década de una película.
+     */
+    private record Atributos(String genero, String decada) {
+
+        static final Atributos SIN_DATOS = new Atributos(SIN_GENERO, SIN_ANIO);
+
+        static Atributos de(Pelicula pelicula) {
+            String genero = pelicula.getGenero();
+            return new Atributos(genero == null || genero.isBlank() ? SIN_GENERO : genero,
+                    pelicula.getAnio() != null ? pelicula.getAnio() / 10 * 10 + "s" : SIN_ANIO);
+        }
+    }
+
+    /**
+     * Película, soporte y estado de cada copia (ver {@link #hecho}).
+     */
+    private Map<Integer, Long> copias = new HashMap<>();
+
+    /**
+     * Número de copias de cada película.
+     */
+    private Map<Integer, Integer> copiasDe = new HashMap<>();
+
+    private Map<Integer, Atributos> peliculas = new HashMap<>();
+    private Map<String, Long> porGenero = new HashMap<>();
+    private Map<String, Long> porDecada = new HashMap<>();
+    private Map<String, Long> porSoporte = new HashMap<>();
+    private Map<String, Long> porEstado = new HashMap<>();
+
+    /**
+     * Cambios recibidos durante la carga, pendientes de aplicar.
+     */
+    private final List<EntityChange> pendientes = new ArrayList<>();
+
+    private boolean cargando;
+    private boolean registrada;
+    private volatile boolean cargada;
+
+    /**
+     * Última versión montada, o {@code null} si ha habido cambios desde entonces.
+     */
+    private volatile Resumen publicado;
+
+    /**
+     * Carga en curso o terminada, o {@code null} si no se ha iniciado.
+     */
+    private volatile CompletableFuture<Void> carga;
+
+    private int pageSize = 5000;
+
+    private CollectionStatistics() {
+    }
+
+    /**
+     * Devuelve la instancia única del servicio.
+     *
+     * @return Las estadísticas de la colección.
+     */
+    public static CollectionStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Indica si los agregados ya están calculados.
+     *
+     * @return {@code true} si {@link #resumen()} devuelve datos.
+     */
+    public boolean isLoaded() {
+        return cargada;
+    }
+
+    /**
+     * Calcula los agregados en segundo plano y empieza a mantenerlos con los cambios.
+     *
+     * @param emf Factoría de EntityManager del catálogo.
+     * @param pageSize Número de copias por consulta.
+     * @return Tarea de la carga.
+     */
+    public CompletableFuture<Void> start(EntityManagerFactory emf, int pageSize) {
+        synchronized (this) {
+            this.pageSize = Math.max(1, pageSize);
+            cargando = true;
+            pendientes.clear();
+            if (!registrada) {
+                EntityChanges.register(this);
+                registrada = true;
+            }
+        }
+        carga = CompletableFuture.runAsync(() -> load(emf)).exceptionally(e -> {
+            LOG.log(System.Logger.Level.WARNING, "No se pudieron calcular las estadísticas de la colección", e);
+            synchronized (this) {
+                cargando = false;
+                pendientes.clear();
+            }
+            return null;
+        });
+        return carga;
+    }
+
+    /**
+     * Devuelve la carga de los agregados, para esperar a que terminen sin bloquear.
+     *
+     * @return Tarea de la carga; completada si no se ha iniciado.
+     */
+    public CompletableFuture<Void> carga() {
+        CompletableFuture<Void> actual = carga;
+        return actual != null ? actual : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Deja de recibir cambios y descarta los agregados.
+     */
+    public synchronized void stop() {
+        if (registrada) {
+            EntityChanges.unregister(this);
+            registrada = false;
+        }
+        cargando = false;
+        cargada = false;
+        pendientes.clear();
+        instalar(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                new HashMap<>(), new HashMap<>());
+    }
+
+    /**
+     * Devuelve las estadísticas vigentes.
+     * <p>
+     * Si no ha habido cambios desde la última llamada, devuelve la misma instancia sin
+     * bloquear; si los ha habido, la monta a partir de los contadores, sin recorrer las
+     * copias.
+     * </p>
+     *
+     * @return Estadísticas actuales, o {@code null} si aún no están calculadas.
+     */
+    public Resumen resumen() {
+        Resumen actual = publicado;
+        if (actual != null || !cargada) {
+            return actual;
+        }
+        synchronized (this) {
+            if (publicado == null && cargada) {
+                publicado = new Resumen(copias.size(), copiasDe.size(),
+                        ordenar(porGenero, true), ordenar(porDecada, false),
+                        enOrden(porSoporte, SOPORTES, SIN_SOPORTE), enOrden(porEstado, ESTADOS, SIN_ESTADO));
+            }
+            return publicado;
+        }
+    }
+
+    /**
+     * Aplica una escritura confirmada a los contadores.
+     *
+     * @param change Cambio confirmado.
+     */
+    @Override
+    public synchronized void onChange(EntityChange change) {
+        if (cargando) {
+            pendientes.add(change);
+        } else if (cargada) {
+            aplicar(change);
+        }
+    }
+
+    private void load(EntityManagerFactory emf) {
+        long inicio = System.nanoTime();
+        CatalogCache cache = CatalogCache.getInstance();
+        List<Pelicula> todas = cache.isLoaded()
+                ? cache.snapshot().getPeliculas()
+                : new PeliculaRepository(emf).findAll();
+        Map<Integer, Atributos> nuevasPeliculas = todas.stream()
+                .collect(Collectors.toMap(Pelicula::getId, Atributos::de, (a, b) -> a, HashMap::new));
+
+        ShardRouter router = ShardRouter.of(emf);
+        List<EntityManagerFactory> bases = router != null ? router.all() : List.of(emf);
+        List<long[]> tramos = new ArrayList<>();
+        List<EntityManagerFactory> basesDeTramo = new ArrayList<>();
+        for (EntityManagerFactory base : bases) {
+            for (long[] tramo : tramos(base)) {
+                tramos.add(tramo);
+                basesDeTramo.add(base);
+            }
+        }
+        Map<Integer, Long> nuevasCopias = new HashMap<>();
+        IntStream.range(0, tramos.size()).parallel()
+                .mapToObj(i -> leer(basesDeTramo.get(i), tramos.get(i)))
+                .toList()
+                .forEach(nuevasCopias::putAll);
+
+        Function<Long, Atributos> atributos = hecho -> nuevasPeliculas.getOrDefault(pelicula(hecho), Atributos.SIN_DATOS);
+        Map<Integer, Integer> nuevasCopiasDe = contar(nuevasCopias, hecho -> pelicula(hecho)).entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().intValue(), (a, b) -> a, HashMap::new));
+        Map<String, Long> nuevasPorGenero = contar(nuevasCopias, hecho -> atributos.apply(hecho).genero());
+        Map<String, Long> nuevasPorDecada = contar(nuevasCopias, hecho -> atributos.apply(hecho).decada());
+        Map<String, Long> nuevasPorSoporte = contar(nuevasCopias, CollectionStatistics::soporte);
+        Map<String, Long> nuevasPorEstado = contar(nuevasCopias, CollectionStatistics::estado);
+
+        synchronized (this) {
+            if (!registrada) {
+                return;
+            }
+            instalar(nuevasCopias, nuevasCopiasDe, nuevasPeliculas, nuevasPorGenero, nuevasPorDecada,
+                    nuevasPorSoporte, nuevasPorEstado);
+            for (EntityChange change : pendientes) {
+                aplicar(change);
+            }
+            pendientes.clear();
+            cargando = false;
+            cargada = true;
+        }
+        LOG.log(System.Logger.Level.INFO, "Estadísticas de la colección: {0} copias en {1} ms",
+                nuevasCopias.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+    }
+
+    private void instalar(Map<Integer, Long> copias, Map<Integer, Integer> copiasDe, Map<Integer, Atributos> peliculas,
+                          Map<String, Long> porGenero, Map<String, Long> porDecada, Map<String, Long> porSoporte,
+                          Map<String, Long> porEstado) {
+        this.copias = copias;
+        this.copiasDe = copiasDe;
+        this.peliculas = peliculas;
+        this.porGenero = porGenero;
+        this.porDecada = porDecada;
+        this.porSoporte = porSoporte;
+        this.porEstado = porEstado;
+        publicado = null;
+    }
+
+    /**
+     * Reparte el rango de IDs de copias de una base de datos en tramos de unas
+     * {@code 4 * pageSize} copias, para leerlos en paralelo.
+     */
+    private List<long[]> tramos(EntityManagerFactory base) {
+        Object[] rango = UnitOfWork.read(base, em -> em.createQuery(
+                "select min(c.id), max(c.id), count(c) from Copia c", Object[].class).getSingleResult());
+        if (rango[0] == null) {
+            return List.of();
+        }
+        long minimo = ((Number) rango[0]).longValue();
+        long maximo = ((Number) rango[1]).longValue();
+        long total = ((Number) rango[2]).longValue();
+        long partes = Math.max(1, Math.min(total / (4L * pageSize), Runtime.getRuntime().availableProcessors() * 4L));
+        long ancho = (maximo - minimo) / partes + 1;
+        List<long[]> tramos = new ArrayList<>();
+        for (long desde = minimo; desde <= maximo; desde += ancho) {
+            tramos.add(new long[]{desde, Math.min(maximo, desde + ancho - 1)});
+        }
+        return tramos;
+    }
+
+    /**
+     * Lee por páginas las copias de un tramo de IDs, sin cargar las entidades.
+     */
+    private Map<Integer, Long> leer(EntityManagerFactory base, long[] tramo) {
+        Map<Integer, Long> leidas = new HashMap<>();
+        int hasta = (int) tramo[1];
+        int despues = (int) tramo[0] - 1;
+        while (true) {
+            int ultimo = despues;
+            List<Object[]> pagina = UnitOfWork.read(base, em -> em.createQuery(
+                    "select c.id, c.pelicula.id, c.soporteCodigo, c.soporte, c.estadoCodigo, c.estado from Copia c"
+                            + " where c.id > :despues and c.id <= :hasta order by c.id", Object[].class)
+                    .setParameter("despues", ultimo)
+                    .setParameter("hasta", hasta)
+                    .setMaxResults(pageSize)
+                    .getResultList());
+            for (Object[] fila : pagina) {
+                SoporteCopia soporte = fila[2] != null ? SoporteCopia.fromCodigo((Short) fila[2]) : legado(SoporteCopia::fromEtiqueta, fila[3]);
+                EstadoCopia estado = fila[4] != null ? EstadoCopia.fromCodigo((Short) fila[4]) : legado(EstadoCopia::fromEtiqueta, fila[5]);
+                if (fila[1] != null) {
+                    leidas.put((Integer) fila[0], hecho((Integer) fila[1], soporte, estado));
+                }
+            }
+            if (pagina.size() < pageSize) {
+                return leidas;
+            }
+            despues = (Integer) pagina.get(pagina.size() - 1)[0];
+        }
+    }
+
+    private static <K> Map<K, Long> contar(Map<Integer, Long> copias, Function<Long, K> clave) {
+        return new HashMap<>(copias.values().parallelStream()
+                .collect(Collectors.groupingByConcurrent(clave, Collectors.counting())));
+    }
+
+    private void aplicar(EntityChange change) {
+        if (change.entity() instanceof Copia copia && copia.getId() != null) {
+            switch (change.operation()) {
+                case SAVE -> {
+                    if (copia.getPelicula() != null) {
+                        conocer(copia.getPelicula());
+                        sustituir(copia.getId(), hecho(copia.getPelicula().getId(), copia.getSoporte(), copia.getEstado()));
+                    }
+                }
+                case DELETE -> sustituir(copia.getId(), null);
+                case UPDATE -> {
+                    Long anterior = copias.get(copia.getId());
+                    if (anterior != null && change.fields() != null) {
+                        SoporteCopia soporte = change.fields().containsKey("soporte")
+                                ? legado(SoporteCopia::fromEtiqueta, change.fields().get("soporte"))
+                                : soporteDe(anterior);
+                        EstadoCopia estado = change.fields().containsKey("estado")
+                                ? legado(EstadoCopia::fromEtiqueta, change.fields().get("estado"))
+                                : estadoDe(anterior);
+                        sustituir(copia.getId(), hecho(pelicula(anterior), soporte, estado));
+                    }
+                }
+            }
+        } else if (change.entity() instanceof Pelicula pelicula && pelicula.getId() != null) {
+            switch (change.operation()) {
+                case SAVE -> renombrar(pelicula);
+                case DELETE -> borrarPelicula(pelicula.getId());
+                case UPDATE -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Registra una película aún desconocida (creada después de la carga).
+     */
+    private void conocer(Pelicula pelicula) {
+        if (!peliculas.containsKey(pelicula.getId()) && pelicula.getTitulo() != null) {
+            renombrar(pelicula);
+        }
+    }
+
+    /**
+     * Cambia la copia de un hecho a otro ({@code null} si no existe), descontando el
+     * anterior y sumando el nuevo.
+     */
+    private void sustituir(Integer id, Long nuevo) {
+        Long anterior = nuevo != null ? copias.put(id, nuevo) : copias.remove(id);
+        if (anterior != null && anterior.equals(nuevo)) {
+            return;
+        }
+        if (anterior != null) {
+            sumar(anterior, -1);
+        }
+        if (nuevo != null) {
+            sumar(nuevo, 1);
+        }
+    }
+
+    private void sumar(long hecho, int signo) {
+        Atributos atributos = peliculas.getOrDefault(pelicula(hecho), Atributos.SIN_DATOS);
+        ajustar(porGenero, atributos.genero(), signo);
+        ajustar(porDecada, atributos.decada(), signo);
+        ajustar(porSoporte, soporte(hecho), signo);
+        ajustar(porEstado, estado(hecho), signo);
+        if (copiasDe.merge(pelicula(hecho), signo, Integer::sum) <= 0) {
+            copiasDe.remove(pelicula(hecho));
+        }
+    }
+
+    /**
+     * Registra el género y la década de una película; si cambian, sus copias pasan de
+     * unos contadores a otros de una vez.
+     */
+    private void renombrar(Pelicula pelicula) {
+        Atributos nuevos = Atributos.de(pelicula);
+        Atributos anteriores = peliculas.put(pelicula.getId(), nuevos);
+        if (anteriores == null) {
+            anteriores = Atributos.SIN_DATOS;
+        }
+        int n = copiasDe.getOrDefault(pelicula.getId(), 0);
+        if (n > 0 && !nuevos.equals(anteriores)) {
+            ajustar(porGenero, anteriores.genero(), -n);
+            ajustar(porGenero, nuevos.genero(), n);
+            ajustar(porDecada, anteriores.decada(), -n);
+            ajustar(porDecada, nuevos.decada(), n);
+        }
+    }
+
+    /**
+     * Descuenta las copias de una película borrada (se borran en cascada, sin evento propio).
+     */
+    private void borrarPelicula(Integer id) {
+        if (copiasDe.containsKey(id)) {
+            copias.values().removeIf(hecho -> {
+                if (pelicula(hecho) != id) {
+                    return false;
+                }
+                sumar(hecho, -1);
+                return true;
+            });
+        }
+        peliculas.remove(id);
+        publicado = null;
+    }
+
+    private void ajustar(Map<String, Long> contadores, String clave, long delta) {
+        if (contadores.merge(clave, delta, Long::sum) <= 0) {
+            contadores.remove(clave);
+        }
+        publicado = null;
+    }
+
+    private static Map<String, Long> ordenar(Map<String, Long> contadores, boolean porCantidad) {
+        Map<String, Long> ordenados = new LinkedHashMap<>();
+        contadores.entrySet().stream()
+                .sorted(porCantidad
+                        ? Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey())
+                        : Map.Entry.comparingByKey())
+                .forEach(e -> ordenados.put(e.getKey(), e.getValue()));
+        return Collections.unmodifiableMap(ordenados);
+    }
+
+    private static Map<String, Long> enOrden(Map<String, Long> contadores, Enum<?>[] valores, String sinDato) {
+        Map<String, Long> ordenados = new LinkedHashMap<>();
+        for (Enum<?> valor : valores) {
+            Long cuenta = contadores.get(valor.toString());
+            if (cuenta != null) {
+                ordenados.put(valor.toString(), cuenta);
+            }
+        }
+        Long sinValor = contadores.get(sinDato);
+        if (sinValor != null) {
+            ordenados.put(sinDato, sinValor);
+        }
+        return Collections.unmodifiableMap(ordenados);
+    }
+
+    /**
+     * Empaqueta la película (32 bits altos), el soporte y el estado (ordinal + 1, o 0
+     * si falta) de una copia.
+     */
+    private static long hecho(int pelicula, SoporteCopia soporte, EstadoCopia estado) {
+        return (long) pelicula << 32
+                | (soporte != null ? soporte.ordinal() + 1 : 0) << 8
+                | (estado != null ? estado.ordinal() + 1 : 0);
+    }
+
+    private static int pelicula(long hecho) {
+        return (int) (hecho >> 32);
+    }
+
+    private static SoporteCopia soporteDe(long hecho) {
+        int codigo = (int) (hecho >> 8 & 0xFF);
+        return codigo > 0 ? SOPORTES[codigo - 1] : null;
+    }
+
+    private static EstadoCopia estadoDe(long hecho) {
+        int codigo = (int) (hecho & 0xFF);
+        return codigo > 0 ? ESTADOS[codigo - 1] : null;
+    }
+
+    private static String soporte(long hecho) {
+        SoporteCopia soporte = soporteDe(hecho);
+        return soporte != null ? soporte.toString() : SIN_SOPORTE;
+    }
+
+    private static String estado(long hecho) {
+        EstadoCopia estado = estadoDe(hecho);
+        return estado != null ? estado.toString() : SIN_ESTADO;
+    }
+
+    /**
+     * Convierte una etiqueta antigua, o devuelve {@code null} si no es válida.
+     */
+    private static <E> E legado(Function<String, E> conversion, Object etiqueta) {
+        try {
+            return etiqueta != null ? conversion.apply((String) etiqueta) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.retoconjuntoad_di_2.tools;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.ConflictPolicy;
+import org.example.retoconjuntoad_di_2.utils.StaleEntityException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Banco de pruebas de contención sobre copias "calientes".
+ * <p>
+ * Crea una base de datos propia con un usuario, una película y unas pocas copias, y
+ * lanza varios hilos que leen una copia al azar, cambian su estado y la guardan. Se
+ * comparan tres estrategias:
+ * </p>
+ * <ul>
+ *   <li><b>fallo inmediato</b>: versionado optimista sin reintentos (los conflictos se pierden).</li>
+ *   <li><b>reintento</b>: versionado optimista con {@link ConflictPolicy#lastWriterWins}.</li>
+ *   <li><b>cerrojo global</b>: un único cerrojo alrededor de leer-modificar-guardar (línea base).</li>
+ * </ul>
+ * <p>
+ * Uso: {@code ContentionBenchmark [hilos] [copias] [operaciones-por-hilo]}
+ * (por defecto 8, 4 y 500). La base de datos se crea en {@code data/bench-contention.odb}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ConflictPolicy
+ */
+public class ContentionBenchmark {
+
+    private static final String DB_FILE = "data/bench-contention.odb";
+    private static final EstadoCopia[] ESTADOS = EstadoCopia.values();
+
+    private final EntityManagerFactory emf;
+    private final List<Integer> hotIds;
+    private final int threads;
+    private final int opsPerThread;
+
+    private ContentionBenchmark(EntityManagerFactory emf, List<Integer> hotIds, int threads, int opsPerThread) {
+        this.emf = emf;
+        this.hotIds = hotIds;
+        this.threads = threads;
+        this.opsPerThread = opsPerThread;
+    }
+
+    /**
+     * Punto de entrada del banco de pruebas.
+     *
+     * @param args Hilos, copias calientes y operaciones por hilo (opcionales).
+     * @throws InterruptedException Si se interrumpe la espera de los hilos.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int copias = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int ops = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(DB_FILE);
+        try {
+            ContentionBenchmark bench = new ContentionBenchmark(emf, seed(emf, copias), threads, ops);
+            System.out.printf("Hilos: %d, copias calientes: %d, operaciones por hilo: %d%n", threads, copias, ops);
+            bench.run("fallo inmediato", ConflictPolicy.failFast(), false);
+            bench.run("reintento", ConflictPolicy.lastWriterWins(10, 2), false);
+            bench.run("cerrojo global", ConflictPolicy.failFast(), true);
+        } finally {
+            emf.close();
+        }
+    }
+
+    /**
+     * Crea los datos del banco de pruebas: un usuario, una película y las copias calientes.
+     */
+    private static List<Integer> seed(EntityManagerFactory emf, int copias) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            User user = new User();
+            user.setId(BlockIdGenerator.forEntity(emf, User.class).next());
+            user.setNombreUsuario("bench-" + System.nanoTime());
+            user.setContrasena("bench");
+            em.persist(user);
+
+            Pelicula pelicula = new Pelicula();
+            pelicula.setId(BlockIdGenerator.forEntity(emf, Pelicula.class).next());
+            pelicula.setTitulo("Contención");
+            pelicula.setGenero("Prueba");
+            pelicula.setAnio((short) 2000);
+            pelicula.setDirector("Banco de pruebas");
+            em.persist(pelicula);
+
+            List<Copia> creadas = new ArrayList<>();
+            for (int i = 0; i < copias; i++) {
+                Copia copia = new Copia();
+                copia.setId(BlockIdGenerator.forEntity(emf, Copia.class).next());
+                copia.setUser(user);
+                copia.setPelicula(pelicula);
+                copia.setEstado(ESTADOS[0]);
+                copia.setSoporte(SoporteCopia.DVD);
+                em.persist(copia);
+                creadas.add(copia);
+            }
+            em.getTransaction().commit();
+            return creadas.stream().map(Copia::getId).toList();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Ejecuta una ronda con la estrategia indicada e imprime sus resultados.
+     */
+    private void run(String nombre, ConflictPolicy<Copia> policy, boolean globalLock) throws InterruptedException {
+        CopiaRepository repository = new CopiaRepository(emf);
+        repository.setConflictPolicy(policy);
+        ReentrantLock lock = new ReentrantLock();
+        LongAdder guardadas = new LongAdder();
+        LongAdder perdidas = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        Integer id = hotIds.get(random.nextInt(hotIds.size()));
+                        if (globalLock) {
+                            lock.lock();
+                        }
+                        try {
+                            Copia copia = repository.findById(id.longValue()).orElseThrow();
+                            copia.setEstado(ESTADOS[random.nextInt(ESTADOS.length)]);
+                            repository.save(copia);
+                            guardadas.increment();
+                        } catch (StaleEntityException e) {
+                            perdidas.increment();
+                        } finally {
+                            if (globalLock) {
+                                lock.unlock();
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "contention-" + t);
+            worker.start();
+        }
+
+        long inicio = System.nanoTime();
+        start.countDown();
+        done.await();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        System.out.printf("%-16s %8.0f guardados/s  guardados=%d  perdidos=%d  conflictos=%d  reintentos=%d%n",
+                nombre, guardadas.sum() / segundos, guardadas.sum(), perdidas.sum(),
+                policy.getConflictCount(), policy.getRetryCount());
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.retoconjuntoad_di_2.tools;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.metrics.LatencyHistogram;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.example.retoconjuntoad_di_2.utils.AppConfig;
+import org.example.retoconjuntoad_di_2.utils.DatabaseServer;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Banco de pruebas que compara el coste de ida y vuelta de las consultas de la aplicación
+ * en modo embebido y a través de un servidor ObjectDB ({@link DatabaseServer}).
+ * <p>
+ * Crea en cada modo la misma base de datos (usuarios, películas y 20 copias por usuario)
+ * y repite, en un solo hilo, la mezcla de operaciones de la interfaz: cargar las copias de
+ * un usuario, abrir una copia o una película, contar las copias por estado, cambiar el
+ * estado de una copia y contar todas las copias. El primer 10 % de las operaciones calienta
+ * las cachés y no se mide. Al terminar muestra, por operación, las latencias p50 y p99 de
+ * cada modo y cuántas veces más cuesta la media en el servidor.
+ * </p>
+ * <p>
+ * El servidor se configura como en la aplicación ({@code gestor.server.*}); si no
+ * responde y {@code gestor.server.launch} lo permite, se lanza. Sin servidor solo se mide
+ * el modo embebido.
+ * </p>
+ * <p>
+ * Uso: {@code DatabaseModeBenchmark [operaciones] [películas] [usuarios]} (por defecto
+ * 5000, 200 y 20). Las bases de datos se crean en {@code data/bench-mode.odb} y
+ * {@code data/bench-mode-server.odb}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see DatabaseServer
+ */
+public class DatabaseModeBenchmark {
+
+    private static final Path DATA_DIR = Path.of("data");
+    private static final Path EMBEDDED_FILE = DATA_DIR.resolve("bench-mode.odb");
+    private static final Path SERVER_FILE = DATA_DIR.resolve("bench-mode-server.odb");
+    private static final int COPIAS_POR_USUARIO = 20;
+    private static final EstadoCopia[] ESTADOS = EstadoCopia.values();
+    private static final SoporteCopia[] SOPORTES = SoporteCopia.values();
+
+    /**
+     * Mezcla de operaciones, en el orden en que se repiten.
+     */
+    private static final List<String> MIX = List.of(
+            "findByUser", "findById", "findPelicula", "findByUser", "contarPorEstado",
+            "findById", "findPelicula", "editCopia", "findByUser", "count");
+
+    private final UserRepository users;
+    private final PeliculaRepository peliculas;
+    private final CopiaRepository copias;
+    private final List<User> usuarios;
+    private final List<Integer> peliculaIds;
+    private final List<Integer> copiaIds;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+
+    private DatabaseModeBenchmark(EntityManagerFactory emf, int films, int userCount) {
+        this.users = new UserRepository(emf);
+        this.peliculas = new PeliculaRepository(emf);
+        this.copias = new CopiaRepository(emf);
+        this.usuarios = new ArrayList<>();
+        this.peliculaIds = new ArrayList<>();
+        this.copiaIds = new ArrayList<>();
+        for (String operation : MIX) {
+            latencies.putIfAbsent(operation, new LatencyHistogram());
+        }
+        seed(emf, films, userCount);
+    }
+
+    /**
+     * Punto de entrada del banco de pruebas.
+     *
+     * @param args Operaciones, películas y usuarios (opcionales).
+     * @throws IOException Si no se pueden preparar los archivos.
+     */
+    public static void main(String[] args) throws IOException {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int films = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int userCount = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Files.createDirectories(DATA_DIR);
+        System.out.printf("Operaciones: %d, películas: %d, usuarios: %d%n", ops, films, userCount);
+
+        Map<String, LatencyHistogram> embedded = run(EMBEDDED_FILE.toString(), EMBEDDED_FILE, ops, films, userCount);
+
+        Map<String, LatencyHistogram> server = null;
+        DatabaseServer databaseServer = DatabaseServer.fromConfig(DATA_DIR);
+        try {
+            boolean reachable = databaseServer.isReachable() || AppConfig.getBoolean("server.launch", false)
+                    && databaseServer.launch(AppConfig.getLong("server.launchWaitMillis", 15000));
+            if (reachable) {
+                server = run(databaseServer.url(SERVER_FILE), SERVER_FILE, ops, films, userCount);
+            } else {
+                System.out.println("Servidor ObjectDB " + databaseServer + " no disponible: solo se mide el modo embebido");
+            }
+        } finally {
+            databaseServer.stop();
+        }
+
+        System.out.printf("%-16s %12s %12s %12s %12s %10s%n",
+                "operación", "emb. p50 µs", "emb. p99 µs", "serv. p50 µs", "serv. p99 µs", "serv./emb.");
+        for (Map.Entry<String, LatencyHistogram> entry : embedded.entrySet()) {
+            LatencyHistogram e = entry.getValue();
+            LatencyHistogram s = server != null ? server.get(entry.getKey()) : null;
+            System.out.printf("%-16s %12.1f %12.1f %12s %12s %10s%n", entry.getKey(),
+                    e.getValueAtPercentile(50) / 1e3, e.getValueAtPercentile(99) / 1e3,
+                    s != null ? String.format("%.1f", s.getValueAtPercentile(50) / 1e3) : "-",
+                    s != null ? String.format("%.1f", s.getValueAtPercentile(99) / 1e3) : "-",
+                    s != null && e.getMean() > 0 ? String.format("%.1fx", s.getMean() / e.getMean()) : "-");
+        }
+    }
+
+    /**
+     * Crea la base de datos en una URL, repite la mezcla y devuelve las latencias.
+     */
+    private static Map<String, LatencyHistogram> run(String url, Path localFile, int ops, int films, int userCount)
+            throws IOException {
+        // El servidor sirve el directorio data: sus archivos también se pueden borrar en local.
+        Files.deleteIfExists(localFile);
+        Files.deleteIfExists(Path.of(localFile + "$"));
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(url);
+        try {
+            DatabaseModeBenchmark bench = new DatabaseModeBenchmark(emf, films, userCount);
+            bench.repeat(ops);
+            return bench.latencies;
+        } finally {
+            emf.close();
+        }
+    }
+
+    /**
+     * Crea los usuarios, las películas y las copias.
+     */
+    private void seed(EntityManagerFactory emf, int films, int userCount) {
+        Random random = new Random(42);
+        UnitOfWork.run(emf, em -> {
+            for (int i = 0; i < films; i++) {
+                Pelicula pelicula = new Pelicula();
+                pelicula.setTitulo("Película " + i);
+                pelicula.setGenero("Género " + i % 12);
+                pelicula.setAnio((short) (1950 + i % 70));
+                pelicula.setDirector("Director " + i % 40);
+                peliculaIds.add(peliculas.save(pelicula).getId());
+            }
+            for (int i = 0; i < userCount; i++) {
+                User user = new User();
+                user.setNombreUsuario("modo" + i);
+                user.setContrasena("modo");
+                usuarios.add(users.save(user));
+            }
+        });
+        UnitOfWork.run(emf, em -> {
+            for (User user : usuarios) {
+                for (int i = 0; i < COPIAS_POR_USUARIO; i++) {
+                    Copia copia = new Copia();
+                    copia.setUser(user);
+                    copia.setPelicula(em.find(Pelicula.class, peliculaIds.get(random.nextInt(peliculaIds.size()))));
+                    copia.setEstado(ESTADOS[random.nextInt(ESTADOS.length)]);
+                    copia.setSoporte(SOPORTES[random.nextInt(SOPORTES.length)]);
+                    copiaIds.add(copias.save(copia).getId());
+                }
+            }
+        });
+    }
+
+    /**
+     * Repite la mezcla de operaciones, midiendo cada una tras el calentamiento.
+     */
+    private void repeat(int ops) {
+        Random random = new Random(7);
+        int warmup = ops / 10;
+        for (int i = 0; i < ops; i++) {
+            String operation = MIX.get(i % MIX.size());
+            long start = System.nanoTime();
+            execute(operation, random);
+            if (i >= warmup) {
+                latencies.get(operation).record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void execute(String operation, Random random) {
+        User user = usuarios.get(random.nextInt(usuarios.size()));
+        Long copiaId = (long) copiaIds.get(random.nextInt(copiaIds.size()));
+        switch (operation) {
+            case "findByUser" -> copias.findByUser(user);
+            case "findById" -> copias.findById(copiaId);
+            case "findPelicula" -> peliculas.findById((long) peliculaIds.get(random.nextInt(peliculaIds.size())));
+            case "contarPorEstado" -> copias.contarPorEstado(user);
+            case "editCopia" -> copias.findById(copiaId).ifPresent(copia -> {
+                copia.setEstado(ESTADOS[random.nextInt(ESTADOS.length)]);
+                copias.save(copia);
+            });
+            case "count" -> copias.count();
+            default -> throw new IllegalArgumentException("Operación desconocida: " + operation);
+        }
+    }
+}
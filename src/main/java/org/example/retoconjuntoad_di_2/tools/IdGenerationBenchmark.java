@@ -0,0 +1,119 @@
+package org.example.retoconjuntoad_di_2.tools;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Banco de pruebas de inserción masiva con distintos tamaños de bloque de IDs.
+ * <p>
+ * Varios hilos cargan películas en paralelo, cada uno con su propio EntityManager y
+ * en transacciones de {@code lote} inserciones. Se repite la carga con varios tamaños
+ * de bloque de {@link BlockIdGenerator}: con tamaño 1 cada inserción pide su ID a la
+ * base de datos en una transacción propia (equivalente a un ID por identidad, con un
+ * acceso al almacén por fila); con bloques mayores los IDs se reparten en memoria.
+ * </p>
+ * <p>
+ * Uso: {@code IdGenerationBenchmark [hilos] [filas-por-hilo] [lote] [tamaños...]}
+ * (por defecto 4, 20000, 500 y los tamaños 1, 50 y 1000). Cada ronda usa un archivo
+ * nuevo {@code data/bench-ids-<tamaño>.odb}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see BlockIdGenerator
+ */
+public class IdGenerationBenchmark {
+
+    /**
+     * Punto de entrada del banco de pruebas.
+     *
+     * @param args Hilos, filas por hilo, tamaño de lote y tamaños de bloque (opcionales).
+     * @throws Exception Si falla la carga o no se puede preparar el archivo.
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int batch = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int[] sizes = args.length > 3
+                ? Arrays.stream(args, 3, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 50, 1000};
+
+        System.out.printf("Hilos: %d, filas por hilo: %d, lote: %d%n", threads, rows, batch);
+        for (int size : sizes) {
+            run(size, threads, rows, batch);
+        }
+    }
+
+    private static void run(int allocationSize, int threads, int rows, int batch) throws IOException, InterruptedException {
+        Path file = Path.of("data", "bench-ids-" + allocationSize + ".odb");
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + "$"));
+
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(file.toString());
+        try {
+            BlockIdGenerator ids = new BlockIdGenerator(emf, Pelicula.class, allocationSize);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                int loader = t;
+                Thread worker = new Thread(() -> {
+                    try {
+                        start.await();
+                        load(emf, ids, loader, rows, batch);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }, "loader-" + t);
+                worker.start();
+            }
+
+            long inicio = System.nanoTime();
+            start.countDown();
+            done.await();
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            long total = (long) threads * rows;
+            System.out.printf("bloque %5d  %10.0f filas/s  filas=%d  bloques reservados=%d%n",
+                    allocationSize, total / segundos, total, ids.getBlocksReserved());
+        } finally {
+            emf.close();
+        }
+    }
+
+    private static void load(EntityManagerFactory emf, BlockIdGenerator ids, int loader, int rows, int batch) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 1; i <= rows; i++) {
+                Pelicula pelicula = new Pelicula();
+                pelicula.setId(ids.next());
+                pelicula.setTitulo("Película " + loader + "-" + i);
+                pelicula.setGenero("Prueba");
+                pelicula.setAnio((short) (1950 + i % 70));
+                pelicula.setDirector("Cargador " + loader);
+                em.persist(pelicula);
+                if (i % batch == 0) {
+                    em.getTransaction().commit();
+                    em.clear();
+                    em.getTransaction().begin();
+                }
+            }
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.example.retoconjuntoad_di_2.tools;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.metrics.LatencyHistogram;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.example.retoconjuntoad_di_2.session.AuthService;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Prueba de carga de la capa de datos con sesiones de usuario simuladas.
+ * <p>
+ * Crea una base de datos propia con un usuario por cliente y un catálogo de películas,
+ * y lanza {@code clientes} hilos virtuales que repiten, hasta agotar el tiempo, una
+ * sesión como la que hace un usuario desde la interfaz:
+ * </p>
+ * <ol>
+ *   <li>{@code login}: {@link AuthService#validateUser}.</li>
+ *   <li>{@code findByUser}: carga de la tabla de copias.</li>
+ *   <li>{@code addCopia}: alta de una copia de una película al azar.</li>
+ *   <li>{@code editCopia}: cambio de estado de esa copia.</li>
+ *   <li>{@code deleteCopia}: borrado de la copia.</li>
+ *   <li>{@code addPelicula}: alta de una película (una de cada diez sesiones, como un administrador).</li>
+ * </ol>
+ * <p>
+ * Al terminar escribe en JSON, por operación, el número de operaciones, los errores,
+ * el rendimiento (operaciones por segundo) y las latencias p50, p99, p999 y máxima en
+ * milisegundos.
+ * </p>
+ * <p>
+ * Uso: {@code LoadTest [clientes] [segundos] [películas] [salida.json]} (por defecto 64,
+ * 30, 200 y la salida estándar). La base de datos se crea en {@code data/bench-load.odb}.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public class LoadTest {
+
+    private static final String DB_FILE = "data/bench-load.odb";
+    private static final String PASSWORD = "carga";
+    private static final EstadoCopia[] ESTADOS = EstadoCopia.values();
+    private static final SoporteCopia[] SOPORTES = SoporteCopia.values();
+    private static final List<String> OPERATIONS =
+            List.of("login", "findByUser", "addCopia", "editCopia", "deleteCopia", "addPelicula");
+
+    /**
+     * Resultados de una operación.
+     */
+    private static final class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    private final AuthService auth;
+    private final UserRepository users;
+    private final CopiaRepository copias;
+    private final PeliculaRepository peliculas;
+    private final List<Integer> peliculaIds;
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+
+    private LoadTest(EntityManagerFactory emf, List<Integer> peliculaIds) {
+        this.users = new UserRepository(emf);
+        this.auth = new AuthService(users);
+        this.copias = new CopiaRepository(emf);
+        this.peliculas = new PeliculaRepository(emf);
+        this.peliculaIds = peliculaIds;
+        for (String operation : OPERATIONS) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * Punto de entrada de la prueba de carga.
+     *
+     * @param args Clientes, segundos, películas y archivo de salida (opcionales).
+     * @throws Exception Si falla la preparación de la base de datos o la escritura del resultado.
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int films = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        Path output = args.length > 3 ? Path.of(args[3]) : null;
+
+        Files.createDirectories(Path.of("data"));
+        Files.deleteIfExists(Path.of(DB_FILE));
+        Files.deleteIfExists(Path.of(DB_FILE + "$"));
+
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(DB_FILE);
+        try {
+            LoadTest test = new LoadTest(emf, seed(emf, clients, films));
+            long elapsed = test.run(clients, seconds);
+            String json = test.toJson(clients, elapsed);
+            if (output != null) {
+                Files.writeString(output, json, StandardCharsets.UTF_8);
+            } else {
+                new PrintStream(System.out, true, StandardCharsets.UTF_8).println(json);
+            }
+        } finally {
+            emf.close();
+        }
+    }
+
+    /**
+     * Crea un usuario por cliente ({@code carga0}, {@code carga1}...) y las películas.
+     *
+     * @return IDs de las películas creadas.
+     */
+    private static List<Integer> seed(EntityManagerFactory emf, int clients, int films) {
+        UserRepository users = new UserRepository(emf);
+        PeliculaRepository peliculas = new PeliculaRepository(emf);
+        return UnitOfWork.execute(emf, em -> {
+            for (int i = 0; i < clients; i++) {
+                User user = new User();
+                user.setNombreUsuario("carga" + i);
+                user.setContrasena(PASSWORD);
+                users.save(user);
+            }
+            List<Integer> ids = new ArrayList<>(films);
+            for (int i = 0; i < films; i++) {
+                ids.add(peliculas.save(newPelicula("Catálogo " + i)).getId());
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Lanza los clientes y espera a que terminen.
+     *
+     * @return Duración real en nanosegundos.
+     */
+    private long run(int clients, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                String nombre = "carga" + i;
+                executor.submit(() -> {
+                    int session = 0;
+                    while (System.nanoTime() < deadline) {
+                        session(nombre, session++);
+                    }
+                });
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Una sesión de usuario. Si una operación falla, se abandona el resto de la sesión.
+     */
+    private void session(String nombre, int session) {
+        User user = measure("login", () -> auth.validateUser(nombre, PASSWORD)
+                .orElseThrow(() -> new IllegalStateException("Credenciales rechazadas: " + nombre)));
+        if (user == null) {
+            return;
+        }
+        if (measure("findByUser", () -> copias.findByUser(user)) == null) {
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Copia nueva = new Copia();
+        nueva.setUser(user);
+        nueva.setPelicula(peliculas.findById((long) peliculaIds.get(random.nextInt(peliculaIds.size())))
+                .orElseThrow());
+        nueva.setEstado(ESTADOS[0]);
+        nueva.setSoporte(SOPORTES[random.nextInt(SOPORTES.length)]);
+        Copia guardada = measure("addCopia", () -> copias.save(nueva));
+        if (guardada == null) {
+            return;
+        }
+
+        guardada.setEstado(ESTADOS[1 + random.nextInt(ESTADOS.length - 1)]);
+        Copia editada = measure("editCopia", () -> copias.save(guardada));
+        if (editada == null) {
+            return;
+        }
+        measure("deleteCopia", () -> copias.delete(editada));
+
+        if (session % 10 == 0) {
+            measure("addPelicula", () -> peliculas.save(newPelicula("Nueva " + nombre + "-" + session)));
+        }
+    }
+
+    /**
+     * Ejecuta y mide una operación.
+     *
+     * @return Resultado, o {@code null} si falló.
+     */
+    private <T> T measure(String operation, Supplier<T> call) {
+        Stats s = stats.get(operation);
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            s.latency.record(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            s.latency.record(System.nanoTime() - start);
+            s.errors.increment();
+            return null;
+        }
+    }
+
+    private static Pelicula newPelicula(String titulo) {
+        Pelicula pelicula = new Pelicula();
+        pelicula.setTitulo(titulo);
+        pelicula.setGenero("Prueba");
+        pelicula.setAnio((short) 2000);
+        pelicula.setDirector("Carga");
+        return pelicula;
+    }
+
+    /**
+     * Resultado en JSON (sin dependencias: los nombres de operación no necesitan escape).
+     */
+    private String toJson(int clients, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append("{\n");
+        out.append(String.format(Locale.ROOT, "  \"clients\": %d,%n  \"durationSeconds\": %.3f,%n", clients, seconds));
+        out.append("  \"operations\": {\n");
+        int i = 0;
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            long count = latency.getCount();
+            long errors = entry.getValue().errors.sum();
+            out.append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"count\": %d, \"errors\": %d, \"errorRate\": %.5f, \"throughput\": %.1f, "
+                            + "\"p50Ms\": %.3f, \"p99Ms\": %.3f, \"p999Ms\": %.3f, \"maxMs\": %.3f}",
+                    entry.getKey(), count, errors, count == 0 ? 0.0 : (double) errors / count, count / seconds,
+                    latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                    latency.getValueAtPercentile(99.9) / 1e6, latency.getMax() / 1e6));
+            out.append(++i < stats.size() ? ",\n" : "\n");
+        }
+        out.append("  }\n}");
+        return out.toString();
+    }
+}
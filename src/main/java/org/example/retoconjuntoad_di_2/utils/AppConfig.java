@@ -0,0 +1,88 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+/**
+ * Acceso centralizado a los parámetros de configuración de la aplicación.
+ * <p>
+ * Los valores se leen de las propiedades del sistema con el prefijo {@code gestor.},
+ * de forma que pueden ajustarse al arrancar la aplicación sin recompilar, por ejemplo:
+ * {@code -Dgestor.backup.intervalMinutes=30}. Si una propiedad no está definida o
+ * su valor no es válido, se utiliza el valor por defecto indicado por el llamador.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public final class AppConfig {
+
+    /**
+     * Prefijo común de todas las propiedades de la aplicación.
+     */
+    private static final String PREFIX = "gestor.";
+
+    /**
+     * Constructor privado para prevenir la instanciación de esta clase de utilidad.
+     */
+    private AppConfig() {}
+
+    /**
+     * Obtiene una propiedad de texto.
+     *
+     * @param key Clave de la propiedad sin el prefijo {@code gestor.}.
+     * @param defaultValue Valor devuelto si la propiedad no está definida.
+     * @return El valor configurado o el valor por defecto.
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Obtiene una propiedad numérica entera.
+     *
+     * @param key Clave de la propiedad sin el prefijo {@code gestor.}.
+     * @param defaultValue Valor devuelto si la propiedad no está definida o no es un número.
+     * @return El valor configurado o el valor por defecto.
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Obtiene una propiedad numérica de tipo long.
+     *
+     * @param key Clave de la propiedad sin el prefijo {@code gestor.}.
+     * @param defaultValue Valor devuelto si la propiedad no está definida o no es un número.
+     * @return El valor configurado o el valor por defecto.
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Obtiene una propiedad booleana ({@code true}/{@code false}).
+     *
+     * @param key Clave de la propiedad sin el prefijo {@code gestor.}.
+     * @param defaultValue Valor devuelto si la propiedad no está definida.
+     * @return El valor configurado o el valor por defecto.
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
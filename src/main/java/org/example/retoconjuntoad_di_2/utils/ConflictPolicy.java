@@ -0,0 +1,208 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.OptimisticLockException;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Política de resolución de conflictos de concurrencia optimista.
+ * <p>
+ * Cuando un guardado falla porque otro usuario ha modificado la misma entidad
+ * (la versión {@code @Version} no coincide), la política decide si el error se
+ * propaga como {@link StaleEntityException} o si se vuelve a leer la versión actual,
+ * se combinan los cambios mediante una función de fusión y se reintenta el guardado.
+ * Entre reintentos se espera un tiempo creciente con un componente aleatorio para
+ * que los editores en conflicto no vuelvan a chocar a la vez.
+ * </p>
+ * <p>
+ * Por defecto ({@link #fromConfig()}) los repositorios no reintentan; con
+ * {@code -Dgestor.conflict.retries=N} pasan a reaplicar los cambios sobre la versión
+ * más reciente hasta N veces.
+ * </p>
+ *
+ * @param <T> Tipo de entidad versionada.
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see VersionedEntity
+ */
+public final class ConflictPolicy<T extends VersionedEntity> {
+
+    private final int maxRetries;
+    private final long backoffMillis;
+
+    /**
+     * Función de fusión: recibe la versión actual de la base de datos y los cambios
+     * pendientes, y devuelve la entidad a guardar. {@code null} significa no reintentar.
+     */
+    private final BinaryOperator<T> merge;
+
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    private ConflictPolicy(int maxRetries, long backoffMillis, BinaryOperator<T> merge) {
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.merge = merge;
+    }
+
+    /**
+     * Política que propaga cualquier conflicto sin reintentar.
+     *
+     * @param <T> Tipo de entidad.
+     * @return Nueva política.
+     */
+    public static <T extends VersionedEntity> ConflictPolicy<T> failFast() {
+        return new ConflictPolicy<>(0, 0, null);
+    }
+
+    /**
+     * Política que reaplica los cambios pendientes sobre la versión más reciente
+     * (gana la última escritura).
+     *
+     * @param maxRetries Número máximo de reintentos.
+     * @param backoffMillis Espera base entre reintentos, en milisegundos.
+     * @param <T> Tipo de entidad.
+     * @return Nueva política.
+     */
+    public static <T extends VersionedEntity> ConflictPolicy<T> lastWriterWins(int maxRetries, long backoffMillis) {
+        return new ConflictPolicy<>(maxRetries, backoffMillis, (current, pending) -> {
+            pending.setVersion(current.getVersion());
+            return pending;
+        });
+    }
+
+    /**
+     * Política con una función de fusión propia.
+     *
+     * @param maxRetries Número máximo de reintentos.
+     * @param backoffMillis Espera base entre reintentos, en milisegundos.
+     * @param merge Función que combina la versión actual con los cambios pendientes.
+     * @param <T> Tipo de entidad.
+     * @return Nueva política.
+     */
+    public static <T extends VersionedEntity> ConflictPolicy<T> merge(int maxRetries, long backoffMillis,
+                                                                      BinaryOperator<T> merge) {
+        return new ConflictPolicy<>(maxRetries, backoffMillis, merge);
+    }
+
+    /**
+     * Crea la política configurada con {@code gestor.conflict.retries} y
+     * {@code gestor.conflict.backoffMillis}.
+     *
+     * @param <T> Tipo de entidad.
+     * @return Política de fallo inmediato si no hay reintentos configurados,
+     *         o de última escritura en caso contrario.
+     */
+    public static <T extends VersionedEntity> ConflictPolicy<T> fromConfig() {
+        int retries = AppConfig.getInt("conflict.retries", 0);
+        return retries > 0
+                ? lastWriterWins(retries, AppConfig.getLong("conflict.backoffMillis", 5))
+                : failFast();
+    }
+
+    /**
+     * Ejecuta un guardado aplicando la política ante conflictos.
+     *
+     * @param entity Entidad a guardar.
+     * @param attempt Operación de guardado (una transacción completa).
+     * @param reload Lectura de la versión actual de la entidad.
+     * @return La entidad guardada.
+     * @throws StaleEntityException Si el conflicto no se resuelve.
+     */
+    public T save(T entity, UnaryOperator<T> attempt, Function<T, Optional<T>> reload) {
+        T pending = entity;
+        for (int retry = 0; ; retry++) {
+            try {
+                return attempt.apply(pending);
+            } catch (RuntimeException e) {
+                if (!isOptimisticFailure(e)) {
+                    throw e;
+                }
+                conflicts.increment();
+                if (merge == null || retry >= maxRetries || entity.getId() == null) {
+                    throw new StaleEntityException(entity.getClass(), entity.getId(), e);
+                }
+                Optional<T> current = reload.apply(entity);
+                if (current.isEmpty()) {
+                    // La entidad se ha borrado: no hay nada sobre lo que reaplicar los cambios.
+                    throw new StaleEntityException(entity.getClass(), entity.getId(), e);
+                }
+                pending = merge.apply(current.get(), pending);
+                retries.increment();
+                pause(retry);
+            }
+        }
+    }
+
+    /**
+     * Número de conflictos detectados con esta política.
+     *
+     * @return Total de conflictos.
+     */
+    public long getConflictCount() {
+        return conflicts.sum();
+    }
+
+    /**
+     * Número de reintentos realizados con esta política.
+     *
+     * @return Total de reintentos.
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Indica si una excepción (o alguna de sus causas) es un fallo de bloqueo optimista.
+     *
+     * @param e Excepción a examinar.
+     * @return {@code true} si la causa es un {@link OptimisticLockException}.
+     */
+    public static boolean isOptimisticFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Comprueba que la instancia gestionada sigue en la versión que se leyó.
+     * <p>
+     * Los repositorios copian los campos modificados sobre la instancia gestionada en
+     * lugar de hacer {@code merge}, así que la comprobación de versión que haría JPA
+     * al fusionar se hace aquí.
+     * </p>
+     *
+     * @param detached Instancia con los cambios, tal como se leyó.
+     * @param managed Instancia gestionada actual, o {@code null} si se ha borrado.
+     * @throws OptimisticLockException Si la entidad se ha borrado o su versión ha cambiado.
+     */
+    public static void checkVersion(VersionedEntity detached, VersionedEntity managed) {
+        if (managed == null) {
+            throw new OptimisticLockException("La entidad " + detached.getId() + " se ha eliminado");
+        }
+        if (managed != detached && managed.getVersion() != detached.getVersion()) {
+            throw new OptimisticLockException("Versión " + detached.getVersion() + " obsoleta (actual "
+                    + managed.getVersion() + ")", null, managed);
+        }
+    }
+
+    private void pause(int retry) {
+        if (backoffMillis <= 0) {
+            return;
+        }
+        long max = backoffMillis << Math.min(retry, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMillis, max + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,6 +2,28 @@ package org.example.retoconjuntoad_di_2.utils;
 
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.journal.ChangeJournal;
+import org.example.retoconjuntoad_di_2.journal.EntityChanges;
+import org.example.retoconjuntoad_di_2.metrics.PrometheusExporter;
+import org.example.retoconjuntoad_di_2.migration.SchemaMigrator;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaArchive;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaCounterReconciler;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 /**
  * Proveedor de acceso a datos para la aplicación.
@@ -16,18 +38,150 @@ import jakarta.persistence.Persistence;
  * {@code data/data.odb}. Si el archivo no existe, ObjectDB lo creará automáticamente
  * al realizar la primera operación de persistencia.
  * </p>
+ * <p>
+ * También coordina las copias de seguridad en caliente: al abrir la base de datos
+ * restaura una instantánea si se ha pedido con {@code -Dgestor.backup.restore}
+ * y planifica instantáneas periódicas mediante {@link DatabaseSnapshotService}.
+ * </p>
+ * <p>
+ * Por último, abre el diario de cambios ({@link ChangeJournal}) y lo registra en
+ * {@link EntityChanges} para que reciba cada escritura confirmada por los repositorios.
+ * </p>
+ * <p>
+ * Si se activa con {@code -Dgestor.writeBehind.enabled=true}, ofrece además una cola de
+ * escritura diferida para los guardados de copias hechos desde la interfaz
+ * ({@link #getCopiaWriteBehind()}), que se vacía al cerrar la aplicación.
+ * </p>
+ * <p>
+ * Con {@code -Dgestor.metrics.port=<puerto>} publica las métricas de los repositorios en
+ * formato Prometheus en {@code http://127.0.0.1:<puerto>/metrics} ({@link PrometheusExporter}).
+ * </p>
+ * <p>
+ * Al abrir la base de datos lanza en segundo plano las migraciones del esquema pendientes
+ * ({@link SchemaMigrator}). Con {@code -Dgestor.counters.reconcileOnStartup=true} recalcula
+ * además los contadores de copias de las películas ({@link CopiaCounterReconciler}); con
+ * shards este recálculo está activado por defecto.
+ * </p>
+ * <p>
+ * Salvo con {@code -Dgestor.archive.enabled=false}, abre también el archivo de copias
+ * frías en {@code data/archive.odb} ({@link CopiaArchive}), con sus propias instantáneas,
+ * y mueve a él periódicamente las copias en los estados de {@code gestor.archive.estados}
+ * ("Deteriorada") o sin escribir desde hace {@code gestor.archive.maxAgeDays} (1095) días.
+ * </p>
+ * <p>
+ * Con {@code -Dgestor.shards.count=<n>} reparte las copias de los usuarios entre n archivos
+ * {@code data/shards/shard-<i>.odb} ({@link ShardRouter}); el catálogo sigue en
+ * {@code data/data.odb}. Cada shard tiene sus propias instantáneas. Los contadores de
+ * copias de las películas se ajustan en el catálogo después de confirmar en el shard, así
+ * que son eventualmente consistentes y se recalculan en segundo plano al arrancar. Con
+ * shards, la escritura diferida se desactiva: una cola sola no puede agrupar guardados de
+ * varias bases de datos en una transacción.
+ * </p>
+ * <p>
+ * Con {@code -Dgestor.db.mode=server} abre todos los archivos a través de un servidor
+ * ObjectDB ({@link DatabaseServer}), para que otros procesos puedan usarlos a la vez; con
+ * {@code -Dgestor.server.launch=true} lanza además el servidor si no está en marcha. Si
+ * el servidor no responde al arrancar, vuelve al modo embebido salvo con
+ * {@code -Dgestor.server.fallback=false}. En modo servidor los archivos los escribe otro
+ * proceso, así que no se toman instantáneas copiando el archivo: las copias de seguridad
+ * son cosa del servidor.
+ * </p>
  *
  * @author Sistema de Gestión de Películas
  * @version 1.0
  */
 public class DataProvider {
 
+    private static final System.Logger LOG = System.getLogger(DataProvider.class.getName());
+
+    /**
+     * Directorio de los archivos de datos (raíz de las rutas en modo servidor).
+     */
+    private static final String DATA_DIR = "data";
+
     /**
      * Ruta relativa al archivo de base de datos ObjectDB.
      * El archivo se creará automáticamente si no existe.
      */
     private static final String DB_FILE = "data/data.odb";
 
+    /**
+     * Directorio donde se guardan las instantáneas de la base de datos.
+     */
+    private static final String SNAPSHOT_DIR = "data/snapshots";
+
+    /**
+     * Directorio de los segmentos del diario de cambios.
+     */
+    private static final String JOURNAL_DIR = "data/journal";
+
+    /**
+     * Ruta relativa al archivo de copias frías.
+     */
+    private static final String ARCHIVE_FILE = "data/archive.odb";
+
+    /**
+     * Directorio de las instantáneas del archivo de copias frías.
+     */
+    private static final String ARCHIVE_SNAPSHOT_DIR = "data/snapshots/archive";
+
+    /**
+     * Directorio de los archivos de los shards.
+     */
+    private static final String SHARD_DIR = "data/shards";
+
+    /**
+     * Puerta de escritura compartida por los repositorios.
+     * <p>
+     * Las transacciones de escritura adquieren el lado compartido (pueden ejecutarse
+     * varias a la vez) y las instantáneas adquieren el lado exclusivo, de modo que el
+     * archivo se copia sin ninguna transacción a medio escribir. Las lecturas no pasan
+     * por esta puerta.
+     * </p>
+     */
+    private static final ReentrantReadWriteLock WRITE_GATE = new ReentrantReadWriteLock();
+
+    /**
+     * Servicio de instantáneas asociado a la base de datos abierta.
+     */
+    private static DatabaseSnapshotService snapshotService = null;
+
+    /**
+     * Diario de cambios, o {@code null} si está desactivado ({@code -Dgestor.journal.enabled=false}).
+     */
+    private static volatile ChangeJournal changeJournal = null;
+
+    /**
+     * Cola de escritura diferida de copias, o {@code null} si no se ha creado.
+     */
+    private static WriteBehindQueue<Copia> copiaWriteBehind = null;
+
+    /**
+     * Migraciones del esquema en curso, o {@code null} si están desactivadas.
+     */
+    private static SchemaMigrator schemaMigrator = null;
+
+    /**
+     * Archivo de copias frías, su factoría y su servicio de instantáneas, o {@code null}
+     * si está desactivado.
+     */
+    private static CopiaArchive copiaArchive = null;
+    private static EntityManagerFactory archiveEntityManagerFactory = null;
+    private static DatabaseSnapshotService archiveSnapshotService = null;
+
+    /**
+     * Encaminador de las copias, las factorías de los shards y sus servicios de
+     * instantáneas, o {@code null} si la base de datos no está repartida.
+     */
+    private static ShardRouter shardRouter = null;
+    private static List<EntityManagerFactory> shardEntityManagerFactories = null;
+    private static List<DatabaseSnapshotService> shardSnapshotServices = null;
+
+    /**
+     * Servidor ObjectDB en uso, o {@code null} en modo embebido.
+     */
+    private static DatabaseServer databaseServer = null;
+
     /**
      * Factoría de EntityManager estática y compartida.
      * Se inicializa de forma lazy (bajo demanda) y se reutiliza durante toda la aplicación.
@@ -52,8 +206,360 @@ public class DataProvider {
      */
     public static synchronized EntityManagerFactory getEntityManagerFactory() {
         if (entityManagerFactory == null) {
-            entityManagerFactory = Persistence.createEntityManagerFactory(DB_FILE);
+            if (AppConfig.getString("db.mode", "embedded").equalsIgnoreCase("server")) {
+                entityManagerFactory = openServer();
+            }
+            if (entityManagerFactory == null) {
+                snapshotService = new DatabaseSnapshotService(
+                        getDatabasePath(), Path.of(SNAPSHOT_DIR), AppConfig.getInt("backup.keep", 5));
+                snapshotService.restoreIfRequested(AppConfig.getString("backup.restore", null));
+
+                entityManagerFactory = Persistence.createEntityManagerFactory(DB_FILE);
+            }
+
+            if (AppConfig.getBoolean("journal.enabled", true)) {
+                try {
+                    changeJournal = new ChangeJournal(Path.of(JOURNAL_DIR),
+                            AppConfig.getInt("journal.segmentBytes", 4 << 20),
+                            AppConfig.getLong("journal.groupCommitMillis", 5),
+                            AppConfig.getBoolean("journal.sync", false));
+                    EntityChanges.register(changeJournal);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("No se pudo abrir el diario de cambios", e);
+                }
+            }
+
+            if (snapshotService != null) {
+                snapshotService.start(entityManagerFactory, AppConfig.getLong("backup.intervalMinutes", 60));
+            }
+
+            if (AppConfig.getBoolean("migration.enabled", true)) {
+                schemaMigrator = new SchemaMigrator(entityManagerFactory, SchemaMigrator.migrations(),
+                        AppConfig.getInt("migration.batchSize", 500),
+                        AppConfig.getLong("migration.pauseMillis", 20));
+                schemaMigrator.start();
+            }
+
+            int shardCount = AppConfig.getInt("shards.count", 0);
+            if (shardCount > 0) {
+                openShards(entityManagerFactory, shardCount);
+            }
+
+            if (AppConfig.getBoolean("archive.enabled", true)) {
+                openArchive(entityManagerFactory);
+            }
+
+            // Con shards, los ajustes de contadores perdidos entre dos commits se corrigen al arrancar.
+            if (AppConfig.getBoolean("counters.reconcileOnStartup", shardRouter != null)) {
+                startCounterReconciliation(entityManagerFactory);
+            }
+
+            int metricsPort = AppConfig.getInt("metrics.port", 0);
+            if (metricsPort > 0) {
+                try {
+                    PrometheusExporter.start(metricsPort);
+                } catch (IOException e) {
+                    LOG.log(System.Logger.Level.WARNING, "No se pudo publicar las métricas en el puerto " + metricsPort, e);
+                }
+            }
         }
         return entityManagerFactory;
     }
+
+    /**
+     * Abre la base de datos principal en el servidor ObjectDB, lanzándolo si se ha pedido,
+     * y comprueba que responde.
+     *
+     * @return La factoría, o {@code null} si el servidor no responde y se permite volver
+     *         al modo embebido.
+     */
+    private static EntityManagerFactory openServer() {
+        DatabaseServer server = DatabaseServer.fromConfig(Path.of(DATA_DIR));
+        try {
+            if (!server.isReachable() && !(AppConfig.getBoolean("server.launch", false)
+                    && server.launch(AppConfig.getLong("server.launchWaitMillis", 15000)))) {
+                throw new IllegalStateException("El servidor ObjectDB " + server + " no responde");
+            }
+            EntityManagerFactory emf = Persistence.createEntityManagerFactory(server.url(getDatabasePath()));
+            try {
+                server.probe(emf);
+            } catch (RuntimeException e) {
+                emf.close();
+                throw e;
+            }
+            server.startHealthChecks(emf, AppConfig.getLong("server.healthCheckSeconds", 30));
+            databaseServer = server;
+            LOG.log(System.Logger.Level.INFO, "Base de datos abierta en el servidor ObjectDB {0}", server);
+            return emf;
+        } catch (RuntimeException e) {
+            server.stop();
+            if (!AppConfig.getBoolean("server.fallback", true)) {
+                throw e;
+            }
+            LOG.log(System.Logger.Level.WARNING,
+                    "Servidor ObjectDB no disponible: se abre la base de datos en modo embebido", e);
+            return null;
+        }
+    }
+
+    /**
+     * Abre un archivo de datos secundario en el mismo modo que la base de datos principal.
+     */
+    private static EntityManagerFactory openFile(Path file) {
+        return Persistence.createEntityManagerFactory(
+                databaseServer != null ? databaseServer.url(file) : file.toString());
+    }
+
+    /**
+     * Abre el archivo de copias frías y planifica el archivado y sus instantáneas.
+     */
+    private static void openArchive(EntityManagerFactory emf) {
+        archiveEntityManagerFactory = openFile(Path.of(ARCHIVE_FILE));
+        copiaArchive = CopiaArchive.open(emf, archiveEntityManagerFactory, estadosFrios(),
+                AppConfig.getLong("archive.maxAgeDays", 1095),
+                AppConfig.getInt("archive.batchSize", 500));
+        copiaArchive.start(AppConfig.getLong("archive.intervalMinutes", 1440));
+        if (databaseServer == null) {
+            archiveSnapshotService = new DatabaseSnapshotService(
+                    Path.of(ARCHIVE_FILE), Path.of(ARCHIVE_SNAPSHOT_DIR), AppConfig.getInt("backup.keep", 5));
+            archiveSnapshotService.start(archiveEntityManagerFactory, AppConfig.getLong("backup.intervalMinutes", 60));
+        }
+    }
+
+    /**
+     * Abre los archivos de los shards, planifica sus instantáneas y registra el encaminador.
+     */
+    private static void openShards(EntityManagerFactory emf, int count) {
+        try {
+            Files.createDirectories(Path.of(SHARD_DIR));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el directorio de los shards", e);
+        }
+        shardEntityManagerFactories = new ArrayList<>(count);
+        shardSnapshotServices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path file = Path.of(SHARD_DIR, "shard-" + i + ".odb");
+            EntityManagerFactory shard = openFile(file);
+            shardEntityManagerFactories.add(shard);
+            if (databaseServer == null) {
+                DatabaseSnapshotService snapshots = new DatabaseSnapshotService(
+                        file, Path.of(SNAPSHOT_DIR, "shard-" + i), AppConfig.getInt("backup.keep", 5));
+                snapshots.start(shard, AppConfig.getLong("backup.intervalMinutes", 60));
+                shardSnapshotServices.add(snapshots);
+            }
+        }
+        shardRouter = ShardRouter.open(emf, shardEntityManagerFactories);
+    }
+
+    /**
+     * Lee los estados de {@code gestor.archive.estados}, separados por comas. Los que no
+     * se reconocen se ignoran.
+     */
+    private static Set<EstadoCopia> estadosFrios() {
+        Set<EstadoCopia> estados = EnumSet.noneOf(EstadoCopia.class);
+        for (String etiqueta : AppConfig.getString("archive.estados", "Deteriorada").split(",")) {
+            if (etiqueta.isBlank()) {
+                continue;
+            }
+            try {
+                estados.add(EstadoCopia.fromEtiqueta(etiqueta));
+            } catch (IllegalArgumentException e) {
+                LOG.log(System.Logger.Level.WARNING, "Estado de archivado desconocido: {0}", etiqueta);
+            }
+        }
+        return estados;
+    }
+
+    /**
+     * Lanza en un hilo en segundo plano el recálculo de los contadores de copias.
+     */
+    private static void startCounterReconciliation(EntityManagerFactory emf) {
+        CopiaCounterReconciler reconciler = new CopiaCounterReconciler(emf,
+                AppConfig.getInt("counters.batchSize", 1000),
+                AppConfig.getInt("counters.threads", Runtime.getRuntime().availableProcessors()));
+        Thread thread = new Thread(() -> {
+            try {
+                reconciler.reconcile();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.log(System.Logger.Level.WARNING, "No se pudieron recalcular los contadores de copias", e);
+            }
+        }, "copia-counters");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Devuelve la cola de escritura diferida para guardar copias desde la interfaz.
+     * <p>
+     * La cola se crea en la primera llamada con {@code gestor.writeBehind.capacity}
+     * (1024), {@code gestor.writeBehind.batchSize} (64) y
+     * {@code gestor.writeBehind.maxDelayMillis} (50).
+     * </p>
+     *
+     * @return La cola, o {@code null} si la escritura diferida está desactivada.
+     */
+    public static synchronized WriteBehindQueue<Copia> getCopiaWriteBehind() {
+        if (copiaWriteBehind == null && AppConfig.getBoolean("writeBehind.enabled", false)) {
+            EntityManagerFactory emf = getEntityManagerFactory();
+            if (shardRouter != null) {
+                LOG.log(System.Logger.Level.INFO, "Escritura diferida desactivada: las copias están repartidas en shards");
+                return null;
+            }
+            copiaWriteBehind = new WriteBehindQueue<>(emf, new CopiaRepository(emf)::save,
+                    AppConfig.getInt("writeBehind.capacity", 1024),
+                    AppConfig.getInt("writeBehind.batchSize", 64),
+                    AppConfig.getLong("writeBehind.maxDelayMillis", 50));
+        }
+        return copiaWriteBehind;
+    }
+
+    /**
+     * Devuelve la ruta del archivo de base de datos.
+     *
+     * @return Ruta de {@code data/data.odb}.
+     */
+    public static Path getDatabasePath() {
+        return Path.of(DB_FILE);
+    }
+
+    /**
+     * Devuelve el servicio de instantáneas, o {@code null} si la base de datos aún no se ha
+     * abierto o la sirve un servidor ObjectDB.
+     *
+     * @return El servicio de instantáneas en uso.
+     */
+    public static synchronized DatabaseSnapshotService getSnapshotService() {
+        return snapshotService;
+    }
+
+    /**
+     * Devuelve el servidor ObjectDB en uso, con el estado de sus comprobaciones de salud.
+     *
+     * @return El servidor, o {@code null} en modo embebido.
+     */
+    public static synchronized DatabaseServer getDatabaseServer() {
+        return databaseServer;
+    }
+
+    /**
+     * Devuelve la última secuencia registrada en el diario de cambios.
+     *
+     * @return Última secuencia, o 0 si el diario está desactivado o vacío.
+     */
+    public static long getJournalSequence() {
+        ChangeJournal journal = changeJournal;
+        return journal != null ? journal.getLastSequence() : 0;
+    }
+
+    /**
+     * Devuelve el lado compartido de la puerta de escritura.
+     * <p>
+     * Toda transacción que modifique la base de datos debe mantener este cerrojo
+     * mientras está activa.
+     * </p>
+     *
+     * @return Cerrojo compartido de escritura.
+     */
+    public static Lock getWriteGate() {
+        return WRITE_GATE.readLock();
+    }
+
+    /**
+     * Devuelve el lado exclusivo de la puerta de escritura, utilizado por las instantáneas.
+     *
+     * @return Cerrojo exclusivo que bloquea las escrituras.
+     */
+    static Lock getSnapshotGate() {
+        return WRITE_GATE.writeLock();
+    }
+
+    /**
+     * Ejecuta una tarea con las escrituras detenidas: mantiene el lado exclusivo de la
+     * puerta de escritura, como una instantánea. La propia tarea puede escribir, porque
+     * quien tiene el lado exclusivo puede tomar también el compartido.
+     * <p>
+     * Las transacciones que intenten escribir mientras tanto esperan a que termine, así
+     * que la tarea debe ser corta.
+     * </p>
+     *
+     * @param task Tarea a ejecutar.
+     * @param <T> Tipo del resultado.
+     * @return Resultado de la tarea.
+     */
+    public static <T> T withWritesPaused(Supplier<T> task) {
+        Lock gate = WRITE_GATE.writeLock();
+        gate.lock();
+        try {
+            return task.get();
+        } finally {
+            gate.unlock();
+        }
+    }
+
+    /**
+     * Devuelve el encaminador de las copias.
+     *
+     * @return El encaminador, o {@code null} si la base de datos no está repartida o aún no se ha abierto.
+     */
+    public static synchronized ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+
+    /**
+     * Detiene los servicios en segundo plano y cierra la factoría de EntityManager.
+     * <p>
+     * Se llama al cerrar la aplicación. Después de esta llamada, una nueva invocación
+     * a {@link #getEntityManagerFactory()} vuelve a abrir la base de datos.
+     * </p>
+     */
+    public static synchronized void shutdown() {
+        PrometheusExporter.stop();
+        if (copiaWriteBehind != null) {
+            // Escribir los guardados pendientes antes de cerrar nada más.
+            copiaWriteBehind.close();
+            copiaWriteBehind = null;
+        }
+        if (schemaMigrator != null) {
+            schemaMigrator.stop();
+            schemaMigrator = null;
+        }
+        if (copiaArchive != null) {
+            copiaArchive.close();
+            copiaArchive = null;
+            if (archiveSnapshotService != null) {
+                archiveSnapshotService.stop();
+                archiveSnapshotService = null;
+            }
+            archiveEntityManagerFactory.close();
+            archiveEntityManagerFactory = null;
+        }
+        if (shardRouter != null) {
+            shardRouter.close();
+            shardRouter = null;
+            shardSnapshotServices.forEach(DatabaseSnapshotService::stop);
+            shardSnapshotServices = null;
+            shardEntityManagerFactories.forEach(EntityManagerFactory::close);
+            shardEntityManagerFactories = null;
+        }
+        if (snapshotService != null) {
+            snapshotService.stop();
+            snapshotService = null;
+        }
+        if (changeJournal != null) {
+            EntityChanges.unregister(changeJournal);
+            changeJournal.close();
+            changeJournal = null;
+        }
+        if (entityManagerFactory != null) {
+            entityManagerFactory.close();
+            entityManagerFactory = null;
+        }
+        if (databaseServer != null) {
+            // Solo detiene el servidor si lo lanzó la aplicación.
+            databaseServer.stop();
+            databaseServer = null;
+        }
+    }
 }
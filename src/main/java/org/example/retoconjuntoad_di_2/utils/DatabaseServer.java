@@ -0,0 +1,302 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conexión con un servidor ObjectDB, para que varios procesos (la aplicación, informes,
+ * importaciones, otro escritorio) trabajen a la vez sobre la misma base de datos.
+ * <p>
+ * En modo embebido solo un proceso puede abrir cada archivo {@code .odb}. En modo servidor
+ * los archivos los abre un proceso {@code com.objectdb.Server} y los clientes se conectan
+ * con una URL {@code objectdb://host:puerto/ruta.odb;user=...;password=...}. La ruta de la
+ * URL es la del archivo relativa al directorio {@code data}: el servidor debe tener ese
+ * directorio como raíz de datos ({@code <data path>} de su {@code objectdb.conf}), de modo
+ * que el modo embebido de respaldo abre exactamente los mismos archivos.
+ * </p>
+ * <p>
+ * La configuración se lee de {@code gestor.server.host} (127.0.0.1),
+ * {@code gestor.server.port} (6136), {@code gestor.server.user} y
+ * {@code gestor.server.password} (admin/admin), {@code gestor.server.connectTimeoutMillis}
+ * (2000) y {@code gestor.server.conf} (el {@code objectdb.conf} del servidor que lanza la
+ * aplicación, si se pide con {@code gestor.server.launch}).
+ * </p>
+ * <p>
+ * Las comprobaciones de salud ({@link #startHealthChecks}) hacen cada cierto tiempo una
+ * consulta mínima por la conexión abierta y registran los cambios de estado. Si el
+ * servidor lo lanzó la aplicación y deja de responder varias veces seguidas, se vuelve a
+ * lanzar.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see DataProvider
+ */
+public final class DatabaseServer {
+
+    private static final System.Logger LOG = System.getLogger(DatabaseServer.class.getName());
+
+    /**
+     * Clase principal del servidor ObjectDB.
+     */
+    private static final String SERVER_CLASS = "com.objectdb.Server";
+
+    /**
+     * Fallos seguidos tras los que se vuelve a lanzar el servidor propio.
+     */
+    private static final int MAX_FAILURES = 3;
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final int connectTimeoutMillis;
+    private final String conf;
+    private final Path dataDir;
+
+    /**
+     * Proceso del servidor, si lo ha lanzado la aplicación.
+     */
+    private Process process;
+
+    private ScheduledExecutorService healthChecks;
+    private volatile boolean healthy = true;
+    private volatile long lastRoundTripNanos;
+    private int failures;
+
+    /**
+     * Crea la conexión con un servidor.
+     *
+     * @param host Nombre o dirección del servidor.
+     * @param port Puerto del servidor.
+     * @param user Usuario de ObjectDB.
+     * @param password Contraseña de ObjectDB.
+     * @param connectTimeoutMillis Tiempo máximo para conectar o para la consulta de salud.
+     * @param conf Archivo {@code objectdb.conf} con el que se lanza el servidor, o {@code null}.
+     * @param dataDir Directorio local de los archivos, raíz de las rutas de las URL.
+     */
+    public DatabaseServer(String host, int port, String user, String password, int connectTimeoutMillis,
+                          String conf, Path dataDir) {
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+        this.connectTimeoutMillis = Math.max(1, connectTimeoutMillis);
+        this.conf = conf;
+        this.dataDir = dataDir;
+    }
+
+    /**
+     * Crea la conexión con la configuración de {@code gestor.server.*}.
+     *
+     * @param dataDir Directorio local de los archivos.
+     * @return La conexión, sin abrir.
+     */
+    public static DatabaseServer fromConfig(Path dataDir) {
+        return new DatabaseServer(
+                AppConfig.getString("server.host", "127.0.0.1"),
+                AppConfig.getInt("server.port", 6136),
+                AppConfig.getString("server.user", "admin"),
+                AppConfig.getString("server.password", "admin"),
+                AppConfig.getInt("server.connectTimeoutMillis", 2000),
+                AppConfig.getString("server.conf", null),
+                dataDir);
+    }
+
+    /**
+     * Devuelve la URL con la que se abre un archivo en el servidor.
+     *
+     * @param file Ruta local del archivo, dentro del directorio de datos.
+     * @return URL {@code objectdb://} del archivo.
+     */
+    public String url(Path file) {
+        String path = dataDir.relativize(file).toString().replace(File.separatorChar, '/');
+        return "objectdb://" + host + ":" + port + "/" + path + ";user=" + user + ";password=" + password;
+    }
+
+    /**
+     * Comprueba si el servidor acepta conexiones TCP, sin esperar más del tiempo máximo
+     * de conexión.
+     *
+     * @return {@code true} si el puerto responde.
+     */
+    public boolean isReachable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lanza un servidor local en otro proceso, con la misma JVM y la biblioteca de ObjectDB
+     * de la aplicación, y espera a que acepte conexiones.
+     *
+     * @param waitMillis Tiempo máximo de espera.
+     * @return {@code true} si el servidor responde al terminar la espera.
+     */
+    public synchronized boolean launch(long waitMillis) {
+        if (process != null && process.isAlive()) {
+            return isReachable();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (conf != null) {
+            command.add("-Dobjectdb.conf=" + conf);
+        }
+        command.add("-cp");
+        command.add(objectDbClasspath());
+        command.add(SERVER_CLASS);
+        command.add("-port");
+        command.add(Integer.toString(port));
+        command.add("start");
+        try {
+            process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(dataDir.resolve("objectdb-server.log").toFile()))
+                    .start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo lanzar el servidor ObjectDB", e);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (System.nanoTime() < deadline && process.isAlive()) {
+            if (isReachable()) {
+                LOG.log(System.Logger.Level.INFO, "Servidor ObjectDB lanzado en el puerto {0}", port);
+                return true;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return isReachable();
+    }
+
+    /**
+     * Ruta de la biblioteca de ObjectDB, o el classpath de la aplicación si no se encuentra.
+     */
+    private static String objectDbClasspath() {
+        try {
+            return Path.of(Class.forName(SERVER_CLASS).getProtectionDomain().getCodeSource().getLocation().toURI())
+                    .toString();
+        } catch (ClassNotFoundException | URISyntaxException | RuntimeException e) {
+            return System.getProperty("java.class.path");
+        }
+    }
+
+    /**
+     * Hace una consulta mínima por una factoría abierta.
+     *
+     * @param emf Factoría conectada al servidor.
+     * @return Duración de la ida y vuelta en nanosegundos.
+     * @throws RuntimeException Si la consulta falla o supera el tiempo máximo.
+     */
+    public long probe(EntityManagerFactory emf) {
+        long start = System.nanoTime();
+        UnitOfWork.read(emf, em -> em.createQuery("select count(b) from IdBlock b", Long.class)
+                .setHint("jakarta.persistence.query.timeout", connectTimeoutMillis)
+                .getSingleResult());
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Inicia las comprobaciones de salud periódicas de una factoría.
+     *
+     * @param emf Factoría conectada al servidor.
+     * @param intervalSeconds Segundos entre comprobaciones. Si es 0 o negativo no se planifica nada.
+     */
+    public synchronized void startHealthChecks(EntityManagerFactory emf, long intervalSeconds) {
+        if (intervalSeconds <= 0 || healthChecks != null) {
+            return;
+        }
+        healthChecks = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-server-health");
+            t.setDaemon(true);
+            return t;
+        });
+        healthChecks.scheduleWithFixedDelay(() -> check(emf), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void check(EntityManagerFactory emf) {
+        try {
+            lastRoundTripNanos = probe(emf);
+            if (!healthy) {
+                LOG.log(System.Logger.Level.INFO, "El servidor ObjectDB vuelve a responder");
+            }
+            healthy = true;
+            failures = 0;
+        } catch (RuntimeException e) {
+            if (healthy) {
+                LOG.log(System.Logger.Level.WARNING, "El servidor ObjectDB no responde", e);
+            }
+            healthy = false;
+            failures++;
+            synchronized (this) {
+                if (failures >= MAX_FAILURES && process != null && !isReachable()) {
+                    LOG.log(System.Logger.Level.WARNING, "Se vuelve a lanzar el servidor ObjectDB");
+                    failures = 0;
+                    launch(TimeUnit.SECONDS.toMillis(30));
+                }
+            }
+        }
+    }
+
+    /**
+     * Indica si la última comprobación de salud tuvo éxito.
+     *
+     * @return {@code true} si el servidor respondió (o aún no se ha comprobado).
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Devuelve la duración de la última comprobación de salud correcta.
+     *
+     * @return Ida y vuelta en nanosegundos, o 0 si aún no hay ninguna.
+     */
+    public long getLastRoundTripNanos() {
+        return lastRoundTripNanos;
+    }
+
+    /**
+     * Detiene las comprobaciones de salud y, si lo lanzó la aplicación, el servidor.
+     */
+    public synchronized void stop() {
+        if (healthChecks != null) {
+            healthChecks.shutdownNow();
+            healthChecks = null;
+        }
+        if (process != null) {
+            process.destroy();
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            process = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
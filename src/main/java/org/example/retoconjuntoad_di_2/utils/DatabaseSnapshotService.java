@@ -0,0 +1,407 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * Servicio de copias de seguridad en caliente de un archivo de base de datos ObjectDB
+ * ({@code data/data.odb}, el archivo de copias frías o un shard).
+ * <p>
+ * Toma instantáneas consistentes de la base de datos mientras la aplicación sigue
+ * atendiendo lecturas. La copia la hace el propio ObjectDB con su copia de seguridad en
+ * línea ({@code objectdb backup}), que lee a través del motor: incluye las transacciones
+ * confirmadas que aún solo están en el archivo de recuperación ({@code data.odb$}) o en
+ * memoria, y no depende de que todos los escritores respeten ningún cerrojo. Una copia
+ * en bruto del archivo no sirve, porque ObjectDB no vuelca cada commit al archivo
+ * principal.
+ * </p>
+ * <p>
+ * Durante la copia se cierra además la "puerta de escritura" de {@link DataProvider}: las
+ * transacciones de escritura en curso terminan antes de empezar y las nuevas esperan a que
+ * acabe, pero las consultas no se bloquean. La puerta no es necesaria para la consistencia
+ * del archivo; sirve para que la secuencia del diario de cambios anotada con la copia
+ * corresponda exactamente a su contenido.
+ * </p>
+ * <p>
+ * Cada instantánea se acompaña de un archivo {@code .sha256} con su suma de control,
+ * que se verifica antes de restaurarla, y de un archivo {@code .journal} con la última
+ * secuencia del diario de cambios incluida en la copia, a partir de la cual se puede
+ * reproducir el diario sobre la instantánea. Solo se conservan las últimas N instantáneas.
+ * {@link DataProvider} solo crea este servicio en modo embebido, porque la restauración
+ * sustituye el archivo local.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see DataProvider
+ */
+public class DatabaseSnapshotService {
+
+    private static final System.Logger LOG = System.getLogger(DatabaseSnapshotService.class.getName());
+
+    /**
+     * Formato de fecha utilizado en el nombre de las instantáneas.
+     * Al ordenar los nombres alfabéticamente quedan ordenadas cronológicamente.
+     */
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private static final String SNAPSHOT_PREFIX = "data-";
+    private static final String SNAPSHOT_SUFFIX = ".odb";
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * Tamaño del búfer utilizado para calcular las sumas de control.
+     */
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 20;
+
+    private final Path databaseFile;
+    private final Path snapshotDir;
+    private final int keep;
+
+    /**
+     * Base de datos abierta sobre {@link #databaseFile}, de la que se toman las copias.
+     * Es {@code null} hasta {@link #start(EntityManagerFactory, long)}.
+     */
+    private volatile EntityManagerFactory emf;
+
+    /**
+     * Planificador de las instantáneas periódicas. Es {@code null} mientras el servicio está parado.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Crea el servicio de instantáneas.
+     *
+     * @param databaseFile Archivo de base de datos que se copia.
+     * @param snapshotDir Directorio donde se guardan las instantáneas.
+     * @param keep Número de instantáneas que se conservan (mínimo 1).
+     */
+    public DatabaseSnapshotService(Path databaseFile, Path snapshotDir, int keep) {
+        this.databaseFile = databaseFile;
+        this.snapshotDir = snapshotDir;
+        this.keep = Math.max(1, keep);
+    }
+
+    /**
+     * Asocia la base de datos abierta e inicia la toma periódica de instantáneas en un
+     * hilo en segundo plano.
+     *
+     * @param emf Base de datos abierta sobre el archivo del servicio.
+     * @param intervalMinutes Minutos entre instantáneas. Si es 0 o negativo no se planifica
+     *                        nada, pero {@link #takeSnapshot()} queda disponible.
+     */
+    public synchronized void start(EntityManagerFactory emf, long intervalMinutes) {
+        this.emf = emf;
+        if (intervalMinutes <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+            } catch (Exception e) {
+                LOG.log(System.Logger.Level.ERROR, "No se pudo crear la instantánea de la base de datos", e);
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Detiene la planificación de instantáneas. Una copia en curso termina normalmente.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Toma una instantánea consistente de la base de datos.
+     * <p>
+     * Solo se bloquean las escrituras mientras dura la copia de ObjectDB; la suma de
+     * control se calcula después sobre la copia.
+     * </p>
+     *
+     * @return Ruta de la instantánea creada, o un Optional vacío si la base de datos aún no existe.
+     * @throws IOException Si ocurre un error al copiar o al escribir la suma de control.
+     * @throws IllegalStateException Si el servicio no se ha iniciado con su base de datos.
+     */
+    public Optional<Path> takeSnapshot() throws IOException {
+        EntityManagerFactory base = emf;
+        if (base == null) {
+            throw new IllegalStateException("El servicio de instantáneas no tiene la base de datos abierta");
+        }
+        if (!Files.exists(databaseFile)) {
+            return Optional.empty();
+        }
+        Files.createDirectories(snapshotDir);
+        Path target = snapshotDir.resolve(SNAPSHOT_PREFIX + LocalDateTime.now().format(NAME_FORMAT) + SNAPSHOT_SUFFIX);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        long journalSequence;
+        Lock gate = DataProvider.getSnapshotGate();
+        gate.lock();
+        try {
+            backup(base, tmp);
+            journalSequence = DataProvider.getJournalSequence();
+        } finally {
+            gate.unlock();
+        }
+
+        String checksum = checksum(tmp);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        Files.writeString(checksumFile(target), checksum + "  " + target.getFileName() + System.lineSeparator());
+        Files.writeString(target.resolveSibling(target.getFileName() + JOURNAL_SUFFIX),
+                journalSequence + System.lineSeparator());
+        prune();
+
+        LOG.log(System.Logger.Level.INFO, "Instantánea creada: {0}", target);
+        return Optional.of(target);
+    }
+
+    /**
+     * Devuelve las instantáneas disponibles, de la más reciente a la más antigua.
+     *
+     * @return Lista de rutas de instantáneas (vacía si no hay ninguna).
+     * @throws IOException Si no se puede leer el directorio de instantáneas.
+     */
+    public List<Path> listSnapshots() throws IOException {
+        if (!Files.isDirectory(snapshotDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(snapshotDir)) {
+            return files
+                    .filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed())
+                    .toList();
+        }
+    }
+
+    /**
+     * Restaura una instantánea si se ha solicitado mediante configuración.
+     * <p>
+     * Debe llamarse antes de abrir la base de datos. El valor {@code latest} restaura
+     * la instantánea más reciente; cualquier otro valor debe ser el nombre de una de las
+     * instantáneas de {@link #listSnapshots()}. Se rechaza cualquier ruta que, una vez
+     * normalizada, quede fuera del directorio de instantáneas.
+     * </p>
+     *
+     * @param request Instantánea solicitada, o {@code null} si no hay que restaurar nada.
+     * @throws UncheckedIOException Si la instantánea no es conocida, su suma de control no
+     *                              coincide o no se puede copiar.
+     */
+    public void restoreIfRequested(String request) {
+        if (request == null) {
+            return;
+        }
+        try {
+            Path snapshot;
+            if ("latest".equalsIgnoreCase(request)) {
+                List<Path> snapshots = listSnapshots();
+                if (snapshots.isEmpty()) {
+                    throw new IOException("No hay instantáneas en " + snapshotDir);
+                }
+                snapshot = snapshots.get(0);
+            } else {
+                Path dir = snapshotDir.toAbsolutePath().normalize();
+                snapshot = dir.resolve(request).normalize();
+                if (!dir.equals(snapshot.getParent())) {
+                    throw new IOException("La instantánea debe estar en " + dir + ": " + request);
+                }
+            }
+            restore(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo restaurar la instantánea " + request, e);
+        }
+    }
+
+    /**
+     * Sustituye el archivo de base de datos por una instantánea verificada.
+     * <p>
+     * La base de datos no debe estar abierta. Solo se aceptan instantáneas de
+     * {@link #listSnapshots()} con su archivo {@code .sha256}; la suma se comprueba sobre
+     * la copia ya hecha junto a la base de datos, justo antes de sustituirla, de modo que
+     * lo que se instala es exactamente lo verificado. Antes de sustituirla se elimina el
+     * archivo de recuperación de ObjectDB ({@code data.odb$}): pertenece a la base de datos
+     * anterior y, si se conservara, ObjectDB lo aplicaría sobre la instantánea al abrirla.
+     * </p>
+     *
+     * @param snapshot Instantánea a restaurar.
+     * @throws IOException Si la instantánea no es conocida, la suma de control no coincide
+     *                     o falla la copia.
+     */
+    public void restore(Path snapshot) throws IOException {
+        Path known = snapshot.toAbsolutePath().normalize();
+        if (listSnapshots().stream().noneMatch(p -> p.toAbsolutePath().normalize().equals(known))) {
+            throw new IOException("No es una instantánea de " + snapshotDir + ": " + snapshot);
+        }
+        Path checksumFile = checksumFile(known);
+        if (!Files.exists(checksumFile)) {
+            throw new IOException("Instantánea incompleta: " + snapshot);
+        }
+        String[] line = Files.readString(checksumFile).trim().split("\\s+");
+        if (line.length < 2 || !line[1].equals(known.getFileName().toString())) {
+            throw new IOException("La suma de control de " + checksumFile + " no corresponde a " + snapshot);
+        }
+
+        Files.createDirectories(databaseFile.toAbsolutePath().getParent());
+        Path tmp = databaseFile.resolveSibling(databaseFile.getFileName() + ".restore");
+        transfer(known, tmp);
+        if (!line[0].equalsIgnoreCase(checksum(tmp))) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("La suma de control de " + snapshot + " no coincide");
+        }
+        Files.deleteIfExists(recoveryFile(databaseFile));
+        Files.move(tmp, databaseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        LOG.log(System.Logger.Level.INFO, "Base de datos restaurada desde {0}", snapshot);
+    }
+
+    /**
+     * Elimina las instantáneas más antiguas que exceden el número a conservar.
+     *
+     * @throws IOException Si no se puede borrar alguna instantánea.
+     */
+    private void prune() throws IOException {
+        List<Path> snapshots = new ArrayList<>(listSnapshots());
+        for (Path old : snapshots.subList(Math.min(keep, snapshots.size()), snapshots.size())) {
+            Files.deleteIfExists(old);
+            Files.deleteIfExists(checksumFile(old));
+            Files.deleteIfExists(old.resolveSibling(old.getFileName() + JOURNAL_SUFFIX));
+        }
+    }
+
+    /**
+     * Copia la base de datos con la copia de seguridad en línea de ObjectDB.
+     * <p>
+     * ObjectDB escribe la copia, con el nombre del archivo de la base de datos, en el
+     * directorio indicado; aquí es un directorio temporal junto a las instantáneas, del que
+     * se mueve al destino. La consulta devuelve el hilo que hace la copia, y se espera a
+     * que termine.
+     * </p>
+     *
+     * @param emf Base de datos abierta.
+     * @param target Archivo destino (se sobrescribe).
+     * @throws IOException Si la copia falla o no genera el archivo esperado.
+     */
+    private void backup(EntityManagerFactory emf, Path target) throws IOException {
+        Path dir = Files.createTempDirectory(snapshotDir, ".backup-");
+        try {
+            EntityManager em = emf.createEntityManager();
+            try {
+                Object result = em.createQuery("objectdb backup")
+                        .setParameter("target", dir.toFile())
+                        .getSingleResult();
+                if (result instanceof Thread thread) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Copia de seguridad interrumpida");
+            } finally {
+                em.close();
+            }
+            Path copia;
+            try (Stream<Path> files = Files.walk(dir)) {
+                copia = files.filter(p -> p.getFileName().equals(databaseFile.getFileName()))
+                        .findFirst()
+                        .orElseThrow(() -> new IOException("ObjectDB no generó la copia de " + databaseFile));
+            }
+            Files.move(copia, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copia un archivo completo con {@link FileChannel#transferTo}, sin búferes intermedios en el heap.
+     *
+     * @param source Archivo origen.
+     * @param target Archivo destino (se sobrescribe).
+     * @throws IOException Si falla la lectura o escritura.
+     */
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(true);
+        }
+    }
+
+    /**
+     * Calcula la suma SHA-256 de un archivo.
+     *
+     * @param file Archivo a procesar.
+     * @return Suma de control en hexadecimal.
+     * @throws IOException Si no se puede leer el archivo.
+     */
+    private static String checksum(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Archivo de recuperación de ObjectDB de una base de datos ({@code data.odb$}).
+     */
+    static Path recoveryFile(Path databaseFile) {
+        return databaseFile.resolveSibling(databaseFile.getFileName() + "$");
+    }
+
+    private static Path checksumFile(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + CHECKSUM_SUFFIX);
+    }
+}
@@ -0,0 +1,276 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.metrics.HeapFootprint;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Mapa de identidad de las entidades desprendidas de un tipo: una única instancia por ID.
+ * <p>
+ * Cada lectura fuera de una unidad de trabajo abre su propio EntityManager y devuelve
+ * instancias nuevas, de modo que recargar una tabla crea otra copia de cada película o
+ * usuario aunque no haya cambiado. Los repositorios pasan las entidades leídas por
+ * {@link #canonical(VersionedEntity)}, que devuelve la instancia ya conocida con ese ID
+ * si sigue siendo válida; así todas las filas de una misma película comparten un objeto
+ * y las comparaciones por identidad aciertan a la primera.
+ * </p>
+ * <p>
+ * Una instancia conocida deja de ser válida si la leída tiene una versión mayor o si
+ * tiene cambios sin guardar ({@link TrackedEntity#getDirtyFields()}); en ambos casos la
+ * leída la sustituye. Los cambios que no incrementan la versión (los contadores de copias,
+ * por ejemplo) deben llamar a {@link #evict(int)} o {@link #clear()} al confirmarse.
+ * </p>
+ * <p>
+ * Las claves son {@code int} en una tabla de direccionamiento abierto con sondeo lineal,
+ * sin cajas de {@link Integer} ni nodos por entrada. Las instancias se guardan con
+ * referencias débiles: el mapa no retiene entidades que ya no usa ninguna vista. Hay un
+ * mapa por factoría de EntityManager y tipo de entidad, como los generadores de IDs.
+ * </p>
+ *
+ * @param <T> Tipo de entidad.
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see org.example.retoconjuntoad_di_2.model.id.BlockIdGenerator
+ */
+public final class EntityIdentityMap<T extends VersionedEntity & TrackedEntity> {
+
+    /**
+     * Mapas por base de datos y entidad. Las factorías cerradas se liberan solas.
+     */
+    private static final Map<EntityManagerFactory, Map<Class<?>, EntityIdentityMap<?>>> MAPS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] keys;
+    private WeakReference<T>[] values;
+
+    /**
+     * Ranuras ocupadas, incluidas las de instancias ya liberadas.
+     */
+    private int occupied;
+
+    private EntityIdentityMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Devuelve el mapa de identidad compartido de una entidad en una base de datos,
+     * creándolo si no existe.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @param entityClass Clase de la entidad.
+     * @param <T> Tipo de entidad.
+     * @return Mapa de identidad de esa entidad.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends VersionedEntity & TrackedEntity> EntityIdentityMap<T> forEntity(
+            EntityManagerFactory emf, Class<T> entityClass) {
+        synchronized (MAPS) {
+            return (EntityIdentityMap<T>) MAPS.computeIfAbsent(emf, k -> new HashMap<>())
+                    .computeIfAbsent(entityClass, k -> {
+                        EntityIdentityMap<T> map = new EntityIdentityMap<>();
+                        HeapFootprint.getInstance().track(
+                                "EntityIdentityMap." + entityClass.getSimpleName(), map::values);
+                        return map;
+                    });
+        }
+    }
+
+    /**
+     * Devuelve la instancia compartida de una entidad leída, registrándola si no hay
+     * ninguna válida con su ID.
+     * <p>
+     * Solo debe llamarse con entidades desprendidas.
+     * </p>
+     *
+     * @param entity Entidad leída.
+     * @return Instancia compartida, que puede ser la propia {@code entity}. Las entidades
+     *         sin ID se devuelven tal cual.
+     */
+    public synchronized T canonical(T entity) {
+        if (entity == null || entity.getId() == null) {
+            return entity;
+        }
+        int id = entity.getId();
+        int slot = find(id);
+        if (slot >= 0) {
+            T known = values[slot].get();
+            if (known == entity) {
+                return known;
+            }
+            if (known != null && known.getVersion() >= entity.getVersion() && known.getDirtyFields().isEmpty()) {
+                return known;
+            }
+            values[slot] = new WeakReference<>(entity);
+            return entity;
+        }
+        insert(id, entity);
+        return entity;
+    }
+
+    /**
+     * Sustituye cada entidad de una lista por su instancia compartida.
+     *
+     * @param entities Entidades leídas.
+     * @return Lista nueva con las instancias compartidas, en el mismo orden.
+     */
+    public synchronized List<T> canonicalAll(List<T> entities) {
+        List<T> shared = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            shared.add(canonical(entity));
+        }
+        return shared;
+    }
+
+    /**
+     * Devuelve la instancia compartida con un ID.
+     *
+     * @param id ID de la entidad.
+     * @return Instancia conocida, o {@code null} si no hay ninguna.
+     */
+    public synchronized T get(int id) {
+        int slot = find(id);
+        return slot >= 0 ? values[slot].get() : null;
+    }
+
+    /**
+     * Olvida la instancia con un ID; la siguiente lectura registrará una nueva.
+     *
+     * @param id ID de la entidad.
+     */
+    public synchronized void evict(int id) {
+        int slot = find(id);
+        if (slot >= 0) {
+            removeAt(slot);
+        }
+    }
+
+    /**
+     * Olvida todas las instancias, por ejemplo tras una actualización masiva.
+     */
+    public synchronized void clear() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Devuelve el número de instancias compartidas aún en uso.
+     *
+     * @return Número de entradas vivas.
+     */
+    public synchronized int size() {
+        int live = 0;
+        for (WeakReference<T> ref : values) {
+            if (ref != null && ref.get() != null) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Devuelve las instancias compartidas aún en uso.
+     *
+     * @return Copia de las instancias, sin orden definido.
+     */
+    public synchronized List<T> values() {
+        List<T> live = new ArrayList<>();
+        for (WeakReference<T> ref : values) {
+            T entity = ref != null ? ref.get() : null;
+            if (entity != null) {
+                live.add(entity);
+            }
+        }
+        return live;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = (WeakReference<T>[]) new WeakReference<?>[capacity];
+        occupied = 0;
+    }
+
+    private int home(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (keys.length - 1);
+    }
+
+    /**
+     * Devuelve la ranura de una clave, o -1 si no está.
+     */
+    private int find(int key) {
+        int mask = keys.length - 1;
+        for (int i = home(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int key, T entity) {
+        if ((occupied + 1) * 2 > keys.length) {
+            rehash();
+        }
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (values[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = new WeakReference<>(entity);
+        occupied++;
+    }
+
+    /**
+     * Reconstruye la tabla sin las instancias liberadas, con capacidad para el doble de
+     * las vivas.
+     */
+    private void rehash() {
+        int[] oldKeys = keys;
+        WeakReference<T>[] oldValues = values;
+        int live = 0;
+        for (WeakReference<T> ref : oldValues) {
+            if (ref != null && ref.get() != null) {
+                live++;
+            }
+        }
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < live * 4) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            T entity = oldValues[i] != null ? oldValues[i].get() : null;
+            if (entity != null) {
+                insert(oldKeys[i], entity);
+            }
+        }
+    }
+
+    /**
+     * Vacía una ranura desplazando hacia atrás las entradas siguientes de la misma
+     * secuencia de sondeo, para que las búsquedas no se corten en el hueco.
+     */
+    private void removeAt(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (((i - home(keys[i])) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = null;
+        occupied--;
+    }
+}
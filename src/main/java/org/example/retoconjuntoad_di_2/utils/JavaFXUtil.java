@@ -6,6 +6,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.stage.Stage;
 import lombok.Getter;
+import org.example.retoconjuntoad_di_2.metrics.SceneLoadEvent;
 
 import java.io.IOException;
 
@@ -76,7 +77,7 @@ public class JavaFXUtil {
     public static <T> T setScene(String fxml){
         try{
             FXMLLoader loader = new FXMLLoader(JavaFXUtil.class.getResource(fxml));
-            Parent root = loader.load();
+            Parent root = load(loader);
             T controller = loader.getController();
             Scene scene = new Scene(root);
             stage.setScene(scene);
@@ -90,6 +91,30 @@ public class JavaFXUtil {
         return null;
     }
 
+    /**
+     * Carga la vista de un {@link FXMLLoader} ya configurado.
+     * <p>
+     * Equivale a {@code loader.load()}, pero emite un {@link SceneLoadEvent} de JFR con la
+     * vista cargada y su duración si los eventos están activados. Lo usan
+     * {@link #setScene(String)} y los diálogos de detalle.
+     * </p>
+     *
+     * @param loader Cargador con la ubicación del FXML.
+     * @return Nodo raíz de la vista.
+     * @throws IOException Si no se puede cargar el archivo FXML.
+     */
+    public static Parent load(FXMLLoader loader) throws IOException {
+        SceneLoadEvent event = SceneLoadEvent.start();
+        boolean failed = true;
+        try {
+            Parent root = loader.load();
+            failed = false;
+            return root;
+        } finally {
+            SceneLoadEvent.end(event, String.valueOf(loader.getLocation()), failed);
+        }
+    }
+
     /**
      * Muestra un diálogo modal (Alert) con el tipo, título, encabezado y contenido especificados.
      * <p>
@@ -0,0 +1,41 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+/**
+ * Excepción lanzada cuando una operación masiva repartida en varias bases de datos
+ * (los shards) falla después de haber confirmado parte de los cambios.
+ * <p>
+ * Cada base de datos se modifica en su propia transacción y no hay compensación: lo
+ * confirmado en las bases de datos anteriores se queda aplicado. La excepción indica
+ * cuántas filas se aplicaron y lleva como causa el fallo de la base de datos que no se
+ * pudo modificar (por ejemplo, una {@link StaleEntityException}). La interfaz debe
+ * informar al usuario y volver a cargar los datos.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see StaleEntityException
+ */
+public class PartialBulkChangeException extends RuntimeException {
+
+    private final int applied;
+
+    /**
+     * Crea la excepción.
+     *
+     * @param applied Número de filas ya confirmadas en otras bases de datos.
+     * @param cause Fallo de la base de datos en la que se detuvo la operación.
+     */
+    public PartialBulkChangeException(int applied, RuntimeException cause) {
+        super("La operación masiva se detuvo tras aplicar " + applied + " cambios: " + cause.getMessage(), cause);
+        this.applied = applied;
+    }
+
+    /**
+     * Devuelve el número de filas confirmadas antes del fallo.
+     *
+     * @return Filas aplicadas.
+     */
+    public int getApplied() {
+        return applied;
+    }
+}
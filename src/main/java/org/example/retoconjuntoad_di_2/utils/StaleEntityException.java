@@ -0,0 +1,50 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+/**
+ * Excepción lanzada cuando una entidad se ha modificado o eliminado desde que se leyó.
+ * <p>
+ * Los repositorios la lanzan cuando detectan un conflicto de concurrencia optimista
+ * que la {@link ConflictPolicy} configurada no ha podido resolver. La interfaz debe
+ * informar al usuario y volver a cargar los datos.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ConflictPolicy
+ */
+public class StaleEntityException extends RuntimeException {
+
+    private final Class<?> entityType;
+    private final Integer entityId;
+
+    /**
+     * Crea la excepción para una entidad concreta.
+     *
+     * @param entityType Clase de la entidad en conflicto.
+     * @param entityId ID de la entidad en conflicto.
+     * @param cause Excepción original del proveedor JPA (puede ser {@code null}).
+     */
+    public StaleEntityException(Class<?> entityType, Integer entityId, Throwable cause) {
+        super(entityType.getSimpleName() + " " + entityId + " ha sido modificada o eliminada por otro usuario", cause);
+        this.entityType = entityType;
+        this.entityId = entityId;
+    }
+
+    /**
+     * Devuelve la clase de la entidad en conflicto.
+     *
+     * @return Clase de la entidad.
+     */
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * Devuelve el ID de la entidad en conflicto.
+     *
+     * @return ID de la entidad.
+     */
+    public Integer getEntityId() {
+        return entityId;
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import java.util.Set;
+
+/**
+ * Contrato de las entidades que registran qué campos se han modificado.
+ * <p>
+ * Los setters de la entidad anotan el nombre de cada campo que cambian. Al guardar
+ * una instancia desprendida, los repositorios cargan la instancia gestionada y copian
+ * solo esos campos, en lugar de hacer {@code merge} del objeto completo (que además se
+ * propagaría en cascada por asociaciones que no han cambiado, como la lista de copias
+ * de una película).
+ * </p>
+ * <p>
+ * El registro no se persiste: una entidad recién leída de la base de datos no tiene
+ * campos modificados.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+public interface TrackedEntity {
+
+    /**
+     * Devuelve los nombres de los campos modificados desde que se leyó la entidad.
+     *
+     * @return Conjunto inmutable de nombres de campo (vacío si no hay cambios).
+     */
+    Set<String> getDirtyFields();
+
+    /**
+     * Olvida los cambios registrados, normalmente después de guardarlos.
+     */
+    void clearDirtyFields();
+}
@@ -0,0 +1,199 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.metrics.QueryInterceptor;
+import org.example.retoconjuntoad_di_2.metrics.TransactionEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Unidad de trabajo: un EntityManager y una transacción compartidos por varias
+ * llamadas a repositorios en el mismo hilo.
+ * <p>
+ * La llamada más externa a {@link #execute} toma la puerta de escritura de
+ * {@link DataProvider}, abre el EntityManager e inicia la transacción; las llamadas
+ * anidadas (por ejemplo, un repositorio invocado desde otro, o varios repositorios
+ * invocados desde un controlador) reutilizan ese mismo contexto y no confirman nada.
+ * Al terminar la llamada externa se hace un único {@code commit}.
+ * </p>
+ * <p>
+ * Si una llamada anidada falla, la transacción se marca para deshacer: aunque el
+ * llamante capture la excepción, el {@code commit} final no se aplicará. Las acciones
+ * registradas con {@link #afterCommit(Runnable)} (por ejemplo, publicar los cambios en
+ * {@link org.example.retoconjuntoad_di_2.journal.EntityChanges}) se ejecutan solo si el
+ * {@code commit} se completa, todavía dentro de la puerta de escritura.
+ * </p>
+ * <p>
+ * Las lecturas con {@link #read} usan el EntityManager de la unidad activa, si existe,
+ * de modo que ven los cambios aún no confirmados; si no, abren uno temporal.
+ * </p>
+ * <p>
+ * Una unidad trabaja sobre una sola base de datos. Un {@link #execute} anidado sobre
+ * otra factoría (otro shard, el archivo de copias frías) lanza
+ * {@link IllegalStateException}: no hay transacciones distribuidas, y confirmar por
+ * separado rompería la promesa de un único {@code commit}. Las lecturas de otra base de
+ * datos sí se admiten, con su propio EntityManager y fuera de la transacción. Lo que deba
+ * escribirse en otra base de datos se registra con {@link #afterCommit(Runnable)}, en su
+ * propia unidad y sin atomicidad con esta. Para incluir en una unidad guardados de copias
+ * hay que abrirla sobre la base de datos de su usuario
+ * ({@link org.example.retoconjuntoad_di_2.model.copia.CopiaRepository#baseDe}).
+ * </p>
+ * <p>
+ * El EntityManager que reciben las operaciones está envuelto por {@link QueryInterceptor},
+ * que mide sus consultas y anota las lentas. Cada transacción emite un
+ * {@link TransactionEvent} de JFR si los eventos están activados.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see DataProvider#getWriteGate()
+ */
+public final class UnitOfWork {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private UnitOfWork() {}
+
+    /**
+     * Contexto de la unidad de trabajo abierta en un hilo.
+     */
+    private static final class Scope {
+        private final EntityManagerFactory emf;
+        private final EntityManager em;
+
+        /**
+         * EntityManager que se entrega a las operaciones (con las consultas interceptadas).
+         */
+        private final EntityManager view;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+
+        private Scope(EntityManagerFactory emf, EntityManager em) {
+            this.emf = emf;
+            this.em = em;
+            this.view = QueryInterceptor.wrap(em);
+        }
+    }
+
+    /**
+     * Ejecuta una operación dentro de la unidad de trabajo del hilo actual,
+     * abriéndola si no existe.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @param work Operación a ejecutar con el EntityManager de la unidad.
+     * @param <T> Tipo del resultado.
+     * @return Resultado de la operación.
+     * @throws IllegalStateException Si ya hay una unidad abierta sobre otra base de datos.
+     */
+    public static <T> T execute(EntityManagerFactory emf, Function<EntityManager, T> work) {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            if (scope.emf != emf) {
+                throw new IllegalStateException("Ya hay una unidad de trabajo abierta sobre otra base de datos");
+            }
+            try {
+                return work.apply(scope.view);
+            } catch (RuntimeException | Error e) {
+                if (scope.em.getTransaction().isActive()) {
+                    scope.em.getTransaction().setRollbackOnly();
+                }
+                throw e;
+            }
+        }
+
+        Lock writeGate = DataProvider.getWriteGate();
+        writeGate.lock();
+        EntityManager em = emf.createEntityManager();
+        scope = new Scope(emf, em);
+        CURRENT.set(scope);
+        TransactionEvent event = TransactionEvent.start();
+        boolean committed = false;
+        long commitNanos = 0;
+        try {
+            em.getTransaction().begin();
+            T result = work.apply(scope.view);
+            long commitStart = System.nanoTime();
+            em.getTransaction().commit();
+            commitNanos = System.nanoTime() - commitStart;
+            committed = true;
+
+            // Las acciones posteriores ya no forman parte de la transacción.
+            CURRENT.remove();
+            for (Runnable action : scope.afterCommit) {
+                action.run();
+            }
+            return result;
+        } finally {
+            CURRENT.remove();
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+            writeGate.unlock();
+            TransactionEvent.end(event, committed, commitNanos);
+        }
+    }
+
+    /**
+     * Variante de {@link #execute} para operaciones sin resultado.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @param work Operación a ejecutar con el EntityManager de la unidad.
+     */
+    public static void run(EntityManagerFactory emf, Consumer<EntityManager> work) {
+        execute(emf, em -> {
+            work.accept(em);
+            return null;
+        });
+    }
+
+    /**
+     * Ejecuta una lectura con el EntityManager de la unidad activa o, si no hay ninguna
+     * abierta sobre esa base de datos, con uno temporal que se cierra al terminar.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @param work Consulta a ejecutar.
+     * @param <T> Tipo del resultado.
+     * @return Resultado de la consulta.
+     */
+    public static <T> T read(EntityManagerFactory emf, Function<EntityManager, T> work) {
+        Scope scope = CURRENT.get();
+        if (scope != null && scope.emf == emf) {
+            return work.apply(scope.view);
+        }
+        EntityManager em = emf.createEntityManager();
+        try {
+            return work.apply(QueryInterceptor.wrap(em));
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Registra una acción que se ejecutará cuando la unidad actual se confirme.
+     * Sin unidad abierta, la acción se ejecuta inmediatamente.
+     *
+     * @param action Acción a ejecutar tras el {@code commit}.
+     */
+    public static void afterCommit(Runnable action) {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Indica si el hilo actual tiene una unidad de trabajo abierta.
+     *
+     * @return {@code true} dentro de {@link #execute} o {@link #run}.
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+}
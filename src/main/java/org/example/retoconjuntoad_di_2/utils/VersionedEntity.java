@@ -0,0 +1,42 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+/**
+ * Contrato común de las entidades con control de concurrencia optimista.
+ * <p>
+ * Cada entidad mantiene un campo {@code @Version} que JPA incrementa en cada
+ * actualización. Si una transacción intenta guardar una instancia cuya versión ya
+ * no coincide con la almacenada, la escritura se rechaza en lugar de sobrescribir
+ * silenciosamente el cambio de otro usuario.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see ConflictPolicy
+ */
+public interface VersionedEntity {
+
+    /**
+     * Devuelve el identificador de la entidad.
+     *
+     * @return ID de la entidad, o {@code null} si aún no se ha guardado.
+     */
+    Integer getId();
+
+    /**
+     * Devuelve la versión de la entidad leída de la base de datos.
+     *
+     * @return Versión actual.
+     */
+    long getVersion();
+
+    /**
+     * Establece la versión de la entidad.
+     * <p>
+     * Solo debe usarse al resolver un conflicto, para reaplicar cambios sobre la
+     * versión más reciente.
+     * </p>
+     *
+     * @param version Nueva versión.
+     */
+    void setVersion(long version);
+}
@@ -0,0 +1,317 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cola de escritura diferida (write-behind) con confirmación agrupada.
+ * <p>
+ * Los guardados se encolan y el llamante recibe inmediatamente un
+ * {@link CompletableFuture} que se completa cuando el cambio está confirmado en la
+ * base de datos. Un único hilo escritor vacía la cola cuando se alcanzan
+ * {@code batchSize} entidades o han pasado {@code maxDelayMillis} desde el primer
+ * guardado pendiente, y guarda todo el lote en una sola {@link UnitOfWork}, es decir,
+ * con un único {@code commit}.
+ * </p>
+ * <p>
+ * Los guardados de una misma entidad (mismo ID) que aún no se han escrito se
+ * combinan: solo se escribe la última versión y todos los futuros pendientes se
+ * completan con ella. Las entidades nuevas, sin ID, se identifican por la propia
+ * instancia, de modo que encolar varias veces el mismo objeto también se combina.
+ * Si la cola está llena, {@link #submit} espera a que haya sitio.
+ * Si el lote completo falla, se reintenta entidad a entidad para que un solo error
+ * no haga fallar al resto.
+ * </p>
+ *
+ * @param <T> Tipo de entidad.
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ * @see UnitOfWork
+ */
+public class WriteBehindQueue<T extends VersionedEntity> implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(WriteBehindQueue.class.getName());
+
+    private final EntityManagerFactory emf;
+    private final UnaryOperator<T> save;
+    private final int capacity;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+
+    /**
+     * Guardados pendientes en orden de llegada, indexados por ID (o por la identidad
+     * de la instancia, con {@link IdentityKey}, si aún no tiene ID).
+     */
+    private final Map<Object, Pending<T>> pending = new LinkedHashMap<>();
+
+    /**
+     * Instante ({@link System#nanoTime()}) del guardado pendiente más antiguo.
+     */
+    private long oldestNanos;
+
+    /**
+     * Número de lotes que está escribiendo el hilo escritor (0 o 1).
+     */
+    private int inFlight;
+
+    private boolean closed;
+    private final Thread writer;
+
+    /**
+     * Guardado pendiente: última versión de la entidad y futuros a completar.
+     */
+    private static final class Pending<T> {
+        private T entity;
+        private final List<CompletableFuture<T>> futures = new ArrayList<>(1);
+
+        private Pending(T entity) {
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * Clave de una entidad sin ID: dos claves son iguales solo si envuelven la misma
+     * instancia, aunque la entidad redefina {@code equals}.
+     */
+    private record IdentityKey(Object entity) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IdentityKey key && key.entity == entity;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(entity);
+        }
+    }
+
+    /**
+     * Crea la cola e inicia el hilo escritor.
+     *
+     * @param emf Factoría de EntityManager de la base de datos.
+     * @param save Guardado de una entidad (normalmente {@code repositorio::save}).
+     * @param capacity Número máximo de entidades pendientes.
+     * @param batchSize Número de entidades que provoca un volcado inmediato.
+     * @param maxDelayMillis Tiempo máximo que un guardado espera en la cola.
+     */
+    public WriteBehindQueue(EntityManagerFactory emf, UnaryOperator<T> save,
+                            int capacity, int batchSize, long maxDelayMillis) {
+        this.emf = emf;
+        this.save = save;
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, Math.min(batchSize, this.capacity));
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+
+        writer = new Thread(this::writeLoop, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Encola el guardado de una entidad.
+     *
+     * @param entity Entidad a guardar (no debe modificarse después de encolarla).
+     * @return Futuro que se completa con la entidad gestionada una vez confirmada,
+     *         o de forma excepcional si el guardado falla.
+     * @throws IllegalStateException Si la cola ya está cerrada.
+     */
+    public CompletableFuture<T> submit(T entity) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Object key = entity.getId() != null ? entity.getId() : new IdentityKey(entity);
+        lock.lock();
+        try {
+            while (!closed && pending.size() >= capacity && !pending.containsKey(key)) {
+                notFull.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("La cola de escritura diferida está cerrada");
+            }
+            if (pending.isEmpty()) {
+                oldestNanos = System.nanoTime();
+            }
+            Pending<T> p = pending.get(key);
+            if (p == null) {
+                p = new Pending<>(entity);
+                pending.put(key, p);
+            } else {
+                p.entity = entity;
+            }
+            p.futures.add(future);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Espera a que se hayan escrito todos los guardados encolados hasta ahora.
+     *
+     * @throws InterruptedException Si el hilo se interrumpe mientras espera.
+     */
+    public void flush() throws InterruptedException {
+        lock.lock();
+        try {
+            // Fuerza al escritor a no esperar al umbral de tiempo.
+            oldestNanos -= maxDelayNanos;
+            notEmpty.signal();
+            while (!pending.isEmpty() || inFlight > 0) {
+                drained.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Número de entidades pendientes de escribir.
+     *
+     * @return Tamaño actual de la cola.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deja de aceptar guardados, escribe los pendientes y detiene el hilo escritor.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor.
+     */
+    private void writeLoop() {
+        while (true) {
+            List<Pending<T>> batch;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                // Esperar al umbral de tamaño o de tiempo (salvo al cerrar).
+                long wait;
+                while (!closed && pending.size() < batchSize
+                        && (wait = oldestNanos + maxDelayNanos - System.nanoTime()) > 0) {
+                    notEmpty.awaitNanos(wait);
+                }
+                batch = takeBatch();
+                inFlight++;
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            write(batch);
+
+            lock.lock();
+            try {
+                inFlight--;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Extrae de la cola hasta {@code batchSize} guardados pendientes.
+     */
+    private List<Pending<T>> takeBatch() {
+        List<Pending<T>> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        var it = pending.values().iterator();
+        while (it.hasNext() && batch.size() < batchSize) {
+            batch.add(it.next());
+            it.remove();
+        }
+        oldestNanos = System.nanoTime();
+        return batch;
+    }
+
+    /**
+     * Escribe un lote en una sola transacción; si falla, entidad a entidad.
+     */
+    private void write(List<Pending<T>> batch) {
+        try {
+            List<T> saved = UnitOfWork.execute(emf, em -> {
+                List<T> result = new ArrayList<>(batch.size());
+                for (Pending<T> p : batch) {
+                    result.add(save.apply(p.entity));
+                }
+                return result;
+            });
+            for (int i = 0; i < batch.size(); i++) {
+                complete(batch.get(i), saved.get(i));
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            LOG.log(System.Logger.Level.WARNING,
+                    "Falló el lote de escritura diferida; se reintenta entidad a entidad", e);
+            for (Pending<T> p : batch) {
+                try {
+                    complete(p, save.apply(p.entity));
+                } catch (RuntimeException single) {
+                    fail(p, single);
+                }
+            }
+        }
+    }
+
+    private static <T> void complete(Pending<T> p, T saved) {
+        for (CompletableFuture<T> future : p.futures) {
+            future.complete(saved);
+        }
+    }
+
+    private static <T> void fail(Pending<T> p, Throwable error) {
+        for (CompletableFuture<T> future : p.futures) {
+            future.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.example.retoconjuntoad_di_2.cache;
+
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de la aplicación de escrituras confirmadas sobre {@link CatalogSnapshot}.
+ * <p>
+ * Cada versión es inmutable: además del resultado, se comprueba que la versión anterior
+ * y sus copias no cambian.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class CatalogSnapshotTest {
+
+    private User ana;
+    private User luis;
+    private Pelicula matrix;
+    private Pelicula alien;
+    private CatalogSnapshot inicial;
+
+    @BeforeEach
+    void setUp() {
+        ana = usuario(1);
+        luis = usuario(2);
+        matrix = pelicula(10, "Matrix");
+        alien = pelicula(11, "Alien");
+        inicial = CatalogSnapshot.build(List.of(matrix, alien), List.of(
+                copia(102, matrix, ana, EstadoCopia.BUENA),
+                copia(101, alien, ana, EstadoCopia.NUEVA),
+                copia(201, matrix, luis, EstadoCopia.USADA)));
+    }
+
+    @Test
+    void buildAgrupaPorUsuarioOrdenaPorIdYEnlazaConLasPeliculasDelCatalogo() {
+        Pelicula otraInstancia = pelicula(10, "Matrix");
+        CatalogSnapshot snapshot = CatalogSnapshot.build(List.of(matrix),
+                List.of(copia(5, otraInstancia, ana, EstadoCopia.BUENA)));
+
+        assertSame(matrix, snapshot.getCopias(ana).get(0).getPelicula());
+        assertEquals(List.of(101, 102), ids(inicial.getCopias(ana)));
+        assertEquals(List.of(201), ids(inicial.getCopias(luis)));
+        assertEquals(1, inicial.getVersion());
+    }
+
+    @Test
+    void withCopiaInsertaOSustituyeSinTocarLaVersionAnterior() {
+        CatalogSnapshot conNueva = inicial.withCopia(copia(100, alien, ana, EstadoCopia.NUEVA));
+        CatalogSnapshot sustituida = conNueva.withCopia(copia(102, matrix, ana, EstadoCopia.DETERIORADA));
+
+        assertEquals(List.of(100, 101, 102), ids(conNueva.getCopias(ana)));
+        assertEquals(EstadoCopia.DETERIORADA, sustituida.getCopias(ana).get(2).getEstado());
+        assertEquals(List.of(101, 102), ids(inicial.getCopias(ana)));
+        assertEquals(EstadoCopia.BUENA, inicial.getCopias(ana).get(1).getEstado());
+        assertSame(inicial.getCopias(luis), sustituida.getCopias(luis));
+        assertEquals(3, sustituida.getVersion());
+    }
+
+    @Test
+    void withCopiaGuardaUnClonSinModificarLaCopiaRecibida() {
+        Pelicula otraInstancia = pelicula(10, "Matrix");
+        Copia guardada = copia(100, otraInstancia, ana, EstadoCopia.NUEVA);
+
+        CatalogSnapshot snapshot = inicial.withCopia(guardada);
+
+        Copia enCache = snapshot.getCopias(ana).get(0);
+        assertNotSame(guardada, enCache);
+        assertSame(matrix, enCache.getPelicula());
+        assertSame(otraInstancia, guardada.getPelicula());
+        assertTrue(guardada.getDirtyFields().isEmpty());
+
+        // Cambiar después la instancia del llamante no afecta a la versión.
+        guardada.setEstado(EstadoCopia.DETERIORADA);
+        assertEquals(EstadoCopia.NUEVA, enCache.getEstado());
+    }
+
+    @Test
+    void withoutCopiaQuitaSoloEsaCopia() {
+        CatalogSnapshot snapshot = inicial.withoutCopia(referencia(101, ana));
+
+        assertEquals(List.of(102), ids(snapshot.getCopias(ana)));
+        assertEquals(List.of(101, 102), ids(inicial.getCopias(ana)));
+    }
+
+    @Test
+    void withCopiaActualizadaSustituyeLaCopiaEIncrementaSuVersion() {
+        Copia antes = inicial.getCopias(ana).get(1);
+
+        CatalogSnapshot snapshot = inicial.withCopiaActualizada(referencia(102, ana), Map.of("estado", "Usada"));
+
+        Copia despues = snapshot.getCopias(ana).get(1);
+        assertNotSame(antes, despues);
+        assertEquals(EstadoCopia.USADA, despues.getEstado());
+        assertEquals(SoporteCopia.DVD, despues.getSoporte());
+        assertEquals(antes.getVersion() + 1, despues.getVersion());
+        assertEquals(EstadoCopia.BUENA, antes.getEstado());
+        assertTrue(despues.getDirtyFields().isEmpty());
+    }
+
+    @Test
+    void withCopiaActualizadaIgnoraLasCopiasQueNoEstanEnCache() {
+        assertSame(inicial, inicial.withCopiaActualizada(referencia(999, ana), Map.of("estado", "Usada")));
+    }
+
+    @Test
+    void withPeliculaEnlazaLasCopiasConLaNuevaInstanciaSinModificarLasAnteriores() {
+        Copia antes = inicial.getCopias(luis).get(0);
+        Pelicula editada = pelicula(10, "Matrix (edición especial)");
+
+        CatalogSnapshot snapshot = inicial.withPelicula(editada);
+
+        Copia despues = snapshot.getCopias(luis).get(0);
+        assertSame(editada, despues.getPelicula());
+        assertSame(editada, snapshot.getCopias(ana).get(1).getPelicula());
+        assertSame(alien, snapshot.getCopias(ana).get(0).getPelicula());
+        assertSame(matrix, antes.getPelicula());
+        assertEquals(antes.getVersion(), despues.getVersion());
+        assertEquals(antes.getEstado(), despues.getEstado());
+        assertSame(editada, snapshot.findPelicula(10).orElseThrow());
+    }
+
+    @Test
+    void withoutPeliculaQuitaLaPeliculaYSusCopias() {
+        CatalogSnapshot snapshot = inicial.withoutPelicula(matrix);
+
+        assertTrue(snapshot.findPelicula(10).isEmpty());
+        assertEquals(List.of(101), ids(snapshot.getCopias(ana)));
+        assertTrue(snapshot.getCopias(luis).isEmpty());
+        assertEquals(List.of(101, 102), ids(inicial.getCopias(ana)));
+        assertEquals(2, inicial.getPeliculas().size());
+    }
+
+    private static List<Integer> ids(List<Copia> copias) {
+        return copias.stream().map(Copia::getId).toList();
+    }
+
+    private static User usuario(int id) {
+        User user = new User();
+        user.setId(id);
+        user.setNombreUsuario("usuario" + id);
+        return user;
+    }
+
+    private static Pelicula pelicula(int id, String titulo) {
+        Pelicula pelicula = new Pelicula();
+        pelicula.setId(id);
+        pelicula.setTitulo(titulo);
+        return pelicula;
+    }
+
+    private static Copia copia(int id, Pelicula pelicula, User user, EstadoCopia estado) {
+        Copia copia = new Copia();
+        copia.setId(id);
+        copia.setPelicula(pelicula);
+        copia.setUser(user);
+        copia.setEstado(estado);
+        copia.setSoporte(SoporteCopia.DVD);
+        copia.setVersion(3);
+        copia.clearDirtyFields();
+        return copia;
+    }
+
+    /**
+     * Referencia ligera (ID y usuario), como las que publican las operaciones masivas.
+     */
+    private static Copia referencia(int id, User user) {
+        Copia copia = new Copia();
+        copia.setId(id);
+        copia.setUser(user);
+        copia.clearDirtyFields();
+        return copia;
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.retoconjuntoad_di_2.journal;
+
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de escritura, rotación y recuperación de {@link ChangeJournal}.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class ChangeJournalTest {
+
+    /**
+     * Tamaño de segmento pequeño para que unos pocos registros provoquen rotaciones.
+     */
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recuperaLaUltimaSecuenciaYContinuaTrasReabrir() throws IOException {
+        try (ChangeJournal journal = abrir()) {
+            for (int i = 1; i <= 20; i++) {
+                assertEquals(i, registrar(journal, i, "Buena"));
+            }
+        }
+        assertTrue(segmentos().size() > 1, "Con segmentos de " + SEGMENT_SIZE + " bytes debe haber rotado");
+
+        try (ChangeJournal journal = abrir()) {
+            assertEquals(20, journal.getLastSequence());
+            assertEquals(21, registrar(journal, 21, "Usada"));
+        }
+
+        List<ChangeRecord> records = leer(1);
+        assertEquals(21, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).sequence());
+            assertEquals(i + 1, records.get(i).entityId());
+        }
+        assertEquals(Map.of("estado", "Usada"), records.get(20).fields());
+    }
+
+    @Test
+    void leeDesdeUnaSecuenciaSaltandoSegmentosAnteriores() throws IOException {
+        try (ChangeJournal journal = abrir()) {
+            for (int i = 1; i <= 20; i++) {
+                registrar(journal, i, "Buena");
+            }
+        }
+
+        List<ChangeRecord> records = leer(15);
+        assertEquals(List.of(15L, 16L, 17L, 18L, 19L, 20L),
+                records.stream().map(ChangeRecord::sequence).toList());
+    }
+
+    @Test
+    void descartaUnRegistroAMedioEscribirAlRecuperar() throws IOException {
+        try (ChangeJournal journal = abrir()) {
+            for (int i = 1; i <= 3; i++) {
+                registrar(journal, i, "Buena");
+            }
+        }
+
+        // Simula una caída a mitad de escritura: una longitud válida seguida de basura sin CRC correcto.
+        Path ultimo = segmentos().get(segmentos().size() - 1);
+        try (FileChannel channel = FileChannel.open(ultimo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            while (ChangeRecord.decode(buffer) != null) {
+                // Avanza hasta el final del último registro válido.
+            }
+            buffer.putInt(16);
+            buffer.put(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+            buffer.force();
+        }
+
+        try (ChangeJournal journal = abrir()) {
+            assertEquals(3, journal.getLastSequence());
+            assertEquals(4, registrar(journal, 4, "Nueva"));
+        }
+        assertEquals(List.of(1L, 2L, 3L, 4L), leer(1).stream().map(ChangeRecord::sequence).toList());
+    }
+
+    @Test
+    void awaitDurableTerminaConElVolcadoAgrupado() throws Exception {
+        try (ChangeJournal journal = new ChangeJournal(dir, SEGMENT_SIZE, 1, false)) {
+            long sequence = 0;
+            for (int i = 1; i <= 10; i++) {
+                sequence = registrar(journal, i, "Buena");
+            }
+            journal.awaitDurable(sequence);
+        }
+        assertEquals(10, leer(1).size());
+    }
+
+    @Test
+    void codificaYDecodificaTodosLosTiposDeCampo() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("titulo", "Película");
+        fields.put("anio", (short) 1999);
+        fields.put("pelicula", 7);
+        fields.put("esAdmin", true);
+        fields.put("modificadaEn", 123456789L);
+        fields.put("director", null);
+        ChangeRecord record = new ChangeRecord(5, ChangeRecord.EntityType.PELICULA,
+                ChangeRecord.Operation.SAVE, 7, fields);
+
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        buffer.put(record.encode()).flip();
+
+        assertEquals(record, ChangeRecord.decode(buffer));
+    }
+
+    @Test
+    void losRegistrosDeUsuarioNoLlevanLaContrasena() {
+        User user = new User();
+        user.setId(3);
+        user.setNombreUsuario("ana");
+        user.setContrasena("secreta");
+
+        Map<String, Object> fields = ChangeRecord.fieldsOf(user);
+
+        assertFalse(fields.containsKey("contrasena"));
+        assertFalse(fields.containsValue("secreta"));
+        assertEquals("ana", fields.get("nombreUsuario"));
+    }
+
+    private ChangeJournal abrir() throws IOException {
+        return new ChangeJournal(dir, SEGMENT_SIZE, 1, false);
+    }
+
+    private static long registrar(ChangeJournal journal, int id, String estado) {
+        return journal.append(ChangeRecord.EntityType.COPIA, ChangeRecord.Operation.UPDATE, id,
+                Map.of("estado", estado));
+    }
+
+    private List<ChangeRecord> leer(long desde) throws IOException {
+        List<ChangeRecord> records = new ArrayList<>();
+        ChangeJournal.read(dir, desde, records::add);
+        return records;
+    }
+
+    private List<Path> segmentos() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(ChangeJournal.SEGMENT_SUFFIX)).sorted().toList();
+        }
+    }
+}
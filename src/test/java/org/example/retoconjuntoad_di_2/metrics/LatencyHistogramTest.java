@@ -0,0 +1,69 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link LatencyHistogram}: valores exactos en las cubetas pequeñas y error
+ * relativo acotado en el resto del rango.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void sinValoresTodoEsCero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    @Test
+    void losValoresPequenosSonExactos() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 0; v < 32; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(32, histogram.getCount());
+        assertEquals(15, histogram.getValueAtPercentile(50));
+        assertEquals(31, histogram.getValueAtPercentile(100));
+        assertEquals(15.5, histogram.getMean());
+    }
+
+    @Test
+    void losPercentilesTienenUnErrorRelativoAcotado() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 1_000_000; v++) {
+            histogram.record(v * 1_000);
+        }
+
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long exacto = (long) (percentile / 100 * 1_000_000) * 1_000;
+            long estimado = histogram.getValueAtPercentile(percentile);
+            assertTrue(estimado >= exacto, "p" + percentile + " por debajo del valor real: " + estimado);
+            assertTrue(estimado <= exacto * 1.07, "p" + percentile + " con demasiado error: " + estimado);
+        }
+        assertEquals(1_000_000_000L, histogram.getMax());
+        assertEquals(1_000_000_000L, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void resetPoneLosContadoresACero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_500);
+        histogram.record(7_000_000);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.retoconjuntoad_di_2.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link RepositoryMetrics} y de su volcado con {@link PrometheusExporter}.
+ * <p>
+ * Cada prueba mide una entidad propia, porque el registro de métricas es global.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class RepositoryMetricsTest {
+
+    /**
+     * Entidades ficticias, una por prueba.
+     */
+    private static final class Medida {
+    }
+
+    private static final class Exportada {
+    }
+
+    @Test
+    void timeCuentaLlamadasYErroresSinAlterarElResultado() {
+        RepositoryMetrics metrics = RepositoryMetrics.forEntity(Medida.class);
+        assertSame(metrics, RepositoryMetrics.forEntity(Medida.class));
+
+        assertEquals("ok", metrics.time("findAll", () -> "ok"));
+        IllegalStateException error = new IllegalStateException("Fallo simulado");
+        assertSame(error, assertThrows(IllegalStateException.class,
+                () -> metrics.time("findAll", () -> { throw error; })));
+
+        OperationMetrics findAll = metrics.operation("findAll");
+        assertEquals(2, findAll.getCalls());
+        assertEquals(1, findAll.getErrors());
+        assertTrue(findAll.getMaxMillis() >= findAll.getP50Millis());
+        assertTrue(RepositoryMetrics.all().contains(findAll));
+    }
+
+    @Test
+    void scrapeExportaCadaMetodoConSusEtiquetas() {
+        RepositoryMetrics metrics = RepositoryMetrics.forEntity(Exportada.class);
+        metrics.time("save", () -> 1);
+
+        String texto = PrometheusExporter.scrape();
+
+        assertTrue(texto.contains("# TYPE gestor_repository_latency_seconds summary\n"));
+        assertTrue(texto.contains("gestor_repository_calls_total{entity=\"Exportada\",method=\"save\"} 1\n"));
+        assertTrue(texto.contains("gestor_repository_errors_total{entity=\"Exportada\",method=\"save\"} 0\n"));
+        assertTrue(texto.contains("gestor_repository_latency_seconds{entity=\"Exportada\",method=\"save\",quantile=\"0.99\"} "));
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.retoconjuntoad_di_2.migration;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link SchemaMigrator} sobre una base de datos ObjectDB temporal.
+ * <p>
+ * Las migraciones de prueba no tocan datos: solo recorren un rango de filas ficticio y
+ * anotan los puntos de control con los que se las llama.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class SchemaMigratorTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+
+    /**
+     * Orden en que se ejecutan los lotes, como "versión@puntoDeControl".
+     */
+    private final List<String> lotes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("migracion.odb").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    void aplicaLasMigracionesEnOrdenDeVersionPorLotes() throws InterruptedException {
+        SchemaMigrator migrator = new SchemaMigrator(emf, List.of(new Rango(2, 4), new Rango(1, 10)), 3, 0);
+
+        assertEquals(2, migrator.migrate());
+
+        assertEquals(List.of("1@null", "1@3", "1@6", "1@9", "2@null", "2@3"), lotes);
+        SchemaVersion v1 = UnitOfWork.read(emf, em -> em.find(SchemaVersion.class, 1));
+        assertTrue(v1.isCompleted());
+        assertEquals(4, v1.getBatches());
+        assertNull(v1.getCheckpoint());
+        assertEquals(2, migrator.getVersion());
+    }
+
+    @Test
+    void continuaDesdeElUltimoLoteConfirmado() throws InterruptedException {
+        SchemaMigrator interrumpido = new SchemaMigrator(emf, List.of(new Rango(1, 10, 6)), 3, 0);
+        assertThrows(IllegalStateException.class, interrumpido::migrate);
+        assertEquals(0, interrumpido.getVersion());
+
+        lotes.clear();
+        SchemaMigrator reanudado = new SchemaMigrator(emf, List.of(new Rango(1, 10)), 3, 0);
+
+        assertEquals(1, reanudado.migrate());
+        assertEquals(List.of("1@6", "1@9"), lotes);
+        assertEquals(4, UnitOfWork.read(emf, em -> em.find(SchemaVersion.class, 1)).getBatches());
+    }
+
+    @Test
+    void noRepiteLasMigracionesCompletadas() throws InterruptedException {
+        new SchemaMigrator(emf, List.of(new Rango(1, 2)), 3, 0).migrate();
+        lotes.clear();
+
+        assertEquals(2, new SchemaMigrator(emf, List.of(new Rango(1, 2), new Rango(2, 2)), 3, 0).migrate());
+        assertEquals(List.of("2@null"), lotes);
+    }
+
+    @Test
+    void noMigraSiLaBaseDeDatosTieneUnaVersionMasNueva() throws InterruptedException {
+        new SchemaMigrator(emf, List.of(new Rango(1, 2), new Rango(2, 2)), 3, 0).migrate();
+        lotes.clear();
+
+        SchemaMigrator antiguo = new SchemaMigrator(emf, List.of(new Rango(1, 2)), 3, 0);
+
+        assertEquals(2, antiguo.migrate());
+        assertTrue(lotes.isEmpty());
+    }
+
+    /**
+     * Migración que recorre {@code total} filas ficticias y, si se indica, falla al llegar
+     * a una de ellas sin confirmar ese lote.
+     */
+    private final class Rango implements Migration {
+
+        private final int version;
+        private final long total;
+        private final long fallaEn;
+
+        Rango(int version, long total) {
+            this(version, total, -1);
+        }
+
+        Rango(int version, long total, long fallaEn) {
+            this.version = version;
+            this.total = total;
+            this.fallaEn = fallaEn;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Rango de prueba " + version;
+        }
+
+        @Override
+        public Long migrateBatch(EntityManager em, Long checkpoint, int batchSize) {
+            long desde = checkpoint != null ? checkpoint : 0;
+            if (desde == fallaEn) {
+                throw new IllegalStateException("Fallo simulado en la fila " + desde);
+            }
+            lotes.add(version + "@" + checkpoint);
+            long siguiente = desde + batchSize;
+            return siguiente >= total ? null : siguiente;
+        }
+    }
+}
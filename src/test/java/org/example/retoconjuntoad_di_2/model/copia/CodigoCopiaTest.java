@@ -0,0 +1,72 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de los códigos con los que se persisten {@link EstadoCopia} y {@link SoporteCopia}.
+ * <p>
+ * Los códigos forman parte del formato de la base de datos: estas pruebas fijan los
+ * valores asignados, de modo que cambiar uno por error las hace fallar.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class CodigoCopiaTest {
+
+    @Test
+    void losCodigosAsignadosNoCambian() {
+        assertEquals(0, EstadoCopia.NUEVA.getCodigo());
+        assertEquals(1, EstadoCopia.BUENA.getCodigo());
+        assertEquals(2, EstadoCopia.USADA.getCodigo());
+        assertEquals(3, EstadoCopia.DETERIORADA.getCodigo());
+
+        assertEquals(0, SoporteCopia.DVD.getCodigo());
+        assertEquals(1, SoporteCopia.BLU_RAY.getCodigo());
+        assertEquals(2, SoporteCopia.VHS.getCodigo());
+    }
+
+    @Test
+    void cadaCodigoEsUnicoYDevuelveSuConstante() {
+        Set<Short> estados = new HashSet<>();
+        for (EstadoCopia estado : EstadoCopia.values()) {
+            assertTrue(estados.add(estado.getCodigo()));
+            assertSame(estado, EstadoCopia.fromCodigo(estado.getCodigo()));
+        }
+        Set<Short> soportes = new HashSet<>();
+        for (SoporteCopia soporte : SoporteCopia.values()) {
+            assertTrue(soportes.add(soporte.getCodigo()));
+            assertSame(soporte, SoporteCopia.fromCodigo(soporte.getCodigo()));
+        }
+    }
+
+    @Test
+    void unCodigoDesconocidoNoSeConvierte() {
+        assertThrows(IllegalArgumentException.class, () -> EstadoCopia.fromCodigo(99));
+        assertThrows(IllegalArgumentException.class, () -> SoporteCopia.fromCodigo(-1));
+    }
+
+    @Test
+    void lasEntidadesGuardanElCodigoYDevuelvenLaConstante() {
+        Copia copia = new Copia();
+        copia.setEstado(EstadoCopia.USADA);
+        copia.setSoporte(SoporteCopia.VHS);
+        assertSame(EstadoCopia.USADA, copia.getEstado());
+        assertSame(SoporteCopia.VHS, copia.getSoporte());
+
+        CopiaArchivada archivada = new CopiaArchivada(1, 2, 3, EstadoCopia.DETERIORADA, null, 4, 5, 6);
+        assertSame(EstadoCopia.DETERIORADA, archivada.getEstado());
+        assertNull(archivada.getSoporte());
+        archivada.setSoporte(SoporteCopia.BLU_RAY);
+        assertSame(SoporteCopia.BLU_RAY, archivada.getSoporte());
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de archivado y restauración de copias frías con {@link CopiaArchive}, sobre dos
+ * bases de datos ObjectDB temporales (la principal y el archivo).
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class CopiaArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+    private EntityManagerFactory archiveEmf;
+    private CopiaArchive archivo;
+    private CopiaRepository copias;
+    private User user;
+    private Pelicula pelicula;
+    private Copia buena;
+    private Copia deteriorada;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        archiveEmf = Persistence.createEntityManagerFactory(dir.resolve("archive.odb").toString());
+        archivo = CopiaArchive.open(emf, archiveEmf, Set.of(EstadoCopia.DETERIORADA), 0, 10);
+        copias = new CopiaRepository(emf);
+
+        User nuevo = new User();
+        nuevo.setNombreUsuario("ana");
+        nuevo.setContrasena("secreta");
+        user = new UserRepository(emf).save(nuevo);
+
+        Pelicula nueva = new Pelicula();
+        nueva.setTitulo("Matrix");
+        nueva.setGenero("Ciencia ficción");
+        nueva.setAnio((short) 1999);
+        nueva.setDirector("Lana Wachowski");
+        pelicula = new PeliculaRepository(emf).save(nueva);
+
+        buena = copias.save(nuevaCopia(EstadoCopia.BUENA));
+        deteriorada = copias.save(nuevaCopia(EstadoCopia.DETERIORADA));
+    }
+
+    @AfterEach
+    void tearDown() {
+        archivo.close();
+        archiveEmf.close();
+        emf.close();
+    }
+
+    @Test
+    void archivaLasCopiasFriasYLasSacaDeLosListados() {
+        assertEquals(2, copiasCount());
+
+        assertEquals(1, archivo.archive());
+
+        assertEquals(List.of(buena.getId()), ids(copias.findByUser(user)));
+        List<Copia> archivadas = archivo.findByUser(user);
+        assertEquals(List.of(deteriorada.getId()), ids(archivadas));
+        assertTrue(archivadas.get(0).isArchivada());
+        assertEquals(EstadoCopia.DETERIORADA, archivadas.get(0).getEstado());
+        assertEquals(1, archivo.countByUser(user));
+        assertEquals(1, copiasCount());
+        // findById de la copia archivada la encuentra en el archivo.
+        assertTrue(copias.findById(deteriorada.getId().longValue()).orElseThrow().isArchivada());
+        // Una segunda pasada no encuentra nada más que archivar.
+        assertEquals(0, archivo.archive());
+    }
+
+    @Test
+    void restaurarDevuelveLaCopiaALaBaseDeDatosPrincipal() {
+        archivo.archive();
+
+        assertEquals(1, archivo.restore(List.of(deteriorada.getId())));
+
+        assertEquals(List.of(buena.getId(), deteriorada.getId()), ids(copias.findByUser(user)));
+        assertTrue(archivo.findByUser(user).isEmpty());
+        assertEquals(2, copiasCount());
+    }
+
+    @Test
+    void guardarUnaCopiaArchivadaLaRestauraAunqueNoVengaMarcada() {
+        archivo.archive();
+
+        // Como la ventana de detalle: una copia de trabajo nueva con el ID y los cambios.
+        Copia cambios = new Copia();
+        cambios.setId(deteriorada.getId());
+        cambios.setUser(user);
+        cambios.setPelicula(pelicula);
+        cambios.setEstado(EstadoCopia.USADA);
+        cambios.setSoporte(SoporteCopia.DVD);
+        copias.save(cambios);
+
+        Copia guardada = copias.findById(deteriorada.getId().longValue()).orElseThrow();
+        assertFalse(guardada.isArchivada());
+        assertEquals(EstadoCopia.USADA, guardada.getEstado());
+        assertTrue(archivo.findByUser(user).isEmpty());
+        assertEquals(2, copiasCount());
+    }
+
+    @Test
+    void borrarUnaCopiaArchivadaLaEliminaDelArchivo() {
+        archivo.archive();
+
+        copias.delete(archivo.findById(deteriorada.getId()).orElseThrow());
+
+        assertTrue(archivo.findById(deteriorada.getId()).isEmpty());
+        assertTrue(copias.findById(deteriorada.getId().longValue()).isEmpty());
+        assertEquals(1, copiasCount());
+    }
+
+    private Copia nuevaCopia(EstadoCopia estado) {
+        Copia copia = new Copia();
+        copia.setUser(user);
+        copia.setPelicula(pelicula);
+        copia.setEstado(estado);
+        copia.setSoporte(SoporteCopia.DVD);
+        return copia;
+    }
+
+    /**
+     * Contador de copias activas de la película, leído de la base de datos.
+     */
+    private int copiasCount() {
+        emf.getCache().evictAll();
+        return UnitOfWork.read(emf, em -> em.find(Pelicula.class, pelicula.getId()).getCopiasCount());
+    }
+
+    private static List<Integer> ids(List<Copia> lista) {
+        return lista.stream().map(Copia::getId).toList();
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.example.retoconjuntoad_di_2.utils.PartialBulkChangeException;
+import org.example.retoconjuntoad_di_2.utils.StaleEntityException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de las operaciones masivas de {@link CopiaRepository} con comprobación de
+ * versión, sobre bases de datos ObjectDB temporales.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class CopiaBulkTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+    private CopiaRepository copias;
+    private User ana;
+    private Pelicula pelicula;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        copias = new CopiaRepository(emf);
+        ana = usuario("ana");
+
+        Pelicula nueva = new Pelicula();
+        nueva.setTitulo("Matrix");
+        nueva.setGenero("Ciencia ficción");
+        nueva.setAnio((short) 1999);
+        nueva.setDirector("Lana Wachowski");
+        pelicula = new PeliculaRepository(emf).save(nueva);
+    }
+
+    @AfterEach
+    void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    void updateEstadoCambiaLasCopiasEIncrementaSuVersion() {
+        Copia a = copias.save(nuevaCopia(ana));
+        Copia b = copias.save(nuevaCopia(ana));
+
+        assertEquals(2, copias.updateEstado(List.of(a, b), EstadoCopia.USADA));
+
+        for (Copia copia : copias.findByUser(ana)) {
+            assertEquals(EstadoCopia.USADA, copia.getEstado());
+            assertEquals(a.getVersion() + 1, copia.getVersion());
+        }
+    }
+
+    @Test
+    void unaVersionAntiguaNoCambiaNingunaCopia() {
+        Copia a = copias.save(nuevaCopia(ana));
+        Copia b = copias.save(nuevaCopia(ana));
+
+        assertThrows(StaleEntityException.class,
+                () -> copias.updateEstado(List.of(a, antigua(b)), EstadoCopia.USADA));
+        assertThrows(StaleEntityException.class, () -> copias.deleteByIds(List.of(a, antigua(b))));
+
+        List<Copia> actuales = copias.findByUser(ana);
+        assertEquals(2, actuales.size());
+        assertTrue(actuales.stream().allMatch(c -> c.getEstado() == EstadoCopia.NUEVA));
+    }
+
+    @Test
+    void conShardsInformaDeLoYaConfirmadoSiFallaOtraBaseDeDatos() {
+        EntityManagerFactory shard = Persistence.createEntityManagerFactory(dir.resolve("shard-0.odb").toString());
+        ShardRouter router = ShardRouter.open(emf, List.of(shard));
+        try {
+            // Ana se creó antes de repartir: sus copias siguen en el catálogo.
+            User luis = usuario("luis");
+            Copia enCatalogo = copias.save(nuevaCopia(ana));
+            Copia enShard = copias.save(nuevaCopia(luis));
+
+            PartialBulkChangeException e = assertThrows(PartialBulkChangeException.class,
+                    () -> copias.updateEstado(List.of(enCatalogo, antigua(enShard)), EstadoCopia.USADA));
+
+            assertEquals(1, e.getApplied());
+            assertInstanceOf(StaleEntityException.class, e.getCause());
+            assertEquals(EstadoCopia.USADA, copias.findByUser(ana).get(0).getEstado());
+            assertEquals(EstadoCopia.NUEVA, copias.findByUser(luis).get(0).getEstado());
+        } finally {
+            router.close();
+            shard.close();
+        }
+    }
+
+    private User usuario(String nombre) {
+        User nuevo = new User();
+        nuevo.setNombreUsuario(nombre);
+        nuevo.setContrasena("secreta");
+        return new UserRepository(emf).save(nuevo);
+    }
+
+    private Copia nuevaCopia(User user) {
+        Copia copia = new Copia();
+        copia.setUser(user);
+        copia.setPelicula(pelicula);
+        copia.setEstado(EstadoCopia.NUEVA);
+        copia.setSoporte(SoporteCopia.DVD);
+        return copia;
+    }
+
+    /**
+     * Referencia a una copia con una versión que ya no es la de la base de datos, como la
+     * de una tabla cargada antes de que otro usuario la modificara.
+     */
+    private static Copia antigua(Copia copia) {
+        Copia vieja = new Copia();
+        vieja.setId(copia.getId());
+        vieja.setUser(copia.getUser());
+        vieja.setVersion(copia.getVersion() + 5);
+        vieja.clearDirtyFields();
+        return vieja;
+    }
+}
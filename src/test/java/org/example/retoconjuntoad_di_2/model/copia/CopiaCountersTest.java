@@ -0,0 +1,118 @@
+package org.example.retoconjuntoad_di_2.model.copia;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Pruebas de los contadores de copias de {@link Pelicula} cuando las copias están en un
+ * shard, sobre bases de datos ObjectDB temporales (el catálogo y un shard).
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class CopiaCountersTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+    private EntityManagerFactory shard;
+    private ShardRouter router;
+    private CopiaRepository copias;
+    private User user;
+    private Pelicula pelicula;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        shard = Persistence.createEntityManagerFactory(dir.resolve("shard-0.odb").toString());
+        router = ShardRouter.open(emf, List.of(shard));
+        copias = new CopiaRepository(emf);
+
+        User nuevo = new User();
+        nuevo.setNombreUsuario("ana");
+        nuevo.setContrasena("secreta");
+        user = new UserRepository(emf).save(nuevo);
+
+        Pelicula nueva = new Pelicula();
+        nueva.setTitulo("Matrix");
+        nueva.setGenero("Ciencia ficción");
+        nueva.setAnio((short) 1999);
+        nueva.setDirector("Lana Wachowski");
+        pelicula = new PeliculaRepository(emf).save(nueva);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+        shard.close();
+        emf.close();
+    }
+
+    @Test
+    void altaYBajaEnUnShardAjustanLosContadoresDelCatalogo() {
+        assertSame(shard, router.forUser(user.getId()));
+
+        Copia copia = copias.save(nuevaCopia(SoporteCopia.BLU_RAY));
+
+        assertEquals(1, contador(null));
+        assertEquals(1, contador(SoporteCopia.BLU_RAY));
+        assertEquals(0, contador(SoporteCopia.DVD));
+
+        copias.delete(copia);
+
+        assertEquals(0, contador(null));
+        assertEquals(0, contador(SoporteCopia.BLU_RAY));
+    }
+
+    @Test
+    void elRecalculoCorrigeLosContadoresDesviados() throws InterruptedException {
+        copias.save(nuevaCopia(SoporteCopia.DVD));
+        copias.save(nuevaCopia(SoporteCopia.DVD));
+        // Como si el proceso hubiera terminado entre el commit del shard y el ajuste del catálogo.
+        UnitOfWork.run(emf, em -> em.createQuery(
+                        "update Pelicula p set p.copiasCount = 1, p." + Pelicula.campoCopias(SoporteCopia.DVD)
+                                + " = 1 where p.id = :id")
+                .setParameter("id", pelicula.getId())
+                .executeUpdate());
+
+        assertEquals(1, new CopiaCounterReconciler(emf, 10, 1).reconcile());
+
+        assertEquals(2, contador(null));
+        assertEquals(2, contador(SoporteCopia.DVD));
+    }
+
+    private Copia nuevaCopia(SoporteCopia soporte) {
+        Copia copia = new Copia();
+        copia.setUser(user);
+        copia.setPelicula(pelicula);
+        copia.setEstado(EstadoCopia.NUEVA);
+        copia.setSoporte(soporte);
+        return copia;
+    }
+
+    /**
+     * Contador de copias de la película (todas, o las de un soporte), leído del catálogo.
+     */
+    private int contador(SoporteCopia soporte) {
+        emf.getCache().evictAll();
+        Pelicula leida = UnitOfWork.read(emf, em -> em.find(Pelicula.class, pelicula.getId()));
+        return soporte != null ? leida.getCopiasCount(soporte) : leida.getCopiasCount();
+    }
+}
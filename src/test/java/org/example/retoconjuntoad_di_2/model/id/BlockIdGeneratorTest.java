@@ -0,0 +1,114 @@
+package org.example.retoconjuntoad_di_2.model.id;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaArchivada;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaArchive;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.shard.ShardRouter;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pruebas de {@link BlockIdGenerator} sobre bases de datos ObjectDB temporales.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class BlockIdGeneratorTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    void losHilosCompartenElBloqueActual() throws Exception {
+        BlockIdGenerator ids = new BlockIdGenerator(emf, User.class, 10);
+        Set<Integer> generados = ConcurrentHashMap.newKeySet();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int hilo = 0; hilo < 4; hilo++) {
+                tareas.add(pool.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        generados.add(ids.next());
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(100, generados.size());
+        // Con un bloque por hilo harían falta al menos 4 x 3 bloques.
+        assertEquals(10, ids.getBlocksReserved());
+    }
+
+    @Test
+    void parteDelMayorIdDeLosShards() {
+        EntityManagerFactory shard = Persistence.createEntityManagerFactory(dir.resolve("shard-0.odb").toString());
+        ShardRouter router = null;
+        try {
+            User user = new User();
+            user.setId(500);
+            user.setNombreUsuario("ana");
+            UnitOfWork.run(shard, em -> em.persist(user));
+            router = ShardRouter.open(emf, List.of(shard));
+
+            assertEquals(501, new BlockIdGenerator(emf, User.class, 10).next());
+        } finally {
+            if (router != null) {
+                router.close();
+            }
+            shard.close();
+        }
+    }
+
+    @Test
+    void lasCopiasPartenDelMayorIdDelArchivo() {
+        EntityManagerFactory archiveEmf = Persistence.createEntityManagerFactory(dir.resolve("archive.odb").toString());
+        CopiaArchive archivo = CopiaArchive.open(emf, archiveEmf, Set.of(EstadoCopia.DETERIORADA), 0, 10);
+        try {
+            CopiaArchivada archivada = new CopiaArchivada();
+            archivada.setId(700);
+            archivada.setEstado(EstadoCopia.DETERIORADA);
+            UnitOfWork.run(archiveEmf, em -> em.persist(archivada));
+
+            assertEquals(701, new BlockIdGenerator(emf, Copia.class, 10).next());
+        } finally {
+            archivo.close();
+            archiveEmf.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.retoconjuntoad_di_2.model.pelicula;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del seguimiento de campos modificados de {@link Pelicula} y de su uso en
+ * {@link PeliculaRepository#save(Pelicula)}, que solo escribe esos campos.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class PeliculaDirtyFieldsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void losSettersAnotanLosCamposModificados() {
+        Pelicula pelicula = new Pelicula();
+        assertTrue(pelicula.getDirtyFields().isEmpty());
+
+        pelicula.setTitulo("Alien");
+        pelicula.setAnio((short) 1979);
+        pelicula.setTitulo("Alien, el octavo pasajero");
+
+        assertEquals(Set.of("titulo", "anio"), pelicula.getDirtyFields());
+        pelicula.clearDirtyFields();
+        assertTrue(pelicula.getDirtyFields().isEmpty());
+    }
+
+    @Test
+    void guardarUnaInstanciaParcialSoloEscribeLosCamposModificados() {
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        try {
+            PeliculaRepository peliculas = new PeliculaRepository(emf);
+            Pelicula nueva = new Pelicula();
+            nueva.setTitulo("Matrix");
+            nueva.setGenero("Ciencia ficción");
+            nueva.setAnio((short) 1999);
+            nueva.setDirector("Lana Wachowski");
+            Pelicula guardada = peliculas.save(nueva);
+            assertTrue(guardada.getDirtyFields().isEmpty());
+
+            // Solo el ID, la versión y el campo cambiado: el resto está vacío.
+            Pelicula parcial = new Pelicula();
+            parcial.setId(guardada.getId());
+            parcial.setVersion(guardada.getVersion());
+            parcial.clearDirtyFields();
+            parcial.setDescripcion("Un programador descubre la verdad sobre su mundo.");
+            peliculas.save(parcial);
+
+            emf.getCache().evictAll();
+            Pelicula leida = peliculas.findById(guardada.getId().longValue()).orElseThrow();
+            assertEquals("Matrix", leida.getTitulo());
+            assertEquals("Ciencia ficción", leida.getGenero());
+            assertEquals("Lana Wachowski", leida.getDirector());
+            assertEquals("Un programador descubre la verdad sobre su mundo.", leida.getDescripcion());
+            assertEquals(guardada.getVersion() + 1, leida.getVersion());
+        } finally {
+            emf.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.retoconjuntoad_di_2.model.shard;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.example.retoconjuntoad_di_2.utils.UnitOfWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del encaminamiento de las copias con {@link ShardRouter}, sobre un catálogo y
+ * dos shards ObjectDB temporales.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class ShardRouterTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory catalogo;
+    private List<EntityManagerFactory> shards;
+    private ShardRouter router;
+    private Pelicula pelicula;
+    private User anterior;
+
+    @BeforeEach
+    void setUp() {
+        catalogo = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        shards = List.of(
+                Persistence.createEntityManagerFactory(dir.resolve("shard-0.odb").toString()),
+                Persistence.createEntityManagerFactory(dir.resolve("shard-1.odb").toString()));
+        // Usuario dado de alta antes de repartir: sus copias se quedan en el catálogo.
+        anterior = usuario("anterior");
+        router = ShardRouter.open(catalogo, shards);
+
+        Pelicula nueva = new Pelicula();
+        nueva.setTitulo("Matrix");
+        nueva.setGenero("Ciencia ficción");
+        nueva.setAnio((short) 1999);
+        nueva.setDirector("Lana Wachowski");
+        pelicula = new PeliculaRepository(catalogo).save(nueva);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+        shards.forEach(EntityManagerFactory::close);
+        catalogo.close();
+    }
+
+    @Test
+    void losUsuariosNuevosSeAsignanPorHashYLaAsignacionSeConserva() {
+        User nuevo = usuario("nuevo");
+
+        int shard = router.hashShard(nuevo.getId());
+        assertEquals(shard, router.shardOf(nuevo.getId()));
+        assertSame(shards.get(shard), router.forUser(nuevo.getId()));
+        assertEquals(ShardRouter.CATALOG, router.shardOf(anterior.getId()));
+        assertSame(catalogo, router.forUser(anterior.getId()));
+
+        router.close();
+        router = ShardRouter.open(catalogo, shards);
+        assertEquals(shard, router.shardOf(nuevo.getId()));
+    }
+
+    @Test
+    void elHashRepartePorIgualLosIdsConsecutivos() {
+        int[] porShard = new int[shards.size()];
+        for (int id = 1; id <= 1_000; id++) {
+            porShard[router.hashShard(id)]++;
+        }
+
+        for (int n : porShard) {
+            assertTrue(n > 400 && n < 600, "Reparto desigual: " + n);
+        }
+    }
+
+    @Test
+    void lasCopiasSeGuardanEnElShardDelUsuarioYSeEnlazanConElCatalogo() {
+        CopiaRepository copias = new CopiaRepository(catalogo);
+        User nuevo = usuario("nuevo");
+        int shard = router.shardOf(nuevo.getId());
+
+        copias.save(nuevaCopia(nuevo));
+        copias.save(nuevaCopia(anterior));
+
+        assertEquals(1L, contarCopias(shards.get(shard)));
+        assertEquals(0L, contarCopias(shards.get(1 - shard)));
+        assertEquals(1L, contarCopias(catalogo));
+        List<Copia> leidas = copias.findByUser(nuevo);
+        assertEquals(1, leidas.size());
+        assertEquals("Matrix", leidas.get(0).getPelicula().getTitulo());
+    }
+
+    @Test
+    void borrarUnaPeliculaBorraSusCopiasDeLosShards() {
+        CopiaRepository copias = new CopiaRepository(catalogo);
+        User nuevo = usuario("nuevo");
+        copias.save(nuevaCopia(nuevo));
+
+        new PeliculaRepository(catalogo).delete(pelicula);
+
+        for (EntityManagerFactory shard : router.all()) {
+            assertEquals(0L, contarCopias(shard));
+        }
+    }
+
+    private User usuario(String nombre) {
+        User nuevo = new User();
+        nuevo.setNombreUsuario(nombre);
+        nuevo.setContrasena("secreta");
+        return new UserRepository(catalogo).save(nuevo);
+    }
+
+    private Copia nuevaCopia(User user) {
+        Copia copia = new Copia();
+        copia.setUser(user);
+        copia.setPelicula(pelicula);
+        copia.setEstado(EstadoCopia.NUEVA);
+        copia.setSoporte(SoporteCopia.DVD);
+        return copia;
+    }
+
+    private static long contarCopias(EntityManagerFactory emf) {
+        return UnitOfWork.read(emf, em -> em.createQuery("select count(c) from Copia c", Long.class)
+                .getSingleResult());
+    }
+}
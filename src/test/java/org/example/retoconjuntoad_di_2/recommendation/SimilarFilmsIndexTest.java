@@ -0,0 +1,145 @@
+package org.example.retoconjuntoad_di_2.recommendation;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link SimilarFilmsIndex} sobre una base de datos ObjectDB temporal: la
+ * construcción inicial y la actualización incremental con los cambios confirmados.
+ * <p>
+ * Las películas comparten género, director y década, de modo que el orden depende solo
+ * de los propietarios en común.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class SimilarFilmsIndexTest {
+
+    private static final long ESPERA_MAXIMA_MILLIS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+    private CopiaRepository copias;
+    private SimilarFilmsIndex index;
+    private Pelicula a;
+    private Pelicula b;
+    private Pelicula c;
+    private User ana;
+    private User luis;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        copias = new CopiaRepository(emf);
+        a = pelicula("Alien");
+        b = pelicula("Aliens");
+        c = pelicula("Alien 3");
+        ana = usuario("ana");
+        luis = usuario("luis");
+        User eva = usuario("eva");
+
+        // a y b las tienen dos de los tres propietarios de a; a y c, solo uno.
+        copia(ana, a);
+        copia(ana, b);
+        copia(luis, a);
+        copia(luis, b);
+        copia(eva, a);
+        copia(eva, c);
+
+        index = SimilarFilmsIndex.getInstance();
+        index.start(emf, 10, 2, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.stop();
+        emf.close();
+    }
+
+    @Test
+    void ordenaLasParecidasPorPropietariosEnComun() {
+        esperar(index::isLoaded);
+
+        List<SimilarFilmsIndex.Similar> parecidas = index.similares(a.getId());
+
+        assertEquals(List.of(b.getId(), c.getId()), ids(parecidas));
+        assertTrue(parecidas.get(0).puntuacion() > parecidas.get(1).puntuacion());
+        assertEquals(List.of(a.getId()), ids(index.similares(c.getId())));
+    }
+
+    @Test
+    void lasCopiasNuevasActualizanElIndice() {
+        esperar(index::isLoaded);
+
+        // Ahora los tres propietarios de a tienen c, y solo dos tienen b.
+        copia(ana, c);
+        copia(luis, c);
+
+        esperar(() -> ids(index.similares(a.getId())).equals(List.of(c.getId(), b.getId())));
+        assertEquals(List.of(a.getId(), b.getId()), ids(index.similares(c.getId())));
+    }
+
+    private static List<Integer> ids(List<SimilarFilmsIndex.Similar> parecidas) {
+        return parecidas.stream().map(SimilarFilmsIndex.Similar::peliculaId).toList();
+    }
+
+    private static void esperar(BooleanSupplier condicion) {
+        long limite = System.currentTimeMillis() + ESPERA_MAXIMA_MILLIS;
+        while (!condicion.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < limite, "El índice no se actualizó a tiempo");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private Pelicula pelicula(String titulo) {
+        Pelicula nueva = new Pelicula();
+        nueva.setTitulo(titulo);
+        nueva.setGenero("Ciencia ficción");
+        nueva.setAnio((short) 1986);
+        nueva.setDirector("James Cameron");
+        return new PeliculaRepository(emf).save(nueva);
+    }
+
+    private User usuario(String nombre) {
+        User nuevo = new User();
+        nuevo.setNombreUsuario(nombre);
+        nuevo.setContrasena("secreta");
+        return new UserRepository(emf).save(nuevo);
+    }
+
+    private void copia(User user, Pelicula pelicula) {
+        Copia copia = new Copia();
+        copia.setUser(user);
+        copia.setPelicula(pelicula);
+        copia.setEstado(EstadoCopia.BUENA);
+        copia.setSoporte(SoporteCopia.DVD);
+        copias.save(copia);
+    }
+}
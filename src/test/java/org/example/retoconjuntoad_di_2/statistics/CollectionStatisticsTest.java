@@ -0,0 +1,125 @@
+package org.example.retoconjuntoad_di_2.statistics;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.CopiaRepository;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.example.retoconjuntoad_di_2.model.pelicula.PeliculaRepository;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Pruebas de {@link CollectionStatistics} sobre una base de datos ObjectDB temporal: la
+ * carga inicial por páginas y el mantenimiento incremental con los cambios confirmados.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class CollectionStatisticsTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+    private CopiaRepository copias;
+    private CollectionStatistics statistics;
+    private User ana;
+    private Pelicula alien;
+    private Pelicula amelie;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        copias = new CopiaRepository(emf);
+        User nuevo = new User();
+        nuevo.setNombreUsuario("ana");
+        nuevo.setContrasena("secreta");
+        ana = new UserRepository(emf).save(nuevo);
+        alien = pelicula("Alien", "Ciencia ficción", 1979);
+        amelie = pelicula("Amélie", "Comedia", 2001);
+        statistics = CollectionStatistics.getInstance();
+    }
+
+    @AfterEach
+    void tearDown() {
+        statistics.stop();
+        emf.close();
+    }
+
+    @Test
+    void laCargaInicialAgrupaTodasLasCopias() {
+        copia(alien, SoporteCopia.DVD, EstadoCopia.BUENA);
+        copia(alien, SoporteCopia.VHS, EstadoCopia.USADA);
+        copia(amelie, SoporteCopia.DVD, EstadoCopia.BUENA);
+
+        // Páginas de una copia, para recorrer varias.
+        statistics.start(emf, 1).join();
+        CollectionStatistics.Resumen resumen = statistics.resumen();
+
+        assertEquals(3, resumen.copias());
+        assertEquals(2, resumen.peliculas());
+        assertEquals(List.of("Ciencia ficción", "Comedia"), List.copyOf(resumen.porGenero().keySet()));
+        assertEquals(Long.valueOf(2), resumen.porGenero().get("Ciencia ficción"));
+        assertEquals(Long.valueOf(2), resumen.porDecada().get("1970s"));
+        assertEquals(Long.valueOf(1), resumen.porDecada().get("2000s"));
+        assertEquals(Long.valueOf(2), resumen.porSoporte().get(SoporteCopia.DVD.getEtiqueta()));
+        assertEquals(Long.valueOf(2), resumen.porEstado().get(EstadoCopia.BUENA.getEtiqueta()));
+        assertSame(resumen, statistics.resumen());
+    }
+
+    @Test
+    void losCambiosConfirmadosMuevenLosContadores() {
+        Copia primera = copia(alien, SoporteCopia.DVD, EstadoCopia.NUEVA);
+        statistics.start(emf, 100).join();
+
+        Copia segunda = copia(amelie, SoporteCopia.BLU_RAY, EstadoCopia.NUEVA);
+        CollectionStatistics.Resumen resumen = statistics.resumen();
+        assertEquals(2, resumen.copias());
+        assertEquals(Long.valueOf(1), resumen.porGenero().get("Comedia"));
+        assertEquals(Long.valueOf(2), resumen.porEstado().get(EstadoCopia.NUEVA.getEtiqueta()));
+
+        copias.updateEstado(copias.findByUser(ana), EstadoCopia.DETERIORADA);
+        resumen = statistics.resumen();
+        assertEquals(Long.valueOf(0), resumen.porEstado().getOrDefault(EstadoCopia.NUEVA.getEtiqueta(), 0L));
+        assertEquals(Long.valueOf(2), resumen.porEstado().get(EstadoCopia.DETERIORADA.getEtiqueta()));
+
+        copias.deleteByIds(List.of(copias.findById(segunda.getId().longValue()).orElseThrow()));
+        resumen = statistics.resumen();
+        assertEquals(1, resumen.copias());
+        assertEquals(1, resumen.peliculas());
+        assertEquals(Long.valueOf(0), resumen.porGenero().getOrDefault("Comedia", 0L));
+        assertEquals(Long.valueOf(1), resumen.porSoporte().get(SoporteCopia.DVD.getEtiqueta()));
+        assertEquals(primera.getId(), copias.findByUser(ana).get(0).getId());
+    }
+
+    private Pelicula pelicula(String titulo, String genero, int anio) {
+        Pelicula nueva = new Pelicula();
+        nueva.setTitulo(titulo);
+        nueva.setGenero(genero);
+        nueva.setAnio((short) anio);
+        nueva.setDirector("Director de " + titulo);
+        return new PeliculaRepository(emf).save(nueva);
+    }
+
+    private Copia copia(Pelicula pelicula, SoporteCopia soporte, EstadoCopia estado) {
+        Copia copia = new Copia();
+        copia.setUser(ana);
+        copia.setPelicula(pelicula);
+        copia.setSoporte(soporte);
+        copia.setEstado(estado);
+        return copias.save(copia);
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
+import org.example.retoconjuntoad_di_2.model.copia.Copia;
+import org.example.retoconjuntoad_di_2.model.copia.EstadoCopia;
+import org.example.retoconjuntoad_di_2.model.copia.SoporteCopia;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Pruebas de {@link ConflictPolicy}, con guardados simulados que fallan por versión.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class ConflictPolicyTest {
+
+    @Test
+    void failFastConvierteElConflictoEnStaleEntityException() {
+        ConflictPolicy<Copia> policy = ConflictPolicy.failFast();
+        Copia copia = copia(5, 1, EstadoCopia.BUENA);
+
+        StaleEntityException e = assertThrows(StaleEntityException.class,
+                () -> policy.save(copia, c -> { throw conflicto(); }, c -> Optional.of(copia(5, 2, EstadoCopia.USADA))));
+
+        assertSame(Copia.class, e.getEntityType());
+        assertEquals(Integer.valueOf(5), e.getEntityId());
+        assertEquals(1, policy.getConflictCount());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    void lastWriterWinsReintentaConLaVersionActual() {
+        ConflictPolicy<Copia> policy = ConflictPolicy.lastWriterWins(3, 0);
+        List<Long> versiones = new ArrayList<>();
+
+        Copia guardada = policy.save(copia(5, 1, EstadoCopia.DETERIORADA), c -> {
+            versiones.add(c.getVersion());
+            if (versiones.size() == 1) {
+                throw conflicto();
+            }
+            return c;
+        }, c -> Optional.of(copia(5, 4, EstadoCopia.USADA)));
+
+        assertEquals(List.of(1L, 4L), versiones);
+        assertEquals(EstadoCopia.DETERIORADA, guardada.getEstado());
+        assertEquals(1, policy.getRetryCount());
+    }
+
+    @Test
+    void mergeCombinaLaVersionActualConLosCambiosPendientes() {
+        // Conserva el soporte de la versión actual y aplica el estado pendiente.
+        ConflictPolicy<Copia> policy = ConflictPolicy.merge(1, 0, (actual, pendiente) -> {
+            actual.setEstado(pendiente.getEstado());
+            return actual;
+        });
+        Copia actual = copia(5, 2, EstadoCopia.BUENA);
+        actual.setSoporte(SoporteCopia.VHS);
+        int[] intentos = {0};
+
+        Copia guardada = policy.save(copia(5, 1, EstadoCopia.USADA), c -> {
+            if (intentos[0]++ == 0) {
+                throw conflicto();
+            }
+            return c;
+        }, c -> Optional.of(actual));
+
+        assertSame(actual, guardada);
+        assertEquals(EstadoCopia.USADA, guardada.getEstado());
+        assertEquals(SoporteCopia.VHS, guardada.getSoporte());
+        assertEquals(2L, guardada.getVersion());
+    }
+
+    @Test
+    void agotadosLosReintentosPropagaElConflicto() {
+        ConflictPolicy<Copia> policy = ConflictPolicy.lastWriterWins(2, 0);
+        int[] intentos = {0};
+
+        assertThrows(StaleEntityException.class, () -> policy.save(copia(5, 1, EstadoCopia.BUENA), c -> {
+            intentos[0]++;
+            throw conflicto();
+        }, c -> Optional.of(copia(5, 9, EstadoCopia.BUENA))));
+
+        assertEquals(3, intentos[0]);
+        assertEquals(3, policy.getConflictCount());
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    void noReintentaSiLaEntidadSeHaBorrado() {
+        ConflictPolicy<Copia> policy = ConflictPolicy.lastWriterWins(3, 0);
+        int[] intentos = {0};
+
+        assertThrows(StaleEntityException.class, () -> policy.save(copia(5, 1, EstadoCopia.BUENA), c -> {
+            intentos[0]++;
+            throw conflicto();
+        }, c -> Optional.empty()));
+
+        assertEquals(1, intentos[0]);
+    }
+
+    @Test
+    void losErroresQueNoSonDeVersionSePropaganSinCambios() {
+        ConflictPolicy<Copia> policy = ConflictPolicy.lastWriterWins(3, 0);
+        IllegalArgumentException error = new IllegalArgumentException("Película inexistente");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> policy.save(copia(5, 1, EstadoCopia.BUENA), c -> { throw error; }, c -> Optional.empty()));
+
+        assertSame(error, e);
+        assertEquals(0, policy.getConflictCount());
+    }
+
+    @Test
+    void checkVersionRechazaVersionesAntiguasYEntidadesBorradas() {
+        Copia leida = copia(5, 1, EstadoCopia.BUENA);
+
+        ConflictPolicy.checkVersion(leida, copia(5, 1, EstadoCopia.USADA));
+        assertThrows(OptimisticLockException.class, () -> ConflictPolicy.checkVersion(leida, copia(5, 2, EstadoCopia.BUENA)));
+        assertThrows(OptimisticLockException.class, () -> ConflictPolicy.checkVersion(leida, null));
+    }
+
+    /**
+     * Fallo de versión tal como llega del proveedor JPA: envuelto en otra excepción.
+     */
+    private static RuntimeException conflicto() {
+        return new PersistenceException("Commit fallido", new OptimisticLockException("Versión obsoleta"));
+    }
+
+    private static Copia copia(int id, long version, EstadoCopia estado) {
+        Copia copia = new Copia();
+        copia.setId(id);
+        copia.setVersion(version);
+        copia.setEstado(estado);
+        return copia;
+    }
+}
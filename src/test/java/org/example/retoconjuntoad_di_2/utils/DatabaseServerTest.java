@@ -0,0 +1,60 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link DatabaseServer} que no necesitan un servidor ObjectDB: las URL de
+ * los archivos y la comprobación de conexión, contra un puerto local abierto por la prueba.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class DatabaseServerTest {
+
+    @Test
+    void laUrlUsaLaRutaRelativaAlDirectorioDeDatos() {
+        Path data = Path.of("data").toAbsolutePath();
+        DatabaseServer server = new DatabaseServer("db.local", 7000, "gestor", "clave", 500, null, data);
+
+        assertEquals("objectdb://db.local:7000/data.odb;user=gestor;password=clave",
+                server.url(data.resolve("data.odb")));
+        assertEquals("objectdb://db.local:7000/shards/shard-1.odb;user=gestor;password=clave",
+                server.url(data.resolve("shards").resolve("shard-1.odb")));
+    }
+
+    @Test
+    void isReachableCompruebaSiElPuertoAceptaConexiones() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+            DatabaseServer server = servidor(port);
+
+            assertTrue(server.isReachable());
+        }
+
+        assertFalse(servidor(port).isReachable());
+    }
+
+    @Test
+    void sinComprobacionesSeConsideraSanoYStopNoHaceNada() {
+        DatabaseServer server = servidor(6136);
+
+        assertTrue(server.isHealthy());
+        assertEquals(0, server.getLastRoundTripNanos());
+        server.stop();
+    }
+
+    private static DatabaseServer servidor(int port) {
+        return new DatabaseServer(InetAddress.getLoopbackAddress().getHostAddress(), port, "admin", "admin", 500,
+                null, Path.of("data"));
+    }
+}
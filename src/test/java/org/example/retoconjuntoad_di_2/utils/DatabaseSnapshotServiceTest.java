@@ -0,0 +1,93 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link DatabaseSnapshotService}: la copia se toma con la copia de seguridad
+ * en línea de ObjectDB y la restauración descarta el archivo de recuperación anterior.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class DatabaseSnapshotServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void laInstantaneaIncluyeLoConfirmadoYSeRestauraSinElArchivoDeRecuperacion() throws IOException {
+        Path file = dir.resolve("data.odb");
+        DatabaseSnapshotService service = new DatabaseSnapshotService(file, dir.resolve("backups"), 2);
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(file.toString());
+        Path snapshot;
+        try {
+            service.start(emf, 0);
+            UnitOfWork.run(emf, em -> em.persist(usuario(1)));
+
+            snapshot = service.takeSnapshot().orElseThrow();
+
+            UnitOfWork.run(emf, em -> em.persist(usuario(2)));
+        } finally {
+            emf.close();
+        }
+        assertTrue(Files.exists(snapshot.resolveSibling(snapshot.getFileName() + ".sha256")));
+
+        // Como si el proceso hubiera terminado con transacciones pendientes de aplicar.
+        Path recovery = DatabaseSnapshotService.recoveryFile(file);
+        Files.writeString(recovery, "pendiente");
+
+        service.restore(snapshot);
+
+        assertFalse(Files.exists(recovery));
+        EntityManagerFactory restaurada = Persistence.createEntityManagerFactory(file.toString());
+        try {
+            long usuarios = UnitOfWork.read(restaurada, em -> em.createQuery(
+                    "select count(u) from User u", Long.class).getSingleResult());
+            assertEquals(1L, usuarios);
+        } finally {
+            restaurada.close();
+        }
+    }
+
+    @Test
+    void sinBaseDeDatosAbiertaNoTomaInstantaneas() {
+        DatabaseSnapshotService service = new DatabaseSnapshotService(
+                dir.resolve("data.odb"), dir.resolve("backups"), 2);
+
+        assertThrows(IllegalStateException.class, service::takeSnapshot);
+    }
+
+    @Test
+    void soloRestauraInstantaneasDelDirectorio() throws IOException {
+        Path backups = dir.resolve("backups");
+        Files.createDirectories(backups);
+        Files.writeString(dir.resolve("data-otra.odb"), "no es una instantánea");
+        DatabaseSnapshotService service = new DatabaseSnapshotService(dir.resolve("data.odb"), backups, 2);
+
+        assertThrows(UncheckedIOException.class, () -> service.restoreIfRequested("../data-otra.odb"));
+        assertThrows(IOException.class, () -> service.restore(dir.resolve("data-otra.odb")));
+        assertFalse(Files.exists(dir.resolve("data.odb")));
+    }
+
+    private static User usuario(int id) {
+        User user = new User();
+        user.setId(id);
+        user.setNombreUsuario("usuario" + id);
+        user.setContrasena("secreta");
+        return user;
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.retoconjuntoad_di_2.model.pelicula.Pelicula;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Pruebas de {@link EntityIdentityMap}.
+ * <p>
+ * El mapa solo usa la factoría de EntityManager como clave, así que cada prueba usa una
+ * factoría ficticia propia y no necesita base de datos.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class EntityIdentityMapTest {
+
+    private EntityIdentityMap<Pelicula> map;
+
+    @BeforeEach
+    void setUp() {
+        map = EntityIdentityMap.forEntity(factoria(), Pelicula.class);
+    }
+
+    @Test
+    void cadaIdTieneUnaUnicaInstanciaMientrasNoCambieLaVersion() {
+        Pelicula primera = pelicula(7, 1);
+
+        assertSame(primera, map.canonical(primera));
+        assertSame(primera, map.canonical(pelicula(7, 1)));
+        assertSame(primera, map.canonical(pelicula(7, 0)));
+        assertSame(primera, map.get(7));
+
+        Pelicula nueva = pelicula(7, 2);
+        assertSame(nueva, map.canonical(nueva));
+        assertSame(nueva, map.get(7));
+    }
+
+    @Test
+    void unaInstanciaConCambiosSinGuardarSeSustituye() {
+        Pelicula editada = pelicula(7, 1);
+        map.canonical(editada);
+        editada.setTitulo("Título sin guardar");
+
+        Pelicula leida = pelicula(7, 1);
+        assertSame(leida, map.canonical(leida));
+    }
+
+    @Test
+    void evictYClearOlvidanLasInstancias() {
+        Pelicula a = map.canonical(pelicula(1, 1));
+        Pelicula b = map.canonical(pelicula(2, 1));
+
+        map.evict(1);
+        assertNull(map.get(1));
+        assertSame(b, map.get(2));
+        assertNotSame(a, map.canonical(pelicula(1, 1)));
+
+        map.clear();
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void creceYBorraSinPerderEntradasDeLasSecuenciasDeSondeo() {
+        List<Pelicula> vivas = new ArrayList<>();
+        for (int id = 0; id < 1_000; id++) {
+            vivas.add(map.canonical(pelicula(id * 64, 1)));
+        }
+        for (int id = 0; id < 1_000; id += 2) {
+            map.evict(id * 64);
+        }
+
+        for (int id = 0; id < 1_000; id++) {
+            if (id % 2 == 0) {
+                assertNull(map.get(id * 64));
+            } else {
+                assertSame(vivas.get(id), map.get(id * 64));
+            }
+        }
+        assertEquals(500, map.size());
+        assertEquals(List.of(vivas.get(1), vivas.get(3)),
+                map.canonicalAll(List.of(pelicula(64, 1), pelicula(3 * 64, 1))));
+    }
+
+    private static Pelicula pelicula(int id, long version) {
+        Pelicula pelicula = new Pelicula();
+        pelicula.setId(id);
+        pelicula.setVersion(version);
+        pelicula.setTitulo("Película " + id);
+        pelicula.clearDirtyFields();
+        return pelicula;
+    }
+
+    /**
+     * Factoría ficticia que solo admite {@code equals} y {@code hashCode} por identidad.
+     */
+    private static EntityManagerFactory factoria() {
+        return (EntityManagerFactory) Proxy.newProxyInstance(EntityManagerFactory.class.getClassLoader(),
+                new Class<?>[] {EntityManagerFactory.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "EntityManagerFactory de prueba";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
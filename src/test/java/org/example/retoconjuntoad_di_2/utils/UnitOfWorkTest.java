@@ -0,0 +1,115 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link UnitOfWork} sobre bases de datos ObjectDB temporales.
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class UnitOfWorkTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    void lasLlamadasAnidadasCompartenUnUnicoCommit() {
+        List<String> eventos = new ArrayList<>();
+
+        UnitOfWork.run(emf, em -> {
+            em.persist(usuario(1));
+            UnitOfWork.run(emf, anidado -> {
+                anidado.persist(usuario(2));
+                UnitOfWork.afterCommit(() -> eventos.add("confirmado"));
+            });
+            // La lectura anidada ve lo escrito y aún no confirmado.
+            assertNotNull(UnitOfWork.read(emf, lectura -> lectura.find(User.class, 2)));
+            assertTrue(eventos.isEmpty());
+        });
+
+        assertEquals(List.of("confirmado"), eventos);
+        assertEquals(2L, contar());
+        assertFalse(UnitOfWork.isActive());
+    }
+
+    @Test
+    void unFalloAnidadoDeshaceTodaLaUnidadAunqueSeCapture() {
+        List<String> eventos = new ArrayList<>();
+
+        assertThrows(Exception.class, () -> UnitOfWork.run(emf, em -> {
+            em.persist(usuario(1));
+            UnitOfWork.afterCommit(() -> eventos.add("confirmado"));
+            try {
+                UnitOfWork.run(emf, anidado -> {
+                    throw new IllegalArgumentException("Fallo simulado");
+                });
+            } catch (IllegalArgumentException e) {
+                // El llamante sigue, pero la transacción ya está marcada para deshacer.
+            }
+        }));
+
+        assertTrue(eventos.isEmpty());
+        assertEquals(0L, contar());
+    }
+
+    @Test
+    void noAdmiteEscriturasAnidadasSobreOtraBaseDeDatos() {
+        EntityManagerFactory otra = Persistence.createEntityManagerFactory(dir.resolve("otra.odb").toString());
+        try {
+            assertThrows(IllegalStateException.class, () -> UnitOfWork.run(emf, em -> {
+                em.persist(usuario(1));
+                // Las lecturas de otra base de datos sí se admiten, fuera de la transacción.
+                assertNull(UnitOfWork.read(otra, lectura -> lectura.find(User.class, 1)));
+                UnitOfWork.run(otra, anidado -> anidado.persist(usuario(2)));
+            }));
+
+            assertEquals(0L, contar());
+            assertNull(UnitOfWork.read(otra, em -> em.find(User.class, 2)));
+        } finally {
+            otra.close();
+        }
+    }
+
+    private long contar() {
+        return UnitOfWork.read(emf, em -> em.createQuery("select count(u) from User u", Long.class)
+                .getSingleResult());
+    }
+
+    private static User usuario(int id) {
+        User user = new User();
+        user.setId(id);
+        user.setNombreUsuario("usuario" + id);
+        user.setContrasena("secreta");
+        return user;
+    }
+}
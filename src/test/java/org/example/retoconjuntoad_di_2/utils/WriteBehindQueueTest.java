@@ -0,0 +1,128 @@
+package org.example.retoconjuntoad_di_2.utils;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.example.retoconjuntoad_di_2.model.user.User;
+import org.example.retoconjuntoad_di_2.model.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link WriteBehindQueue} sobre una base de datos ObjectDB temporal.
+ * <p>
+ * La cola se crea con un retraso máximo largo, de modo que los guardados se acumulan
+ * hasta {@link WriteBehindQueue#flush()} y se escriben en un solo lote.
+ * </p>
+ *
+ * @author Sistema de Gestión de Películas
+ * @version 1.0
+ */
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path dir;
+
+    private EntityManagerFactory emf;
+    private UserRepository users;
+    private List<String> guardados;
+    private WriteBehindQueue<User> queue;
+
+    @BeforeEach
+    void setUp() {
+        emf = Persistence.createEntityManagerFactory(dir.resolve("data.odb").toString());
+        users = new UserRepository(emf);
+        guardados = new ArrayList<>();
+        queue = new WriteBehindQueue<>(emf, user -> {
+            guardados.add(user.getNombreUsuario());
+            if (user.getNombreUsuario().startsWith("invalido")) {
+                throw new IllegalArgumentException("Usuario no válido: " + user.getNombreUsuario());
+            }
+            return users.save(user);
+        }, 100, 100, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.close();
+        emf.close();
+    }
+
+    @Test
+    void losGuardadosPendientesDeUnaMismaEntidadSeCombinan() throws Exception {
+        User nuevo = usuario("ana");
+        CompletableFuture<User> primero = queue.submit(nuevo);
+        nuevo.setContrasena("otra");
+        CompletableFuture<User> segundo = queue.submit(nuevo);
+        assertEquals(1, queue.size());
+
+        queue.flush();
+
+        assertSame(primero.get(), segundo.get());
+        assertEquals(List.of("ana"), guardados);
+
+        // Con ID: de dos instancias de la misma entidad solo se escribe la última.
+        User guardado = primero.get();
+        queue.submit(copia(guardado, "ana"));
+        CompletableFuture<User> ultimo = queue.submit(copia(guardado, "ana.garcia"));
+        queue.flush();
+
+        assertEquals("ana.garcia", ultimo.get().getNombreUsuario());
+        assertEquals(List.of("ana", "ana.garcia"), guardados);
+        assertEquals(1, users.findAll().size());
+    }
+
+    @Test
+    void siFallaElLoteSeReintentaEntidadAEntidad() throws Exception {
+        CompletableFuture<User> ana = queue.submit(usuario("ana"));
+        CompletableFuture<User> invalido = queue.submit(usuario("invalido"));
+        CompletableFuture<User> luis = queue.submit(usuario("luis"));
+
+        queue.flush();
+
+        assertEquals("ana", ana.get().getNombreUsuario());
+        assertEquals("luis", luis.get().getNombreUsuario());
+        ExecutionException e = assertThrows(ExecutionException.class, invalido::get);
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        // El lote se deshizo entero: ana y luis se escribieron de nuevo, uno a uno.
+        assertEquals(List.of("ana", "invalido", "ana", "invalido", "luis"), guardados);
+        assertEquals(2, users.findAll().size());
+    }
+
+    @Test
+    void alCerrarSeEscribenLosPendientes() {
+        CompletableFuture<User> ana = queue.submit(usuario("ana"));
+
+        queue.close();
+
+        assertTrue(ana.isDone());
+        assertThrows(IllegalStateException.class, () -> queue.submit(usuario("luis")));
+    }
+
+    private static User usuario(String nombre) {
+        User user = new User();
+        user.setNombreUsuario(nombre);
+        user.setContrasena("secreta");
+        return user;
+    }
+
+    private static User copia(User guardado, String nombre) {
+        User user = usuario(nombre);
+        user.setId(guardado.getId());
+        user.setVersion(guardado.getVersion());
+        return user;
+    }
+}